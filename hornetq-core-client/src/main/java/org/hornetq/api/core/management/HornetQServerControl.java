@@ -217,6 +217,16 @@ public interface HornetQServerControl
     */
    String getPagingDirectory();
 
+   /**
+    * Returns the maximum number of bytes the messages of all the addresses may use in memory, -1 means no limit.
+    */
+   long getGlobalMaxSize();
+
+   /**
+    * Returns the number of bytes the messages of all the addresses use in memory.
+    */
+   long getGlobalSize();
+
    /**
     * Returns whether delivery count is persisted before messages are delivered to the consumers.
     */
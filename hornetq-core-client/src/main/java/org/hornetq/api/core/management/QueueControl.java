@@ -85,6 +85,23 @@ public interface QueueControl
     */
    long getMessagesAcknowledged();
 
+   /**
+    * Returns the number of message groups currently assigned to a consumer of this queue,
+    * or -1 if the groups are assigned by hashing (group-hashing), which doesn't record them.
+    */
+   int getGroupCount();
+
+   /**
+    * Returns the number of message groups released because they were idle or over the max-groups limit,
+    * or -1 if the groups are assigned by hashing (group-hashing), which doesn't record them.
+    */
+   long getGroupsEvicted();
+
+   /**
+    * Returns the number of messages depaged per second for this queue.
+    */
+   float getDepageRate();
+
    /**
     * Returns the first message on the queue as JSON
     */
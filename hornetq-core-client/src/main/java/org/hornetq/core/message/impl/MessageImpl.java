@@ -17,12 +17,16 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
 import org.hornetq.api.core.HornetQBuffer;
 import org.hornetq.api.core.HornetQBuffers;
 import org.hornetq.api.core.HornetQException;
 import org.hornetq.api.core.HornetQPropertyConversionException;
 import org.hornetq.api.core.Message;
 import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.buffers.impl.ChannelBufferWrapper;
 import org.hornetq.core.buffers.impl.ResetLimitWrappedHornetQBuffer;
 import org.hornetq.core.message.BodyEncoder;
 import org.hornetq.core.protocol.core.impl.PacketImpl;
@@ -57,6 +61,12 @@ public abstract class MessageImpl implements MessageInternal
 
    public static final int BODY_OFFSET = BUFFER_HEADER_SPACE + DataConstants.SIZE_INT;
 
+   // smaller bodies are cheaper to copy than to read through a composite buffer
+   private static final int MIN_SHARED_BODY_SIZE = 1024;
+
+   // a shared buffer grows by adding components, more than this many and netty consolidates it into one copy
+   private static final int MAX_SHARED_BODY_COMPONENTS = 16;
+
    protected long messageID;
 
    protected SimpleString address;
@@ -143,6 +153,18 @@ public abstract class MessageImpl implements MessageInternal
     * Copy constructor
     */
    protected MessageImpl(final MessageImpl other, TypedProperties properties)
+   {
+      this(other, properties, false);
+   }
+
+   /*
+    * Copy constructor
+    *
+    * When shareBody is set, the copy reads the body from the buffer of the other message instead
+    * of copying it, and only gets its own packet header space and encoded headers and properties.
+    * The body is then copy on write: whichever message changes its body first copies its buffer.
+    */
+   protected MessageImpl(final MessageImpl other, TypedProperties properties, final boolean shareBody)
    {
       messageID = other.getMessageID();
       userID = other.getUserID();
@@ -168,9 +190,22 @@ public abstract class MessageImpl implements MessageInternal
          {
             other.bufferUsed = true;
 
-            // We need to copy the underlying buffer too, since the different messsages thereafter might have different
-            // properties set on them, making their encoding different
-            buffer = other.buffer.copy(0, other.buffer.writerIndex());
+            int bodyEnd = other.endOfBodyPosition < 0 ? other.buffer.writerIndex() : other.endOfBodyPosition;
+
+            if (shareBody && bodyEnd - BODY_OFFSET >= MIN_SHARED_BODY_SIZE && other.buffer.writerIndex() >= bodyEnd)
+            {
+               buffer = shareBody(other.buffer, bodyEnd);
+
+               copied = false;
+
+               other.copied = false;
+            }
+            else
+            {
+               // We need to copy the underlying buffer too, since the different messsages thereafter might have different
+               // properties set on them, making their encoding different
+               buffer = other.buffer.copy(0, other.buffer.writerIndex());
+            }
 
             buffer.setIndex(other.buffer.readerIndex(), buffer.capacity());
          }
@@ -1070,6 +1105,26 @@ public abstract class MessageImpl implements MessageInternal
       buffer.setIndex(BODY_OFFSET, BODY_OFFSET);
    }
 
+   /**
+    * A buffer with its own copy of everything before and after the body, with the body itself being
+    * a slice of the other buffer. The slice retains the buffer it comes from, so the body outlives
+    * the message it was copied from if that message releases or replaces its buffer.
+    */
+   private static HornetQBuffer shareBody(final HornetQBuffer other, final int bodyEnd)
+   {
+      ByteBuf whole = ChannelBufferWrapper.unwrap(other.byteBuf());
+
+      CompositeByteBuf composite = Unpooled.compositeBuffer(MAX_SHARED_BODY_COMPONENTS);
+
+      composite.addComponents(whole.copy(0, BODY_OFFSET),
+                              whole.slice(BODY_OFFSET, bodyEnd - BODY_OFFSET).retain(),
+                              whole.copy(bodyEnd, other.writerIndex() - bodyEnd));
+
+      composite.writerIndex(other.writerIndex());
+
+      return new ChannelBufferWrapper(composite);
+   }
+
    private void forceCopy()
    {
       // Must copy buffer before sending it
@@ -20,6 +20,10 @@ import java.util.NoSuchElementException;
  * A linked list implementation which allows multiple iterators to exist at the same time on the queue, and which see any
  * elements added or removed from the queue either directly or via iterators.
  *
+ * The elements are kept on chunks of {@link #CHUNK_SIZE} slots rather than on a node per element. A removed element
+ * leaves an empty slot behind, so the positions of the other elements (and of the iterators) never move, and a chunk is
+ * released once it has no elements left.
+ *
  * This class is not thread safe.
  *
  * @author Tim Fox
@@ -30,9 +34,11 @@ public class LinkedListImpl<E> implements LinkedList<E>
 {
    private static final int INITIAL_ITERATOR_ARRAY_SIZE = 10;
 
-   private final Node<E> head = new Node<E>(null);
+   static final int CHUNK_SIZE = 32;
+
+   private Chunk head;
 
-   private Node<E> tail = null;
+   private Chunk tail;
 
    private int size;
 
@@ -50,68 +56,83 @@ public class LinkedListImpl<E> implements LinkedList<E>
 
    public void addHead(E e)
    {
-      Node<E> node = new Node<E>(e);
-
-      node.next = head.next;
-
-      node.prev = head;
-
-      head.next = node;
-
-      if (size == 0)
+      if (head == null)
       {
-         tail = node;
+         head = tail = new Chunk(CHUNK_SIZE);
       }
-      else
+      else if (size == 0)
       {
-         // Need to set the previous element on the former head
-         node.next.prev = node;
+         // the only chunk is empty, so we can just move its window
+         head.start = head.end = CHUNK_SIZE;
       }
+      else if (head.start == 0)
+      {
+         Chunk chunk = new Chunk(CHUNK_SIZE);
+
+         chunk.next = head;
+
+         head.prev = chunk;
+
+         head = chunk;
+      }
+
+      head.elements[--head.start] = e;
+
+      head.live++;
 
       size++;
    }
 
    public void addTail(E e)
    {
-      if (size == 0)
+      if (tail == null)
       {
-         addHead(e);
+         head = tail = new Chunk(0);
       }
-      else
+      else if (size == 0)
       {
-         Node<E> node = new Node<E>(e);
-
-         node.prev = tail;
+         tail.start = tail.end = 0;
+      }
+      else if (tail.end == CHUNK_SIZE)
+      {
+         Chunk chunk = new Chunk(0);
 
-         tail.next = node;
+         chunk.prev = tail;
 
-         tail = node;
+         tail.next = chunk;
 
-         size++;
+         tail = chunk;
       }
+
+      tail.elements[tail.end++] = e;
+
+      tail.live++;
+
+      size++;
    }
 
    public E poll()
    {
-      Node<E> ret = head.next;
-
-      if (ret != null)
-      {
-         removeAfter(head);
-
-         return ret.val;
-      }
-      else
+      if (size == 0)
       {
          return null;
       }
+
+      E ret = head.get(head.start);
+
+      remove(head, head.start);
+
+      return ret;
    }
 
    public void clear()
    {
-      tail = head.next = null;
+      // the empty slots are on the old chunks, which are not referenced any longer
+      head = tail = null;
 
       size = 0;
+
+      resetIterators();
    }
 
    public int size()
@@ -128,21 +149,17 @@ public class LinkedListImpl<E> implements LinkedList<E>
    {
       StringBuilder str = new StringBuilder("LinkedListImpl [ ");
 
-      Node<E> node = head;
-
-      while (node != null)
+      for (Chunk chunk = head; chunk != null; chunk = chunk.next)
       {
-         str.append(node.toString());
+         str.append(chunk.toString());
 
-         if (node.next != null)
+         if (chunk.next != null)
          {
             str.append(", ");
          }
-
-         node = node.next;
       }
 
-      return str.toString();
+      return str.append(" ]").toString();
    }
 
    public int numIters()
@@ -155,42 +172,148 @@ public class LinkedListImpl<E> implements LinkedList<E>
       return (Iterator[])Array.newInstance(Iterator.class, size);
    }
 
-   private void removeAfter(Node<E> node)
+   private void remove(Chunk chunk, int index)
+   {
+      chunk.elements[index] = null;
+
+      chunk.live--;
+
+      size--;
+
+      if (chunk.iterCount != 0)
+      {
+         nudgeIterators(chunk, index);
+      }
+
+      if (chunk.live == 0)
+      {
+         if (head == tail)
+         {
+            // We keep the last chunk, so a queue going from empty to one element doesn't allocate a chunk every time
+            chunk.start = chunk.end = 0;
+         }
+         else
+         {
+            unlink(chunk);
+         }
+      }
+      else
+      {
+         while (chunk.elements[chunk.start] == null)
+         {
+            chunk.start++;
+         }
+
+         while (chunk.elements[chunk.end - 1] == null)
+         {
+            chunk.end--;
+         }
+
+         if (chunk.live <= CHUNK_SIZE / 4)
+         {
+            // Elements removed out of order could leave a lot of sparse chunks behind
+            if (chunk.next == null || !merge(chunk, chunk.next))
+            {
+               if (chunk.prev != null)
+               {
+                  merge(chunk.prev, chunk);
+               }
+            }
+         }
+      }
+   }
+
+   /**
+    * Moves the elements of the second chunk into the first one, if they fit and no iterator is positioned on them.
+    */
+   private boolean merge(Chunk first, Chunk second)
    {
-      Node<E> toRemove = node.next;
+      if (first.iterCount != 0 || second.iterCount != 0 || first.live + second.live > CHUNK_SIZE / 2)
+      {
+         return false;
+      }
+
+      Object[] elements = first.elements;
 
-      node.next = toRemove.next;
+      int pos = 0;
 
-      if (toRemove.next != null)
+      for (int i = first.start; i < first.end; i++)
       {
-         toRemove.next.prev = node;
+         if (elements[i] != null)
+         {
+            elements[pos++] = elements[i];
+         }
       }
 
-      if (toRemove == tail)
+      for (int i = second.start; i < second.end; i++)
       {
-         tail = node;
+         if (second.elements[i] != null)
+         {
+            elements[pos++] = second.elements[i];
+         }
       }
 
-      size--;
+      for (int i = pos; i < first.end; i++)
+      {
+         elements[i] = null;
+      }
+
+      first.start = 0;
+
+      first.end = pos;
+
+      first.live += second.live;
+
+      unlink(second);
+
+      return true;
+   }
 
-      if (toRemove.iterCount != 0)
+   private void unlink(Chunk chunk)
+   {
+      if (chunk.prev == null)
+      {
+         head = chunk.next;
+      }
+      else
       {
-         LinkedListImpl.this.nudgeIterators(toRemove);
+         chunk.prev.next = chunk.next;
+      }
+
+      if (chunk.next == null)
+      {
+         tail = chunk.prev;
+      }
+      else
+      {
+         chunk.next.prev = chunk.prev;
       }
 
       //Help GC - otherwise GC potentially has to traverse a very long list to see if elements are reachable, this can result in OOM
       //https://jira.jboss.org/browse/HORNETQ-469
-      toRemove.next = toRemove.prev = null;
+      chunk.next = chunk.prev = null;
    }
 
-   private synchronized void nudgeIterators(Node<E> node)
+   private synchronized void nudgeIterators(Chunk chunk, int index)
    {
       for (int i = 0; i < numIters; i++)
       {
          Iterator iter = iters[i];
          if (iter != null)
          {
-            iter.nudged(node);
+            iter.nudged(chunk, index);
+         }
+      }
+   }
+
+   private synchronized void resetIterators()
+   {
+      for (int i = 0; i < numIters; i++)
+      {
+         Iterator iter = iters[i];
+         if (iter != null)
+         {
+            iter.reset();
          }
       }
    }
@@ -247,40 +370,103 @@ public class LinkedListImpl<E> implements LinkedList<E>
       throw new IllegalStateException("Cannot find iter to remove");
    }
 
-   private static final class Node<E>
+   /**
+    * The elements live between {@code start} (inclusive) and {@code end} (exclusive), and the slots on both ends of that
+    * window always hold an element while the chunk is linked, unless the list is empty.
+    */
+   private final class Chunk
    {
-      Node<E> next;
+      final Object[] elements = new Object[CHUNK_SIZE];
+
+      int start;
 
-      Node<E> prev;
+      int end;
 
-      final E val;
+      int live;
 
       int iterCount;
 
-      Node(E e)
+      Chunk next;
+
+      Chunk prev;
+
+      Chunk(int position)
+      {
+         start = end = position;
+      }
+
+      @SuppressWarnings("unchecked")
+      E get(int index)
       {
-         val = e;
+         return (E) elements[index];
+      }
+
+      /**
+       * @return the index of the first element after the given index on this chunk, or -1
+       */
+      int nextIndex(int index)
+      {
+         for (int i = index + 1; i < end; i++)
+         {
+            if (elements[i] != null)
+            {
+               return i;
+            }
+         }
+         return -1;
+      }
+
+      /**
+       * @return the index of the first element before the given index on this chunk, or -1
+       */
+      int prevIndex(int index)
+      {
+         for (int i = index - 1; i >= start; i--)
+         {
+            if (elements[i] != null)
+            {
+               return i;
+            }
+         }
+         return -1;
       }
 
       public String toString()
       {
-         return "Node, value = " + val;
+         StringBuilder str = new StringBuilder("Chunk [");
+
+         for (int i = start; i < end; i++)
+         {
+            if (elements[i] != null)
+            {
+               str.append(" ").append(elements[i]);
+            }
+         }
+
+         return str.append(" ]").toString();
       }
    }
 
    private class Iterator implements LinkedListIterator<E>
    {
-      Node<E> last;
+      // the current position, chunk is null when it's not positioned
+      Chunk chunk;
+
+      int index;
+
+      // whether the current element was already returned by next()
+      boolean returned;
 
-      Node<E> current = head.next;
+      // whether there is an element returned by next() that can be removed
+      boolean hasLast;
 
       boolean repeat;
 
       Iterator()
       {
-         if (current != null)
+         if (size != 0)
          {
-            current.iterCount++;
+            moveTo(head, head.start);
          }
 
          addIter(this);
@@ -293,9 +479,7 @@ public class LinkedListImpl<E> implements LinkedList<E>
 
       public boolean hasNext()
       {
-         Node<E> e = getNode();
-
-         if (e != null && (e != last || repeat))
+         if (getNode() && (!returned || repeat))
          {
             return true;
          }
@@ -305,15 +489,15 @@ public class LinkedListImpl<E> implements LinkedList<E>
 
       public E next()
       {
-         Node<E> e = getNode();
+         boolean positioned = getNode();
 
          if (repeat)
          {
             repeat = false;
 
-            if (e != null)
+            if (positioned)
             {
-               return e.val;
+               return chunk.get(index);
             }
             else
             {
@@ -321,9 +505,7 @@ public class LinkedListImpl<E> implements LinkedList<E>
                {
                   advance();
 
-                  e = getNode();
-
-                  return e.val;
+                  return chunk.get(index);
                }
                else
                {
@@ -332,13 +514,11 @@ public class LinkedListImpl<E> implements LinkedList<E>
             }
          }
 
-         if (e == null || e == last)
+         if (!positioned || returned)
          {
             if (canAdvance())
             {
                advance();
-
-               e = getNode();
             }
             else
             {
@@ -346,38 +526,42 @@ public class LinkedListImpl<E> implements LinkedList<E>
             }
          }
 
-         last = e;
+         returned = true;
 
-         repeat = false;
+         hasLast = true;
 
-         return e.val;
+         return chunk.get(index);
       }
 
       public void remove()
       {
-         if (last == null)
+         if (!hasLast)
          {
             throw new NoSuchElementException();
          }
 
-         if (current == null)
+         if (chunk == null)
          {
             throw new NoSuchElementException();
          }
 
-         LinkedListImpl.this.removeAfter(current.prev);
+         LinkedListImpl.this.remove(chunk, index);
 
-         last = null;
+         hasLast = false;
+
+         returned = false;
       }
 
       public void close()
       {
          removeIter(this);
+
+         moveTo(null, 0);
       }
 
-      public void nudged(Node<E> node)
+      void nudged(Chunk removedChunk, int removedIndex)
       {
-         if (current == node)
+         if (chunk == removedChunk && index == removedIndex)
          {
             if (canAdvance())
             {
@@ -385,71 +569,89 @@ public class LinkedListImpl<E> implements LinkedList<E>
             }
             else
             {
-               if (current.prev != head)
-               {
-                  current.iterCount--;
-
-                  current = current.prev;
+               int prev = chunk.prevIndex(index);
 
-                  current.iterCount++;
+               if (prev >= 0)
+               {
+                  moveTo(chunk, prev);
+               }
+               else if (chunk.prev != null)
+               {
+                  moveTo(chunk.prev, chunk.prev.end - 1);
                }
                else
                {
-                  current = null;
+                  moveTo(null, 0);
                }
             }
          }
       }
 
-      private Node<E> getNode()
+      void reset()
       {
-         if (current == null)
-         {
-            current = head.next;
+         moveTo(null, 0);
+      }
 
-            if (current != null)
-            {
-               current.iterCount++;
-            }
+      private void moveTo(Chunk newChunk, int newIndex)
+      {
+         if (chunk != null)
+         {
+            chunk.iterCount--;
          }
 
-         if (current != null)
+         chunk = newChunk;
+
+         index = newIndex;
+
+         if (newChunk != null)
          {
-            return current;
+            newChunk.iterCount++;
          }
-         else
+
+         returned = false;
+      }
+
+      private boolean getNode()
+      {
+         if (chunk == null && size != 0)
          {
-            return null;
+            moveTo(head, head.start);
          }
+
+         return chunk != null;
       }
 
       private boolean canAdvance()
       {
-         if (current == null)
+         if (!getNode())
          {
-            current = head.next;
-
-            if (current != null)
-            {
-               current.iterCount++;
-            }
+            return false;
          }
 
-         return current != null && current.next != null;
+         return chunk.nextIndex(index) >= 0 || chunk.next != null;
       }
 
       private void advance()
       {
-         if (current == null || current.next == null)
+         if (chunk == null)
          {
             throw new NoSuchElementException();
          }
 
-         current.iterCount--;
-
-         current = current.next;
+         int next = chunk.nextIndex(index);
 
-         current.iterCount++;
+         if (next >= 0)
+         {
+            moveTo(chunk, next);
+         }
+         else if (chunk.next != null)
+         {
+            moveTo(chunk.next, chunk.next.start);
+         }
+         else
+         {
+            throw new NoSuchElementException();
+         }
       }
 
    }
@@ -18,7 +18,9 @@ import java.util.NoSuchElementException;
 /**
  * A priority linked list implementation
  * <p>
- * It implements this by maintaining an individual LinkedBlockingDeque for each priority level.
+ * It implements this by maintaining an individual {@link LinkedListImpl} for each priority level.
+ * Levels are only visited while they have elements, so the usual case of every message on the same
+ * priority doesn't pay for the other levels.
  *
  * @author <a href="mailto:tim.fox@jboss.com">Tim Fox</a>
  * @author <a href="mailto:jmesnil@redhat.com">Jeff Mesnil</a>
@@ -214,25 +216,27 @@ public class PriorityLinkedListImpl<T> implements PriorityLinkedList<T>
 
          while (index >= 0)
          {
-            lastIter = cachedIters[index];
-
-            if (lastIter == null)
+            if (levels[index].size() != 0)
             {
-               lastIter = cachedIters[index] = levels[index].iterator();
-            }
+               lastIter = cachedIters[index];
 
-            boolean b = lastIter.hasNext();
+               if (lastIter == null)
+               {
+                  lastIter = cachedIters[index] = levels[index].iterator();
+               }
 
-            if (b)
-            {
-               return true;
+               if (lastIter.hasNext())
+               {
+                  return true;
+               }
             }
 
             index--;
 
             if (index < 0)
             {
-               index = levels.length - 1;
+               // nothing lives above highestPriority, and a higher priority added later will reset the index
+               index = highestPriority;
 
                break;
             }
@@ -259,16 +263,17 @@ public class PriorityLinkedListImpl<T> implements PriorityLinkedList<T>
 
          lastIter.remove();
 
-         // This next statement would be the equivalent of:
-         // if (index == highestPriority && levels[index].size() == 0)
-         // However we have to keep checking all the previous levels
+         // We have to keep checking all the previous levels
          // otherwise we would cache a max that will not exist
          // what would make us eventually having hasNext() returning false
          // as a bug
          // Part of the fix for HORNETQ-705
-         for (int i = index; i >= 0 && levels[index].size() == 0; i--)
+         if (index == highestPriority)
          {
-            highestPriority = i;
+            while (highestPriority > 0 && levels[highestPriority].size() == 0)
+            {
+               highestPriority--;
+            }
          }
 
          size--;
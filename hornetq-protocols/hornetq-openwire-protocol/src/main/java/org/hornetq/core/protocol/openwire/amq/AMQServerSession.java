@@ -170,7 +170,7 @@ public class AMQServerSession extends ServerSessionImpl
          Map<Long, List<MessageReference>> toAcks = new HashMap<Long, List<MessageReference>>();
          for (MessageReference ref : ackRefs)
          {
-            Long consumerId = ref.getConsumerId();
+            Long consumerId = ref.hasConsumerId() ? ref.getConsumerId() : null;
 
             if (this.consumers.containsKey(consumerId))
             {
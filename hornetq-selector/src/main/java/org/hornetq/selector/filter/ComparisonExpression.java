@@ -79,7 +79,7 @@ public abstract class ComparisonExpression extends BinaryExpression implements B
       REGEXP_CONTROL_CHARS.add(Character.valueOf('!'));
    }
 
-   static class LikeExpression extends UnaryExpression implements BooleanExpression
+   public static class LikeExpression extends UnaryExpression implements BooleanExpression
    {
 
       Pattern likePattern;
@@ -139,6 +139,11 @@ public abstract class ComparisonExpression extends BinaryExpression implements B
          return "LIKE";
       }
 
+      public Pattern getLikePattern()
+      {
+         return likePattern;
+      }
+
       /**
        * @see org.apache.activemq.filter.Expression#evaluate(Filterable)
        */
@@ -642,6 +647,14 @@ public abstract class ComparisonExpression extends BinaryExpression implements B
 
    protected abstract boolean asBoolean(int answer);
 
+   /**
+    * @return true if strings are converted to the type of the other operand before comparing
+    */
+   public boolean isConvertStringExpressions()
+   {
+      return convertStringExpressions;
+   }
+
    public boolean matches(Filterable message) throws FilterException
    {
       Object object = evaluate(message);
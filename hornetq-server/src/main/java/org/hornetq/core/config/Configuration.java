@@ -21,6 +21,7 @@ import org.hornetq.api.core.BroadcastGroupConfiguration;
 import org.hornetq.api.core.DiscoveryGroupConfiguration;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.api.core.TransportConfiguration;
+import org.hornetq.core.paging.PagingPlacementPolicy;
 import org.hornetq.core.security.Role;
 import org.hornetq.core.server.JournalType;
 import org.hornetq.core.server.group.impl.GroupingHandlerConfiguration;
@@ -510,6 +511,17 @@ public interface Configuration extends Serializable
     */
    Configuration setPersistIDCache(boolean persist);
 
+   /**
+    * Returns whether the duplicate ID caches keep the IDs out of the heap and take no lock. <br>
+    * Default value is {@value org.hornetq.api.config.HornetQDefaultConfiguration#DEFAULT_ID_CACHE_OFF_HEAP}.
+    */
+   boolean isIDCacheOffHeap();
+
+   /**
+    * Sets whether the duplicate ID caches keep the IDs out of the heap and take no lock.
+    */
+   Configuration setIDCacheOffHeap(boolean offHeap);
+
    // Journal related attributes ------------------------------------------------------------
 
    /**
@@ -759,6 +771,55 @@ public interface Configuration extends Serializable
     */
    Configuration setPagingDirectory(String dir);
 
+   /**
+    * Returns the maximum number of bytes the messages of all the addresses may use in memory. Above
+    * it the largest addresses page, block, drop or fail as their address-full-policy says.
+    * {@code -1} means no limit. <br>
+    * Default value is {@value org.hornetq.api.config.HornetQDefaultConfiguration#DEFAULT_GLOBAL_MAX_SIZE}.
+    */
+   long getGlobalMaxSize();
+
+   /**
+    * Sets the maximum number of bytes the messages of all the addresses may use in memory.
+    */
+   Configuration setGlobalMaxSize(long maxSize);
+
+   /**
+    * Returns the maximum number of bytes the pages read into the page caches of all the addresses
+    * may use. Above it the least recently used pages are evicted. {@code -1} means a tenth of the
+    * maximum heap size. <br>
+    * Default value is {@value org.hornetq.api.config.HornetQDefaultConfiguration#DEFAULT_GLOBAL_PAGE_CACHE_MAX_SIZE}.
+    */
+   long getGlobalPageCacheMaxSize();
+
+   /**
+    * Sets the maximum number of bytes the pages read into the page caches of all the addresses may
+    * use.
+    */
+   Configuration setGlobalPageCacheMaxSize(long maxSize);
+
+   /**
+    * Returns the directories used to store paging files besides the paging directory. New paging
+    * stores are placed on one of the paging directories as the paging placement policy says.
+    */
+   List<String> getPagingStripeDirectories();
+
+   /**
+    * Sets the directories used to store paging files besides the paging directory.
+    */
+   Configuration setPagingStripeDirectories(List<String> directories);
+
+   /**
+    * Returns how the directory of a new paging store is chosen among the paging directories. <br>
+    * Default value is {@link PagingPlacementPolicy#ROUND_ROBIN}.
+    */
+   PagingPlacementPolicy getPagingPlacementPolicy();
+
+   /**
+    * Sets how the directory of a new paging store is chosen among the paging directories.
+    */
+   Configuration setPagingPlacementPolicy(PagingPlacementPolicy policy);
+
    // Large Messages Properties ------------------------------------------------------------
 
    /**
@@ -772,6 +833,65 @@ public interface Configuration extends Serializable
     */
    Configuration setLargeMessagesDirectory(String directory);
 
+   /**
+    * Returns the directories used to store large messages besides the large messages directory.
+    * Large messages are spread on the large messages directories by their message ID.
+    */
+   List<String> getLargeMessagesStripeDirectories();
+
+   /**
+    * Sets the directories used to store large messages besides the large messages directory.
+    */
+   Configuration setLargeMessagesStripeDirectories(List<String> directories);
+
+   // Scheduled Delivery Properties --------------------------------------------------------
+
+   /**
+    * Returns whether scheduled messages are held on a timing wheel rather than a sorted set. <br>
+    * Default value is {@value org.hornetq.api.config.HornetQDefaultConfiguration#DEFAULT_SCHEDULED_DELIVERY_WHEEL_ENABLED}.
+    */
+   boolean isScheduledDeliveryWheelEnabled();
+
+   /**
+    * Sets whether scheduled messages are held on a timing wheel rather than a sorted set.
+    */
+   Configuration setScheduledDeliveryWheelEnabled(boolean enabled);
+
+   /**
+    * Returns the resolution (in milliseconds) of the scheduled delivery timing wheel. <br>
+    * Default value is {@value org.hornetq.api.config.HornetQDefaultConfiguration#DEFAULT_SCHEDULED_DELIVERY_WHEEL_TICK}.
+    */
+   long getScheduledDeliveryWheelTick();
+
+   /**
+    * Sets the resolution (in milliseconds) of the scheduled delivery timing wheel.
+    */
+   Configuration setScheduledDeliveryWheelTick(long tick);
+
+   /**
+    * Returns how far in the future (in milliseconds) a scheduled message must be before it is
+    * moved out of memory, or {@code -1} if scheduled messages are never moved out of memory. <br>
+    * Default value is {@value org.hornetq.api.config.HornetQDefaultConfiguration#DEFAULT_SCHEDULED_DELIVERY_SPILL_THRESHOLD}.
+    */
+   long getScheduledDeliverySpillThreshold();
+
+   /**
+    * Sets how far in the future (in milliseconds) a scheduled message must be before it is moved
+    * out of memory.
+    */
+   Configuration setScheduledDeliverySpillThreshold(long threshold);
+
+   /**
+    * Returns the file system directory used to store spilled scheduled messages. <br>
+    * Default value is {@value org.hornetq.api.config.HornetQDefaultConfiguration#DEFAULT_SCHEDULED_DELIVERY_DIR}.
+    */
+   String getScheduledDeliveryDirectory();
+
+   /**
+    * Sets the file system directory used to store spilled scheduled messages.
+    */
+   Configuration setScheduledDeliveryDirectory(String directory);
+
    // Other Properties ---------------------------------------------------------------------
 
    /**
@@ -40,6 +40,7 @@ import org.hornetq.core.config.ha.ReplicaPolicyConfiguration;
 import org.hornetq.core.config.ha.ReplicatedPolicyConfiguration;
 import org.hornetq.core.config.ha.SharedStoreMasterPolicyConfiguration;
 import org.hornetq.core.config.ha.SharedStoreSlavePolicyConfiguration;
+import org.hornetq.core.paging.PagingPlacementPolicy;
 import org.hornetq.core.security.Role;
 import org.hornetq.core.server.JournalType;
 import org.hornetq.core.server.group.impl.GroupingHandlerConfiguration;
@@ -55,6 +56,8 @@ public class ConfigurationImpl implements Configuration
 
    public static final JournalType DEFAULT_JOURNAL_TYPE = JournalType.ASYNCIO;
 
+   public static final PagingPlacementPolicy DEFAULT_PAGING_PLACEMENT_POLICY = PagingPlacementPolicy.ROUND_ROBIN;
+
    private static final long serialVersionUID = 4077088945050267843L;
 
    // Attributes -----------------------------------------------------------------------------
@@ -94,6 +97,8 @@ public class ConfigurationImpl implements Configuration
 
    private boolean persistIDCache = HornetQDefaultConfiguration.isDefaultPersistIdCache();
 
+   private boolean idCacheOffHeap = HornetQDefaultConfiguration.isDefaultIdCacheOffHeap();
+
    private List<String> incomingInterceptorClassNames = new ArrayList<String>();
 
    private List<String> outgoingInterceptorClassNames = new ArrayList<String>();
@@ -118,12 +123,30 @@ public class ConfigurationImpl implements Configuration
 
    private String pagingDirectory = HornetQDefaultConfiguration.getDefaultPagingDir();
 
+   private List<String> pagingStripeDirectories = new ArrayList<String>();
+
+   private PagingPlacementPolicy pagingPlacementPolicy = ConfigurationImpl.DEFAULT_PAGING_PLACEMENT_POLICY;
+
+   private long globalMaxSize = HornetQDefaultConfiguration.getDefaultGlobalMaxSize();
+
+   private long globalPageCacheMaxSize = HornetQDefaultConfiguration.getDefaultGlobalPageCacheMaxSize();
+
    // File related attributes -----------------------------------------------------------
 
    private int maxConcurrentPageIO = HornetQDefaultConfiguration.getDefaultMaxConcurrentPageIo();
 
    protected String largeMessagesDirectory = HornetQDefaultConfiguration.getDefaultLargeMessagesDir();
 
+   private List<String> largeMessagesStripeDirectories = new ArrayList<String>();
+
+   protected String scheduledDeliveryDirectory = HornetQDefaultConfiguration.getDefaultScheduledDeliveryDir();
+
+   private boolean scheduledDeliveryWheelEnabled = HornetQDefaultConfiguration.isDefaultScheduledDeliveryWheelEnabled();
+
+   private long scheduledDeliveryWheelTick = HornetQDefaultConfiguration.getDefaultScheduledDeliveryWheelTick();
+
+   private long scheduledDeliverySpillThreshold = HornetQDefaultConfiguration.getDefaultScheduledDeliverySpillThreshold();
+
    protected String bindingsDirectory = HornetQDefaultConfiguration.getDefaultBindingsDirectory();
 
    protected boolean createBindingsDir = HornetQDefaultConfiguration.isDefaultCreateBindingsDir();
@@ -540,6 +563,17 @@ public class ConfigurationImpl implements Configuration
       return this;
    }
 
+   public boolean isIDCacheOffHeap()
+   {
+      return idCacheOffHeap;
+   }
+
+   public ConfigurationImpl setIDCacheOffHeap(final boolean offHeap)
+   {
+      idCacheOffHeap = offHeap;
+      return this;
+   }
+
    public String getBindingsDirectory()
    {
       return bindingsDirectory;
@@ -593,6 +627,50 @@ public class ConfigurationImpl implements Configuration
       return pagingDirectory;
    }
 
+   public List<String> getPagingStripeDirectories()
+   {
+      return pagingStripeDirectories;
+   }
+
+   public ConfigurationImpl setPagingStripeDirectories(final List<String> directories)
+   {
+      pagingStripeDirectories = directories;
+      return this;
+   }
+
+   public PagingPlacementPolicy getPagingPlacementPolicy()
+   {
+      return pagingPlacementPolicy;
+   }
+
+   public ConfigurationImpl setPagingPlacementPolicy(final PagingPlacementPolicy policy)
+   {
+      pagingPlacementPolicy = policy;
+      return this;
+   }
+
+   public long getGlobalMaxSize()
+   {
+      return globalMaxSize;
+   }
+
+   public ConfigurationImpl setGlobalMaxSize(final long maxSize)
+   {
+      globalMaxSize = maxSize;
+      return this;
+   }
+
+   public long getGlobalPageCacheMaxSize()
+   {
+      return globalPageCacheMaxSize;
+   }
+
+   public ConfigurationImpl setGlobalPageCacheMaxSize(final long maxSize)
+   {
+      globalPageCacheMaxSize = maxSize;
+      return this;
+   }
+
    public ConfigurationImpl setJournalType(final JournalType type)
    {
       journalType = type;
@@ -797,6 +875,61 @@ public class ConfigurationImpl implements Configuration
       return this;
    }
 
+   public List<String> getLargeMessagesStripeDirectories()
+   {
+      return largeMessagesStripeDirectories;
+   }
+
+   public ConfigurationImpl setLargeMessagesStripeDirectories(final List<String> directories)
+   {
+      largeMessagesStripeDirectories = directories;
+      return this;
+   }
+
+   public boolean isScheduledDeliveryWheelEnabled()
+   {
+      return scheduledDeliveryWheelEnabled;
+   }
+
+   public ConfigurationImpl setScheduledDeliveryWheelEnabled(final boolean enabled)
+   {
+      scheduledDeliveryWheelEnabled = enabled;
+      return this;
+   }
+
+   public long getScheduledDeliveryWheelTick()
+   {
+      return scheduledDeliveryWheelTick;
+   }
+
+   public ConfigurationImpl setScheduledDeliveryWheelTick(final long tick)
+   {
+      scheduledDeliveryWheelTick = tick;
+      return this;
+   }
+
+   public long getScheduledDeliverySpillThreshold()
+   {
+      return scheduledDeliverySpillThreshold;
+   }
+
+   public ConfigurationImpl setScheduledDeliverySpillThreshold(final long threshold)
+   {
+      scheduledDeliverySpillThreshold = threshold;
+      return this;
+   }
+
+   public String getScheduledDeliveryDirectory()
+   {
+      return scheduledDeliveryDirectory;
+   }
+
+   public ConfigurationImpl setScheduledDeliveryDirectory(final String directory)
+   {
+      scheduledDeliveryDirectory = directory;
+      return this;
+   }
+
    public boolean isMessageCounterEnabled()
    {
       return messageCounterEnabled;
@@ -1358,7 +1491,10 @@ public class ConfigurationImpl implements Configuration
       result = prime * result + (failoverOnServerShutdown ? 1231 : 1237);
       result = prime * result + (fileDeploymentEnabled ? 1231 : 1237);
       result = prime * result + (int)(fileDeploymentScanPeriod ^ (fileDeploymentScanPeriod >>> 32));
+      result = prime * result + (int)(globalMaxSize ^ (globalMaxSize >>> 32));
+      result = prime * result + (int)(globalPageCacheMaxSize ^ (globalPageCacheMaxSize >>> 32));
       result = prime * result + ((groupingHandlerConfiguration == null) ? 0 : groupingHandlerConfiguration.hashCode());
+      result = prime * result + (idCacheOffHeap ? 1231 : 1237);
       result = prime * result + idCacheSize;
       result =
                prime * result +
@@ -1381,6 +1517,9 @@ public class ConfigurationImpl implements Configuration
       result = prime * result + (journalSyncTransactional ? 1231 : 1237);
       result = prime * result + ((journalType == null) ? 0 : journalType.hashCode());
       result = prime * result + ((largeMessagesDirectory == null) ? 0 : largeMessagesDirectory.hashCode());
+      result =
+               prime * result +
+                        ((largeMessagesStripeDirectories == null) ? 0 : largeMessagesStripeDirectories.hashCode());
       result = prime * result + (logJournalWriteRate ? 1231 : 1237);
       result = prime * result + ((managementAddress == null) ? 0 : managementAddress.hashCode());
       result =
@@ -1400,11 +1539,17 @@ public class ConfigurationImpl implements Configuration
                prime * result +
                         ((outgoingInterceptorClassNames == null) ? 0 : outgoingInterceptorClassNames.hashCode());
       result = prime * result + ((pagingDirectory == null) ? 0 : pagingDirectory.hashCode());
+      result = prime * result + ((pagingPlacementPolicy == null) ? 0 : pagingPlacementPolicy.hashCode());
+      result = prime * result + ((pagingStripeDirectories == null) ? 0 : pagingStripeDirectories.hashCode());
       result = prime * result + (persistDeliveryCountBeforeDelivery ? 1231 : 1237);
       result = prime * result + (persistIDCache ? 1231 : 1237);
       result = prime * result + (persistenceEnabled ? 1231 : 1237);
       result = prime * result + ((queueConfigurations == null) ? 0 : queueConfigurations.hashCode());
       result = prime * result + (runSyncSpeedTest ? 1231 : 1237);
+      result = prime * result + ((scheduledDeliveryDirectory == null) ? 0 : scheduledDeliveryDirectory.hashCode());
+      result = prime * result + (int)(scheduledDeliverySpillThreshold ^ (scheduledDeliverySpillThreshold >>> 32));
+      result = prime * result + (scheduledDeliveryWheelEnabled ? 1231 : 1237);
+      result = prime * result + (int)(scheduledDeliveryWheelTick ^ (scheduledDeliveryWheelTick >>> 32));
       result = prime * result + scheduledThreadPoolMaxSize;
       result = prime * result + (securityEnabled ? 1231 : 1237);
       result = prime * result + (int)(securityInvalidationInterval ^ (securityInvalidationInterval >>> 32));
@@ -1528,6 +1673,10 @@ public class ConfigurationImpl implements Configuration
          return false;
       if (fileDeploymentScanPeriod != other.fileDeploymentScanPeriod)
          return false;
+      if (globalMaxSize != other.globalMaxSize)
+         return false;
+      if (globalPageCacheMaxSize != other.globalPageCacheMaxSize)
+         return false;
       if (groupingHandlerConfiguration == null)
       {
          if (other.groupingHandlerConfiguration != null)
@@ -1535,6 +1684,8 @@ public class ConfigurationImpl implements Configuration
       }
       else if (!groupingHandlerConfiguration.equals(other.groupingHandlerConfiguration))
          return false;
+      if (idCacheOffHeap != other.idCacheOffHeap)
+         return false;
       if (idCacheSize != other.idCacheSize)
          return false;
       if (incomingInterceptorClassNames == null)
@@ -1595,6 +1746,13 @@ public class ConfigurationImpl implements Configuration
       }
       else if (!largeMessagesDirectory.equals(other.largeMessagesDirectory))
          return false;
+      if (largeMessagesStripeDirectories == null)
+      {
+         if (other.largeMessagesStripeDirectories != null)
+            return false;
+      }
+      else if (!largeMessagesStripeDirectories.equals(other.largeMessagesStripeDirectories))
+         return false;
       if (logJournalWriteRate != other.logJournalWriteRate)
          return false;
       if (managementAddress == null)
@@ -1651,6 +1809,15 @@ public class ConfigurationImpl implements Configuration
       }
       else if (!pagingDirectory.equals(other.pagingDirectory))
          return false;
+      if (pagingPlacementPolicy != other.pagingPlacementPolicy)
+         return false;
+      if (pagingStripeDirectories == null)
+      {
+         if (other.pagingStripeDirectories != null)
+            return false;
+      }
+      else if (!pagingStripeDirectories.equals(other.pagingStripeDirectories))
+         return false;
       if (persistDeliveryCountBeforeDelivery != other.persistDeliveryCountBeforeDelivery)
          return false;
       if (persistIDCache != other.persistIDCache)
@@ -1666,6 +1833,19 @@ public class ConfigurationImpl implements Configuration
          return false;
       if (runSyncSpeedTest != other.runSyncSpeedTest)
          return false;
+      if (scheduledDeliveryDirectory == null)
+      {
+         if (other.scheduledDeliveryDirectory != null)
+            return false;
+      }
+      else if (!scheduledDeliveryDirectory.equals(other.scheduledDeliveryDirectory))
+         return false;
+      if (scheduledDeliverySpillThreshold != other.scheduledDeliverySpillThreshold)
+         return false;
+      if (scheduledDeliveryWheelEnabled != other.scheduledDeliveryWheelEnabled)
+         return false;
+      if (scheduledDeliveryWheelTick != other.scheduledDeliveryWheelTick)
+         return false;
       if (scheduledThreadPoolMaxSize != other.scheduledThreadPoolMaxSize)
          return false;
       if (securityEnabled != other.securityEnabled)
@@ -12,6 +12,7 @@
  */
 package org.hornetq.core.config.impl;
 
+import org.hornetq.core.paging.PagingPlacementPolicy;
 import org.hornetq.core.server.HornetQMessageBundle;
 import org.hornetq.core.server.JournalType;
 import org.hornetq.core.settings.impl.AddressFullMessagePolicy;
@@ -180,4 +181,17 @@ public final class Validators
          }
       }
    };
+
+   public static final Validator PAGING_PLACEMENT_POLICY_TYPE = new Validator()
+   {
+      public void validate(final String name, final Object value)
+      {
+         String val = (String) value;
+         if (val == null || !val.equals(PagingPlacementPolicy.ROUND_ROBIN.toString()) &&
+            !val.equals(PagingPlacementPolicy.LEAST_USED.toString()))
+         {
+            throw HornetQMessageBundle.BUNDLE.invalidPagingPlacementPolicyType(val);
+         }
+      }
+   };
 }
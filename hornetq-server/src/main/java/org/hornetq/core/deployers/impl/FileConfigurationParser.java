@@ -51,6 +51,7 @@ import org.hornetq.core.config.impl.FileConfiguration;
 import org.hornetq.core.config.impl.Validators;
 import org.hornetq.core.journal.impl.AIOSequentialFileFactory;
 import org.hornetq.core.journal.impl.JournalConstants;
+import org.hornetq.core.paging.PagingPlacementPolicy;
 import org.hornetq.core.security.Role;
 import org.hornetq.core.server.HornetQServerLogger;
 import org.hornetq.core.server.JournalType;
@@ -148,6 +149,20 @@ public final class FileConfigurationParser extends XMLConfigurationUtil
 
    private static final String SLOW_CONSUMER_POLICY_NODE_NAME = "slow-consumer-policy";
 
+   private static final String GROUP_IDLE_TIMEOUT_NODE_NAME = "group-idle-timeout";
+
+   private static final String MAX_GROUPS_NODE_NAME = "max-groups";
+
+   private static final String GROUP_HASHING_NODE_NAME = "group-hashing";
+
+   private static final String SHARED_FAN_OUT_LOG_NODE_NAME = "shared-fan-out-log";
+
+   private static final String PAGE_COMPRESSION_NODE_NAME = "page-compression";
+
+   private static final String PRIORITY_DEPAGING_NODE_NAME = "priority-depaging";
+
+   private static final String DEPAGE_BUFFER_TIME_NODE_NAME = "depage-buffer-time";
+
    // Attributes ----------------------------------------------------
 
    private boolean validateAIO = false;
@@ -510,6 +525,8 @@ public final class FileConfigurationParser extends XMLConfigurationUtil
 
       config.setPersistIDCache(getBoolean(e, "persist-id-cache", config.isPersistIDCache()));
 
+      config.setIDCacheOffHeap(getBoolean(e, "id-cache-off-heap", config.isIDCacheOffHeap()));
+
       config.setManagementAddress(new SimpleString(getString(e,
                                                              "management-address",
                                                              config.getManagementAddress()
@@ -706,6 +723,10 @@ public final class FileConfigurationParser extends XMLConfigurationUtil
                                                  config.getLargeMessagesDirectory(),
                                                  Validators.NOT_NULL_OR_EMPTY));
 
+      config.setLargeMessagesStripeDirectories(parseDirectories(e,
+                                                                "large-messages-stripe-directories",
+                                                                config.getLargeMessagesStripeDirectories()));
+
       config.setBindingsDirectory(getString(e,
                                             "bindings-directory",
                                             config.getBindingsDirectory(),
@@ -729,6 +750,22 @@ public final class FileConfigurationParser extends XMLConfigurationUtil
                                           config.getPagingDirectory(),
                                           Validators.NOT_NULL_OR_EMPTY));
 
+      config.setPagingStripeDirectories(parseDirectories(e,
+                                                         "paging-stripe-directories",
+                                                         config.getPagingStripeDirectories()));
+
+      config.setPagingPlacementPolicy(PagingPlacementPolicy.valueOf(getString(e,
+                                                                              "paging-placement-policy",
+                                                                              config.getPagingPlacementPolicy().toString(),
+                                                                              Validators.PAGING_PLACEMENT_POLICY_TYPE)));
+
+      config.setGlobalMaxSize(getLong(e, "global-max-size", config.getGlobalMaxSize(), Validators.MINUS_ONE_OR_GT_ZERO));
+
+      config.setGlobalPageCacheMaxSize(getLong(e,
+                                               "global-page-cache-max-size",
+                                               config.getGlobalPageCacheMaxSize(),
+                                               Validators.MINUS_ONE_OR_GT_ZERO));
+
       config.setCreateJournalDir(getBoolean(e, "create-journal-dir", config.isCreateJournalDir()));
 
       String s = getString(e,
@@ -853,6 +890,25 @@ public final class FileConfigurationParser extends XMLConfigurationUtil
                                               config.getMemoryMeasureInterval(),
                                               Validators.MINUS_ONE_OR_GT_ZERO)); // in
 
+      config.setScheduledDeliveryWheelEnabled(getBoolean(e,
+                                                         "scheduled-delivery-wheel-enabled",
+                                                         config.isScheduledDeliveryWheelEnabled()));
+
+      config.setScheduledDeliveryWheelTick(getLong(e,
+                                                   "scheduled-delivery-wheel-tick",
+                                                   config.getScheduledDeliveryWheelTick(),
+                                                   Validators.GT_ZERO));
+
+      config.setScheduledDeliverySpillThreshold(getLong(e,
+                                                        "scheduled-delivery-spill-threshold",
+                                                        config.getScheduledDeliverySpillThreshold(),
+                                                        Validators.MINUS_ONE_OR_GT_ZERO));
+
+      config.setScheduledDeliveryDirectory(getString(e,
+                                                     "scheduled-delivery-directory",
+                                                     config.getScheduledDeliveryDirectory(),
+                                                     Validators.NOT_NULL_OR_EMPTY));
+
       parseAddressSettings(e, config);
 
       parseQueues(e, config);
@@ -873,6 +929,34 @@ public final class FileConfigurationParser extends XMLConfigurationUtil
       config.setConnectorServiceConfigurations(configs);
    }
 
+   /**
+    * @return the &lt;directory/&gt; children of the element with that name, or the default value if
+    * there's no such element
+    */
+   private List<String> parseDirectories(final Element e, final String name, final List<String> defaultValue)
+   {
+      NodeList elements = e.getElementsByTagName(name);
+
+      if (elements.getLength() == 0)
+      {
+         return defaultValue;
+      }
+
+      ArrayList<String> directories = new ArrayList<String>();
+
+      NodeList children = elements.item(0).getChildNodes();
+
+      for (int i = 0; i < children.getLength(); i++)
+      {
+         if ("directory".equalsIgnoreCase(children.item(i).getNodeName()))
+         {
+            directories.add(getTrimmedTextContent(children.item(i)));
+         }
+      }
+
+      return directories;
+   }
+
    /**
     * @param e
     * @param config
@@ -1135,6 +1219,43 @@ public final class FileConfigurationParser extends XMLConfigurationUtil
             SlowConsumerPolicy policy = Enum.valueOf(SlowConsumerPolicy.class, value);
             addressSettings.setSlowConsumerPolicy(policy);
          }
+         else if (GROUP_IDLE_TIMEOUT_NODE_NAME.equalsIgnoreCase(name))
+         {
+            long groupIdleTimeout = XMLUtil.parseLong(child);
+            Validators.MINUS_ONE_OR_GT_ZERO.validate(GROUP_IDLE_TIMEOUT_NODE_NAME, groupIdleTimeout);
+
+            addressSettings.setGroupIdleTimeout(groupIdleTimeout);
+         }
+         else if (MAX_GROUPS_NODE_NAME.equalsIgnoreCase(name))
+         {
+            int maxGroups = XMLUtil.parseInt(child);
+            Validators.MINUS_ONE_OR_GT_ZERO.validate(MAX_GROUPS_NODE_NAME, maxGroups);
+
+            addressSettings.setMaxGroups(maxGroups);
+         }
+         else if (GROUP_HASHING_NODE_NAME.equalsIgnoreCase(name))
+         {
+            addressSettings.setGroupHashing(XMLUtil.parseBoolean(child));
+         }
+         else if (SHARED_FAN_OUT_LOG_NODE_NAME.equalsIgnoreCase(name))
+         {
+            addressSettings.setSharedFanOutLog(XMLUtil.parseBoolean(child));
+         }
+         else if (PAGE_COMPRESSION_NODE_NAME.equalsIgnoreCase(name))
+         {
+            addressSettings.setPageCompression(XMLUtil.parseBoolean(child));
+         }
+         else if (PRIORITY_DEPAGING_NODE_NAME.equalsIgnoreCase(name))
+         {
+            addressSettings.setPriorityDepaging(XMLUtil.parseBoolean(child));
+         }
+         else if (DEPAGE_BUFFER_TIME_NODE_NAME.equalsIgnoreCase(name))
+         {
+            long depageBufferTime = XMLUtil.parseLong(child);
+            Validators.MINUS_ONE_OR_GT_ZERO.validate(DEPAGE_BUFFER_TIME_NODE_NAME, depageBufferTime);
+
+            addressSettings.setDepageBufferTime(depageBufferTime);
+         }
       }
       return setting;
    }
@@ -0,0 +1,1040 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.core.filter.impl;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.hornetq.api.core.FilterConstants;
+import org.hornetq.api.core.Pair;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.selector.filter.ArithmeticExpression;
+import org.hornetq.selector.filter.BooleanExpression;
+import org.hornetq.selector.filter.ComparisonExpression;
+import org.hornetq.selector.filter.ConstantExpression;
+import org.hornetq.selector.filter.Expression;
+import org.hornetq.selector.filter.FilterException;
+import org.hornetq.selector.filter.LogicExpression;
+import org.hornetq.selector.filter.PropertyExpression;
+import org.hornetq.selector.filter.UnaryExpression;
+
+/**
+ * Turns a parsed selector into a tree of conditions evaluated straight against the
+ * {@link ServerMessage}.
+ * <p>
+ * Property names are resolved to {@link SimpleString} keys and header fields once, string
+ * properties are compared as {@link SimpleString} without converting them and numeric headers are
+ * compared without boxing. The results are the same as evaluating the expression: a comparison
+ * involving a missing property is unknown and an unknown condition doesn't match.
+ * <p>
+ * The compiled tree is immutable so a filter can be evaluated by any number of threads at the same
+ * time. Expressions the compiler doesn't know about (arithmetic on properties, XPath) are evaluated
+ * the interpreted way.
+ */
+final class FilterCompiler
+{
+   static final int FALSE = 0;
+
+   static final int TRUE = 1;
+
+   static final int UNKNOWN = -1;
+
+   private static final int EQUAL = 0;
+
+   private static final int GREATER_THAN = 1;
+
+   private static final int GREATER_THAN_EQUAL = 2;
+
+   private static final int LESS_THAN = 3;
+
+   private static final int LESS_THAN_EQUAL = 4;
+
+   private static final int NO_HEADER = 0;
+
+   private static final int HEADER_USERID = 1;
+
+   private static final int HEADER_PRIORITY = 2;
+
+   private static final int HEADER_TIMESTAMP = 3;
+
+   private static final int HEADER_DURABLE = 4;
+
+   private static final int HEADER_EXPIRATION = 5;
+
+   private static final int HEADER_SIZE = 6;
+
+   private FilterCompiler()
+   {
+   }
+
+   static Condition compile(final BooleanExpression expression)
+   {
+      if (expression instanceof LogicExpression)
+      {
+         LogicExpression logic = (LogicExpression) expression;
+
+         Condition left = compile((BooleanExpression) logic.getLeft());
+         Condition right = compile((BooleanExpression) logic.getRight());
+
+         if ("AND".equals(logic.getExpressionSymbol()))
+         {
+            return new And(left, right);
+         }
+         else if ("OR".equals(logic.getExpressionSymbol()))
+         {
+            return new Or(left, right);
+         }
+      }
+      else if (expression instanceof ComparisonExpression)
+      {
+         Condition condition = compileComparison((ComparisonExpression) expression);
+
+         if (condition != null)
+         {
+            return condition;
+         }
+      }
+      else if (expression instanceof ComparisonExpression.LikeExpression)
+      {
+         ComparisonExpression.LikeExpression like = (ComparisonExpression.LikeExpression) expression;
+
+         return new Like(compileValue(like.getRight()), like.getLikePattern());
+      }
+      else if (expression instanceof UnaryExpression.InExpression)
+      {
+         Condition condition = compileIn((UnaryExpression.InExpression) expression);
+
+         if (condition != null)
+         {
+            return condition;
+         }
+      }
+      else if (expression instanceof UnaryExpression)
+      {
+         UnaryExpression unary = (UnaryExpression) expression;
+
+         if ("NOT".equals(unary.getExpressionSymbol()))
+         {
+            return new Not(compile((BooleanExpression) unary.getRight()));
+         }
+         else if ("".equals(unary.getExpressionSymbol()))
+         {
+            return new BooleanCast(compileValue(unary.getRight()));
+         }
+      }
+      else if (expression instanceof ConstantExpression)
+      {
+         Object value = ((ConstantExpression) expression).getValue();
+
+         if (value == null || value instanceof Boolean)
+         {
+            return new ConstantCondition(toCondition((Boolean) value));
+         }
+      }
+
+      return new InterpretedCondition(expression);
+   }
+
+   /**
+    * Looks for a property the message must have one of a set of string values for, an equality or
+    * IN on a message property anywhere on the top level conjunction of the expression.
+    *
+    * @return the property and its values, null if the expression doesn't have such a term
+    */
+   static Pair<SimpleString, Set<SimpleString>> requiredValues(final BooleanExpression expression)
+   {
+      if (expression instanceof LogicExpression && "AND".equals(((LogicExpression) expression).getExpressionSymbol()))
+      {
+         LogicExpression and = (LogicExpression) expression;
+
+         Pair<SimpleString, Set<SimpleString>> values = requiredValues((BooleanExpression) and.getLeft());
+
+         if (values == null)
+         {
+            values = requiredValues((BooleanExpression) and.getRight());
+         }
+
+         return values;
+      }
+      else if (expression instanceof ComparisonExpression && "=".equals(((ComparisonExpression) expression).getExpressionSymbol()))
+      {
+         ComparisonExpression equal = (ComparisonExpression) expression;
+
+         if (equal.isConvertStringExpressions())
+         {
+            return null;
+         }
+
+         Expression property = equal.getLeft();
+         Expression value = equal.getRight();
+
+         if (property instanceof ConstantExpression)
+         {
+            property = equal.getRight();
+            value = equal.getLeft();
+         }
+
+         if (property instanceof PropertyExpression && value instanceof ConstantExpression &&
+            ((ConstantExpression) value).getValue() instanceof String)
+         {
+            return requiredValues((PropertyExpression) property,
+                                  Collections.singleton(((ConstantExpression) value).getValue()));
+         }
+      }
+      else if (expression instanceof UnaryExpression.InExpression)
+      {
+         UnaryExpression.InExpression in = (UnaryExpression.InExpression) expression;
+
+         if (!in.isNot() && in.getInList() != null && in.getRight() instanceof PropertyExpression)
+         {
+            return requiredValues((PropertyExpression) in.getRight(), in.getInList());
+         }
+      }
+
+      return null;
+   }
+
+   private static Pair<SimpleString, Set<SimpleString>> requiredValues(final PropertyExpression property,
+                                                                      final Collection<Object> values)
+   {
+      SimpleString name = new SimpleString(property.getName());
+
+      // headers are not looked up as properties
+      if (toHeader(name) != NO_HEADER)
+      {
+         return null;
+      }
+
+      Set<SimpleString> strings = new HashSet<SimpleString>();
+
+      for (Object value : values)
+      {
+         if (!(value instanceof String))
+         {
+            return null;
+         }
+
+         strings.add(new SimpleString((String) value));
+      }
+
+      return new Pair<SimpleString, Set<SimpleString>>(name, strings);
+   }
+
+   private static Condition compileComparison(final ComparisonExpression comparison)
+   {
+      if (comparison.isConvertStringExpressions())
+      {
+         return null;
+      }
+
+      int operator = toOperator(comparison.getExpressionSymbol());
+
+      if (operator < 0)
+      {
+         return null;
+      }
+
+      Value left = compileValue(comparison.getLeft());
+      Value right = compileValue(comparison.getRight());
+
+      if (left instanceof Property && right instanceof Constant)
+      {
+         Condition condition = compileConstantComparison((Property) left, ((Constant) right).value, operator);
+
+         if (condition != null)
+         {
+            return condition;
+         }
+      }
+
+      if (operator == EQUAL && right instanceof Property && left instanceof Constant &&
+         ((Constant) left).value instanceof String)
+      {
+         return new StringEqual((Property) right, (String) ((Constant) left).value);
+      }
+
+      if (operator == EQUAL)
+      {
+         return new Equal(left, right);
+      }
+
+      return new Compare(left, right, operator);
+   }
+
+   private static Condition compileConstantComparison(final Property property, final Object value, final int operator)
+   {
+      if (operator == EQUAL && value instanceof String)
+      {
+         return new StringEqual(property, (String) value);
+      }
+
+      if (value instanceof Number && property.header != NO_HEADER && property.header != HEADER_USERID &&
+         property.header != HEADER_DURABLE)
+      {
+         return new HeaderCompare(property, (Number) value, operator);
+      }
+
+      return null;
+   }
+
+   private static Condition compileIn(final UnaryExpression.InExpression in)
+   {
+      if (!(in.getRight() instanceof PropertyExpression))
+      {
+         return null;
+      }
+
+      Set<SimpleString> values = null;
+
+      Collection<Object> inList = in.getInList();
+
+      if (inList != null)
+      {
+         values = new HashSet<SimpleString>();
+
+         for (Object value : inList)
+         {
+            if (!(value instanceof String))
+            {
+               return null;
+            }
+
+            values.add(new SimpleString((String) value));
+         }
+      }
+
+      return new In(new Property(((PropertyExpression) in.getRight()).getName()), values, in.isNot());
+   }
+
+   private static Value compileValue(final Expression expression)
+   {
+      if (expression instanceof PropertyExpression)
+      {
+         return new Property(((PropertyExpression) expression).getName());
+      }
+      else if (expression instanceof ConstantExpression)
+      {
+         return new Constant(((ConstantExpression) expression).getValue());
+      }
+      else if (isConstant(expression))
+      {
+         try
+         {
+            // negative literals and arithmetic on literals
+            return new Constant(expression.evaluate(null));
+         }
+         catch (Exception e)
+         {
+            return new InterpretedValue(expression);
+         }
+      }
+      else if (expression instanceof BooleanExpression)
+      {
+         return new ConditionValue(compile((BooleanExpression) expression));
+      }
+
+      return new InterpretedValue(expression);
+   }
+
+   private static boolean isConstant(final Expression expression)
+   {
+      if (expression instanceof ConstantExpression)
+      {
+         return true;
+      }
+      else if (expression instanceof ArithmeticExpression)
+      {
+         ArithmeticExpression arithmetic = (ArithmeticExpression) expression;
+
+         return isConstant(arithmetic.getLeft()) && isConstant(arithmetic.getRight());
+      }
+      else if (expression instanceof UnaryExpression && !(expression instanceof BooleanExpression))
+      {
+         return isConstant(((UnaryExpression) expression).getRight());
+      }
+
+      return false;
+   }
+
+   private static int toOperator(final String symbol)
+   {
+      if ("=".equals(symbol))
+      {
+         return EQUAL;
+      }
+      else if (">".equals(symbol))
+      {
+         return GREATER_THAN;
+      }
+      else if (">=".equals(symbol))
+      {
+         return GREATER_THAN_EQUAL;
+      }
+      else if ("<".equals(symbol))
+      {
+         return LESS_THAN;
+      }
+      else if ("<=".equals(symbol))
+      {
+         return LESS_THAN_EQUAL;
+      }
+
+      return -1;
+   }
+
+   private static int toHeader(final SimpleString name)
+   {
+      if (!name.startsWith(FilterConstants.HORNETQ_PREFIX))
+      {
+         return NO_HEADER;
+      }
+      else if (FilterConstants.HORNETQ_USERID.equals(name))
+      {
+         return HEADER_USERID;
+      }
+      else if (FilterConstants.HORNETQ_PRIORITY.equals(name))
+      {
+         return HEADER_PRIORITY;
+      }
+      else if (FilterConstants.HORNETQ_TIMESTAMP.equals(name))
+      {
+         return HEADER_TIMESTAMP;
+      }
+      else if (FilterConstants.HORNETQ_DURABLE.equals(name))
+      {
+         return HEADER_DURABLE;
+      }
+      else if (FilterConstants.HORNETQ_EXPIRATION.equals(name))
+      {
+         return HEADER_EXPIRATION;
+      }
+      else if (FilterConstants.HORNETQ_SIZE.equals(name))
+      {
+         return HEADER_SIZE;
+      }
+
+      return NO_HEADER;
+   }
+
+   private static int toCondition(final Boolean value)
+   {
+      if (value == null)
+      {
+         return UNKNOWN;
+      }
+
+      return value.booleanValue() ? TRUE : FALSE;
+   }
+
+   private static int toCondition(final int operator, final int comparison)
+   {
+      boolean result;
+
+      switch (operator)
+      {
+         case EQUAL:
+            result = comparison == 0;
+            break;
+         case GREATER_THAN:
+            result = comparison > 0;
+            break;
+         case GREATER_THAN_EQUAL:
+            result = comparison >= 0;
+            break;
+         case LESS_THAN:
+            result = comparison < 0;
+            break;
+         default:
+            result = comparison <= 0;
+      }
+
+      return result ? TRUE : FALSE;
+   }
+
+   /**
+    * Compares both values the way {@link ComparisonExpression} does: numbers are only widened in
+    * the directions it allows and anything else of different types doesn't match.
+    */
+   @SuppressWarnings({"rawtypes", "unchecked"})
+   private static int compare(final Comparable lv, final Comparable rv, final int operator)
+   {
+      Class<?> lc = lv.getClass();
+      Class<?> rc = rv.getClass();
+
+      if (lc == rc)
+      {
+         return toCondition(operator, lv.compareTo(rv));
+      }
+
+      if (lc == Byte.class || lc == Short.class || lc == Integer.class)
+      {
+         if (rc == Long.class || lc == Byte.class && (rc == Short.class || rc == Integer.class) ||
+            lc == Short.class && rc == Integer.class)
+         {
+            return toCondition(operator, Long.compare(((Number) lv).longValue(), ((Number) rv).longValue()));
+         }
+         return compareFloating((Number) lv, rv, operator);
+      }
+      else if (lc == Long.class)
+      {
+         if (rc == Integer.class)
+         {
+            return toCondition(operator, Long.compare(((Number) lv).longValue(), ((Number) rv).longValue()));
+         }
+         return compareFloating((Number) lv, rv, operator);
+      }
+      else if (lc == Float.class)
+      {
+         if (rc == Integer.class || rc == Long.class)
+         {
+            return toCondition(operator, Float.compare(((Number) lv).floatValue(), ((Number) rv).floatValue()));
+         }
+         else if (rc == Double.class)
+         {
+            return toCondition(operator, Double.compare(((Number) lv).doubleValue(), ((Number) rv).doubleValue()));
+         }
+      }
+      else if (lc == Double.class)
+      {
+         if (rc == Integer.class || rc == Long.class || rc == Float.class)
+         {
+            return toCondition(operator, Double.compare(((Number) lv).doubleValue(), ((Number) rv).doubleValue()));
+         }
+      }
+
+      return FALSE;
+   }
+
+   private static int compareFloating(final Number lv, final Object rv, final int operator)
+   {
+      if (rv instanceof Float)
+      {
+         return toCondition(operator, Float.compare(lv.floatValue(), ((Float) rv).floatValue()));
+      }
+      else if (rv instanceof Double)
+      {
+         return toCondition(operator, Double.compare(lv.doubleValue(), ((Double) rv).doubleValue()));
+      }
+
+      return FALSE;
+   }
+
+   /**
+    * A boolean condition on a message, evaluating to {@link #TRUE}, {@link #FALSE} or {@link #UNKNOWN}.
+    */
+   abstract static class Condition
+   {
+      abstract int evaluate(ServerMessage message) throws FilterException;
+
+      boolean matches(final ServerMessage message) throws FilterException
+      {
+         return evaluate(message) == TRUE;
+      }
+   }
+
+   abstract static class Value
+   {
+      /**
+       * @return the value as the interpreted selector sees it, strings as {@link String}
+       */
+      abstract Object evaluate(ServerMessage message) throws FilterException;
+
+      /**
+       * @return the value with strings left as they are stored on the message
+       */
+      Object evaluateRaw(final ServerMessage message) throws FilterException
+      {
+         return evaluate(message);
+      }
+   }
+
+   private static final class Property extends Value
+   {
+      private final SimpleString name;
+
+      private final int header;
+
+      Property(final String name)
+      {
+         this.name = new SimpleString(name);
+         this.header = toHeader(this.name);
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message)
+      {
+         Object value = evaluateRaw(message);
+
+         if (value instanceof SimpleString)
+         {
+            return value.toString();
+         }
+
+         return value;
+      }
+
+      @Override
+      Object evaluateRaw(final ServerMessage message)
+      {
+         Object value = null;
+
+         switch (header)
+         {
+            case HEADER_USERID:
+               // It's the stringified (hex) representation of a user id that can be used in a selector expression
+               value = new SimpleString("ID:" + message.getUserID());
+               break;
+            case HEADER_PRIORITY:
+               value = Integer.valueOf(message.getPriority());
+               break;
+            case HEADER_TIMESTAMP:
+               value = Long.valueOf(message.getTimestamp());
+               break;
+            case HEADER_DURABLE:
+               value = message.isDurable() ? FilterConstants.DURABLE : FilterConstants.NON_DURABLE;
+               break;
+            case HEADER_EXPIRATION:
+               value = Long.valueOf(message.getExpiration());
+               break;
+            case HEADER_SIZE:
+               value = Integer.valueOf(message.getEncodeSize());
+               break;
+            default:
+               break;
+         }
+
+         if (value == null)
+         {
+            value = message.getObjectProperty(name);
+         }
+
+         return value;
+      }
+
+      long longHeader(final ServerMessage message)
+      {
+         switch (header)
+         {
+            case HEADER_PRIORITY:
+               return message.getPriority();
+            case HEADER_TIMESTAMP:
+               return message.getTimestamp();
+            case HEADER_EXPIRATION:
+               return message.getExpiration();
+            default:
+               return message.getEncodeSize();
+         }
+      }
+   }
+
+   private static final class Constant extends Value
+   {
+      private final Object value;
+
+      Constant(final Object value)
+      {
+         this.value = value;
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message)
+      {
+         return value;
+      }
+   }
+
+   private static final class ConditionValue extends Value
+   {
+      private final Condition condition;
+
+      ConditionValue(final Condition condition)
+      {
+         this.condition = condition;
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message) throws FilterException
+      {
+         int result = condition.evaluate(message);
+
+         if (result == UNKNOWN)
+         {
+            return null;
+         }
+
+         return result == TRUE ? Boolean.TRUE : Boolean.FALSE;
+      }
+   }
+
+   private static final class InterpretedValue extends Value
+   {
+      private final Expression expression;
+
+      InterpretedValue(final Expression expression)
+      {
+         this.expression = expression;
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message) throws FilterException
+      {
+         return expression.evaluate(new FilterImpl.FilterableServerMessage(message));
+      }
+   }
+
+   private static final class InterpretedCondition extends Condition
+   {
+      private final BooleanExpression expression;
+
+      InterpretedCondition(final BooleanExpression expression)
+      {
+         this.expression = expression;
+      }
+
+      @Override
+      int evaluate(final ServerMessage message) throws FilterException
+      {
+         return toCondition((Boolean) expression.evaluate(new FilterImpl.FilterableServerMessage(message)));
+      }
+   }
+
+   private static final class ConstantCondition extends Condition
+   {
+      private final int value;
+
+      ConstantCondition(final int value)
+      {
+         this.value = value;
+      }
+
+      @Override
+      int evaluate(final ServerMessage message)
+      {
+         return value;
+      }
+   }
+
+   private static final class And extends Condition
+   {
+      private final Condition left;
+
+      private final Condition right;
+
+      And(final Condition left, final Condition right)
+      {
+         this.left = left;
+         this.right = right;
+      }
+
+      @Override
+      int evaluate(final ServerMessage message) throws FilterException
+      {
+         int lv = left.evaluate(message);
+
+         if (lv != TRUE)
+         {
+            return lv;
+         }
+
+         return right.evaluate(message);
+      }
+   }
+
+   private static final class Or extends Condition
+   {
+      private final Condition left;
+
+      private final Condition right;
+
+      Or(final Condition left, final Condition right)
+      {
+         this.left = left;
+         this.right = right;
+      }
+
+      @Override
+      int evaluate(final ServerMessage message) throws FilterException
+      {
+         if (left.evaluate(message) == TRUE)
+         {
+            return TRUE;
+         }
+
+         return right.evaluate(message);
+      }
+   }
+
+   private static final class Not extends Condition
+   {
+      private final Condition condition;
+
+      Not(final Condition condition)
+      {
+         this.condition = condition;
+      }
+
+      @Override
+      int evaluate(final ServerMessage message) throws FilterException
+      {
+         int value = condition.evaluate(message);
+
+         if (value == UNKNOWN)
+         {
+            return UNKNOWN;
+         }
+
+         return value == TRUE ? FALSE : TRUE;
+      }
+   }
+
+   private static final class BooleanCast extends Condition
+   {
+      private final Value value;
+
+      BooleanCast(final Value value)
+      {
+         this.value = value;
+      }
+
+      @Override
+      int evaluate(final ServerMessage message) throws FilterException
+      {
+         Object result = value.evaluate(message);
+
+         if (result == null)
+         {
+            return UNKNOWN;
+         }
+
+         if (result.getClass() != Boolean.class)
+         {
+            return FALSE;
+         }
+
+         return ((Boolean) result).booleanValue() ? TRUE : FALSE;
+      }
+   }
+
+   private static final class Equal extends Condition
+   {
+      private final Value left;
+
+      private final Value right;
+
+      Equal(final Value left, final Value right)
+      {
+         this.left = left;
+         this.right = right;
+      }
+
+      @Override
+      @SuppressWarnings("rawtypes")
+      int evaluate(final ServerMessage message) throws FilterException
+      {
+         Object lv = left.evaluate(message);
+         Object rv = right.evaluate(message);
+
+         // Iff one of the values is null
+         if (lv == null ^ rv == null)
+         {
+            return FALSE;
+         }
+         if (lv == rv || lv.equals(rv))
+         {
+            return TRUE;
+         }
+         if (lv instanceof Comparable && rv instanceof Comparable)
+         {
+            return compare((Comparable) lv, (Comparable) rv, EQUAL);
+         }
+         return FALSE;
+      }
+   }
+
+   /**
+    * A property equal to a string literal, compared as {@link SimpleString} so the property isn't
+    * converted on every message.
+    */
+   private static final class StringEqual extends Condition
+   {
+      private final Property property;
+
+      private final SimpleString value;
+
+      private final String stringValue;
+
+      StringEqual(final Property property, final String value)
+      {
+         this.property = property;
+         this.value = new SimpleString(value);
+         this.stringValue = value;
+      }
+
+      @Override
+      int evaluate(final ServerMessage message)
+      {
+         Object lv = property.evaluateRaw(message);
+
+         if (lv instanceof SimpleString)
+         {
+            return value.equals(lv) ? TRUE : FALSE;
+         }
+
+         // null or a value of another type
+         return stringValue.equals(lv) ? TRUE : FALSE;
+      }
+   }
+
+   private static final class Compare extends Condition
+   {
+      private final Value left;
+
+      private final Value right;
+
+      private final int operator;
+
+      Compare(final Value left, final Value right, final int operator)
+      {
+         this.left = left;
+         this.right = right;
+         this.operator = operator;
+      }
+
+      @Override
+      @SuppressWarnings("rawtypes")
+      int evaluate(final ServerMessage message) throws FilterException
+      {
+         Comparable lv = (Comparable) left.evaluate(message);
+         if (lv == null)
+         {
+            return UNKNOWN;
+         }
+         Comparable rv = (Comparable) right.evaluate(message);
+         if (rv == null)
+         {
+            return UNKNOWN;
+         }
+         return compare(lv, rv, operator);
+      }
+   }
+
+   /**
+    * A numeric header compared to a number without boxing the header, HQPriority and HQSize are
+    * ints and HQTimestamp and HQExpiration longs on the interpreted side which compare the same way.
+    */
+   private static final class HeaderCompare extends Condition
+   {
+      private final Property property;
+
+      private final Number value;
+
+      private final int operator;
+
+      HeaderCompare(final Property property, final Number value, final int operator)
+      {
+         this.property = property;
+         this.value = value;
+         this.operator = operator;
+      }
+
+      @Override
+      int evaluate(final ServerMessage message)
+      {
+         long lv = property.longHeader(message);
+
+         if (value instanceof Integer || value instanceof Long)
+         {
+            return toCondition(operator, Long.compare(lv, value.longValue()));
+         }
+         else if (value instanceof Float)
+         {
+            return toCondition(operator, Float.compare(lv, value.floatValue()));
+         }
+         else if (value instanceof Double)
+         {
+            return toCondition(operator, Double.compare(lv, value.doubleValue()));
+         }
+
+         return FALSE;
+      }
+   }
+
+   private static final class Like extends Condition
+   {
+      private final Value value;
+
+      private final Pattern pattern;
+
+      Like(final Value value, final Pattern pattern)
+      {
+         this.value = value;
+         this.pattern = pattern;
+      }
+
+      @Override
+      int evaluate(final ServerMessage message) throws FilterException
+      {
+         Object rv = value.evaluateRaw(message);
+
+         if (rv == null)
+         {
+            return UNKNOWN;
+         }
+
+         // SimpleString is a CharSequence, no need to convert it
+         if (!(rv instanceof SimpleString) && !(rv instanceof String))
+         {
+            return FALSE;
+         }
+
+         return pattern.matcher((CharSequence) rv).matches() ? TRUE : FALSE;
+      }
+   }
+
+   private static final class In extends Condition
+   {
+      private final Property property;
+
+      private final Set<SimpleString> values;
+
+      private final boolean not;
+
+      In(final Property property, final Set<SimpleString> values, final boolean not)
+      {
+         this.property = property;
+         this.values = values;
+         this.not = not;
+      }
+
+      @Override
+      int evaluate(final ServerMessage message)
+      {
+         Object rv = property.evaluateRaw(message);
+
+         if (rv instanceof String)
+         {
+            rv = new SimpleString((String) rv);
+         }
+         else if (!(rv instanceof SimpleString))
+         {
+            return UNKNOWN;
+         }
+
+         return (values != null && values.contains(rv)) ^ not ? TRUE : FALSE;
+      }
+   }
+}
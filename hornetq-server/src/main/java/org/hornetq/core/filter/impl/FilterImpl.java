@@ -12,12 +12,15 @@
  */
 package org.hornetq.core.filter.impl;
 
+import java.util.Set;
+
 import org.hornetq.selector.filter.BooleanExpression;
 import org.hornetq.selector.filter.FilterException;
 import org.hornetq.selector.filter.Filterable;
 import org.hornetq.selector.SelectorParser;
 import org.hornetq.api.core.FilterConstants;
 import org.hornetq.api.core.HornetQException;
+import org.hornetq.api.core.Pair;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.filter.Filter;
 import org.hornetq.core.server.HornetQMessageBundle;
@@ -62,7 +65,9 @@ public class FilterImpl implements Filter
 
    private final SimpleString sfilterString;
 
-   private final BooleanExpression booleanExpression;
+   private final FilterCompiler.Condition condition;
+
+   private final Pair<SimpleString, Set<SimpleString>> requiredValues;
 
    // Static ---------------------------------------------------------
 
@@ -104,7 +109,8 @@ public class FilterImpl implements Filter
    private FilterImpl(final SimpleString str, final BooleanExpression expression)
    {
       sfilterString = str;
-      this.booleanExpression = expression;
+      this.condition = FilterCompiler.compile(expression);
+      this.requiredValues = FilterCompiler.requiredValues(expression);
    }
 
    // Filter implementation ---------------------------------------------------------------------
@@ -114,12 +120,20 @@ public class FilterImpl implements Filter
       return sfilterString;
    }
 
-   public synchronized boolean match(final ServerMessage message)
+   /**
+    * @return a property and the string values it must have one of for the filter to match, null if
+    * the filter doesn't require any
+    */
+   public Pair<SimpleString, Set<SimpleString>> getRequiredValues()
+   {
+      return requiredValues;
+   }
+
+   public boolean match(final ServerMessage message)
    {
       try
       {
-         boolean result = booleanExpression.matches(new FilterableServerMessage(message));
-         return result;
+         return condition.matches(message);
       }
       catch (Exception e)
       {
@@ -198,11 +212,14 @@ public class FilterImpl implements Filter
       }
    }
 
-   private static class FilterableServerMessage implements Filterable
+   /**
+    * Used for the parts of a filter {@link FilterCompiler} evaluates the interpreted way.
+    */
+   static class FilterableServerMessage implements Filterable
    {
       private final ServerMessage message;
 
-      public FilterableServerMessage(ServerMessage message)
+      FilterableServerMessage(ServerMessage message)
       {
          this.message = message;
       }
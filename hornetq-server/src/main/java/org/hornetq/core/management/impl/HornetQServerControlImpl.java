@@ -471,6 +471,36 @@ public class HornetQServerControlImpl extends AbstractControl implements HornetQ
       }
    }
 
+   public long getGlobalMaxSize()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return configuration.getGlobalMaxSize();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getGlobalSize()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return server.getPagingManager().getGlobalSize();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
    public int getScheduledThreadPoolMaxSize()
    {
       checkStarted();
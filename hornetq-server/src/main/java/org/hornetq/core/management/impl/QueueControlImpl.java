@@ -269,6 +269,51 @@ public class QueueControlImpl extends AbstractControl implements QueueControl
       }
    }
 
+   public int getGroupCount()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return queue.getGroupCount();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getGroupsEvicted()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return queue.getGroupsEvicted();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public float getDepageRate()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return queue.getDepageRate();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
    public long getID()
    {
       checkStarted();
@@ -74,6 +74,35 @@ public interface PagingManager extends HornetQComponent, HierarchicalRepositoryC
 
    void resumeCleanup();
 
+   /**
+    * Accounts a change of the memory used by the messages of a store.
+    * <p>
+    * When the memory used by all the stores goes over the global max size, the largest stores are
+    * told to apply their address-full-policy until it falls under the global max size again.
+    */
+   void addSize(PagingStore store, int size);
+
+   /**
+    * @return the memory used by the messages of all the stores
+    */
+   long getGlobalSize();
+
+   /**
+    * @return the maximum memory the messages of all the stores may use, -1 means no limit
+    */
+   long getGlobalMaxSize();
+
+   /**
+    * @return whether the memory used by the messages of all the stores is over the global max size
+    */
+   boolean isGlobalFull();
+
+   /**
+    * @return the memory a queue whose address has no max size may fill by depaging, an even share of
+    * the global max size between the stores, or -1 if there is no global max size
+    */
+   long getGlobalDepageSize();
+
    /**
     * Lock the manager. This method should not be called during normal PagingManager usage.
     */
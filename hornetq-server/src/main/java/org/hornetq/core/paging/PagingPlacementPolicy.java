@@ -0,0 +1,29 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.core.paging;
+
+/**
+ * How the directory of a new paging store is chosen among the paging directories.
+ */
+public enum PagingPlacementPolicy
+{
+   /**
+    * The directories are used in turn
+    */
+   ROUND_ROBIN,
+
+   /**
+    * The directory with the most usable space is used
+    */
+   LEAST_USED;
+}
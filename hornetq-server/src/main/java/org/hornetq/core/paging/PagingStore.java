@@ -76,6 +76,11 @@ public interface PagingStore extends HornetQComponent
     */
    void ioSync() throws Exception;
 
+   /**
+    * Writes the messages gathered by the current page to its file, without a sync.
+    */
+   void ioFlush() throws Exception;
+
    /**
     * Write message to page if we are paging.
     *
@@ -121,6 +126,18 @@ public interface PagingStore extends HornetQComponent
 
    void addSize(int size);
 
+   /**
+    * @return whether the {@link PagingManager} told this store to apply its address-full-policy
+    * because the memory used by all the stores is over the global max size
+    */
+   boolean isOverGlobalMaxSize();
+
+   /**
+    * Called by the {@link PagingManager} when this store is one of the largest stores while the
+    * memory used by all the stores is over the global max size, and again once it falls under it.
+    */
+   void setOverGlobalMaxSize(boolean over);
+
    boolean checkMemory(Runnable runnable);
 
    /**
@@ -27,6 +27,11 @@ public interface PageCursorProvider
 
    PageCache getPageCache(long pageNr);
 
+   /**
+    * Reads a page into the cache asynchronously, unless it's already there or being read.
+    */
+   void prefetchPageCache(long pageNr);
+
    PagedReference newReference(final PagePosition pos, final PagedMessage msg, PageSubscription sub);
 
    void addPageCache(PageCache cache);
@@ -41,6 +46,16 @@ public interface PageCursorProvider
 
    PagedMessage getMessage(PagePosition pos);
 
+   /**
+    * Keeps the position of a message of high priority, for the subscriptions to depage it first.
+    */
+   void addPriorityPosition(PagePosition pos);
+
+   /**
+    * @return the position of the next message of high priority after pos, or null if there's none
+    */
+   PagePosition getNextPriorityPosition(PagePosition pos);
+
    void processReload() throws Exception;
 
    void stop();
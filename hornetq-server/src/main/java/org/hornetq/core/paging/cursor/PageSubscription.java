@@ -111,7 +111,7 @@ public interface PageSubscription
     * To be used to avoid a redelivery of a prepared ACK after load
     * @param position
     */
-   void reloadPreparedACK(Transaction tx, PagePosition position);
+   void reloadPreparedACK(Transaction tx, PagePosition position) throws Exception;
 
    void processReload() throws Exception;
 
@@ -131,6 +131,16 @@ public interface PageSubscription
     */
    boolean isComplete(long page);
 
+   /**
+    * @return the number of messages acknowledged on the page, used to recover the counter
+    */
+   int getNumberOfAcks(long page);
+
+   /**
+    * @return true if the message at the position was acknowledged, used to recover the counter
+    */
+   boolean isAcked(PagePosition position);
+
    /** wait all the scheduled runnables to finish their current execution */
    void flushExecutors();
 
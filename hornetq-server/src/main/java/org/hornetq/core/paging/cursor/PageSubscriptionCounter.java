@@ -12,7 +12,6 @@
  */
 package org.hornetq.core.paging.cursor;
 
-import org.hornetq.core.paging.impl.Page;
 import org.hornetq.core.transaction.Transaction;
 
 /**
@@ -29,31 +28,48 @@ public interface PageSubscriptionCounter
 
    void increment(Transaction tx, int add) throws Exception;
 
+   /**
+    * Counts messages paged on a page, the count of the page is stored once the page is closed and
+    * no transaction is paging on it any longer.
+    */
+   void pageIncrement(Transaction tx, long pageID, int add) throws Exception;
+
+   // used when a page that had messages counted is closed for writing
+   void pageClosed(long pageID);
+
+   // used when a page is deleted, its count is not needed any longer
+   void pageDeleted(long pageID) throws Exception;
+
    void loadValue(final long recordValueID, final long value);
 
    void loadInc(final long recordInd, final int add);
 
-   void applyIncrementOnTX(Transaction tx, long recordID, int add);
+   void loadPageCount(long recordID, long pageID, int count);
 
    /** This will process the reload */
    void processReload();
 
    /**
-    *
-    * @param id
-    * @param variance
+    * @return the count loaded for the page, or -1 if the page has no count stored
     */
-   void addInc(long id, int variance);
+   int getPageCount(long pageID);
+
+   /**
+    * Sets the count of a page found by the recovery, a page still open will be counted again
+    * once it's closed.
+    */
+   void recoverPage(Transaction tx, long pageID, int count, boolean closed) throws Exception;
+
+   /**
+    * Sets the value found by the recovery, removing the records it doesn't need any longer.
+    */
+   void recoverValue(Transaction tx, long value) throws Exception;
 
    // used when deleting the counter
    void delete() throws Exception;
 
-   void pendingCounter(Page page, int increment) throws Exception;
-
    // used when leaving page mode, so the counters are deleted in batches
    // for each queue on the address
    void delete(Transaction tx) throws Exception;
 
-   void cleanupNonTXCounters(final long pageID) throws Exception;
-
-}
\ No newline at end of file
+}
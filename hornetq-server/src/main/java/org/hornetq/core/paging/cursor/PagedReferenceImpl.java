@@ -13,7 +13,7 @@
 package org.hornetq.core.paging.cursor;
 
 import java.lang.ref.WeakReference;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import org.hornetq.api.core.Message;
 import org.hornetq.core.paging.PagedMessage;
@@ -31,6 +31,9 @@ public class PagedReferenceImpl implements PagedReference
 {
    private static final boolean isTrace = HornetQServerLogger.LOGGER.isTraceEnabled();
 
+   private static final AtomicIntegerFieldUpdater<PagedReferenceImpl> DELIVERY_COUNT_UPDATER =
+      AtomicIntegerFieldUpdater.newUpdater(PagedReferenceImpl.class, "deliveryCount");
+
    private final PagePosition position;
 
    private WeakReference<PagedMessage> message;
@@ -41,9 +44,11 @@ public class PagedReferenceImpl implements PagedReference
 
    private int messageEstimate;
 
-   private Long consumerId;
+   private long consumerId;
+
+   private boolean hasConsumerId;
 
-   private final AtomicInteger deliveryCount = new AtomicInteger(0);
+   private volatile int deliveryCount;
 
    private final PageSubscription subscription;
 
@@ -154,19 +159,19 @@ public class PagedReferenceImpl implements PagedReference
    @Override
    public int getDeliveryCount()
    {
-      return deliveryCount.get();
+      return deliveryCount;
    }
 
    @Override
    public void setDeliveryCount(final int deliveryCount)
    {
-      this.deliveryCount.set(deliveryCount);
+      this.deliveryCount = deliveryCount;
    }
 
    @Override
    public void incrementDeliveryCount()
    {
-      deliveryCount.incrementAndGet();
+      DELIVERY_COUNT_UPDATER.incrementAndGet(this);
       if (isTrace)
       {
          HornetQServerLogger.LOGGER.trace("++deliveryCount = " + deliveryCount + " for " + this, new Exception("trace"));
@@ -177,7 +182,7 @@ public class PagedReferenceImpl implements PagedReference
    @Override
    public void decrementDeliveryCount()
    {
-      deliveryCount.decrementAndGet();
+      DELIVERY_COUNT_UPDATER.decrementAndGet(this);
       if (isTrace)
       {
          HornetQServerLogger.LOGGER.trace("--deliveryCount = " + deliveryCount + " for " + this, new Exception("trace"));
@@ -245,21 +250,41 @@ public class PagedReferenceImpl implements PagedReference
    }
 
    /* (non-Javadoc)
-    * @see org.hornetq.core.server.MessageReference#setConsumerId(java.lang.Long)
+    * @see org.hornetq.core.server.MessageReference#setConsumerId(long)
     */
    @Override
-   public void setConsumerId(Long consumerID)
+   public void setConsumerId(long consumerID)
    {
+      this.hasConsumerId = true;
       this.consumerId = consumerID;
    }
 
+   /* (non-Javadoc)
+    * @see org.hornetq.core.server.MessageReference#hasConsumerId()
+    */
+   @Override
+   public boolean hasConsumerId()
+   {
+      return hasConsumerId;
+   }
+
    /* (non-Javadoc)
     * @see org.hornetq.core.server.MessageReference#getConsumerId()
     */
    @Override
-   public Long getConsumerId()
+   public long getConsumerId()
+   {
+      return consumerId;
+   }
+
+   /* (non-Javadoc)
+    * @see org.hornetq.core.server.MessageReference#emptyConsumerID()
+    */
+   @Override
+   public void emptyConsumerID()
    {
-      return this.consumerId;
+      this.hasConsumerId = false;
+      this.consumerId = 0;
    }
 
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.core.paging.cursor.impl;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.hornetq.core.server.HornetQServerLogger;
+
+/**
+ * The number of bytes the pages read into the caches of all the addresses may use.
+ * <p>
+ * Every page read into a cache is accounted with the size of its file. When the caches go over the
+ * budget the least recently used pages are evicted, whatever their address. The page being written
+ * to ({@link LivePageCacheImpl}) is not accounted as it's bounded by the page size.
+ * <p>
+ * A page is used each time a cursor looks it up, which only writes a time on the cache. Looking for
+ * the least recently used page is done when a page is added, under a lock, walking the pages in
+ * the budget. The providers are called outside the lock to evict their pages.
+ */
+public final class PageCacheBudget
+{
+   private static final boolean isTrace = HornetQServerLogger.LOGGER.isTraceEnabled();
+
+   private final long maxSize;
+
+   private final Map<PageCacheImpl, PageCursorProviderImpl> caches =
+      new IdentityHashMap<PageCacheImpl, PageCursorProviderImpl>();
+
+   private long size;
+
+   public PageCacheBudget(final long maxSize)
+   {
+      this.maxSize = maxSize;
+   }
+
+   public long getMaxSize()
+   {
+      return maxSize;
+   }
+
+   public synchronized long getSize()
+   {
+      return size;
+   }
+
+   public synchronized int getNumberOfPages()
+   {
+      return caches.size();
+   }
+
+   /**
+    * Accounts a page read into the cache of a provider, evicting the least recently used pages
+    * while the budget is exceeded. The page added is never evicted here.
+    */
+   void add(final PageCursorProviderImpl provider, final PageCacheImpl cache)
+   {
+      Map<PageCacheImpl, PageCursorProviderImpl> evicted = null;
+
+      synchronized (this)
+      {
+         if (caches.put(cache, provider) == null)
+         {
+            size += cache.getSizeInBytes();
+         }
+
+         while (size > maxSize)
+         {
+            PageCacheImpl leastRecentlyUsed = null;
+
+            for (PageCacheImpl candidate : caches.keySet())
+            {
+               if (candidate != cache &&
+                  (leastRecentlyUsed == null || candidate.getLastUsed() < leastRecentlyUsed.getLastUsed()))
+               {
+                  leastRecentlyUsed = candidate;
+               }
+            }
+
+            if (leastRecentlyUsed == null)
+            {
+               break;
+            }
+
+            if (evicted == null)
+            {
+               evicted = new IdentityHashMap<PageCacheImpl, PageCursorProviderImpl>();
+            }
+
+            evicted.put(leastRecentlyUsed, caches.remove(leastRecentlyUsed));
+
+            size -= leastRecentlyUsed.getSizeInBytes();
+         }
+      }
+
+      if (evicted != null)
+      {
+         for (Map.Entry<PageCacheImpl, PageCursorProviderImpl> entry : evicted.entrySet())
+         {
+            if (isTrace)
+            {
+               HornetQServerLogger.LOGGER.trace("Evicting " + entry.getKey() + " as the page caches are over " + maxSize + " bytes");
+            }
+
+            entry.getValue().evict(entry.getKey());
+         }
+      }
+   }
+
+   /**
+    * Stops accounting a page removed from the cache of its provider.
+    */
+   synchronized void remove(final PageCacheImpl cache)
+   {
+      if (caches.remove(cache) != null)
+      {
+         size -= cache.getSizeInBytes();
+      }
+   }
+}
@@ -39,6 +39,11 @@ class PageCacheImpl implements PageCache
 
    private final Page page;
 
+   // the size of the page file, accounted on the PageCacheBudget
+   private long sizeInBytes;
+
+   private volatile long lastUsed = System.nanoTime();
+
    // Static --------------------------------------------------------
 
    // Constructors --------------------------------------------------
@@ -91,6 +96,26 @@ class PageCacheImpl implements PageCache
       this.messages = messages;
    }
 
+   long getSizeInBytes()
+   {
+      return sizeInBytes;
+   }
+
+   void setSizeInBytes(final long sizeInBytes)
+   {
+      this.sizeInBytes = sizeInBytes;
+   }
+
+   long getLastUsed()
+   {
+      return lastUsed;
+   }
+
+   void used()
+   {
+      lastUsed = System.nanoTime();
+   }
+
    public int getNumberOfMessages()
    {
       lock.readLock().lock();
@@ -13,10 +13,18 @@
 package org.hornetq.core.paging.cursor.impl;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -35,7 +43,7 @@ import org.hornetq.core.server.HornetQServerLogger;
 import org.hornetq.core.transaction.Transaction;
 import org.hornetq.core.transaction.impl.TransactionImpl;
 import org.hornetq.utils.FutureLatch;
-import org.hornetq.utils.SoftValueHashMap;
+
 /**
  * A PageProviderIMpl
  *
@@ -68,23 +76,68 @@ public class PageCursorProviderImpl implements PageCursorProvider
    // This is the same executor used at the PageStoreImpl. One Executor per pageStore
    private final Executor executor;
 
-   private final SoftValueHashMap<Long, PageCache> softCache;
+   /**
+    * The pages read into memory, guarded by itself. The least recently used pages are evicted when
+    * there are more than maxCacheSize pages or when the {@link PageCacheBudget} is exceeded.
+    */
+   private final Map<Long, PageCache> pageCaches = new HashMap<Long, PageCache>();
+
+   private int maxCacheSize;
+
+   private final PageCacheBudget cacheBudget;
+
+   /**
+    * The pages being read ahead, guarded by pageCaches
+    */
+   private final Set<Long> prefetchingPages = new HashSet<Long>();
+
+   /**
+    * The indexes of the pages lately read one message at a time, guarded by itself, so the index
+    * file of a page isn't parsed again for each of its messages. {@link #NO_INDEX} marks a page
+    * without a valid index, which is read entirely.
+    */
+   private final Map<Long, int[]> pageIndexes = new PageIndexMap();
 
    private final ConcurrentMap<Long, PageSubscription> activeCursors = new ConcurrentHashMap<Long, PageSubscription>();
 
+   /**
+    * The numbers of the messages of high priority still on each page, when priority depaging is
+    * enabled on the address. One bit per message of the page, so the index stays as small as the
+    * page itself however many of its messages have a high priority.
+    */
+   private final ConcurrentSkipListMap<Long, BitSet> priorityMessages = new ConcurrentSkipListMap<Long, BitSet>();
+
    // Static --------------------------------------------------------
 
+   private static final int MAX_PAGE_INDEXES = 32;
+
+   private static final int[] NO_INDEX = new int[0];
+
    // Constructors --------------------------------------------------
 
    public PageCursorProviderImpl(final PagingStore pagingStore,
                                  final StorageManager storageManager,
                                  final Executor executor,
                                  final int maxCacheSize)
+   {
+      this(pagingStore, storageManager, executor, maxCacheSize, null);
+   }
+
+   /**
+    * @param cacheBudget the budget shared by the page caches of all the addresses, or null if the
+    *                    caches are only bounded by their number of pages
+    */
+   public PageCursorProviderImpl(final PagingStore pagingStore,
+                                 final StorageManager storageManager,
+                                 final Executor executor,
+                                 final int maxCacheSize,
+                                 final PageCacheBudget cacheBudget)
    {
       this.pagingStore = pagingStore;
       this.storageManager = storageManager;
       this.executor = executor;
-      this.softCache = new SoftValueHashMap<Long, PageCache>(maxCacheSize);
+      this.maxCacheSize = maxCacheSize;
+      this.cacheBudget = cacheBudget;
    }
 
    // Public --------------------------------------------------------
@@ -114,7 +167,26 @@ public class PageCursorProviderImpl implements PageCursorProvider
 
    public PagedMessage getMessage(final PagePosition pos)
    {
-      PageCache cache = getPageCache(pos.getPageNr());
+      PageCache cache;
+
+      synchronized (pageCaches)
+      {
+         cache = pageCaches.get(pos.getPageNr());
+      }
+
+      if (cache == null)
+      {
+         // A single message (e.g. a redelivery) is read through the page index
+         // instead of reading the entire page into the cache
+         PagedMessage message = readMessage(pos);
+
+         if (message != null)
+         {
+            return message;
+         }
+
+         cache = getPageCache(pos.getPageNr());
+      }
 
       if (cache == null || pos.getMessageNr() >= cache.getNumberOfMessages())
       {
@@ -125,6 +197,116 @@ public class PageCursorProviderImpl implements PageCursorProvider
       return cache.getMessage(pos.getMessageNr());
    }
 
+   /**
+    * @return the message read through the index of its page, or null if the page has to be read
+    * entirely
+    */
+   private PagedMessage readMessage(final PagePosition pos)
+   {
+      try
+      {
+         // the page being written has no index yet
+         if (pos.getPageNr() >= pagingStore.getCurrentWritingPage())
+         {
+            return null;
+         }
+
+         int[] index;
+         synchronized (pageIndexes)
+         {
+            index = pageIndexes.get(pos.getPageNr());
+         }
+
+         if (index == NO_INDEX || index == null && !pagingStore.checkPageFileExists((int)pos.getPageNr()))
+         {
+            return null;
+         }
+
+         Page page = null;
+         try
+         {
+            page = pagingStore.createPage((int)pos.getPageNr());
+
+            storageManager.beforePageRead();
+            page.open();
+
+            if (index == null)
+            {
+               index = page.readIndex();
+            }
+
+            PagedMessage message = page.readMessage(pos.getMessageNr(), index, storageManager);
+
+            synchronized (pageIndexes)
+            {
+               pageIndexes.put(pos.getPageNr(), message == null ? NO_INDEX : index);
+            }
+
+            return message;
+         }
+         finally
+         {
+            try
+            {
+               if (page != null)
+               {
+                  page.closeRead();
+               }
+            }
+            catch (Throwable ignored)
+            {
+            }
+            storageManager.afterPageRead();
+         }
+      }
+      catch (Exception e)
+      {
+         throw new RuntimeException("Couldn't complete paging due to an IO Exception on Paging - " + e.getMessage(), e);
+      }
+   }
+
+   public void addPriorityPosition(final PagePosition pos)
+   {
+      BitSet messages = priorityMessages.get(pos.getPageNr());
+      if (messages == null)
+      {
+         messages = new BitSet();
+         BitSet existing = priorityMessages.putIfAbsent(pos.getPageNr(), messages);
+         if (existing != null)
+         {
+            messages = existing;
+         }
+      }
+
+      synchronized (messages)
+      {
+         messages.set(pos.getMessageNr());
+      }
+   }
+
+   public PagePosition getNextPriorityPosition(final PagePosition pos)
+   {
+      Map.Entry<Long, BitSet> entry = priorityMessages.ceilingEntry(pos.getPageNr());
+      while (entry != null)
+      {
+         int from = entry.getKey() == pos.getPageNr() ? pos.getMessageNr() + 1 : 0;
+         int messageNr;
+         synchronized (entry.getValue())
+         {
+            messageNr = entry.getValue().nextSetBit(Math.max(0, from));
+         }
+
+         if (messageNr >= 0)
+         {
+            return new PagePositionImpl(entry.getKey(), messageNr);
+         }
+
+         entry = priorityMessages.higherEntry(entry.getKey());
+      }
+
+      return null;
+   }
+
    public PagedReference newReference(final PagePosition pos,
                                       final PagedMessage msg,
                                       final PageSubscription subscription)
@@ -136,16 +318,16 @@ public class PageCursorProviderImpl implements PageCursorProvider
    {
       try
       {
-         boolean needToRead = false;
+         PageCacheImpl readCache = null;
          PageCache cache = null;
-         synchronized (softCache)
+         synchronized (pageCaches)
          {
             if (pageId > pagingStore.getCurrentWritingPage())
             {
                return null;
             }
 
-            cache = softCache.get(pageId);
+            cache = pageCaches.get(pageId);
             if (cache == null)
             {
                if (!pagingStore.checkPageFileExists((int)pageId))
@@ -153,22 +335,27 @@ public class PageCursorProviderImpl implements PageCursorProvider
                   return null;
                }
 
-               cache = createPageCache(pageId);
-               needToRead = true;
+               readCache = createPageCache(pageId);
+               cache = readCache;
                // anyone reading from this cache will have to wait reading to finish first
                // we also want only one thread reading this cache
-               cache.lock();
+               readCache.lock();
                if (isTrace)
                {
                   HornetQServerLogger.LOGGER.trace("adding " + pageId +  " into cursor = " + this.pagingStore.getAddress());
                }
-               softCache.put(pageId, cache);
+               pageCaches.put(pageId, cache);
+               checkCacheSize();
+            }
+            else if (cache instanceof PageCacheImpl)
+            {
+               ((PageCacheImpl)cache).used();
             }
          }
 
          // Reading is done outside of the synchronized block, however
          // the page stays locked until the entire reading is finished
-         if (needToRead)
+         if (readCache != null)
          {
             Page page = null;
             try
@@ -179,7 +366,8 @@ public class PageCursorProviderImpl implements PageCursorProvider
                page.open();
 
                List<PagedMessage> pgdMessages = page.read(storageManager);
-               cache.setMessages(pgdMessages.toArray(new PagedMessage[pgdMessages.size()]));
+               readCache.setMessages(pgdMessages.toArray(new PagedMessage[pgdMessages.size()]));
+               readCache.setSizeInBytes(page.getRecordsSize());
             }
             finally
             {
@@ -194,7 +382,21 @@ public class PageCursorProviderImpl implements PageCursorProvider
                {
                }
                storageManager.afterPageRead();
-               cache.unlock();
+               readCache.unlock();
+            }
+
+            if (cacheBudget != null)
+            {
+               cacheBudget.add(this, readCache);
+
+               synchronized (pageCaches)
+               {
+                  // the page may have been removed while it was read
+                  if (pageCaches.get(pageId) != readCache)
+                  {
+                     cacheBudget.remove(readCache);
+                  }
+               }
             }
          }
 
@@ -206,40 +408,107 @@ public class PageCursorProviderImpl implements PageCursorProvider
       }
    }
 
+   public void prefetchPageCache(final long pageId)
+   {
+      synchronized (pageCaches)
+      {
+         if (pageId > pagingStore.getCurrentWritingPage() || pageCaches.containsKey(pageId) ||
+            !prefetchingPages.add(pageId))
+         {
+            return;
+         }
+      }
+
+      executor.execute(new Runnable()
+      {
+         public void run()
+         {
+            try
+            {
+               getPageCache(pageId);
+            }
+            catch (Throwable e)
+            {
+               // the page will be read again by the cursor needing it
+               HornetQServerLogger.LOGGER.debug("Couldn't read ahead page " + pageId + " on " + pagingStore.getAddress(), e);
+            }
+            finally
+            {
+               synchronized (pageCaches)
+               {
+                  prefetchingPages.remove(pageId);
+               }
+            }
+         }
+      });
+   }
+
    public void addPageCache(PageCache cache)
    {
-      synchronized (softCache)
+      synchronized (pageCaches)
       {
-         softCache.put(cache.getPageId(), cache);
+         removeCache(pageCaches.put(cache.getPageId(), cache));
+         checkCacheSize();
       }
    }
 
    public void setCacheMaxSize(final int size)
    {
-      softCache.setMaxElements(size);
+      synchronized (pageCaches)
+      {
+         maxCacheSize = size;
+         checkCacheSize();
+      }
    }
 
    public int getCacheSize()
    {
-      synchronized (softCache)
+      synchronized (pageCaches)
       {
-         return softCache.size();
+         return pageCaches.size();
       }
    }
 
    public void clearCache()
    {
-      synchronized (softCache)
+      synchronized (pageCaches)
       {
-         softCache.clear();
+         for (PageCache cache : pageCaches.values())
+         {
+            removeCache(cache);
+         }
+         pageCaches.clear();
+      }
+   }
+
+   /**
+    * Removes a page evicted by the {@link PageCacheBudget}, unless it was already replaced.
+    */
+   void evict(final PageCacheImpl cache)
+   {
+      synchronized (pageCaches)
+      {
+         if (pageCaches.get(cache.getPageId()) == cache)
+         {
+            pageCaches.remove(cache.getPageId());
+         }
       }
    }
 
    public void processReload() throws Exception
    {
       Collection<PageSubscription> cursorList = this.activeCursors.values();
+
+      // the counters are only recovered after the load, until then any subscription may have
+      // messages on the pages and they can't be cleaned up
+      boolean paging = pagingStore.isPaging();
+
       for (PageSubscription cursor : cursorList)
       {
+         if (paging)
+         {
+            cursor.notEmpty();
+         }
          cursor.processReload();
       }
 
@@ -275,6 +544,15 @@ public class PageCursorProviderImpl implements PageCursorProvider
       }
 
       waitForFuture();
+
+      clearCache();
+
+      priorityMessages.clear();
+
+      synchronized (pageIndexes)
+      {
+         pageIndexes.clear();
+      }
    }
 
    private void waitForFuture()
@@ -344,6 +622,8 @@ public class PageCursorProviderImpl implements PageCursorProvider
     */
    public void onPageModeCleared()
    {
+      priorityMessages.clear();
+
       ArrayList<PageSubscription> subscriptions = cloneSubscriptions();
 
       Transaction tx = new TransactionImpl(storageManager);
@@ -496,9 +776,9 @@ public class PageCursorProviderImpl implements PageCursorProvider
          {
             PageCache cache;
             PagedMessage[] pgdMessages;
-            synchronized (softCache)
+            synchronized (pageCaches)
             {
-               cache = softCache.get((long)depagedPage.getPageId());
+               cache = pageCaches.get((long)depagedPage.getPageId());
             }
 
             if (isTrace)
@@ -542,9 +822,9 @@ public class PageCursorProviderImpl implements PageCursorProvider
             depagedPage.delete(pgdMessages);
             onDeletePage(depagedPage);
 
-            synchronized (softCache)
+            synchronized (pageCaches)
             {
-               softCache.remove((long)depagedPage.getPageId());
+               removeCache(pageCaches.remove((long)depagedPage.getPageId()));
             }
          }
       }
@@ -594,6 +874,13 @@ public class PageCursorProviderImpl implements PageCursorProvider
 
    protected void onDeletePage(Page deletedPage) throws Exception
    {
+      priorityMessages.remove((long) deletedPage.getPageId());
+
+      synchronized (pageIndexes)
+      {
+         pageIndexes.remove((long) deletedPage.getPageId());
+      }
+
       List<PageSubscription> subscriptions = cloneSubscriptions();
       for (PageSubscription subs: subscriptions)
       {
@@ -633,9 +920,12 @@ public class PageCursorProviderImpl implements PageCursorProvider
    public void printDebug()
    {
       System.out.println("Debug information for PageCursorProviderImpl:");
-      for (PageCache cache : softCache.values())
+      synchronized (pageCaches)
       {
-         System.out.println("Cache " + cache);
+         for (PageCache cache : pageCaches.values())
+         {
+            System.out.println("Cache " + cache);
+         }
       }
    }
 
@@ -651,6 +941,63 @@ public class PageCursorProviderImpl implements PageCursorProvider
 
    // Private -------------------------------------------------------
 
+   /**
+    * Evicts the least recently used pages while there are more than maxCacheSize, the live page is
+    * never evicted. Called with the pageCaches lock held.
+    */
+   private void checkCacheSize()
+   {
+      while (maxCacheSize > 0 && pageCaches.size() > maxCacheSize)
+      {
+         PageCacheImpl leastRecentlyUsed = null;
+         PageCache oldestOther = null;
+
+         for (PageCache cache : pageCaches.values())
+         {
+            if (cache.isLive())
+            {
+               continue;
+            }
+
+            if (cache instanceof PageCacheImpl)
+            {
+               PageCacheImpl cacheImpl = (PageCacheImpl)cache;
+               if (leastRecentlyUsed == null || cacheImpl.getLastUsed() < leastRecentlyUsed.getLastUsed())
+               {
+                  leastRecentlyUsed = cacheImpl;
+               }
+            }
+            else if (oldestOther == null || cache.getPageId() < oldestOther.getPageId())
+            {
+               // a live page which was closed, it is evicted before the pages read back from disk
+               oldestOther = cache;
+            }
+         }
+
+         PageCache evicted = oldestOther != null ? oldestOther : leastRecentlyUsed;
+
+         if (evicted == null)
+         {
+            return;
+         }
+
+         if (isTrace)
+         {
+            HornetQServerLogger.LOGGER.trace("Evicting " + evicted + " as there are more than " + maxCacheSize + " pages on cache");
+         }
+
+         removeCache(pageCaches.remove(evicted.getPageId()));
+      }
+   }
+
+   private void removeCache(final PageCache removed)
+   {
+      if (cacheBudget != null && removed instanceof PageCacheImpl)
+      {
+         cacheBudget.remove((PageCacheImpl)removed);
+      }
+   }
+
    /**
     * This method is synchronized because we want it to be atomic with the cursors being used
     */
@@ -684,4 +1031,20 @@ public class PageCursorProviderImpl implements PageCursorProvider
 
    // Inner classes -------------------------------------------------
 
+   private static final class PageIndexMap extends LinkedHashMap<Long, int[]>
+   {
+      private static final long serialVersionUID = 3614706342906514163L;
+
+      PageIndexMap()
+      {
+         super(16, 0.75f, true);
+      }
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<Long, int[]> eldest)
+      {
+         return size() > MAX_PAGE_INDEXES;
+      }
+   }
+
 }
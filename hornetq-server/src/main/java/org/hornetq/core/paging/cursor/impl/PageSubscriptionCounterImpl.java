@@ -14,16 +14,16 @@ package org.hornetq.core.paging.cursor.impl;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executor;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.hornetq.api.core.Pair;
 import org.hornetq.core.paging.cursor.PageSubscription;
 import org.hornetq.core.paging.cursor.PageSubscriptionCounter;
-import org.hornetq.core.paging.impl.Page;
 import org.hornetq.core.persistence.StorageManager;
 import org.hornetq.core.server.HornetQServerLogger;
 import org.hornetq.core.transaction.Transaction;
@@ -34,6 +34,10 @@ import org.hornetq.core.transaction.impl.TransactionImpl;
 
 /**
  * This class will encapsulate the persistent counters for the PagingSubscription
+ * <p/>
+ * The value is only kept in memory. The number of messages counted on each page is stored once the
+ * page is closed, and the value is recovered on restart from these counts and the acks of the
+ * subscription, reading only the pages that have no count stored.
  *
  * @author clebertsuconic
  */
@@ -41,11 +45,9 @@ public class PageSubscriptionCounterImpl implements PageSubscriptionCounter
 {
    private static final boolean isTrace = HornetQServerLogger.LOGGER.isTraceEnabled();
 
-   private static final int FLUSH_COUNTER = 1000;
-
    private final long subscriptionID;
 
-   // the journal record id that is holding the current value
+   // the journal record id holding the value stored by previous versions, deleted on recovery
    private long recordID = -1;
 
    private boolean persistent;
@@ -58,27 +60,17 @@ public class PageSubscriptionCounterImpl implements PageSubscriptionCounter
 
    private final AtomicLong value = new AtomicLong(0);
 
-   private final AtomicLong pendingValue = new AtomicLong(0);
-
+   // the increment records stored by previous versions, deleted on recovery
    private final LinkedList<Long> incrementRecords = new LinkedList<Long>();
 
+   // The messages counted on each page not deleted yet, guarded by this
+   private final Map<Long, PageCount> pageCounts = new HashMap<Long, PageCount>();
 
-   // We are storing pending counters for non transactional writes on page
-   // we will recount a page case we still see pending records
-   // as soon as we close a page we remove these records replacing by a regular page increment record
-   // A Map per pageID, each page will have a set of IDs, with the increment on each one
-   private final Map<Long, Pair<Long, AtomicInteger>> pendingCounters = new HashMap<Long, Pair<Long, AtomicInteger>>();
+   // The counts loaded from the journal, until the recovery tells which ones are still valid, guarded by this
+   private Map<Long, PageCount> loadedPageCounts;
 
    private LinkedList<Pair<Long, Integer>> loadList;
 
-   private final Runnable cleanupCheck = new Runnable()
-   {
-      public void run()
-      {
-         cleanup();
-      }
-   };
-
    public PageSubscriptionCounterImpl(final StorageManager storage,
                                       final PageSubscription subscription,
                                       final Executor executor,
@@ -95,117 +87,85 @@ public class PageSubscriptionCounterImpl implements PageSubscriptionCounter
    @Override
    public long getValue()
    {
-      return value.get() + pendingValue.get();
+      return value.get();
    }
 
-
-   /**
-    * This is used only on non transactional paging
-    * @param page
-    * @param increment
-    * @param context
-    * @throws Exception
-    */
    @Override
-   public synchronized void pendingCounter(Page page, int increment) throws Exception
+   public void increment(Transaction tx, int add) throws Exception
    {
-      if (!persistent)
-      {
-         return; // nothing to be done
-      }
-
-      Pair<Long, AtomicInteger> pendingInfo = pendingCounters.get((long)page.getPageId());
-      if (pendingInfo == null)
+      if (tx == null)
       {
-         // We have to make sure this is sync here
-         // not syncing this to disk may cause the page files to be out of sync on pages.
-         // we can't afford the case where a page file is written without a record here
-         long id = storage.storePendingCounter(this.subscriptionID, page.getPageId(), increment);
-         pendingInfo = new Pair<Long, AtomicInteger>(id, new AtomicInteger(1));
-         pendingCounters.put((long)page.getPageId(), pendingInfo);
+         value.addAndGet(add);
       }
       else
       {
-         pendingInfo.getB().addAndGet(increment);
+         getCounterOperations(tx).addIncrement(this, -1, add);
       }
-
-      pendingValue.addAndGet(increment);
-
-      page.addPendingCounter(this);
    }
 
-   /**
-    * Cleanup temporary page counters on non transactional paged messages
-    * @param pageID
-    */
-   public void cleanupNonTXCounters(final long pageID) throws Exception
+   @Override
+   public void pageIncrement(final Transaction tx, final long pageID, final int add) throws Exception
    {
-      Pair<Long, AtomicInteger> pendingInfo;
-      synchronized (this)
+      if (!persistent)
       {
-         pendingInfo = pendingCounters.remove(pageID);
+         increment(tx, add);
+         return;
       }
 
-      if (pendingInfo != null)
+      synchronized (this)
       {
-         final AtomicInteger valueCleaned = pendingInfo.getB();
-         Transaction tx = new TransactionImpl(storage);
-         storage.deletePendingPageCounter(tx.getID(), pendingInfo.getA());
+         PageCount pageCount = getOrCreatePageCount(pageID);
 
-         // To apply the increment of the value just being cleaned
-         increment(tx, valueCleaned.get());
-
-         tx.addOperation(new TransactionOperationAbstract()
+         if (tx == null)
          {
-            @Override
-            public void afterCommit(Transaction tx)
-            {
-               pendingValue.addAndGet(-valueCleaned.get());
-            }
-         });
+            pageCount.messages += add;
+         }
+         else
+         {
+            // the page can't be counted until the transaction is done
+            pageCount.pendingTX += add;
+         }
+      }
 
-         tx.commit();
+      if (tx == null)
+      {
+         value.addAndGet(add);
+      }
+      else
+      {
+         getCounterOperations(tx).addIncrement(this, pageID, add);
       }
    }
 
+   @Override
+   public synchronized void pageClosed(final long pageID)
+   {
+      PageCount pageCount = pageCounts.get(pageID);
+
+      if (pageCount != null)
+      {
+         pageCount.closed = true;
+         checkPageCount(pageID, pageCount);
+      }
+   }
 
    @Override
-   public void increment(Transaction tx, int add) throws Exception
+   public void pageDeleted(final long pageID) throws Exception
    {
-      if (tx == null)
+      PageCount pageCount;
+
+      synchronized (this)
       {
-         if (persistent)
-         {
-            long id = storage.storePageCounterInc(this.subscriptionID, add);
-            incrementProcessed(id, add);
-         }
-         else
-         {
-            incrementProcessed(-1, add);
-         }
+         pageCount = pageCounts.remove(pageID);
       }
-      else
+
+      if (pageCount != null && pageCount.recordID >= 0)
       {
-         if (persistent)
-         {
-            tx.setContainsPersistent();
-            long id = storage.storePageCounterInc(tx.getID(), this.subscriptionID, add);
-            applyIncrementOnTX(tx, id, add);
-         }
-         else
-         {
-            applyIncrementOnTX(tx, -1, add);
-         }
+         storage.deletePageCount(pageCount.recordID);
       }
    }
 
-   /**
-    * This method will install the TXs
-    * @param tx
-    * @param recordID1
-    * @param add
-    */
-   public void applyIncrementOnTX(Transaction tx, long recordID1, int add)
+   private static CounterOperations getCounterOperations(final Transaction tx)
    {
       CounterOperations oper = (CounterOperations)tx.getProperty(TransactionPropertyIndexes.PAGE_COUNT_INC);
 
@@ -216,7 +176,7 @@ public class PageSubscriptionCounterImpl implements PageSubscriptionCounter
          tx.addOperation(oper);
       }
 
-      oper.operations.add(new ItemOper(this, recordID1, add));
+      return oper;
    }
 
    public synchronized void loadValue(final long recordID1, final long value1)
@@ -230,14 +190,142 @@ public class PageSubscriptionCounterImpl implements PageSubscriptionCounter
       this.recordID = recordID1;
    }
 
-   public synchronized void incrementProcessed(long id, int add)
+   public synchronized void loadPageCount(final long recordID1, final long pageID, final int count)
+   {
+      if (loadedPageCounts == null)
+      {
+         loadedPageCounts = new HashMap<Long, PageCount>();
+      }
+
+      PageCount pageCount = new PageCount();
+      pageCount.messages = count;
+      pageCount.closed = true;
+      pageCount.recordID = recordID1;
+
+      loadedPageCounts.put(pageID, pageCount);
+   }
+
+   public synchronized int getPageCount(final long pageID)
+   {
+      PageCount pageCount = loadedPageCounts == null ? null : loadedPageCounts.get(pageID);
+
+      return pageCount == null ? -1 : pageCount.messages;
+   }
+
+   public void recoverPage(final Transaction tx, final long pageID, final int count, final boolean closed) throws Exception
+   {
+      long recordToDelete = -1;
+
+      synchronized (this)
+      {
+         PageCount loaded = loadedPageCounts == null ? null : loadedPageCounts.remove(pageID);
+
+         if (closed && count == 0 && loaded == null && !pageCounts.containsKey(pageID))
+         {
+            // nothing to be stored for a page without messages for this subscription
+            return;
+         }
+
+         // it may exist already with the messages of prepared transactions
+         PageCount pageCount = getOrCreatePageCount(pageID);
+         pageCount.messages = count;
+         pageCount.closed = closed;
+
+         if (loaded != null)
+         {
+            if (closed)
+            {
+               pageCount.recordID = loaded.recordID;
+            }
+            else
+            {
+               // the page is written to again, it's stored again once it's closed
+               recordToDelete = loaded.recordID;
+            }
+         }
+      }
+
+      if (recordToDelete >= 0)
+      {
+         storage.deletePageCounter(tx.getID(), recordToDelete);
+         tx.setContainsPersistent();
+      }
+   }
+
+   public void recoverValue(final Transaction tx, final long value1) throws Exception
+   {
+      List<Long> deleteList = new ArrayList<Long>();
+
+      synchronized (this)
+      {
+         if (recordID >= 0)
+         {
+            deleteList.add(recordID);
+            recordID = -1;
+         }
+
+         deleteList.addAll(incrementRecords);
+         incrementRecords.clear();
+
+         // the counts of pages that don't exist any longer
+         if (loadedPageCounts != null)
+         {
+            for (PageCount pageCount : loadedPageCounts.values())
+            {
+               deleteList.add(pageCount.recordID);
+            }
+            loadedPageCounts = null;
+         }
+
+         for (Map.Entry<Long, PageCount> entry : pageCounts.entrySet())
+         {
+            checkPageCount(entry.getKey(), entry.getValue());
+         }
+
+         value.set(value1);
+      }
+
+      for (Long record : deleteList)
+      {
+         storage.deletePageCounter(tx.getID(), record);
+         tx.setContainsPersistent();
+      }
+
+      if (value1 > 0 && subscription != null)
+      {
+         subscription.notEmpty();
+      }
+   }
+
+   private void incrementProcessed(final long pageID, final int add)
    {
-      addInc(id, add);
-      if (incrementRecords.size() > FLUSH_COUNTER)
+      if (pageID >= 0)
       {
-         executor.execute(cleanupCheck);
+         synchronized (this)
+         {
+            PageCount pageCount = pageCounts.get(pageID);
+
+            if (pageCount != null)
+            {
+               pageCount.messages += add;
+               pageCount.pendingTX -= add;
+               checkPageCount(pageID, pageCount);
+            }
+         }
       }
 
+      value.addAndGet(add);
+   }
+
+   private synchronized void incrementRolledBack(final long pageID, final int add)
+   {
+      PageCount pageCount = pageCounts.get(pageID);
+
+      if (pageCount != null)
+      {
+         pageCount.pendingTX -= add;
+         checkPageCount(pageID, pageCount);
+      }
    }
 
    public void delete() throws Exception
@@ -269,9 +357,19 @@ public class PageSubscriptionCounterImpl implements PageSubscriptionCounter
                tx.setContainsPersistent();
             }
 
+            for (PageCount pageCount : pageCounts.values())
+            {
+               if (pageCount.recordID >= 0)
+               {
+                  storage.deletePageCounter(tx.getID(), pageCount.recordID);
+                  tx.setContainsPersistent();
+               }
+            }
+
             recordID = -1;
             value.set(0);
             incrementRecords.clear();
+            pageCounts.clear();
          }
       }
       finally
@@ -310,111 +408,177 @@ public class PageSubscriptionCounterImpl implements PageSubscriptionCounter
       }
    }
 
-   public synchronized void addInc(long id, int variance)
+   /** used on testing only */
+   public void setPersistent(final boolean persistent)
+   {
+      this.persistent = persistent;
+   }
+
+   private PageCount getOrCreatePageCount(final long pageID)
    {
-      value.addAndGet(variance);
+      PageCount pageCount = pageCounts.get(pageID);
 
-      if (id >= 0)
+      if (pageCount == null)
       {
-         incrementRecords.add(id);
+         pageCount = new PageCount();
+         pageCounts.put(pageID, pageCount);
       }
+
+      return pageCount;
    }
 
-   /** used on testing only */
-   public void setPersistent(final boolean persistent)
+   /**
+    * Stores the count of a page once no more messages can be counted on it, guarded by this
+    */
+   private void checkPageCount(final long pageID, final PageCount pageCount)
    {
-      this.persistent = persistent;
-   }
+      if (pageCount.closed && pageCount.pendingTX == 0 && pageCount.recordID < 0 && !pageCount.storing)
+      {
+         if (subscription != null && !subscription.getPagingStore().isStarted())
+         {
+            // the page is only closed by the store being stopped, it's read again on recovery
+            return;
+         }
+
+         pageCount.storing = true;
 
+         executor.execute(new Runnable()
+         {
+            public void run()
+            {
+               storePageCount(pageID, pageCount);
+            }
+         });
+      }
+   }
 
    /** This method should always be called from a single threaded executor */
-   protected void cleanup()
+   private void storePageCount(final long pageID, final PageCount pageCount)
    {
-      ArrayList<Long> deleteList;
+      int messages;
 
-      long valueReplace;
       synchronized (this)
       {
-         if (incrementRecords.size() <= FLUSH_COUNTER)
+         if (pageCounts.get(pageID) != pageCount)
          {
+            // the page was deleted meanwhile
             return;
          }
-         valueReplace = value.get();
-         deleteList = new ArrayList<Long>(incrementRecords);
-         incrementRecords.clear();
+         messages = pageCount.messages;
       }
 
-      long newRecordID = -1;
-
-      long txCleanup = storage.generateID();
-
       try
       {
-         for (Long value1 : deleteList)
+         long newRecordID = storage.storePageCount(subscriptionID, pageID, messages);
+
+         boolean deleted;
+
+         synchronized (this)
          {
-            storage.deleteIncrementRecord(txCleanup, value1);
+            deleted = pageCounts.get(pageID) != pageCount;
+            pageCount.recordID = newRecordID;
          }
 
-         if (recordID >= 0)
+         if (deleted)
          {
-            storage.deletePageCounter(txCleanup, recordID);
+            storage.deletePageCount(newRecordID);
          }
 
-         newRecordID = storage.storePageCounter(txCleanup, subscriptionID, valueReplace);
-
          if (isTrace)
          {
-            HornetQServerLogger.LOGGER.trace("Replacing page-counter record = "  + recordID + " by record = " + newRecordID + " on subscriptionID = " + this.subscriptionID + " for queue = " + this.subscription.getQueue().getName());
+            HornetQServerLogger.LOGGER.trace("Stored page-count record = " + newRecordID + " of " + messages +
+                                                " messages for page = " + pageID + " on subscriptionID = " + subscriptionID);
          }
-
-         storage.commit(txCleanup);
       }
       catch (Exception e)
       {
-         newRecordID = recordID;
-
-         HornetQServerLogger.LOGGER.problemCleaningPagesubscriptionCounter(e);
-         try
-         {
-            storage.rollback(txCleanup);
-         }
-         catch (Exception ignored)
-         {
-         }
-      }
-      finally
-      {
-         recordID = newRecordID;
+         HornetQServerLogger.LOGGER.errorStoringPageCount(subscription, pageID, e);
       }
    }
 
+   private static final class PageCount
+   {
+      // the messages counted on the page
+      int messages;
+
+      // the messages paged on the page by transactions still being completed
+      int pendingTX;
+
+      // no more messages are paged on a closed page
+      boolean closed;
+
+      boolean storing;
+
+      // the record holding the count, once it's stored
+      long recordID = -1;
+   }
+
    private static class ItemOper
    {
 
-      public ItemOper(PageSubscriptionCounterImpl counter, long id, int add)
+      public ItemOper(long pageID, int add)
       {
-         this.counter = counter;
-         this.id = id;
+         this.pageID = pageID;
          this.ammount = add;
       }
 
-      PageSubscriptionCounterImpl counter;
-
-      long id;
+      // -1 when the increment isn't counted on a page
+      long pageID;
 
       int ammount;
    }
 
    private static class CounterOperations extends TransactionOperationAbstract implements TransactionOperation
    {
-      LinkedList<ItemOper> operations = new LinkedList<ItemOper>();
+      // The increments of the transaction, summed per counter and page
+      Map<PageSubscriptionCounterImpl, List<ItemOper>> operations = new LinkedHashMap<PageSubscriptionCounterImpl, List<ItemOper>>();
+
+      void addIncrement(final PageSubscriptionCounterImpl counter, final long pageID, final int add)
+      {
+         List<ItemOper> counterOperations = operations.get(counter);
+
+         if (counterOperations == null)
+         {
+            counterOperations = new ArrayList<ItemOper>(1);
+            operations.put(counter, counterOperations);
+         }
+
+         for (ItemOper oper : counterOperations)
+         {
+            if (oper.pageID == pageID)
+            {
+               oper.ammount += add;
+               return;
+            }
+         }
+
+         counterOperations.add(new ItemOper(pageID, add));
+      }
 
       @Override
       public void afterCommit(Transaction tx)
       {
-         for (ItemOper oper : operations)
+         for (Map.Entry<PageSubscriptionCounterImpl, List<ItemOper>> entry : operations.entrySet())
          {
-            oper.counter.incrementProcessed(oper.id, oper.ammount);
+            for (ItemOper oper : entry.getValue())
+            {
+               entry.getKey().incrementProcessed(oper.pageID, oper.ammount);
+            }
+         }
+      }
+
+      @Override
+      public void afterRollback(Transaction tx)
+      {
+         for (Map.Entry<PageSubscriptionCounterImpl, List<ItemOper>> entry : operations.entrySet())
+         {
+            for (ItemOper oper : entry.getValue())
+            {
+               if (oper.pageID >= 0)
+               {
+                  entry.getKey().incrementRolledBack(oper.pageID, oper.ammount);
+               }
+            }
          }
       }
    }
@@ -14,14 +14,14 @@ package org.hornetq.core.paging.cursor.impl;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.Executor;
@@ -49,7 +49,6 @@ import org.hornetq.core.transaction.Transaction;
 import org.hornetq.core.transaction.TransactionOperationAbstract;
 import org.hornetq.core.transaction.TransactionPropertyIndexes;
 import org.hornetq.core.transaction.impl.TransactionImpl;
-import org.hornetq.utils.ConcurrentHashSet;
 import org.hornetq.utils.FutureLatch;
 import org.hornetq.utils.LinkedListIterator;
 
@@ -60,6 +59,8 @@ import org.hornetq.utils.LinkedListIterator;
  */
 final class PageSubscriptionImpl implements PageSubscription
 {
+   private static final long[] NO_RECORD_IDS = new long[0];
+
    private final boolean isTrace = HornetQServerLogger.LOGGER.isTraceEnabled();
 
    private boolean empty = true;
@@ -95,9 +96,25 @@ final class PageSubscriptionImpl implements PageSubscription
 
    private final AtomicLong deliveredCount = new AtomicLong(0);
 
+   /**
+    * The last page read ahead by this subscription
+    */
+   private volatile long prefetchedPage = -1;
+
    // We only store the position for redeliveries. They will be read from the SoftCache again during delivery.
    private final java.util.Queue<PagePosition> redeliveries = new LinkedList<PagePosition>();
 
+   // The acks not stored yet, the next flush stores them as one record per page
+   private final List<PagedReference> pendingAcks = new ArrayList<PagedReference>();
+
+   private final Runnable flushAcksTask = new Runnable()
+   {
+      public void run()
+      {
+         flushAcks();
+      }
+   };
+
    PageSubscriptionImpl(final PageCursorProvider cursorProvider,
                         final PagingStore pageStore,
                         final StorageManager store,
@@ -320,22 +337,16 @@ final class PageSubscriptionImpl implements PageSubscription
          }
 
          // it will delete the page ack records
-         for (PagePosition pos : infoPG.acks)
+         for (long recordID : infoPG.clearACKs())
          {
-            if (pos.getRecordID() >= 0)
+            store.deleteCursorAcknowledgeTransactional(tx.getID(), recordID);
+            if (!persist)
             {
-               store.deleteCursorAcknowledgeTransactional(tx.getID(), pos.getRecordID());
-               if (!persist)
-               {
-                  // only need to set it once
-                  tx.setContainsPersistent();
-                  persist = true;
-               }
+               // only need to set it once
+               tx.setContainsPersistent();
+               persist = true;
             }
          }
-
-         infoPG.acks.clear();
-         infoPG.removedReferences.clear();
       }
 
       tx.addOperation(new TransactionOperationAbstract()
@@ -407,6 +418,14 @@ final class PageSubscriptionImpl implements PageSubscription
       }
       else
       {
+         if (!cache.isLive() && retPos.getPageNr() > prefetchedPage &&
+            retPos.getMessageNr() >= cache.getNumberOfMessages() - cache.getNumberOfMessages() / 4)
+         {
+            // the last quarter of the page is being delivered, the next page is read meanwhile
+            prefetchedPage = retPos.getPageNr();
+            cursorProvider.prefetchPageCache(retPos.getPageNr() + 1);
+         }
+
          PagedMessage serverMessage = cache.getMessage(retPos.getMessageNr());
 
          if (serverMessage != null)
@@ -462,12 +481,13 @@ final class PageSubscriptionImpl implements PageSubscription
 
    public void confirmPosition(final Transaction tx, final PagePosition position) throws Exception
    {
-      // if the cursor is persistent
+      // if the cursor is persistent, the positions confirmed by the transaction are stored as one record per
+      // page when it's prepared or committed
       if (persistent)
       {
-         store.storeCursorAcknowledgeTransactional(tx.getID(), cursorId, position);
+         tx.setContainsPersistent();
       }
-      installTXCallback(tx, position);
+      installTXCallback(tx, position, persistent);
 
    }
 
@@ -484,13 +504,69 @@ final class PageSubscriptionImpl implements PageSubscription
       }
    }
 
+   /**
+    * The ack is stored later by the executor, which stores every ack pending by then in a single
+    * transaction, with one record per page.
+    */
    @Override
    public void ack(final PagedReference reference) throws Exception
    {
-      // Need to do the ACK and counter atomically (inside a TX) or the counter could get out of sync
-      Transaction tx = new TransactionImpl(this.store);
-      ackTx(tx, reference);
-      tx.commit();
+      // removed right away, so a new iterator doesn't deliver the message again until the ack is stored
+      PageCursorInfo info = getPageInfo(reference.getPosition());
+      if (info != null)
+      {
+         info.remove(reference.getPosition());
+      }
+
+      boolean flush;
+
+      synchronized (pendingAcks)
+      {
+         flush = pendingAcks.isEmpty();
+         pendingAcks.add(reference);
+      }
+
+      if (flush)
+      {
+         executor.execute(flushAcksTask);
+      }
+   }
+
+   private void flushAcks()
+   {
+      List<PagedReference> references;
+
+      synchronized (pendingAcks)
+      {
+         if (pendingAcks.isEmpty())
+         {
+            return;
+         }
+
+         references = new ArrayList<PagedReference>(pendingAcks);
+         pendingAcks.clear();
+      }
+
+      try
+      {
+         // Need to do the ACK and counter atomically (inside a TX) or the counter could get out of sync
+         Transaction tx = new TransactionImpl(this.store);
+         for (PagedReference reference : references)
+         {
+            ackTx(tx, reference);
+         }
+         tx.commit();
+
+         // the acks arriving meanwhile are gathered by the next flush
+         while (!store.waitOnOperations(5000))
+         {
+            HornetQServerLogger.LOGGER.problemCompletingOperations(store.getContext());
+         }
+      }
+      catch (Exception e)
+      {
+         HornetQServerLogger.LOGGER.errorStoringPageAcks(this, e);
+      }
    }
 
    public boolean contains(PagedReference ref) throws Exception
@@ -627,10 +703,12 @@ final class PageSubscriptionImpl implements PageSubscription
    }
 
    @Override
-   public void reloadPreparedACK(final Transaction tx, final PagePosition position)
+   public void reloadPreparedACK(final Transaction tx, final PagePosition position) throws Exception
    {
       deliveredCount.incrementAndGet();
-      installTXCallback(tx, position);
+      installTXCallback(tx, position, false);
+      // the counter is decremented once the prepared transaction is committed
+      counter.increment(tx, -1);
    }
 
    @Override
@@ -668,11 +746,32 @@ final class PageSubscriptionImpl implements PageSubscription
       }
    }
 
+   @Override
+   public int getNumberOfAcks(final long page)
+   {
+      PageCursorInfo info = getPageInfo(page, false);
+
+      return info == null ? 0 : info.getNumberOfAcks();
+   }
+
+   @Override
+   public boolean isAcked(final PagePosition position)
+   {
+      PageCursorInfo info = getPageInfo(position.getPageNr(), false);
+
+      return info != null && info.isAck(position);
+   }
+
    /**
     * All the data associated with the cursor should go away here
     */
    public void destroy() throws Exception
    {
+      synchronized (pendingAcks)
+      {
+         pendingAcks.clear();
+      }
+
       final long tx = store.generateID();
       try
       {
@@ -683,13 +782,10 @@ final class PageSubscriptionImpl implements PageSubscription
          {
             for (PageCursorInfo cursor : consumedPages.values())
             {
-               for (PagePosition info : cursor.acks)
+               for (long recordID : cursor.getACKRecordIDs())
                {
-                  if (info.getRecordID() >= 0)
-                  {
-                     isPersistent = true;
-                     store.deleteCursorAcknowledgeTransactional(tx, info.getRecordID());
-                  }
+                  isPersistent = true;
+                  store.deleteCursorAcknowledgeTransactional(tx, recordID);
                }
                PagePosition completeInfo = cursor.getCompleteInfo();
                if (completeInfo != null && completeInfo.getRecordID() >= 0)
@@ -751,6 +847,11 @@ final class PageSubscriptionImpl implements PageSubscription
             if (pageInfo == null)
             {
                HornetQServerLogger.LOGGER.pageNotFound(pos);
+               // only one position of a page record carries its ID
+               if (pos.getRecordID() < 0)
+               {
+                  continue;
+               }
                if (txDeleteCursorOnReload == -1)
                {
                   txDeleteCursorOnReload = store.generateID();
@@ -805,6 +906,8 @@ final class PageSubscriptionImpl implements PageSubscription
 
    public void onDeletePage(Page deletedPage) throws Exception
    {
+      counter.pageDeleted(deletedPage.getPageId());
+
       PageCursorInfo info;
       synchronized (consumedPages)
       {
@@ -825,21 +928,17 @@ final class PageSubscriptionImpl implements PageSubscription
             }
             info.setCompleteInfo(null);
          }
-         for (PagePosition deleteInfo : info.acks)
+         for (long recordID : info.clearACKs())
          {
-            if (deleteInfo.getRecordID() >= 0)
+            try
             {
-               try
-               {
-                  store.deleteCursorAcknowledge(deleteInfo.getRecordID());
-               }
-               catch (Exception e)
-               {
-                  HornetQServerLogger.LOGGER.warn("Error while deleting page-complete-record", e);
-               }
+               store.deleteCursorAcknowledge(recordID);
+            }
+            catch (Exception e)
+            {
+               HornetQServerLogger.LOGGER.warn("Error while deleting page-complete-record", e);
             }
          }
-         info.acks.clear();
       }
    }
 
@@ -941,10 +1040,9 @@ final class PageSubscriptionImpl implements PageSubscription
    }
 
    /**
-    * @param tx
-    * @param position
+    * @param store whether the position still needs to be stored when the transaction is prepared or committed
     */
-   private void installTXCallback(final Transaction tx, final PagePosition position)
+   private void installTXCallback(final Transaction tx, final PagePosition position, final boolean store)
    {
       if (position.getRecordID() >= 0)
       {
@@ -963,8 +1061,45 @@ final class PageSubscriptionImpl implements PageSubscription
          tx.addOperation(cursorTX);
       }
 
-      cursorTX.addPositionConfirmation(this, position);
+      cursorTX.addPositionConfirmation(this, position, store, tx);
+
+   }
+
+   /**
+    * Stores the positions of a page confirmed by a transaction as a single record, whose ID is kept by
+    * the first of the positions.
+    */
+   private void storePositions(final Transaction tx, final List<PagePosition> positions) throws Exception
+   {
+      BitSet messageNrs = new BitSet();
+
+      PagePosition first = null;
 
+      for (PagePosition position : positions)
+      {
+         if (position.getMessageNr() < 0)
+         {
+            // a bookmark confirms no message, it keeps a record of its own
+            store.storeCursorAcknowledgeTransactional(tx.getID(), cursorId, position);
+         }
+         else
+         {
+            if (first == null)
+            {
+               first = position;
+            }
+
+            messageNrs.set(position.getMessageNr());
+         }
+      }
+
+      if (first != null)
+      {
+         first.setRecordID(store.storeCursorPageAcknowledgeTransactional(tx.getID(),
+                                                                         cursorId,
+                                                                         first.getPageNr(),
+                                                                         messageNrs));
+      }
    }
 
    private PageTransactionInfo getPageTransaction(final PagedReference reference)
@@ -999,6 +1134,9 @@ final class PageSubscriptionImpl implements PageSubscription
     * <p/>
     * This instance will be released as soon as the entire page is consumed, releasing the memory at
     * that point The ref counts are increased also when a message is ignored for any reason.
+    * <p/>
+    * The acked and removed messages are kept as bits indexed by their number on the page, and the
+    * IDs of the ack records as an array of longs, so an ack costs no object of its own.
     */
    private final class PageCursorInfo
    {
@@ -1007,12 +1145,18 @@ final class PageSubscriptionImpl implements PageSubscription
 
       private final long pageId;
 
-      // Confirmed ACKs on this page
-      private final Set<PagePosition> acks = Collections.synchronizedSet(new LinkedHashSet<PagePosition>());
+      // Confirmed ACKs on this page, guarded by this
+      private final BitSet acks;
+
+      // The IDs of the ack records stored for this page, guarded by this
+      private long[] ackRecordIDs = NO_RECORD_IDS;
+
+      private int numberOfAckRecords;
 
       private WeakReference<PageCache> cache;
 
-      private final Set<PagePosition> removedReferences = new ConcurrentHashSet<PagePosition>();
+      // guarded by this
+      private final BitSet removedReferences;
 
       // The page was live at the time of the creation
       private final boolean wasLive;
@@ -1037,8 +1181,15 @@ final class PageSubscriptionImpl implements PageSubscription
 
       public boolean isAck(PagePosition position)
       {
-         return completePage != null ||
-                acks.contains(position);
+         if (completePage != null)
+         {
+            return true;
+         }
+
+         synchronized (this)
+         {
+            return position.getMessageNr() >= 0 && acks.get(position.getMessageNr());
+         }
       }
 
       @Override
@@ -1057,6 +1208,8 @@ final class PageSubscriptionImpl implements PageSubscription
       {
          this.pageId = pageId;
          this.numberOfMessages = numberOfMessages;
+         this.acks = new BitSet(numberOfMessages);
+         this.removedReferences = new BitSet(numberOfMessages);
          if (cache != null)
          {
             wasLive = cache.isLive();
@@ -1115,14 +1268,17 @@ final class PageSubscriptionImpl implements PageSubscription
          checkDone();
       }
 
-      public boolean isRemoved(final PagePosition pos)
+      public synchronized boolean isRemoved(final PagePosition pos)
       {
-         return removedReferences.contains(pos);
+         return pos.getMessageNr() >= 0 && removedReferences.get(pos.getMessageNr());
       }
 
-      public void remove(final PagePosition position)
+      public synchronized void remove(final PagePosition position)
       {
-         removedReferences.add(position);
+         if (position.getMessageNr() >= 0)
+         {
+            removedReferences.set(position.getMessageNr());
+         }
       }
 
       public void addACK(final PagePosition posACK)
@@ -1157,10 +1313,69 @@ final class PageSubscriptionImpl implements PageSubscription
          }
       }
 
-      private boolean internalAddACK(final PagePosition posACK)
+      /**
+       * @return true if the message was not acked before, a bookmark (negative message number) is
+       * always added
+       */
+      private synchronized boolean internalAddACK(final PagePosition posACK)
+      {
+         if (posACK.getRecordID() >= 0)
+         {
+            if (numberOfAckRecords == ackRecordIDs.length)
+            {
+               ackRecordIDs = Arrays.copyOf(ackRecordIDs, Math.max(8, numberOfAckRecords * 2));
+            }
+
+            ackRecordIDs[numberOfAckRecords++] = posACK.getRecordID();
+         }
+
+         int messageNr = posACK.getMessageNr();
+
+         if (messageNr < 0)
+         {
+            return true;
+         }
+
+         removedReferences.set(messageNr);
+
+         if (acks.get(messageNr))
+         {
+            return false;
+         }
+
+         acks.set(messageNr);
+
+         return true;
+      }
+
+      public synchronized int getNumberOfAcks()
+      {
+         return acks.cardinality();
+      }
+
+      /**
+       * @return the IDs of the ack records stored for this page
+       */
+      public synchronized long[] getACKRecordIDs()
       {
-         removedReferences.add(posACK);
-         return acks.add(posACK);
+         return Arrays.copyOf(ackRecordIDs, numberOfAckRecords);
+      }
+
+      /**
+       * Forgets the acks of the page, once it's complete or deleted.
+       *
+       * @return the IDs of the ack records that were stored for this page
+       */
+      public synchronized long[] clearACKs()
+      {
+         long[] recordIDs = Arrays.copyOf(ackRecordIDs, numberOfAckRecords);
+
+         ackRecordIDs = NO_RECORD_IDS;
+         numberOfAckRecords = 0;
+         acks.clear();
+         removedReferences.clear();
+
+         return recordIDs;
       }
 
       /**
@@ -1202,7 +1417,18 @@ final class PageSubscriptionImpl implements PageSubscription
       private final Map<PageSubscriptionImpl, List<PagePosition>> pendingPositions =
          new HashMap<PageSubscriptionImpl, List<PagePosition>>();
 
-      private void addPositionConfirmation(final PageSubscriptionImpl cursor, final PagePosition position)
+      // The positions not stored yet, per subscription and page
+      private final Map<PageSubscriptionImpl, Map<Long, List<PagePosition>>> positionsToStore =
+         new HashMap<PageSubscriptionImpl, Map<Long, List<PagePosition>>>();
+
+      // Set once the positions are stored, as another operation may still confirm a position from its own
+      // beforeCommit
+      private boolean stored;
+
+      private void addPositionConfirmation(final PageSubscriptionImpl cursor,
+                                           final PagePosition position,
+                                           final boolean store,
+                                           final Transaction tx) throws Exception
       {
          List<PagePosition> list = pendingPositions.get(cursor);
 
@@ -1213,6 +1439,65 @@ final class PageSubscriptionImpl implements PageSubscription
          }
 
          list.add(position);
+
+         if (!store)
+         {
+            return;
+         }
+
+         if (stored)
+         {
+            cursor.storePositions(tx, Collections.singletonList(position));
+            return;
+         }
+
+         Map<Long, List<PagePosition>> pages = positionsToStore.get(cursor);
+
+         if (pages == null)
+         {
+            pages = new HashMap<Long, List<PagePosition>>();
+            positionsToStore.put(cursor, pages);
+         }
+
+         List<PagePosition> positions = pages.get(position.getPageNr());
+
+         if (positions == null)
+         {
+            positions = new ArrayList<PagePosition>();
+            pages.put(position.getPageNr(), positions);
+         }
+
+         positions.add(position);
+      }
+
+      @Override
+      public void beforePrepare(final Transaction tx) throws Exception
+      {
+         storePositions(tx);
+      }
+
+      @Override
+      public void beforeCommit(final Transaction tx) throws Exception
+      {
+         storePositions(tx);
+      }
+
+      private void storePositions(final Transaction tx) throws Exception
+      {
+         if (!stored)
+         {
+            stored = true;
+
+            for (Entry<PageSubscriptionImpl, Map<Long, List<PagePosition>>> entry : positionsToStore.entrySet())
+            {
+               for (List<PagePosition> positions : entry.getValue().values())
+               {
+                  entry.getKey().storePositions(tx, positions);
+               }
+            }
+
+            positionsToStore.clear();
+         }
       }
 
       @Override
@@ -1253,6 +1538,16 @@ final class PageSubscriptionImpl implements PageSubscription
 
       private volatile PagedReference lastRedelivery = null;
 
+      private volatile boolean isPriorityDelivery = false;
+
+      private volatile PagedReference lastPriorityDelivery = null;
+
+      /**
+       * The last message of high priority looked at, those before it were either delivered or left
+       * to be delivered in page order
+       */
+      private PagePosition lastPriorityPosition = null;
+
       /**
        * next element taken on hasNext test.
        * it has to be delivered on next next operation
@@ -1272,6 +1567,10 @@ final class PageSubscriptionImpl implements PageSubscription
                cachedNext = lastRedelivery;
             }
          }
+         else if (isPriorityDelivery)
+         {
+            cachedNext = lastPriorityDelivery;
+         }
          else
          {
             if (lastOperation == null)
@@ -1345,6 +1644,22 @@ final class PageSubscriptionImpl implements PageSubscription
                      isredelivery = false;
                   }
 
+                  PagedReference priorityMessage = nextPriorityMessage(tmpPosition);
+
+                  if (priorityMessage != null)
+                  {
+                     // A message of high priority was paged ahead, it's delivered before the ones in between
+                     isPriorityDelivery = true;
+                     lastPriorityDelivery = priorityMessage;
+
+                     return priorityMessage;
+                  }
+                  else
+                  {
+                     lastPriorityDelivery = null;
+                     isPriorityDelivery = false;
+                  }
+
                   message = internalGetNext(tmpPosition);
                }
 
@@ -1441,6 +1756,67 @@ final class PageSubscriptionImpl implements PageSubscription
          }
       }
 
+      /**
+       * Looks for a message of high priority paged after the current position that can be delivered
+       * ahead of the messages in between. Messages of a pending transaction or not matching the
+       * filter are left to be delivered in page order.
+       */
+      private PagedReference nextPriorityMessage(final PagePosition currentPosition)
+      {
+         PagePosition lookupPosition = lastPriorityPosition;
+
+         if (lookupPosition == null || currentPosition.getPageNr() > lookupPosition.getPageNr() ||
+            currentPosition.getPageNr() == lookupPosition.getPageNr() &&
+               currentPosition.getMessageNr() > lookupPosition.getMessageNr())
+         {
+            lookupPosition = currentPosition;
+         }
+
+         try
+         {
+            PagePosition priorityPosition;
+
+            while ((priorityPosition = cursorProvider.getNextPriorityPosition(lookupPosition)) != null)
+            {
+               lookupPosition = priorityPosition;
+
+               PageCursorInfo info = getPageInfo(priorityPosition.getPageNr(), false);
+
+               if (info != null && (info.isRemoved(priorityPosition) || info.getCompleteInfo() != null))
+               {
+                  continue;
+               }
+
+               PagedMessage pagedMessage = cursorProvider.getMessage(priorityPosition);
+
+               if (pagedMessage == null || !routed(pagedMessage))
+               {
+                  continue;
+               }
+
+               if (pagedMessage.getTransactionID() >= 0)
+               {
+                  PageTransactionInfo tx = pageStore.getPagingManager().getTransaction(pagedMessage.getTransactionID());
+                  if (tx == null || !tx.isCommit())
+                  {
+                     continue;
+                  }
+               }
+
+               if (match(pagedMessage.getMessage()))
+               {
+                  return cursorProvider.newReference(priorityPosition, pagedMessage, PageSubscriptionImpl.this);
+               }
+            }
+
+            return null;
+         }
+         finally
+         {
+            lastPriorityPosition = lookupPosition;
+         }
+      }
+
       /**
        * QueueImpl::deliver could be calling hasNext while QueueImpl.depage could be using next and hasNext as well.
        * It would be a rare race condition but I would prefer avoiding that scenario
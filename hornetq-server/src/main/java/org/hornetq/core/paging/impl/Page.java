@@ -14,9 +14,13 @@ package org.hornetq.core.paging.impl;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import org.hornetq.api.core.HornetQBuffer;
 import org.hornetq.api.core.HornetQBuffers;
@@ -48,6 +52,27 @@ public final class Page implements Comparable<Page>
 
    private static final byte END_BYTE = (byte) '}';
 
+   /**
+    * A block of records compressed together: the start byte, the compressed size, the size of the
+    * records, the compressed records and the end byte
+    */
+   private static final byte COMPRESSED_START_BYTE = (byte) '(';
+
+   private static final byte COMPRESSED_END_BYTE = (byte) ')';
+
+   public static final int SIZE_COMPRESSED_RECORD = DataConstants.SIZE_BYTE + DataConstants.SIZE_INT +
+      DataConstants.SIZE_INT + DataConstants.SIZE_BYTE;
+
+   /**
+    * The offset index of a page is kept on a file named after the page file plus this extension
+    */
+   public static final String INDEX_EXTENSION = ".index";
+
+   /**
+    * The records written are gathered up to this size before they are written to the file
+    */
+   private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
    // Attributes ----------------------------------------------------
 
    private final int pageId;
@@ -72,10 +97,52 @@ public final class Page implements Comparable<Page>
    private final SimpleString storeName;
 
    /**
-    * A list of subscriptions containing pending counters (with non tx adds) on this page
+    * The counters of the subscriptions with messages paged on this page, told once the page is closed
     */
    private Set<PageSubscriptionCounter> pendingCounters;
 
+   /**
+    * The offsets of the records read or written through this page, in order
+    */
+   private int[] offsets = new int[16];
+
+   private int numberOfOffsets;
+
+   /**
+    * The size of the file covered by {@link #offsets}, -1 when they don't cover the whole file
+    */
+   private int indexedSize = -1;
+
+   private boolean written;
+
+   /**
+    * The records written and not yet on the file, guarded by this page
+    */
+   private ByteBuffer writeBuffer;
+
+   /**
+    * Whether records were written to the file since the last sync, guarded by syncLock
+    */
+   private volatile boolean unsynced;
+
+   /**
+    * Taken before this page when syncing or closing, so writing doesn't wait for a sync to finish
+    */
+   private final Object syncLock = new Object();
+
+   /**
+    * Whether the records written are compressed in blocks, the records read are decompressed
+    * whatever this is
+    */
+   private boolean compressed;
+
+   private Deflater deflater;
+
+   /**
+    * The size of the records last read, once decompressed
+    */
+   private int recordsSize;
+
    public Page(final SimpleString storeName,
                final StorageManager storageManager,
                final SequentialFileFactory factory,
@@ -99,6 +166,20 @@ public final class Page implements Comparable<Page>
       this.pageCache = pageCache;
    }
 
+   public synchronized boolean isCompressed()
+   {
+      return compressed;
+   }
+
+   /**
+    * Sets whether the records written from now on are compressed. A compressed page has no offset
+    * index, its messages are only read by reading the entire page.
+    */
+   public synchronized void setCompressed(final boolean compressed)
+   {
+      this.compressed = compressed;
+   }
+
    public synchronized List<PagedMessage> read(StorageManager storage) throws Exception
    {
       if (isDebug)
@@ -111,8 +192,14 @@ public final class Page implements Comparable<Page>
          throw HornetQMessageBundle.BUNDLE.invalidPageIO();
       }
 
+      flushWrites();
+
       ArrayList<PagedMessage> messages = new ArrayList<PagedMessage>();
 
+      numberOfOffsets = 0;
+
+      boolean hasCompressedBlocks = false;
+
       size.set((int) file.size());
       // Using direct buffer, as described on https://jira.jboss.org/browse/HORNETQ-467
       ByteBuffer directBuffer = storage.allocateDirectBuffer((int) file.size());
@@ -128,6 +215,8 @@ public final class Page implements Comparable<Page>
          fileBuffer = HornetQBuffers.wrappedBuffer(directBuffer);
          fileBuffer.writerIndex(fileBuffer.capacity());
 
+         recordsSize = 0;
+
          while (fileBuffer.readable())
          {
             final int position = fileBuffer.readerIndex();
@@ -143,22 +232,9 @@ public final class Page implements Comparable<Page>
                   if (fileBuffer.readerIndex() + messageSize < fileBuffer.capacity() &&
                      fileBuffer.getByte(oldPos + messageSize) == Page.END_BYTE)
                   {
-                     PagedMessage msg = new PagedMessageImpl();
-                     msg.decode(fileBuffer);
-                     byte b = fileBuffer.readByte();
-                     if (b != Page.END_BYTE)
-                     {
-                        // Sanity Check: This would only happen if there is a bug on decode or any internal code, as
-                        // this
-                        // constraint was already checked
-                        throw new IllegalStateException("Internal error, it wasn't possible to locate END_BYTE " + b);
-                     }
-                     msg.initMessage(storage);
-                     if (isTrace)
-                     {
-                        HornetQServerLogger.LOGGER.trace("Reading message " + msg + " on pageId=" + this.pageId + " for address=" + storeName);
-                     }
-                     messages.add(msg);
+                     messages.add(decodeRecord(fileBuffer, storage));
+                     addOffset(position);
+                     recordsSize += fileBuffer.readerIndex() - position;
                   }
                   else
                   {
@@ -167,6 +243,17 @@ public final class Page implements Comparable<Page>
                   }
                }
             }
+            else if (byteRead == Page.COMPRESSED_START_BYTE)
+            {
+               if (!readCompressedBlock(fileBuffer, storage, messages))
+               {
+                  markFileAsSuspect(file.getFileName(), position, messages.size());
+                  break;
+               }
+
+               // the messages of a compressed block have no offset of their own on the file
+               hasCompressedBlocks = true;
+            }
             else
             {
                markFileAsSuspect(file.getFileName(), position, messages.size());
@@ -185,9 +272,307 @@ public final class Page implements Comparable<Page>
 
       numberOfMessages.set(messages.size());
 
+      indexedSize = suspiciousRecords || hasCompressedBlocks ? -1 : size.get();
+
       return messages;
    }
 
+   /**
+    * @return the size of the records last read, which is larger than the file for a compressed page
+    */
+   public int getRecordsSize()
+   {
+      return recordsSize;
+   }
+
+   private PagedMessage decodeRecord(final HornetQBuffer buffer, final StorageManager storage) throws Exception
+   {
+      PagedMessage msg = new PagedMessageImpl();
+      msg.decode(buffer);
+      byte b = buffer.readByte();
+      if (b != Page.END_BYTE)
+      {
+         // Sanity Check: This would only happen if there is a bug on decode or any internal code, as
+         // this
+         // constraint was already checked
+         throw new IllegalStateException("Internal error, it wasn't possible to locate END_BYTE " + b);
+      }
+      msg.initMessage(storage);
+      if (isTrace)
+      {
+         HornetQServerLogger.LOGGER.trace("Reading message " + msg + " on pageId=" + this.pageId + " for address=" + storeName);
+      }
+      return msg;
+   }
+
+   /**
+    * Reads the records of a compressed block, the start byte being already read.
+    *
+    * @return false if the block is damaged, in which case none of its messages is added
+    */
+   private boolean readCompressedBlock(final HornetQBuffer fileBuffer,
+                                       final StorageManager storage,
+                                       final List<PagedMessage> messages) throws Exception
+   {
+      if (fileBuffer.readerIndex() + 2 * DataConstants.SIZE_INT >= fileBuffer.capacity())
+      {
+         return false;
+      }
+
+      int compressedSize = fileBuffer.readInt();
+      int uncompressedSize = fileBuffer.readInt();
+
+      if (compressedSize <= 0 || uncompressedSize <= 0 ||
+         fileBuffer.readerIndex() + compressedSize >= fileBuffer.capacity() ||
+         fileBuffer.getByte(fileBuffer.readerIndex() + compressedSize) != Page.COMPRESSED_END_BYTE)
+      {
+         return false;
+      }
+
+      byte[] compressedRecords = new byte[compressedSize];
+      fileBuffer.readBytes(compressedRecords);
+      fileBuffer.readByte();
+
+      byte[] records = new byte[uncompressedSize];
+
+      Inflater inflater = new Inflater();
+      try
+      {
+         inflater.setInput(compressedRecords);
+
+         if (inflater.inflate(records) != uncompressedSize || !inflater.finished())
+         {
+            return false;
+         }
+      }
+      catch (DataFormatException e)
+      {
+         return false;
+      }
+      finally
+      {
+         inflater.end();
+      }
+
+      HornetQBuffer block = HornetQBuffers.wrappedBuffer(records);
+
+      List<PagedMessage> blockMessages = new ArrayList<PagedMessage>();
+
+      while (block.readable())
+      {
+         if (block.readByte() != Page.START_BYTE || block.readableBytes() < DataConstants.SIZE_INT)
+         {
+            return false;
+         }
+
+         int messageSize = block.readInt();
+
+         if (messageSize < 0 || block.readerIndex() + messageSize >= block.writerIndex() ||
+            block.getByte(block.readerIndex() + messageSize) != Page.END_BYTE)
+         {
+            return false;
+         }
+
+         blockMessages.add(decodeRecord(block, storage));
+      }
+
+      messages.addAll(blockMessages);
+
+      recordsSize += uncompressedSize;
+
+      return true;
+   }
+
+   /**
+    * Reads a single message through the offset index of the page, without reading the rest of the
+    * page.
+    *
+    * @return the message, or null if the page has no valid index for it, in which case the entire
+    * page has to be read
+    */
+   public synchronized PagedMessage readMessage(final int messageNumber, final StorageManager storage) throws Exception
+   {
+      if (!file.isOpen())
+      {
+         throw HornetQMessageBundle.BUNDLE.invalidPageIO();
+      }
+
+      return readMessage(messageNumber, readIndex(), storage);
+   }
+
+   /**
+    * Reads a single message through an index already read by {@link #readIndex()}, so a page read
+    * one message at a time doesn't have its index file parsed again for every message.
+    *
+    * @return the message, or null if the index doesn't match the page, in which case the entire
+    * page has to be read
+    */
+   public synchronized PagedMessage readMessage(final int messageNumber, final int[] index, final StorageManager storage) throws Exception
+   {
+      if (!file.isOpen())
+      {
+         throw HornetQMessageBundle.BUNDLE.invalidPageIO();
+      }
+
+      if (index == null || index.length == 0 || index[index.length - 1] != size.get() ||
+         messageNumber < 0 || messageNumber >= index.length - 1)
+      {
+         return null;
+      }
+
+      int recordSize = index[messageNumber + 1] - index[messageNumber];
+
+      ByteBuffer directBuffer = storage.allocateDirectBuffer(recordSize);
+      HornetQBuffer recordBuffer = null;
+      try
+      {
+         file.position(index[messageNumber]);
+         file.read(directBuffer);
+
+         directBuffer.rewind();
+
+         recordBuffer = HornetQBuffers.wrappedBuffer(directBuffer);
+         recordBuffer.writerIndex(recordSize);
+
+         // the index is only a hint, the record is checked the same way read() would
+         if (recordBuffer.readByte() != Page.START_BYTE ||
+            recordBuffer.readInt() + Page.SIZE_RECORD != recordSize ||
+            recordBuffer.getByte(recordSize - 1) != Page.END_BYTE)
+         {
+            return null;
+         }
+
+         PagedMessage msg = new PagedMessageImpl();
+         msg.decode(recordBuffer);
+         msg.initMessage(storage);
+
+         if (isTrace)
+         {
+            HornetQServerLogger.LOGGER.trace("Reading message " + msg + " through the index of pageId=" + this.pageId + " for address=" + storeName);
+         }
+
+         return msg;
+      }
+      finally
+      {
+         if (recordBuffer != null)
+         {
+            recordBuffer.byteBuf().unwrap().release();
+         }
+         storage.freeDirectBuffer(directBuffer);
+      }
+   }
+
+   /**
+    * The index file holds the size of the page file it was written for, the number of records and
+    * their offsets. It's not synced, anything not matching the page file makes it ignored.
+    *
+    * @return the offsets of the records followed by the size of the page file, or null if there's
+    * no valid index
+    */
+   public synchronized int[] readIndex() throws Exception
+   {
+      SequentialFile indexFile = fileFactory.createSequentialFile(file.getFileName() + INDEX_EXTENSION, 1);
+
+      if (!indexFile.exists())
+      {
+         return null;
+      }
+
+      indexFile.open();
+      try
+      {
+         int indexFileSize = (int) indexFile.size();
+
+         if (indexFileSize < 2 * DataConstants.SIZE_INT)
+         {
+            return null;
+         }
+
+         ByteBuffer buffer = ByteBuffer.allocate(indexFileSize);
+         indexFile.position(0);
+         indexFile.read(buffer);
+         buffer.rewind();
+
+         int pageSize = buffer.getInt();
+         int count = buffer.getInt();
+
+         if (pageSize != size.get() || count < 0 || (long) (count + 2) * DataConstants.SIZE_INT > indexFileSize)
+         {
+            return null;
+         }
+
+         int[] index = new int[count + 1];
+         int previous = -1;
+
+         for (int i = 0; i < count; i++)
+         {
+            index[i] = buffer.getInt();
+
+            if (index[i] <= previous || index[i] >= pageSize)
+            {
+               return null;
+            }
+
+            previous = index[i];
+         }
+
+         index[count] = pageSize;
+
+         return index;
+      }
+      finally
+      {
+         indexFile.close();
+      }
+   }
+
+   private void writeIndex() throws Exception
+   {
+      SequentialFile indexFile = fileFactory.createSequentialFile(file.getFileName() + INDEX_EXTENSION, 1);
+
+      if (indexFile.exists())
+      {
+         indexFile.delete();
+         indexFile = fileFactory.createSequentialFile(file.getFileName() + INDEX_EXTENSION, 1);
+      }
+
+      ByteBuffer buffer = fileFactory.newBuffer((numberOfOffsets + 2) * DataConstants.SIZE_INT);
+
+      HornetQBuffer wrap = HornetQBuffers.wrappedBuffer(buffer);
+      wrap.clear();
+
+      wrap.writeInt(indexedSize);
+      wrap.writeInt(numberOfOffsets);
+
+      for (int i = 0; i < numberOfOffsets; i++)
+      {
+         wrap.writeInt(offsets[i]);
+      }
+
+      buffer.rewind();
+
+      indexFile.open();
+      try
+      {
+         indexFile.writeDirect(buffer, false);
+      }
+      finally
+      {
+         indexFile.close();
+      }
+   }
+
+   private void addOffset(final int offset)
+   {
+      if (numberOfOffsets == offsets.length)
+      {
+         offsets = Arrays.copyOf(offsets, offsets.length * 2);
+      }
+
+      offsets[numberOfOffsets++] = offset;
+   }
+
    public synchronized void write(final PagedMessage message) throws Exception
    {
       if (!file.isOpen())
@@ -196,9 +581,22 @@ public final class Page implements Comparable<Page>
          return;
       }
 
-      ByteBuffer buffer = fileFactory.newBuffer(message.getEncodeSize() + Page.SIZE_RECORD);
+      int offset = size.get();
 
-      HornetQBuffer wrap = HornetQBuffers.wrappedBuffer(buffer);
+      int recordSize = message.getEncodeSize() + Page.SIZE_RECORD;
+
+      if (writeBuffer != null && writeBuffer.remaining() < recordSize)
+      {
+         flushWrites();
+      }
+
+      if (writeBuffer == null)
+      {
+         writeBuffer = fileFactory.newBuffer(Math.max(WRITE_BUFFER_SIZE, recordSize));
+         writeBuffer.clear();
+      }
+
+      HornetQBuffer wrap = HornetQBuffers.wrappedBuffer(writeBuffer.slice());
       wrap.clear();
 
       wrap.writeByte(Page.START_BYTE);
@@ -209,9 +607,7 @@ public final class Page implements Comparable<Page>
       wrap.setInt(1, endIndex - startIndex); // The encoded length
       wrap.writeByte(Page.END_BYTE);
 
-      buffer.rewind();
-
-      file.writeDirect(buffer, false);
+      writeBuffer.position(writeBuffer.position() + recordSize);
 
       if (pageCache != null)
       {
@@ -219,14 +615,129 @@ public final class Page implements Comparable<Page>
       }
 
       numberOfMessages.incrementAndGet();
-      size.addAndGet(buffer.limit());
+      size.addAndGet(recordSize);
+
+      if (!compressed && indexedSize == offset)
+      {
+         addOffset(offset);
+         indexedSize += recordSize;
+      }
+      else
+      {
+         indexedSize = -1;
+      }
+
+      written = true;
 
       storageManager.pageWrite(message, pageId);
    }
 
+   /**
+    * Writes the records gathered so far to the file and syncs it. Records can be written to the
+    * page while it's being synced, they are synced by the next call.
+    */
    public void sync() throws Exception
    {
-      file.sync();
+      synchronized (syncLock)
+      {
+         synchronized (this)
+         {
+            flushWrites();
+         }
+
+         if (unsynced && file.isOpen())
+         {
+            unsynced = false;
+            file.sync();
+         }
+      }
+   }
+
+   /**
+    * Writes the records gathered so far to the file, without syncing it.
+    */
+   public synchronized void flush() throws Exception
+   {
+      flushWrites();
+   }
+
+   /**
+    * Writes the records gathered by {@link #write(PagedMessage)} to the file in a single write.
+    */
+   private void flushWrites() throws Exception
+   {
+      if (writeBuffer != null && writeBuffer.position() > 0)
+      {
+         writeBuffer.flip();
+
+         ByteBuffer block = compressed ? compress(writeBuffer) : null;
+
+         file.writeDirect(block != null ? block : writeBuffer, false);
+         writeBuffer.clear();
+         unsynced = true;
+      }
+   }
+
+   /**
+    * @return the records as a compressed block, or null if compressing doesn't make them smaller
+    */
+   private ByteBuffer compress(final ByteBuffer records)
+   {
+      int length = records.remaining();
+
+      byte[] input;
+      int inputOffset;
+
+      if (records.hasArray())
+      {
+         input = records.array();
+         inputOffset = records.arrayOffset() + records.position();
+      }
+      else
+      {
+         input = new byte[length];
+         records.duplicate().get(input);
+         inputOffset = 0;
+      }
+
+      if (deflater == null)
+      {
+         deflater = new Deflater(Deflater.BEST_SPEED);
+      }
+
+      deflater.reset();
+      deflater.setInput(input, inputOffset, length);
+      deflater.finish();
+
+      byte[] output = new byte[length];
+      int compressedSize = 0;
+
+      while (!deflater.finished() && compressedSize < output.length)
+      {
+         int deflated = deflater.deflate(output, compressedSize, output.length - compressedSize);
+
+         if (deflated == 0)
+         {
+            break;
+         }
+
+         compressedSize += deflated;
+      }
+
+      if (!deflater.finished() || compressedSize + Page.SIZE_COMPRESSED_RECORD >= length)
+      {
+         return null;
+      }
+
+      ByteBuffer block = fileFactory.newBuffer(compressedSize + Page.SIZE_COMPRESSED_RECORD);
+      block.put(Page.COMPRESSED_START_BYTE);
+      block.putInt(compressedSize);
+      block.putInt(length);
+      block.put(output, 0, compressedSize);
+      block.put(Page.COMPRESSED_END_BYTE);
+      block.flip();
+
+      return block;
    }
 
    public void open() throws Exception
@@ -237,9 +748,38 @@ public final class Page implements Comparable<Page>
       }
       size.set((int) file.size());
       file.position(0);
+
+      if (size.get() == 0)
+      {
+         numberOfOffsets = 0;
+         indexedSize = 0;
+      }
+   }
+
+   /**
+    * Closes a page opened only to read some of its messages through its index. Unlike
+    * {@link #close()} this is not told to the replication, as nothing was written to the page.
+    */
+   public synchronized void closeRead() throws Exception
+   {
+      if (file.isOpen())
+      {
+         file.close();
+      }
    }
 
-   public synchronized void close() throws Exception
+   public void close() throws Exception
+   {
+      synchronized (syncLock)
+      {
+         synchronized (this)
+         {
+            internalClose();
+         }
+      }
+   }
+
+   private void internalClose() throws Exception
    {
       if (storageManager != null)
       {
@@ -251,14 +791,52 @@ public final class Page implements Comparable<Page>
          // leave it to the soft cache to decide when to release it now
          pageCache = null;
       }
+
+      if (file.isOpen())
+      {
+         flushWrites();
+
+         // a sync asked for before the page was closed has to cover what was written to it
+         if (unsynced)
+         {
+            unsynced = false;
+            file.sync();
+         }
+      }
+
+      writeBuffer = null;
+
+      if (deflater != null)
+      {
+         deflater.end();
+         deflater = null;
+      }
+
       file.close();
 
+      // the index is written once the page is complete, a page reopened to be written to again
+      // (after a restart) gets it written again as read() knows the offsets of the previous records
+      if (written && numberOfOffsets > 0 && indexedSize == size.get())
+      {
+         try
+         {
+            writeIndex();
+         }
+         catch (Exception e)
+         {
+            HornetQServerLogger.LOGGER.debug("Couldn't write the index of pageId=" + pageId + " on address=" + storeName, e);
+         }
+      }
+
+      written = false;
+
       Set<PageSubscriptionCounter> counters = getPendingCounters();
       if (counters != null)
       {
+         // the counters can store the count of this page now
          for (PageSubscriptionCounter counter : counters)
          {
-            counter.cleanupNonTXCounters(this.getPageId());
+            counter.pageClosed(this.getPageId());
          }
       }
    }
@@ -298,6 +876,13 @@ public final class Page implements Comparable<Page>
 
       try
       {
+         SequentialFile indexFile = fileFactory.createSequentialFile(file.getFileName() + INDEX_EXTENSION, 1);
+
+         if (indexFile.exists())
+         {
+            indexFile.delete();
+         }
+
          if (suspiciousRecords)
          {
             HornetQServerLogger.LOGGER.pageInvalid(file.getFileName(), file.getFileName());
@@ -395,7 +980,7 @@ public final class Page implements Comparable<Page>
    }
 
    /**
-    * This will indicate a page that will need to be called on cleanup when the page has been closed and confirmed
+    * This will indicate a counter that will need to be called when the page has been closed
     *
     * @param pageSubscriptionCounter
     */
@@ -20,6 +20,7 @@ import java.util.concurrent.TimeUnit;
 import org.hornetq.api.core.HornetQExceptionType;
 import org.hornetq.core.paging.PagingStore;
 import org.hornetq.core.persistence.OperationContext;
+import org.hornetq.core.server.HornetQServerLogger;
 
 /**
  * This will batch multiple calls waiting to perform a sync in a single call.
@@ -38,6 +39,8 @@ final class PageSyncTimer
 
    private boolean pendingSync;
 
+   private boolean pendingFlush;
+
    private final long timeSync;
 
    private final Runnable runnable = new Runnable()
@@ -74,13 +77,30 @@ final class PageSyncTimer
       syncOperations.add(ctx);
    }
 
+   /**
+    * Writes the messages gathered by the store to the file on the next tick, even if no sync was
+    * asked for by then.
+    */
+   synchronized void addFlush()
+   {
+      if (!pendingSync)
+      {
+         pendingSync = true;
+         scheduledExecutor.schedule(runnable, timeSync, TimeUnit.NANOSECONDS);
+      }
+      pendingFlush = true;
+   }
+
    private void tick()
    {
       OperationContext [] pendingSyncsArray;
+      boolean flush;
       synchronized (this)
       {
 
          pendingSync = false;
+         flush = pendingFlush;
+         pendingFlush = false;
          pendingSyncsArray = new OperationContext[syncOperations.size()];
          pendingSyncsArray = syncOperations.toArray(pendingSyncsArray);
          syncOperations.clear();
@@ -92,9 +112,19 @@ final class PageSyncTimer
          {
             store.ioSync();
          }
+         else if (flush)
+         {
+            store.ioFlush();
+         }
       }
       catch (Exception e)
       {
+         if (pendingSyncsArray.length == 0)
+         {
+            // no producer is waiting on this flush to get the error back
+            HornetQServerLogger.LOGGER.pageFlushError(store.getAddress(), e);
+         }
+
          for (OperationContext ctx : pendingSyncsArray)
          {
             ctx.onError(HornetQExceptionType.IO_ERROR.getCode(), e.getMessage());
@@ -12,11 +12,13 @@
  */
 package org.hornetq.core.paging.impl;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.hornetq.api.core.SimpleString;
@@ -56,6 +58,33 @@ public final class PagingManagerImpl implements PagingManager
    private final ConcurrentMap</*TransactionID*/Long, PageTransactionInfo> transactions =
       new ConcurrentHashMap<Long, PageTransactionInfo>();
 
+   private final long globalMaxSize;
+
+   // the global size under which the stores picked are released, so they don't flip on every message
+   private final long globalLowWaterMark;
+
+   // Bytes consumed by the messages of all the stores on the memory
+   private final AtomicLong globalSizeInBytes = new AtomicLong();
+
+   /**
+    * The stores told to apply their address-full-policy while the global size is over
+    * {@link #globalMaxSize}, guarded by itself
+    */
+   private final List<PagingStore> storesOverGlobalMaxSize = new ArrayList<PagingStore>();
+
+   private volatile boolean globalFull;
+
+   /**
+    * The global size over which another store is picked, guarded by {@link #storesOverGlobalMaxSize}
+    */
+   private volatile long nextPickSize;
+
+   /**
+    * How many times the global size went over the global max size. Only the first time is logged as
+    * a warning, the following ones at debug level. Guarded by {@link #storesOverGlobalMaxSize}
+    */
+   private long globalFullCount;
+
    // Static
    // --------------------------------------------------------------------------------------------------------------------------
 
@@ -66,9 +95,19 @@ public final class PagingManagerImpl implements PagingManager
 
    public PagingManagerImpl(final PagingStoreFactory pagingSPI,
                             final HierarchicalRepository<AddressSettings> addressSettingsRepository)
+   {
+      this(pagingSPI, addressSettingsRepository, -1);
+   }
+
+   public PagingManagerImpl(final PagingStoreFactory pagingSPI,
+                            final HierarchicalRepository<AddressSettings> addressSettingsRepository,
+                            final long globalMaxSize)
    {
       pagingStoreFactory = pagingSPI;
       this.addressSettingsRepository = addressSettingsRepository;
+      this.globalMaxSize = globalMaxSize;
+      this.globalLowWaterMark = globalMaxSize - globalMaxSize / 10;
+      this.nextPickSize = globalMaxSize;
       addressSettingsRepository.registerListener(this);
    }
 
@@ -173,6 +212,10 @@ public final class PagingManagerImpl implements PagingManager
          PagingStore store = stores.remove(storeName);
          if (store != null)
          {
+            synchronized (storesOverGlobalMaxSize)
+            {
+               storesOverGlobalMaxSize.remove(store);
+            }
             store.stop();
          }
       }
@@ -230,6 +273,158 @@ public final class PagingManagerImpl implements PagingManager
    }
 
 
+   public void addSize(final PagingStore store, final int size)
+   {
+      // without a global max size the stores don't all contend on the global size for every message
+      if (globalMaxSize <= 0)
+      {
+         return;
+      }
+
+      long newGlobalSize = globalSizeInBytes.addAndGet(size);
+
+      if (size > 0)
+      {
+         // once every store is over the global max size there's nothing left to pick
+         if (newGlobalSize > nextPickSize && !store.isOverGlobalMaxSize())
+         {
+            pickLargestStore();
+         }
+      }
+      else if (globalFull && newGlobalSize <= globalLowWaterMark)
+      {
+         releaseStores();
+      }
+   }
+
+   /**
+    * Tells the largest store not told yet to apply its address-full-policy. The next store is only
+    * picked once the global size grew by another twentieth of the global max size, so the messages
+    * in flight to the stores picked before don't get every store picked at once.
+    */
+   private void pickLargestStore()
+   {
+      synchronized (storesOverGlobalMaxSize)
+      {
+         long globalSize = globalSizeInBytes.get();
+
+         if (globalSize <= nextPickSize)
+         {
+            return;
+         }
+
+         PagingStore largest = null;
+
+         for (PagingStore store : stores.values())
+         {
+            if (!store.isOverGlobalMaxSize() &&
+               (largest == null || store.getAddressSize() > largest.getAddressSize()))
+            {
+               largest = store;
+            }
+         }
+
+         if (largest == null)
+         {
+            return;
+         }
+
+         if (!globalFull)
+         {
+            globalFullCount++;
+         }
+
+         if (globalFullCount == 1)
+         {
+            HornetQServerLogger.LOGGER.overGlobalMaxSize(largest.getAddress(), largest.getAddressSize(), globalSize, globalMaxSize);
+         }
+         else if (HornetQServerLogger.LOGGER.isDebugEnabled())
+         {
+            HornetQServerLogger.LOGGER.debug("Global size " + globalSize + " is over global-max-size " + globalMaxSize +
+                                                ", address " + largest.getAddress() + " of size " + largest.getAddressSize() +
+                                                " is considered full");
+         }
+
+         globalFull = true;
+
+         nextPickSize = globalSize + globalMaxSize / 20;
+
+         storesOverGlobalMaxSize.add(largest);
+
+         largest.setOverGlobalMaxSize(true);
+      }
+   }
+
+   /**
+    * Releases every store picked once the global size is a tenth under the global max size.
+    */
+   private void releaseStores()
+   {
+      synchronized (storesOverGlobalMaxSize)
+      {
+         long globalSize = globalSizeInBytes.get();
+
+         if (!globalFull || globalSize > globalLowWaterMark)
+         {
+            return;
+         }
+
+         if (globalFullCount == 1)
+         {
+            HornetQServerLogger.LOGGER.underGlobalMaxSize(globalSize, globalMaxSize);
+         }
+         else if (HornetQServerLogger.LOGGER.isDebugEnabled())
+         {
+            HornetQServerLogger.LOGGER.debug("Global size " + globalSize + " is back under global-max-size " + globalMaxSize +
+                                                ", releasing " + storesOverGlobalMaxSize);
+         }
+
+         globalFull = false;
+
+         nextPickSize = globalMaxSize;
+
+         for (PagingStore store : storesOverGlobalMaxSize)
+         {
+            store.setOverGlobalMaxSize(false);
+         }
+
+         storesOverGlobalMaxSize.clear();
+      }
+   }
+
+   public long getGlobalSize()
+   {
+      if (globalMaxSize > 0)
+      {
+         return globalSizeInBytes.get();
+      }
+
+      // the global size is only kept with a global max size, it's added up from the stores otherwise
+      long globalSize = 0;
+
+      for (PagingStore store : stores.values())
+      {
+         globalSize += store.getAddressSize();
+      }
+
+      return globalSize;
+   }
+
+   public long getGlobalMaxSize()
+   {
+      return globalMaxSize;
+   }
+
+   public boolean isGlobalFull()
+   {
+      return globalFull;
+   }
+
+   public long getGlobalDepageSize()
+   {
+      return globalMaxSize <= 0 ? -1 : globalMaxSize / Math.max(1, stores.size());
+   }
+
    @Override
    public boolean isStarted()
    {
@@ -21,7 +21,9 @@ import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
 
 import org.hornetq.api.core.SimpleString;
@@ -29,8 +31,10 @@ import org.hornetq.core.journal.IOCriticalErrorListener;
 import org.hornetq.core.journal.SequentialFileFactory;
 import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
 import org.hornetq.core.paging.PagingManager;
+import org.hornetq.core.paging.PagingPlacementPolicy;
 import org.hornetq.core.paging.PagingStore;
 import org.hornetq.core.paging.PagingStoreFactory;
+import org.hornetq.core.paging.cursor.impl.PageCacheBudget;
 import org.hornetq.core.persistence.StorageManager;
 import org.hornetq.core.server.HornetQServerLogger;
 import org.hornetq.core.settings.HierarchicalRepository;
@@ -53,7 +57,13 @@ public class PagingStoreFactoryNIO implements PagingStoreFactory
 
    // Attributes ----------------------------------------------------
 
-   private final String directory;
+   // the paging directory first, then the stripe directories
+   private final String[] directories;
+
+   private final PagingPlacementPolicy placementPolicy;
+
+   // guarded by this
+   private int nextDirectory;
 
    private final ExecutorFactory executorFactory;
 
@@ -69,20 +79,76 @@ public class PagingStoreFactoryNIO implements PagingStoreFactory
 
    private final IOCriticalErrorListener critialErrorListener;
 
+   private final PageCacheBudget cacheBudget;
+
    public PagingStoreFactoryNIO(final StorageManager storageManager, final String directory,
                                 final long syncTimeout,
                                 final ScheduledExecutorService scheduledExecutor,
                                 final ExecutorFactory executorFactory,
                                 final boolean syncNonTransactional,
                                 final IOCriticalErrorListener critialErrorListener)
+   {
+      this(storageManager,
+           directory,
+           syncTimeout,
+           scheduledExecutor,
+           executorFactory,
+           syncNonTransactional,
+           critialErrorListener,
+           -1);
+   }
+
+   /**
+    * @param pageCacheMaxSize the number of bytes the page caches of all the stores may use, -1 if
+    *                         they are only bounded by their page-max-cache-size
+    */
+   public PagingStoreFactoryNIO(final StorageManager storageManager, final String directory,
+                                final long syncTimeout,
+                                final ScheduledExecutorService scheduledExecutor,
+                                final ExecutorFactory executorFactory,
+                                final boolean syncNonTransactional,
+                                final IOCriticalErrorListener critialErrorListener,
+                                final long pageCacheMaxSize)
+   {
+      this(storageManager,
+           directory,
+           syncTimeout,
+           scheduledExecutor,
+           executorFactory,
+           syncNonTransactional,
+           critialErrorListener,
+           pageCacheMaxSize,
+           Collections.<String>emptyList(),
+           PagingPlacementPolicy.ROUND_ROBIN);
+   }
+
+   /**
+    * @param stripeDirectories the directories where stores are placed besides the paging directory
+    * @param placementPolicy   how the directory of a new store is chosen
+    */
+   public PagingStoreFactoryNIO(final StorageManager storageManager, final String directory,
+                                final long syncTimeout,
+                                final ScheduledExecutorService scheduledExecutor,
+                                final ExecutorFactory executorFactory,
+                                final boolean syncNonTransactional,
+                                final IOCriticalErrorListener critialErrorListener,
+                                final long pageCacheMaxSize,
+                                final List<String> stripeDirectories,
+                                final PagingPlacementPolicy placementPolicy)
    {
       this.storageManager = storageManager;
-      this.directory = directory;
+      // a directory listed twice would have its stores reloaded twice
+      Set<String> allDirectories = new LinkedHashSet<String>();
+      allDirectories.add(directory);
+      allDirectories.addAll(stripeDirectories);
+      this.directories = allDirectories.toArray(new String[allDirectories.size()]);
+      this.placementPolicy = placementPolicy;
       this.executorFactory = executorFactory;
       this.syncNonTransactional = syncNonTransactional;
       this.scheduledExecutor = scheduledExecutor;
       this.syncTimeout = syncTimeout;
       this.critialErrorListener = critialErrorListener;
+      this.cacheBudget = pageCacheMaxSize > 0 ? new PageCacheBudget(pageCacheMaxSize) : null;
    }
 
    // Public --------------------------------------------------------
@@ -104,7 +170,8 @@ public class PagingStoreFactoryNIO implements PagingStoreFactory
                                  address,
                                  settings,
                                  executorFactory.getExecutor(),
-                                 syncNonTransactional);
+                                 syncNonTransactional,
+                                 cacheBudget);
    }
 
    public synchronized SequentialFileFactory newFileFactory(final SimpleString address) throws Exception
@@ -112,7 +179,10 @@ public class PagingStoreFactoryNIO implements PagingStoreFactory
 
       String guid = UUIDGenerator.getInstance().generateStringUUID();
 
-      SequentialFileFactory factory = newFileFactory(guid);
+      // the directory of the store is found again on reload by the address file it holds
+      String directory = chooseDirectory();
+
+      SequentialFileFactory factory = newFileFactory(directory, guid);
 
       factory.createDirs();
 
@@ -143,17 +213,18 @@ public class PagingStoreFactoryNIO implements PagingStoreFactory
 
    public List<PagingStore> reloadStores(final HierarchicalRepository<AddressSettings> addressSettingsRepository) throws Exception
    {
-      File pageDirectory = new File(directory);
-
-      File[] files = pageDirectory.listFiles();
+      ArrayList<PagingStore> storesReturn = new ArrayList<PagingStore>();
 
-      if (files == null)
+      for (String directory : directories)
       {
-         return Collections.<PagingStore>emptyList();
-      }
-      else
-      {
-         ArrayList<PagingStore> storesReturn = new ArrayList<PagingStore>(files.length);
+         File pageDirectory = new File(directory);
+
+         File[] files = pageDirectory.listFiles();
+
+         if (files == null)
+         {
+            continue;
+         }
 
          for (File file : files)
          {
@@ -183,7 +254,7 @@ public class PagingStoreFactoryNIO implements PagingStoreFactory
 
             SimpleString address = new SimpleString(addressString);
 
-            SequentialFileFactory factory = newFileFactory(guid);
+            SequentialFileFactory factory = newFileFactory(directory, guid);
 
             AddressSettings settings = addressSettingsRepository.getMatch(address.toString());
 
@@ -197,17 +268,72 @@ public class PagingStoreFactoryNIO implements PagingStoreFactory
                                                     address,
                                                     settings,
                                                     executorFactory.getExecutor(),
-                                                    syncNonTransactional);
+                                                    syncNonTransactional,
+                                                    cacheBudget);
 
             storesReturn.add(store);
          }
-
-         return storesReturn;
       }
+
+      return storesReturn;
    }
 
-   private SequentialFileFactory newFileFactory(final String directoryName)
+   private SequentialFileFactory newFileFactory(final String directory, final String directoryName)
    {
       return new NIOSequentialFileFactory(directory + File.separatorChar + directoryName, false, critialErrorListener);
    }
+
+   /**
+    * Chooses the directory of a new store among the paging directories, as the placement policy
+    * says.
+    */
+   private String chooseDirectory()
+   {
+      if (directories.length == 1)
+      {
+         return directories[0];
+      }
+
+      if (placementPolicy == PagingPlacementPolicy.LEAST_USED)
+      {
+         String chosen = directories[0];
+
+         long chosenSpace = -1;
+
+         for (String directory : directories)
+         {
+            long space = getUsableSpace(directory);
+
+            if (space > chosenSpace)
+            {
+               chosen = directory;
+               chosenSpace = space;
+            }
+         }
+
+         return chosen;
+      }
+
+      String chosen = directories[nextDirectory];
+
+      nextDirectory = (nextDirectory + 1) % directories.length;
+
+      return chosen;
+   }
+
+   /**
+    * @return the usable space of the device of a directory, looking at its closest existing parent
+    * if the directory wasn't created yet
+    */
+   private static long getUsableSpace(final String directory)
+   {
+      File file = new File(directory).getAbsoluteFile();
+
+      while (file != null && !file.exists())
+      {
+         file = file.getParentFile();
+      }
+
+      return file == null ? 0 : file.getUsableSpace();
+   }
 }
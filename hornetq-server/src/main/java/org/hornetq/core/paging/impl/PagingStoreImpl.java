@@ -22,8 +22,11 @@ import org.hornetq.core.paging.PagingStore;
 import org.hornetq.core.paging.PagingStoreFactory;
 import org.hornetq.core.paging.cursor.LivePageCache;
 import org.hornetq.core.paging.cursor.PageCursorProvider;
+import org.hornetq.core.paging.cursor.PageSubscriptionCounter;
 import org.hornetq.core.paging.cursor.impl.LivePageCacheImpl;
+import org.hornetq.core.paging.cursor.impl.PageCacheBudget;
 import org.hornetq.core.paging.cursor.impl.PageCursorProviderImpl;
+import org.hornetq.core.paging.cursor.impl.PagePositionImpl;
 import org.hornetq.core.persistence.StorageManager;
 import org.hornetq.core.replication.ReplicationManager;
 import org.hornetq.core.server.HornetQMessageBundle;
@@ -118,8 +121,18 @@ public class PagingStoreImpl implements PagingStore
 
    private volatile AtomicBoolean blocking = new AtomicBoolean(false);
 
+   // Set by the PagingManager while the memory used by all the stores is over the global max size
+   private volatile boolean overGlobalMaxSize;
+
+   private volatile boolean pageCompression;
+
+   private volatile boolean priorityDepaging;
+
    private static final boolean isTrace = HornetQServerLogger.LOGGER.isTraceEnabled();
 
+   // The priority the clients give to a message by default, only the messages above it are depaged first
+   private static final byte DEFAULT_MESSAGE_PRIORITY = 4;
+
    public PagingStoreImpl(final SimpleString address,
                           final ScheduledExecutorService scheduledExecutor,
                           final long syncTimeout,
@@ -131,6 +144,36 @@ public class PagingStoreImpl implements PagingStore
                           final AddressSettings addressSettings,
                           final Executor executor,
                           final boolean syncNonTransactional)
+   {
+      this(address,
+           scheduledExecutor,
+           syncTimeout,
+           pagingManager,
+           storageManager,
+           fileFactory,
+           storeFactory,
+           storeName,
+           addressSettings,
+           executor,
+           syncNonTransactional,
+           null);
+   }
+
+   /**
+    * @param cacheBudget the budget shared with the page caches of the other addresses, or null
+    */
+   public PagingStoreImpl(final SimpleString address,
+                          final ScheduledExecutorService scheduledExecutor,
+                          final long syncTimeout,
+                          final PagingManager pagingManager,
+                          final StorageManager storageManager,
+                          final SequentialFileFactory fileFactory,
+                          final PagingStoreFactory storeFactory,
+                          final SimpleString storeName,
+                          final AddressSettings addressSettings,
+                          final Executor executor,
+                          final boolean syncNonTransactional,
+                          final PageCacheBudget cacheBudget)
    {
       if (pagingManager == null)
       {
@@ -177,7 +220,8 @@ public class PagingStoreImpl implements PagingStore
       this.cursorProvider = new PageCursorProviderImpl(this,
          this.storageManager,
          executor,
-         addressSettings.getPageCacheMaxSize());
+         addressSettings.getPageCacheMaxSize(),
+         cacheBudget);
 
    }
 
@@ -192,6 +236,10 @@ public class PagingStoreImpl implements PagingStore
 
       addressFullMessagePolicy = addressSettings.getAddressFullMessagePolicy();
 
+      pageCompression = addressSettings.isPageCompression();
+
+      priorityDepaging = addressSettings.isPriorityDepaging();
+
       if (cursorProvider != null)
       {
          cursorProvider.setCacheMaxSize(addressSettings.getPageCacheMaxSize());
@@ -331,19 +379,46 @@ public class PagingStoreImpl implements PagingStore
 
    public void ioSync() throws Exception
    {
+      Page page;
+
       lock.readLock().lock();
 
       try
       {
-         if (currentPage != null)
-         {
-            currentPage.sync();
-         }
+         page = currentPage;
       }
       finally
       {
          lock.readLock().unlock();
       }
+
+      // the sync is done without the lock so messages keep being paged meanwhile, a page closed
+      // in between was synced when closed
+      if (page != null)
+      {
+         page.sync();
+      }
+   }
+
+   public void ioFlush() throws Exception
+   {
+      Page page;
+
+      lock.readLock().lock();
+
+      try
+      {
+         page = currentPage;
+      }
+      finally
+      {
+         lock.readLock().unlock();
+      }
+
+      if (page != null)
+      {
+         page.flush();
+      }
    }
 
    public void processReload() throws Exception
@@ -590,6 +665,8 @@ public class PagingStoreImpl implements PagingStore
 
       Page page = new Page(storeName, storageManager, fileFactory, file, pageNumber);
 
+      page.setCompressed(pageCompression);
+
       // To create the file
       file.open();
 
@@ -728,9 +805,9 @@ public class PagingStoreImpl implements PagingStore
 
    public boolean checkMemory(final Runnable runWhenAvailable)
    {
-      if (addressFullMessagePolicy == AddressFullMessagePolicy.BLOCK && maxSize != -1)
+      if (addressFullMessagePolicy == AddressFullMessagePolicy.BLOCK)
       {
-         if (sizeInBytes.get() > maxSize)
+         if (isOverMaxSize())
          {
             OurRunnable ourRunnable = new OurRunnable(runWhenAvailable);
 
@@ -740,7 +817,7 @@ public class PagingStoreImpl implements PagingStore
             // has been added, but the check to execute was done before the element was added
             // NOTE! We do not fix this race by locking the whole thing, doing this check provides
             // MUCH better performance in a highly concurrent environment
-            if (sizeInBytes.get() <= maxSize)
+            if (!isOverMaxSize())
             {
                // run it now
                ourRunnable.run();
@@ -754,9 +831,9 @@ public class PagingStoreImpl implements PagingStore
             return true;
          }
       }
-      else if (addressFullMessagePolicy == AddressFullMessagePolicy.FAIL && maxSize != -1)
+      else if (addressFullMessagePolicy == AddressFullMessagePolicy.FAIL)
       {
-         if (sizeInBytes.get() > maxSize)
+         if (isOverMaxSize())
          {
             return false;
          }
@@ -767,34 +844,39 @@ public class PagingStoreImpl implements PagingStore
       return true;
    }
 
-   public void addSize(final int size)
+   /**
+    * Used by the BLOCK and FAIL policies, which consider -1 as no max size
+    */
+   private boolean isOverMaxSize()
    {
-      if (addressFullMessagePolicy == AddressFullMessagePolicy.BLOCK)
+      return overGlobalMaxSize || maxSize != -1 && sizeInBytes.get() > maxSize;
+   }
+
+   private void releaseBlockedProducers()
+   {
+      if (!isOverMaxSize() && !onMemoryFreedRunnables.isEmpty())
       {
-         if (maxSize != -1)
+         executor.execute(memoryFreedRunnablesExecutor);
+         if (blocking.get())
          {
-            long newSize = sizeInBytes.addAndGet(size);
-
-            if (newSize <= maxSize)
-            {
-               if (!onMemoryFreedRunnables.isEmpty())
-               {
-                  executor.execute(memoryFreedRunnablesExecutor);
-                  if (blocking.get())
-                  {
-                     HornetQServerLogger.LOGGER.unblockingMessageProduction(address, sizeInBytes.get(), maxSize);
-                     blocking.set(false);
-                  }
-               }
-            }
+            HornetQServerLogger.LOGGER.unblockingMessageProduction(address, sizeInBytes.get(), maxSize);
+            blocking.set(false);
          }
+      }
+   }
+
+   public void addSize(final int size)
+   {
+      final long addressSize = sizeInBytes.addAndGet(size);
+
+      pagingManager.addSize(this, size);
 
-         return;
+      if (addressFullMessagePolicy == AddressFullMessagePolicy.BLOCK)
+      {
+         releaseBlockedProducers();
       }
       else if (addressFullMessagePolicy == AddressFullMessagePolicy.PAGE)
       {
-         final long addressSize = sizeInBytes.addAndGet(size);
-
          if (size > 0)
          {
             if (maxSize > 0 && addressSize > maxSize)
@@ -805,14 +887,36 @@ public class PagingStoreImpl implements PagingStore
                }
             }
          }
+      }
+   }
 
-         return;
+   public boolean isOverGlobalMaxSize()
+   {
+      return overGlobalMaxSize;
+   }
+
+   public void setOverGlobalMaxSize(final boolean over)
+   {
+      overGlobalMaxSize = over;
+
+      if (over)
+      {
+         if (addressFullMessagePolicy == AddressFullMessagePolicy.PAGE)
+         {
+            // the manager may be called while another store is locked, so paging starts on our executor
+            executor.execute(new Runnable()
+            {
+               public void run()
+               {
+                  startPaging();
+               }
+            });
+         }
       }
-      else if (addressFullMessagePolicy == AddressFullMessagePolicy.DROP || addressFullMessagePolicy == AddressFullMessagePolicy.FAIL)
+      else if (addressFullMessagePolicy == AddressFullMessagePolicy.BLOCK)
       {
-         sizeInBytes.addAndGet(size);
+         releaseBlockedProducers();
       }
-
    }
 
    @Override
@@ -919,17 +1023,35 @@ public class PagingStoreImpl implements PagingStore
                installPageTransaction(tx, listCtx);
             }
 
-            // the apply counter will make sure we write a record on journal
-            // especially on the case for non transactional sends and paging
-            // doing this will give us a possibility of recovering the page counters
+            // the counters count the message on the page it's written to,
+            // so they can be recovered from the pages
             applyPageCounters(tx, getCurrentPage(), listCtx);
 
             currentPage.write(pagedMessage);
 
+            if (priorityDepaging && message.getPriority() > PagingStoreImpl.DEFAULT_MESSAGE_PRIORITY)
+            {
+               cursorProvider.addPriorityPosition(new PagePositionImpl(currentPage.getPageId(),
+                                                                       currentPage.getNumberOfMessages() - 1));
+            }
+
             if (tx == null && syncNonTransactional && message.isDurable())
             {
                sync();
             }
+            else if (tx == null)
+            {
+               // Nothing will sync this message, it's written to the file within the sync timeout
+               // the same way the journal buffers records that are not synced
+               if (syncTimer != null)
+               {
+                  syncTimer.addFlush();
+               }
+               else
+               {
+                  currentPage.flush();
+               }
+            }
 
             if (isTrace)
             {
@@ -990,7 +1112,7 @@ public class PagingStoreImpl implements PagingStore
    }
 
    /**
-    * This is done to prevent non tx to get out of sync in case of failures
+    * Counts the message on the page it's written to, so the counters can be recovered from the pages
     * @param tx
     * @param page
     * @param ctx
@@ -1002,17 +1124,10 @@ public class PagingStoreImpl implements PagingStore
       List<org.hornetq.core.server.Queue> nonDurableQueues = ctx.getNonDurableQueues();
       for (org.hornetq.core.server.Queue q : durableQueues)
       {
-         if (tx == null)
-         {
-            // non transactional writes need an intermediate place
-            // to avoid the counter getting out of sync
-            q.getPageSubscription().getCounter().pendingCounter(page, 1);
-         }
-         else
-         {
-            // null tx is treated through pending counters
-            q.getPageSubscription().getCounter().increment(tx, 1);
-         }
+         // the count of the page is stored once it's closed, a page without a count is read on recovery
+         PageSubscriptionCounter counter = q.getPageSubscription().getCounter();
+         counter.pageIncrement(tx, page.getPageId(), 1);
+         page.addPendingCounter(counter);
       }
 
       for (org.hornetq.core.server.Queue q : nonDurableQueues)
@@ -1199,7 +1314,7 @@ public class PagingStoreImpl implements PagingStore
    // To be used on isDropMessagesWhenFull
    public boolean isFull()
    {
-      return maxSize > 0 && getAddressSize() > maxSize;
+      return overGlobalMaxSize || maxSize > 0 && getAddressSize() > maxSize;
    }
 
    @Override
@@ -1222,6 +1337,12 @@ public class PagingStoreImpl implements PagingStore
       lock.writeLock().lock();
       try
       {
+         // the messages gathered by the current page are written to its file before it's sent
+         if (currentPage != null)
+         {
+            currentPage.sync();
+         }
+
          for (Integer id : pageIds)
          {
             SequentialFile sFile = fileFactory.createSequentialFile(createFileName(id), 1);
@@ -14,6 +14,7 @@ package org.hornetq.core.persistence;
 
 import javax.transaction.xa.Xid;
 import java.nio.ByteBuffer;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -182,6 +183,30 @@ public interface StorageManager extends IDGenerator, HornetQComponent
 
    void deleteDuplicateID(long recordID) throws Exception;
 
+   /**
+    * Stores a non transactional duplicate ID as the first ID of a new batch record.
+    * <p>
+    * The IDs of a batch share one journal record which is deleted through
+    * {@link #deleteDuplicateID(long)} once none of its IDs is in the cache any longer. On reload only
+    * the last {@code cacheSize} IDs of the batches are loaded, so the IDs evicted from the cache
+    * don't need a record of their own.
+    *
+    * @param sequence  a number greater than the one of any ID stored before
+    * @param cacheSize the size of the duplicate ID cache the ID was added to
+    */
+   void storeDuplicateIDBatch(SimpleString address, byte[] duplID, long sequence, int cacheSize, long recordID) throws Exception;
+
+   /**
+    * Adds a non transactional duplicate ID to a batch record stored through
+    * {@link #storeDuplicateIDBatch(SimpleString, byte[], long, int, long)}.
+    */
+   void updateDuplicateIDBatch(SimpleString address, byte[] duplID, long sequence, int cacheSize, long recordID) throws Exception;
+
+   /**
+    * Removes a duplicate ID from a batch record which still holds other IDs of the cache.
+    */
+   void deleteDuplicateIDFromBatch(SimpleString address, byte[] duplID, long sequence, long recordID) throws Exception;
+
    void storeMessageTransactional(long txID, ServerMessage message) throws Exception;
 
    void storeReferenceTransactional(long txID, long queueID, long messageID) throws Exception;
@@ -190,6 +215,14 @@ public interface StorageManager extends IDGenerator, HornetQComponent
 
    void storeCursorAcknowledgeTransactional(long txID, long queueID, PagePosition position) throws Exception;
 
+   /**
+    * Stores the acks of several messages of the same page as a single record.
+    *
+    * @param messageNrs the numbers on the page of the acked messages
+    * @return the ID of the record, deleted through {@link #deleteCursorAcknowledgeTransactional(long, long)}
+    */
+   long storeCursorPageAcknowledgeTransactional(long txID, long queueID, long pageNr, BitSet messageNrs) throws Exception;
+
    void deleteCursorAcknowledgeTransactional(long txID, long ackID) throws Exception;
 
    void deleteCursorAcknowledge(long ackID) throws Exception;
@@ -307,11 +340,13 @@ public interface StorageManager extends IDGenerator, HornetQComponent
    List<PersistedRoles> recoverPersistedRoles() throws Exception;
 
    /**
-    * @return The ID with the stored counter
+    * Stores the number of messages of a closed page counted on a subscription, so the page doesn't
+    * need to be read again when the counter is recovered.
+    * @return the ID of the page count record
     */
-   long storePageCounter(long txID, long queueID, long value) throws Exception;
+   long storePageCount(long queueID, long pageID, int count) throws Exception;
 
-   long storePendingCounter(long queueID, long pageID, int inc) throws Exception;
+   void deletePageCount(long recordID) throws Exception;
 
    void deleteIncrementRecord(long txID, long recordID) throws Exception;
 
@@ -319,18 +354,6 @@ public interface StorageManager extends IDGenerator, HornetQComponent
 
    void deletePendingPageCounter(long txID, long recordID) throws Exception;
 
-   /**
-    * @return the ID with the increment record
-    * @throws Exception
-    */
-   long storePageCounterInc(long txID, long queueID, int add) throws Exception;
-
-   /**
-    * @return the ID with the increment record
-    * @throws Exception
-    */
-   long storePageCounterInc(long queueID, int add) throws Exception;
-
    /**
     * @return the bindings journal
     */
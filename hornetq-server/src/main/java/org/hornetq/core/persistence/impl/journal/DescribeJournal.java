@@ -37,13 +37,16 @@ import org.hornetq.core.paging.impl.PageTransactionInfoImpl;
 import org.hornetq.core.persistence.impl.journal.BatchingIDGenerator.IDCounterEncoding;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.AckDescribe;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.CursorAckRecordEncoding;
+import org.hornetq.core.persistence.impl.journal.JournalStorageManager.CursorPageAckRecordEncoding;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.DeliveryCountUpdateEncoding;
+import org.hornetq.core.persistence.impl.journal.JournalStorageManager.DuplicateIDBatchEncoding;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.DuplicateIDEncoding;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.HeuristicCompletionEncoding;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.LargeMessageEncoding;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.PageCountPendingImpl;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.PageCountRecord;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.PageCountRecordInc;
+import org.hornetq.core.persistence.impl.journal.JournalStorageManager.PageCountRecordPage;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.PageUpdateTXEncoding;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.PendingLargeMessageEncoding;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.RefEncoding;
@@ -55,6 +58,7 @@ import org.hornetq.utils.Base64;
 import org.hornetq.utils.XidCodecSupport;
 
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ACKNOWLEDGE_CURSOR;
+import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ACKNOWLEDGE_CURSOR_PAGE;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ACKNOWLEDGE_REF;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ADDRESS_SETTING_RECORD;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ADD_LARGE_MESSAGE;
@@ -62,11 +66,13 @@ import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ADD_LAR
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ADD_MESSAGE;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ADD_REF;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.DUPLICATE_ID;
+import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.DUPLICATE_ID_BATCH;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.HEURISTIC_COMPLETION;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ID_COUNTER_RECORD;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.PAGE_CURSOR_COMPLETE;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.PAGE_CURSOR_COUNTER_INC;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.PAGE_CURSOR_COUNTER_VALUE;
+import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.PAGE_CURSOR_PAGE_COUNT;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.PAGE_CURSOR_PENDING_COUNTER;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.PAGE_TRANSACTION;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.QUEUE_BINDING_RECORD;
@@ -561,6 +567,14 @@ public final class DescribeJournal
 
             return encoding;
          }
+         case DUPLICATE_ID_BATCH:
+         {
+            DuplicateIDBatchEncoding encoding = new DuplicateIDBatchEncoding();
+
+            encoding.decode(buffer);
+
+            return encoding;
+         }
          case HEURISTIC_COMPLETION:
          {
             HeuristicCompletionEncoding encoding = new HeuristicCompletionEncoding();
@@ -577,6 +591,14 @@ public final class DescribeJournal
 
             return encoding;
          }
+         case ACKNOWLEDGE_CURSOR_PAGE:
+         {
+            CursorPageAckRecordEncoding encoding = new CursorPageAckRecordEncoding();
+
+            encoding.decode(buffer);
+
+            return encoding;
+         }
          case PAGE_CURSOR_COUNTER_VALUE:
          {
             PageCountRecord encoding = new PageCountRecord();
@@ -604,6 +626,15 @@ public final class DescribeJournal
             return encoding;
          }
 
+         case PAGE_CURSOR_PAGE_COUNT:
+         {
+            PageCountRecordPage encoding = new PageCountRecordPage();
+
+            encoding.decode(buffer);
+
+            return encoding;
+         }
+
          case PAGE_CURSOR_PENDING_COUNTER:
          {
             PageCountPendingImpl encoding = new PageCountPendingImpl();
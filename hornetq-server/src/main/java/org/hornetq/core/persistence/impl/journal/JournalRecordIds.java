@@ -78,4 +78,22 @@ public final class JournalRecordIds
    public static final byte PAGE_CURSOR_COMPLETE = 42;
 
    public static final byte PAGE_CURSOR_PENDING_COUNTER = 43;
+
+   /**
+    * A record holding a batch of non transactional duplicate IDs of an address, each ID being
+    * written as an update of the record.
+    */
+   public static final byte DUPLICATE_ID_BATCH = 44;
+
+   /**
+    * A record holding the acks of several messages of the same page, as a bitmap of their numbers on
+    * the page.
+    */
+   public static final byte ACKNOWLEDGE_CURSOR_PAGE = 45;
+
+   /**
+    * A checkpoint of a page subscription counter, holding the number of messages of a closed page
+    * counted on the subscription.
+    */
+   public static final byte PAGE_CURSOR_PAGE_COUNT = 46;
 }
@@ -22,11 +22,15 @@ import java.security.InvalidParameterException;
 import java.security.MessageDigest;
 import java.security.PrivilegedAction;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -115,6 +119,7 @@ import org.hornetq.utils.UUID;
 import org.hornetq.utils.XidCodecSupport;
 
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ACKNOWLEDGE_CURSOR;
+import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ACKNOWLEDGE_CURSOR_PAGE;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ADD_LARGE_MESSAGE;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ADD_LARGE_MESSAGE_PENDING;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.DUPLICATE_ID;
@@ -182,7 +187,13 @@ public class JournalStorageManager implements StorageManager
 
    private final Journal originalBindingsJournal;
 
-   private final SequentialFileFactory largeMessagesFactory;
+   // the large messages directory first, then the stripe directories
+   private final SequentialFileFactory[] largeMessagesFactories;
+
+   // large message files found on start on another directory than their message ID places them on,
+   // e.g. as the stripe directories changed since they were written
+   private final Map<String, SequentialFileFactory> misplacedLargeMessageFiles =
+      new ConcurrentHashMap<String, SequentialFileFactory>();
 
    private volatile boolean started;
 
@@ -209,7 +220,7 @@ public class JournalStorageManager implements StorageManager
 
    private final String journalDir;
 
-   private final String largeMessagesDirectory;
+   private final String[] largeMessagesDirectories;
 
    private boolean journalLoaded = false;
 
@@ -314,9 +325,18 @@ public class JournalStorageManager implements StorageManager
       messageJournal = localMessage;
       originalMessageJournal = localMessage;
 
-      largeMessagesDirectory = config.getLargeMessagesDirectory();
+      Set<String> allLargeMessagesDirectories = new LinkedHashSet<String>();
+      allLargeMessagesDirectories.add(config.getLargeMessagesDirectory());
+      allLargeMessagesDirectories.addAll(config.getLargeMessagesStripeDirectories());
+
+      largeMessagesDirectories = allLargeMessagesDirectories.toArray(new String[allLargeMessagesDirectories.size()]);
 
-      largeMessagesFactory = new NIOSequentialFileFactory(largeMessagesDirectory, false, criticalErrorListener);
+      largeMessagesFactories = new SequentialFileFactory[largeMessagesDirectories.length];
+
+      for (int i = 0; i < largeMessagesDirectories.length; i++)
+      {
+         largeMessagesFactories[i] = new NIOSequentialFileFactory(largeMessagesDirectories[i], false, criticalErrorListener);
+      }
 
       perfBlastPages = config.getJournalPerfBlastPages();
 
@@ -589,10 +609,9 @@ public class JournalStorageManager implements StorageManager
       while (started && iter.hasNext())
       {
          Map.Entry<Long, Pair<String, Long>> entry = iter.next();
-         String fileName = entry.getValue().getA();
          final long id = entry.getKey();
          long size = entry.getValue().getB();
-         SequentialFile seqFile = largeMessagesFactory.createSequentialFile(fileName, 1);
+         SequentialFile seqFile = createFileForLargeMessage(id, LargeMessageExtension.DURABLE);
          if (!seqFile.exists())
             continue;
          replicator.syncLargeMessageFile(seqFile, size, id);
@@ -619,18 +638,19 @@ public class JournalStorageManager implements StorageManager
 
       Map<Long, Pair<String, Long>> largeMessages = new HashMap<Long, Pair<String, Long>>();
       // only send durable messages... // listFiles append a "." to anything...
-      List<String> filenames = largeMessagesFactory.listFiles("msg");
-
-      List<Long> idList = new ArrayList<Long>();
-      for (String filename : filenames)
+      for (SequentialFileFactory largeMessagesFactory : largeMessagesFactories)
       {
-         Long id = getLargeMessageIdFromFilename(filename);
-         if (!largeMessagesToDelete.contains(id))
+         List<String> filenames = largeMessagesFactory.listFiles("msg");
+
+         for (String filename : filenames)
          {
-            idList.add(id);
-            SequentialFile seqFile = largeMessagesFactory.createSequentialFile(filename, 1);
-            long size = seqFile.size();
-            largeMessages.put(id, new Pair<String, Long>(filename, size));
+            Long id = getLargeMessageIdFromFilename(filename);
+            if (!largeMessagesToDelete.contains(id))
+            {
+               SequentialFile seqFile = largeMessagesFactory.createSequentialFile(filename, 1);
+               long size = seqFile.size();
+               largeMessages.put(id, new Pair<String, Long>(filename, size));
+            }
          }
       }
 
@@ -1053,6 +1073,74 @@ public class JournalStorageManager implements StorageManager
       }
    }
 
+   public void storeDuplicateIDBatch(final SimpleString address,
+                                     final byte[] duplID,
+                                     final long sequence,
+                                     final int cacheSize,
+                                     final long recordID) throws Exception
+   {
+      readLock();
+      try
+      {
+         DuplicateIDBatchEncoding encoding = new DuplicateIDBatchEncoding(address, duplID, sequence, cacheSize, false);
+
+         messageJournal.appendAddRecord(recordID,
+                                        JournalRecordIds.DUPLICATE_ID_BATCH,
+                                        encoding,
+                                        syncNonTransactional,
+                                        getContext(syncNonTransactional));
+      }
+      finally
+      {
+         readUnLock();
+      }
+   }
+
+   public void updateDuplicateIDBatch(final SimpleString address,
+                                      final byte[] duplID,
+                                      final long sequence,
+                                      final int cacheSize,
+                                      final long recordID) throws Exception
+   {
+      readLock();
+      try
+      {
+         DuplicateIDBatchEncoding encoding = new DuplicateIDBatchEncoding(address, duplID, sequence, cacheSize, false);
+
+         messageJournal.appendUpdateRecord(recordID,
+                                           JournalRecordIds.DUPLICATE_ID_BATCH,
+                                           encoding,
+                                           syncNonTransactional,
+                                           getContext(syncNonTransactional));
+      }
+      finally
+      {
+         readUnLock();
+      }
+   }
+
+   public void deleteDuplicateIDFromBatch(final SimpleString address,
+                                          final byte[] duplID,
+                                          final long sequence,
+                                          final long recordID) throws Exception
+   {
+      readLock();
+      try
+      {
+         DuplicateIDBatchEncoding encoding = new DuplicateIDBatchEncoding(address, duplID, sequence, 0, true);
+
+         messageJournal.appendUpdateRecord(recordID,
+                                           JournalRecordIds.DUPLICATE_ID_BATCH,
+                                           encoding,
+                                           syncNonTransactional,
+                                           getContext(syncNonTransactional));
+      }
+      finally
+      {
+         readUnLock();
+      }
+   }
+
    // Transactional operations
 
    public void storeMessageTransactional(final long txID, final ServerMessage message) throws Exception
@@ -1178,6 +1266,24 @@ public class JournalStorageManager implements StorageManager
       }
    }
 
+   public long storeCursorPageAcknowledgeTransactional(long txID, long queueID, long pageNr, BitSet messageNrs) throws Exception
+   {
+      readLock();
+      try
+      {
+         long ackID = idGenerator.generateID();
+         messageJournal.appendAddRecordTransactional(txID,
+                                                     ackID,
+                                                     JournalRecordIds.ACKNOWLEDGE_CURSOR_PAGE,
+                                                     new CursorPageAckRecordEncoding(queueID, pageNr, messageNrs));
+         return ackID;
+      }
+      finally
+      {
+         readUnLock();
+      }
+   }
+
    public void storePageCompleteTransactional(long txID, long queueID, PagePosition position) throws Exception
    {
       long recordID = idGenerator.generateID();
@@ -1548,6 +1654,9 @@ public class JournalStorageManager implements StorageManager
 
          Map<Long, PageSubscription> pageSubscriptions = new HashMap<Long, PageSubscription>();
 
+         Map<SimpleString, List<Pair<Long, DuplicateIDBatchEncoding>>> duplicateIDBatches =
+            new HashMap<SimpleString, List<Pair<Long, DuplicateIDBatchEncoding>>>();
+
          final int totalSize = records.size();
 
          for (int reccount = 0; reccount < totalSize; reccount++)
@@ -1763,6 +1872,25 @@ public class JournalStorageManager implements StorageManager
 
                   break;
                }
+               case JournalRecordIds.DUPLICATE_ID_BATCH:
+               {
+                  DuplicateIDBatchEncoding encoding = new DuplicateIDBatchEncoding();
+
+                  encoding.decode(buff);
+
+                  List<Pair<Long, DuplicateIDBatchEncoding>> batchIDs = duplicateIDBatches.get(encoding.address);
+
+                  if (batchIDs == null)
+                  {
+                     batchIDs = new ArrayList<Pair<Long, DuplicateIDBatchEncoding>>();
+
+                     duplicateIDBatches.put(encoding.address, batchIDs);
+                  }
+
+                  batchIDs.add(new Pair<Long, DuplicateIDBatchEncoding>(record.id, encoding));
+
+                  break;
+               }
                case JournalRecordIds.HEURISTIC_COMPLETION:
                {
                   HeuristicCompletionEncoding encoding = new HeuristicCompletionEncoding();
@@ -1792,6 +1920,28 @@ public class JournalStorageManager implements StorageManager
 
                   break;
                }
+               case JournalRecordIds.ACKNOWLEDGE_CURSOR_PAGE:
+               {
+                  CursorPageAckRecordEncoding encoding = new CursorPageAckRecordEncoding();
+                  encoding.decode(buff);
+
+                  PageSubscription sub = locateSubscription(encoding.queueID, pageSubscriptions, queueInfos, pagingManager);
+
+                  if (sub != null)
+                  {
+                     for (PagePosition position : encoding.getPositions(record.id))
+                     {
+                        sub.reloadACK(position);
+                     }
+                  }
+                  else
+                  {
+                     HornetQServerLogger.LOGGER.journalCannotFindQueueReloading(encoding.queueID);
+                     messageJournal.appendDeleteRecord(record.id, false);
+                  }
+
+                  break;
+               }
                case JournalRecordIds.PAGE_CURSOR_COUNTER_VALUE:
                {
                   PageCountRecord encoding = new PageCountRecord();
@@ -1834,6 +1984,27 @@ public class JournalStorageManager implements StorageManager
                   break;
                }
 
+               case JournalRecordIds.PAGE_CURSOR_PAGE_COUNT:
+               {
+                  PageCountRecordPage encoding = new PageCountRecordPage();
+
+                  encoding.decode(buff);
+
+                  PageSubscription sub = locateSubscription(encoding.queueID, pageSubscriptions, queueInfos, pagingManager);
+
+                  if (sub != null)
+                  {
+                     sub.getCounter().loadPageCount(record.id, encoding.pageID, encoding.count);
+                  }
+                  else
+                  {
+                     HornetQServerLogger.LOGGER.journalCannotFindQueueReloadingPageCount(encoding.queueID);
+                     messageJournal.appendDeleteRecord(record.id, false);
+                  }
+
+                  break;
+               }
+
                case JournalRecordIds.PAGE_CURSOR_COMPLETE:
                {
                   CursorAckRecordEncoding encoding = new CursorAckRecordEncoding();
@@ -1888,6 +2059,8 @@ public class JournalStorageManager implements StorageManager
          records.clear();
          records = null;
 
+         loadDuplicateIDBatches(duplicateIDBatches, duplicateIDMap);
+
          journalLoader.handleAddMessage(queueMap);
 
          loadPreparedTransactions(postOffice,
@@ -1939,6 +2112,113 @@ public class JournalStorageManager implements StorageManager
       }
    }
 
+   /**
+    * Adds the IDs of the duplicate ID batches which were still on the caches to the IDs loaded from
+    * the duplicate ID records.
+    * <p>
+    * A batch record keeps the IDs evicted from the cache until all its IDs are evicted, but a cache
+    * always evicts its oldest ID, and the IDs added to it inside a transaction have a record of
+    * their own which is deleted on eviction. So the cache held all the transactional IDs still on
+    * the journal and the newest IDs of the batches, up to its size. The batch records left with no
+    * ID on the cache are deleted.
+    */
+   private void loadDuplicateIDBatches(final Map<SimpleString, List<Pair<Long, DuplicateIDBatchEncoding>>> batches,
+                                       final Map<SimpleString, List<Pair<byte[], Long>>> duplicateIDMap) throws Exception
+   {
+      for (Map.Entry<SimpleString, List<Pair<Long, DuplicateIDBatchEncoding>>> entry : batches.entrySet())
+      {
+         Map<SimpleString, Long> deletedSequences = new HashMap<SimpleString, Long>();
+
+         Set<Long> batchRecords = new HashSet<Long>();
+
+         int cacheSize = 0;
+
+         long lastSequence = -1;
+
+         for (Pair<Long, DuplicateIDBatchEncoding> id : entry.getValue())
+         {
+            DuplicateIDBatchEncoding encoding = id.getB();
+
+            batchRecords.add(id.getA());
+
+            if (encoding.deleted)
+            {
+               SimpleString key = new SimpleString(encoding.duplID);
+
+               Long deletedSequence = deletedSequences.get(key);
+
+               if (deletedSequence == null || deletedSequence < encoding.sequence)
+               {
+                  deletedSequences.put(key, encoding.sequence);
+               }
+            }
+            else if (encoding.sequence > lastSequence)
+            {
+               lastSequence = encoding.sequence;
+
+               cacheSize = encoding.cacheSize;
+            }
+         }
+
+         List<Pair<Long, DuplicateIDBatchEncoding>> cachedIDs = new ArrayList<Pair<Long, DuplicateIDBatchEncoding>>();
+
+         for (Pair<Long, DuplicateIDBatchEncoding> id : entry.getValue())
+         {
+            DuplicateIDBatchEncoding encoding = id.getB();
+
+            if (!encoding.deleted)
+            {
+               // an ID deleted from the cache may have been added again afterwards
+               Long deletedSequence = deletedSequences.get(new SimpleString(encoding.duplID));
+
+               if (deletedSequence == null || deletedSequence < encoding.sequence)
+               {
+                  cachedIDs.add(id);
+               }
+            }
+         }
+
+         Collections.sort(cachedIDs, new Comparator<Pair<Long, DuplicateIDBatchEncoding>>()
+         {
+            public int compare(final Pair<Long, DuplicateIDBatchEncoding> id1,
+                               final Pair<Long, DuplicateIDBatchEncoding> id2)
+            {
+               long sequence1 = id1.getB().sequence;
+               long sequence2 = id2.getB().sequence;
+               return sequence1 < sequence2 ? -1 : sequence1 == sequence2 ? 0 : 1;
+            }
+         });
+
+         List<Pair<byte[], Long>> ids = duplicateIDMap.get(entry.getKey());
+
+         if (ids == null)
+         {
+            ids = new ArrayList<Pair<byte[], Long>>();
+
+            duplicateIDMap.put(entry.getKey(), ids);
+         }
+
+         int first = Math.max(0, cachedIDs.size() - Math.max(0, cacheSize - ids.size()));
+
+         for (Pair<Long, DuplicateIDBatchEncoding> id : cachedIDs.subList(first, cachedIDs.size()))
+         {
+            ids.add(new Pair<byte[], Long>(id.getB().duplID, id.getA()));
+
+            batchRecords.remove(id.getA());
+         }
+
+         if (ids.isEmpty())
+         {
+            duplicateIDMap.remove(entry.getKey());
+         }
+
+         for (Long recordID : batchRecords)
+         {
+            messageJournal.appendDeleteRecord(recordID, false);
+         }
+      }
+   }
+
    /**
     * @param queueID
     * @param pageSubscriptions
@@ -2038,50 +2318,18 @@ public class JournalStorageManager implements StorageManager
       }
    }
 
-   public long storePageCounterInc(long txID, long queueID, int value) throws Exception
-   {
-      readLock();
-      try
-      {
-         long recordID = idGenerator.generateID();
-         messageJournal.appendAddRecordTransactional(txID, recordID, JournalRecordIds.PAGE_CURSOR_COUNTER_INC,
-                                                     new PageCountRecordInc(queueID, value));
-         return recordID;
-      }
-      finally
-      {
-         readUnLock();
-      }
-   }
-
-   public long storePageCounterInc(long queueID, int value) throws Exception
-   {
-      readLock();
-      try
-      {
-         final long recordID = idGenerator.generateID();
-         messageJournal.appendAddRecord(recordID,
-                                        JournalRecordIds.PAGE_CURSOR_COUNTER_INC,
-                                        new PageCountRecordInc(queueID, value),
-                                        true,
-                                        getContext());
-         return recordID;
-      }
-      finally
-      {
-         readUnLock();
-      }
-   }
-
    @Override
-   public long storePageCounter(long txID, long queueID, long value) throws Exception
+   public long storePageCount(final long queueID, final long pageID, final int count) throws Exception
    {
       readLock();
       try
       {
          final long recordID = idGenerator.generateID();
-         messageJournal.appendAddRecordTransactional(txID, recordID, JournalRecordIds.PAGE_CURSOR_COUNTER_VALUE,
-                                                     new PageCountRecord(queueID, value));
+         // no need to sync, a page without its count is read again on recovery
+         messageJournal.appendAddRecord(recordID,
+                                        JournalRecordIds.PAGE_CURSOR_PAGE_COUNT,
+                                        new PageCountRecordPage(queueID, pageID, count),
+                                        false);
          return recordID;
       }
       finally
@@ -2091,17 +2339,12 @@ public class JournalStorageManager implements StorageManager
    }
 
    @Override
-   public long storePendingCounter(final long queueID, final long pageID, final int inc) throws Exception
+   public void deletePageCount(final long recordID) throws Exception
    {
       readLock();
       try
       {
-         final long recordID = idGenerator.generateID();
-         PageCountPendingImpl pendingInc = new PageCountPendingImpl(queueID, pageID, inc);
-         // We must guarantee the record sync before we actually write on the page otherwise we may get out of sync
-         // on the counter
-         messageJournal.appendAddRecord(recordID, JournalRecordIds.PAGE_CURSOR_PENDING_COUNTER, pendingInc, true);
-         return recordID;
+         messageJournal.appendDeleteRecord(recordID, false);
       }
       finally
       {
@@ -2226,10 +2469,15 @@ public class JournalStorageManager implements StorageManager
 
       checkAndCreateDir(journalDir, createJournalDir);
 
-      checkAndCreateDir(largeMessagesDirectory, createJournalDir);
+      for (String largeMessagesDirectory : largeMessagesDirectories)
+      {
+         checkAndCreateDir(largeMessagesDirectory, createJournalDir);
+      }
 
       cleanupIncompleteFiles();
 
+      findMisplacedLargeMessageFiles();
+
       singleThreadExecutor = Executors.newSingleThreadExecutor(new HornetQThreadFactory("HornetQ-IO-SingleThread",
                                                                                         true,
                                                                                         getThisClassLoader()));
@@ -2496,9 +2744,34 @@ public class JournalStorageManager implements StorageManager
    }
 
 
+   /**
+    * The files of a large message are placed on one of the large messages directories by its
+    * message ID, so they are found again on recovery without any record of the placement. A file
+    * created before the stripe directories changed was found on start by
+    * {@link #findMisplacedLargeMessageFiles()}.
+    */
    public SequentialFile createFileForLargeMessage(final long messageID, LargeMessageExtension extension)
    {
-      return largeMessagesFactory.createSequentialFile(messageID + extension.getExtension(), -1);
+      String fileName = messageID + extension.getExtension();
+
+      if (largeMessagesFactories.length == 1)
+      {
+         return largeMessagesFactories[0].createSequentialFile(fileName, -1);
+      }
+
+      SequentialFileFactory factory = misplacedLargeMessageFiles.isEmpty() ? null : misplacedLargeMessageFiles.get(fileName);
+
+      if (factory == null)
+      {
+         factory = largeMessagesFactoryFor(messageID);
+      }
+
+      return factory.createSequentialFile(fileName, -1);
+   }
+
+   private SequentialFileFactory largeMessagesFactoryFor(final long messageID)
+   {
+      return largeMessagesFactories[(int)Math.abs(messageID % largeMessagesFactories.length)];
    }
 
 
@@ -2713,6 +2986,30 @@ public class JournalStorageManager implements StorageManager
                   }
                   break;
                }
+               case ACKNOWLEDGE_CURSOR_PAGE:
+               {
+                  CursorPageAckRecordEncoding encoding = new CursorPageAckRecordEncoding();
+                  encoding.decode(buff);
+
+                  PageSubscription sub = locateSubscription(encoding.queueID,
+                                                            pageSubscriptions,
+                                                            queueInfos,
+                                                            pagingManager);
+
+                  if (sub != null)
+                  {
+                     for (PagePosition position : encoding.getPositions(record.id))
+                     {
+                        sub.reloadPreparedACK(tx, position);
+                        referencesToAck.add(new PagedReferenceImpl(position, null, sub));
+                     }
+                  }
+                  else
+                  {
+                     HornetQServerLogger.LOGGER.journalCannotFindQueueReloadingACK(encoding.queueID);
+                  }
+                  break;
+               }
                case PAGE_CURSOR_COUNTER_VALUE:
                {
                   HornetQServerLogger.LOGGER.journalPAGEOnPrepared();
@@ -2731,12 +3028,9 @@ public class JournalStorageManager implements StorageManager
                                                             queueInfos,
                                                             pagingManager);
 
-                  if (sub != null)
-                  {
-                     sub.getCounter().applyIncrementOnTX(tx, record.id, encoding.value);
-                     sub.notEmpty();
-                  }
-                  else
+                  // increments are no longer stored, the counter of a prepared transaction is
+                  // recovered from its acks and from the messages it paged
+                  if (sub == null)
                   {
                      HornetQServerLogger.LOGGER.journalCannotFindQueueReloadingACK(encoding.queueID);
                   }
@@ -2784,9 +3078,38 @@ public class JournalStorageManager implements StorageManager
       }
    }
 
+   /**
+    * Only looks at the directories on start, so creating the file of a new large message doesn't
+    * check every directory.
+    */
+   private void findMisplacedLargeMessageFiles() throws Exception
+   {
+      misplacedLargeMessageFiles.clear();
+
+      if (largeMessagesFactories.length == 1)
+      {
+         return;
+      }
+
+      for (SequentialFileFactory largeMessagesFactory : largeMessagesFactories)
+      {
+         List<String> fileNames = new ArrayList<String>(largeMessagesFactory.listFiles("msg"));
+
+         fileNames.addAll(largeMessagesFactory.listFiles("sync"));
+
+         for (String fileName : fileNames)
+         {
+            if (largeMessagesFactoryFor(getLargeMessageIdFromFilename(fileName)) != largeMessagesFactory)
+            {
+               misplacedLargeMessageFiles.put(fileName, largeMessagesFactory);
+            }
+         }
+      }
+   }
+
    private void cleanupIncompleteFiles() throws Exception
    {
-      if (largeMessagesFactory != null)
+      for (SequentialFileFactory largeMessagesFactory : largeMessagesFactories)
       {
          List<String> tmpFiles = largeMessagesFactory.listFiles("tmp");
          for (String tmpFile : tmpFiles)
@@ -3497,6 +3820,75 @@ public class JournalStorageManager implements StorageManager
 
    }
 
+   /**
+    * A duplicate ID of a batch record, or the deletion of an ID from the batch record when
+    * {@link #deleted} is true.
+    */
+   public static class DuplicateIDBatchEncoding extends DuplicateIDEncoding
+   {
+      long sequence;
+
+      int cacheSize;
+
+      boolean deleted;
+
+      public DuplicateIDBatchEncoding(final SimpleString address,
+                                      final byte[] duplID,
+                                      final long sequence,
+                                      final int cacheSize,
+                                      final boolean deleted)
+      {
+         super(address, duplID);
+
+         this.sequence = sequence;
+
+         this.cacheSize = cacheSize;
+
+         this.deleted = deleted;
+      }
+
+      public DuplicateIDBatchEncoding()
+      {
+      }
+
+      @Override
+      public void decode(final HornetQBuffer buffer)
+      {
+         super.decode(buffer);
+
+         sequence = buffer.readLong();
+
+         cacheSize = buffer.readInt();
+
+         deleted = buffer.readBoolean();
+      }
+
+      @Override
+      public void encode(final HornetQBuffer buffer)
+      {
+         super.encode(buffer);
+
+         buffer.writeLong(sequence);
+
+         buffer.writeInt(cacheSize);
+
+         buffer.writeBoolean(deleted);
+      }
+
+      @Override
+      public int getEncodeSize()
+      {
+         return super.getEncodeSize() + DataConstants.SIZE_LONG + DataConstants.SIZE_INT + DataConstants.SIZE_BOOLEAN;
+      }
+
+      @Override
+      public String toString()
+      {
+         return "DuplicateIDBatchEncoding [address=" + address + ", duplID=" + ByteUtil.bytesToHex(duplID, 2) +
+            ", sequence=" + sequence + ", cacheSize=" + cacheSize + ", deleted=" + deleted + "]";
+      }
+   }
+
    /**
     * This is only used when loading a transaction.
     * <p/>
@@ -3692,6 +4084,54 @@ public class JournalStorageManager implements StorageManager
 
    }
 
+   protected static final class PageCountRecordPage implements EncodingSupport
+   {
+
+      @Override
+      public String toString()
+      {
+         return "PageCountRecordPage [queueID=" + queueID + ", pageID=" + pageID + ", count=" + count + "]";
+      }
+
+      PageCountRecordPage()
+      {
+
+      }
+
+      PageCountRecordPage(long queueID, long pageID, int count)
+      {
+         this.queueID = queueID;
+         this.pageID = pageID;
+         this.count = count;
+      }
+
+      long queueID;
+
+      long pageID;
+
+      int count;
+
+      public int getEncodeSize()
+      {
+         return DataConstants.SIZE_LONG * 2 + DataConstants.SIZE_INT;
+      }
+
+      public void encode(HornetQBuffer buffer)
+      {
+         buffer.writeLong(queueID);
+         buffer.writeLong(pageID);
+         buffer.writeInt(count);
+      }
+
+      public void decode(HornetQBuffer buffer)
+      {
+         queueID = buffer.readLong();
+         pageID = buffer.readLong();
+         count = buffer.readInt();
+      }
+
+   }
+
    public static class CursorAckRecordEncoding implements EncodingSupport
    {
       public CursorAckRecordEncoding(final long queueID, final PagePosition position)
@@ -3736,6 +4176,90 @@ public class JournalStorageManager implements StorageManager
       }
    }
 
+   /**
+    * The acks of several messages of the same page, as a bitmap of their numbers on the page.
+    */
+   public static class CursorPageAckRecordEncoding implements EncodingSupport
+   {
+      public CursorPageAckRecordEncoding(final long queueID, final long pageNr, final BitSet messageNrs)
+      {
+         this.queueID = queueID;
+         this.pageNr = pageNr;
+         this.messageNrs = messageNrs;
+      }
+
+      public CursorPageAckRecordEncoding()
+      {
+      }
+
+      @Override
+      public String toString()
+      {
+         return "CursorPageAckRecordEncoding [queueID=" + queueID + ", pageNr=" + pageNr + ", messageNrs=" +
+            messageNrs + "]";
+      }
+
+      public long queueID;
+
+      public long pageNr;
+
+      public BitSet messageNrs;
+
+      /**
+       * @return the acked positions in page order, only the first one carrying the ID of the record
+       * so the record is deleted once
+       */
+      public List<PagePosition> getPositions(final long recordID)
+      {
+         List<PagePosition> positions = new ArrayList<PagePosition>(messageNrs.cardinality());
+
+         for (int messageNr = messageNrs.nextSetBit(0); messageNr >= 0; messageNr = messageNrs.nextSetBit(messageNr + 1))
+         {
+            PagePosition position = new PagePositionImpl(pageNr, messageNr);
+
+            if (positions.isEmpty())
+            {
+               position.setRecordID(recordID);
+            }
+
+            positions.add(position);
+         }
+
+         return positions;
+      }
+
+      public int getEncodeSize()
+      {
+         return DataConstants.SIZE_LONG + DataConstants.SIZE_LONG + DataConstants.SIZE_INT +
+            (messageNrs.length() + Long.SIZE - 1) / Long.SIZE * DataConstants.SIZE_LONG;
+      }
+
+      public void encode(HornetQBuffer buffer)
+      {
+         long[] words = messageNrs.toLongArray();
+
+         buffer.writeLong(queueID);
+         buffer.writeLong(pageNr);
+         buffer.writeInt(words.length);
+         for (long word : words)
+         {
+            buffer.writeLong(word);
+         }
+      }
+
+      public void decode(HornetQBuffer buffer)
+      {
+         queueID = buffer.readLong();
+         pageNr = buffer.readLong();
+         long[] words = new long[buffer.readInt()];
+         for (int i = 0; i < words.length; i++)
+         {
+            words[i] = buffer.readLong();
+         }
+         messageNrs = BitSet.valueOf(words);
+      }
+   }
+
    private class LargeMessageTXFailureCallback implements TransactionFailureCallback
    {
       private final Map<Long, ServerMessage> messages;
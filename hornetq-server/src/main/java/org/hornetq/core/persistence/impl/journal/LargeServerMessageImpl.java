@@ -12,7 +12,9 @@
  */
 package org.hornetq.core.persistence.impl.journal;
 
+import java.io.File;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.hornetq.api.core.HornetQBuffer;
@@ -320,9 +322,12 @@ public final class LargeServerMessageImpl extends ServerMessageImpl implements L
          try
          {
             this.pendingRecordID = storageManager.storePendingLargeMessage(this.messageID);
-            copyTo.open();
-            pendingCopy.open();
-            pendingCopy.copyTo(copyTo);
+            if (!linkFile(pendingCopy, copyTo))
+            {
+               copyTo.open();
+               pendingCopy.open();
+               pendingCopy.copyTo(copyTo);
+            }
          }
          finally
          {
@@ -339,6 +344,10 @@ public final class LargeServerMessageImpl extends ServerMessageImpl implements L
 
    /**
     * The copy of the file itself will be done later by {@link LargeServerMessageImpl#finishCopy()}
+    * <p>
+    * The body of a large message doesn't change once the message is complete, so the file of the
+    * copy is a hard link to the file of this message when the file system supports it. Each message
+    * still deletes its own file, and the body is only removed from the disk with the last of them.
     */
    @Override
    public synchronized ServerMessage copy(final long newID)
@@ -414,6 +423,35 @@ public final class LargeServerMessageImpl extends ServerMessageImpl implements L
       }
    }
 
+   /**
+    * @return true if the target was created as a hard link to the file of the source
+    */
+   private static boolean linkFile(final SequentialFile source, final SequentialFile target)
+   {
+      File sourceFile = source.getJavaFile();
+
+      File targetFile = target.getJavaFile();
+
+      if (sourceFile == null || targetFile == null || !sourceFile.exists() || targetFile.exists())
+      {
+         return false;
+      }
+
+      try
+      {
+         Files.createLink(targetFile.toPath(), sourceFile.toPath());
+
+         return true;
+      }
+      catch (Exception e)
+      {
+         // e.g. UnsupportedOperationException or FileSystemException, the file is copied instead
+         HornetQServerLogger.LOGGER.debug("Could not link " + targetFile + " to " + sourceFile, e);
+
+         return false;
+      }
+   }
+
    /**
     *
     */
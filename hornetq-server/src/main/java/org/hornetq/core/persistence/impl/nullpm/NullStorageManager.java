@@ -14,6 +14,7 @@ package org.hornetq.core.persistence.impl.nullpm;
 
 import javax.transaction.xa.Xid;
 import java.nio.ByteBuffer;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -329,6 +330,24 @@ public class NullStorageManager implements StorageManager
    {
    }
 
+   @Override
+   public void storeDuplicateIDBatch(final SimpleString address, final byte[] duplID, final long sequence,
+                                     final int cacheSize, final long recordID) throws Exception
+   {
+   }
+
+   @Override
+   public void updateDuplicateIDBatch(final SimpleString address, final byte[] duplID, final long sequence,
+                                      final int cacheSize, final long recordID) throws Exception
+   {
+   }
+
+   @Override
+   public void deleteDuplicateIDFromBatch(final SimpleString address, final byte[] duplID, final long sequence,
+                                          final long recordID) throws Exception
+   {
+   }
+
    @Override
    public void pageClosed(final SimpleString storeName, final int pageNumber)
    {
@@ -452,6 +471,15 @@ public class NullStorageManager implements StorageManager
    {
    }
 
+   @Override
+   public long storeCursorPageAcknowledgeTransactional(final long txID,
+                                                       final long queueID,
+                                                       final long pageNr,
+                                                       final BitSet messageNrs)
+   {
+      return generateID();
+   }
+
    @Override
    public void deleteCursorAcknowledgeTransactional(final long txID, final long ackID) throws Exception
    {
@@ -476,15 +504,14 @@ public class NullStorageManager implements StorageManager
    }
 
    @Override
-   public long storePageCounter(final long txID, final long queueID, final long value) throws Exception
+   public long storePageCount(final long queueID, final long pageID, final int count) throws Exception
    {
-      return 0;
+      return -1;
    }
 
    @Override
-   public long storePendingCounter(long queueID, long pageID, int inc) throws Exception
+   public void deletePageCount(final long recordID) throws Exception
    {
-      return -1;
    }
 
    @Override
@@ -501,18 +528,6 @@ public class NullStorageManager implements StorageManager
    {
    }
 
-   @Override
-   public long storePageCounterInc(final long txID, final long queueID, final int add) throws Exception
-   {
-      return 0;
-   }
-
-   @Override
-   public long storePageCounterInc(final long queueID, final int add) throws Exception
-   {
-      return 0;
-   }
-
    @Override
    public void commit(final long txID, final boolean lineUpContext) throws Exception
    {
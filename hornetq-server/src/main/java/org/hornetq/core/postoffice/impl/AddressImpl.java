@@ -14,9 +14,11 @@ package org.hornetq.core.postoffice.impl;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.postoffice.Address;
+import org.hornetq.utils.ConcurrentHashSet;
 
 /**
  * splits an address string into its hierarchical parts split by '.'
@@ -31,7 +33,8 @@ public class AddressImpl implements Address
 
    private final boolean containsWildCard;
 
-   private final List<Address> linkedAddresses = new ArrayList<Address>();
+   // a set as a wildcard address such as '#' may be linked to every address
+   private final Set<Address> linkedAddresses = new ConcurrentHashSet<Address>();
 
    public AddressImpl(final SimpleString address)
    {
@@ -57,15 +60,12 @@ public class AddressImpl implements Address
 
    public List<Address> getLinkedAddresses()
    {
-      return linkedAddresses;
+      return new ArrayList<Address>(linkedAddresses);
    }
 
    public void addLinkedAddress(final Address address)
    {
-      if (!linkedAddresses.contains(address))
-      {
-         linkedAddresses.add(address);
-      }
+      linkedAddresses.add(address);
    }
 
    public void removeLinkedAddress(final Address actualAddress)
@@ -73,77 +73,62 @@ public class AddressImpl implements Address
       linkedAddresses.remove(actualAddress);
    }
 
+   /**
+    * A '*' word matches exactly one word and a '#' word matches zero or more words, so 'a.#.b'
+    * matches 'a.b' as well as 'a.x.y.b'. This is the same matching as the {@link AddressTrie} of
+    * the {@link WildcardAddressManager}.
+    */
    public boolean matches(final Address add)
    {
       if (containsWildCard == add.containsWildCard())
       {
          return address.equals(add.getAddress());
       }
-      int pos = 0;
-      int matchPos = 0;
 
-      SimpleString nextToMatch;
-      for (; matchPos < add.getAddressParts().length; )
+      if (containsWildCard)
       {
-         if (pos >= addressParts.length)
-         {
-            // test for # as last address part
-            return pos + 1 == add.getAddressParts().length && add.getAddressParts()[pos].equals(WildcardAddressManager.ANY_WORDS_SIMPLESTRING);
-         }
-         SimpleString curr = addressParts[pos];
-         SimpleString next = addressParts.length > pos + 1 ? addressParts[pos + 1] : null;
-         SimpleString currMatch = add.getAddressParts()[matchPos];
-         if (currMatch.equals(WildcardAddressManager.SINGLE_WORD_SIMPLESTRING))
-         {
-            pos++;
-            matchPos++;
-         }
-         else if (currMatch.equals(WildcardAddressManager.ANY_WORDS_SIMPLESTRING))
+         return matches(add.getAddressParts(), 0, addressParts, 0);
+      }
+
+      return matches(addressParts, 0, add.getAddressParts(), 0);
+   }
+
+   private static boolean matches(final SimpleString[] words,
+                                  final int index,
+                                  final SimpleString[] wildcardWords,
+                                  final int wildcardIndex)
+   {
+      if (wildcardIndex == wildcardWords.length)
+      {
+         return index == words.length;
+      }
+
+      SimpleString wildcardWord = wildcardWords[wildcardIndex];
+
+      if (wildcardWord.equals(WildcardAddressManager.ANY_WORDS_SIMPLESTRING))
+      {
+         for (int next = index; next <= words.length; next++)
          {
-            if (matchPos == addressParts.length - 1)
-            {
-               pos++;
-               matchPos++;
-            }
-            else if (next == null)
-            {
-               return false;
-            }
-            else if (matchPos == add.getAddressParts().length - 1)
+            if (matches(words, next, wildcardWords, wildcardIndex + 1))
             {
                return true;
             }
-            else
-            {
-               nextToMatch = add.getAddressParts()[matchPos + 1];
-               while (curr != null)
-               {
-                  if (curr.equals(nextToMatch))
-                  {
-                     break;
-                  }
-                  pos++;
-                  curr = next;
-                  next = addressParts.length > pos + 1 ? addressParts[pos + 1] : null;
-               }
-               if (curr == null)
-               {
-                  return false;
-               }
-               matchPos++;
-            }
-         }
-         else
-         {
-            if (!curr.equals(currMatch))
-            {
-               return false;
-            }
-            pos++;
-            matchPos++;
          }
+
+         return false;
+      }
+
+      if (index == words.length)
+      {
+         return false;
       }
-      return pos == addressParts.length;
+
+      if (wildcardWord.equals(WildcardAddressManager.SINGLE_WORD_SIMPLESTRING) || wildcardWord.equals(words[index]))
+      {
+         return matches(words, index + 1, wildcardWords, wildcardIndex + 1);
+      }
+
+      return false;
    }
 
    @Override
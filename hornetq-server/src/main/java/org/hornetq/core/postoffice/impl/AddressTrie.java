@@ -0,0 +1,218 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.core.postoffice.impl;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.postoffice.Address;
+
+/**
+ * A trie of addresses keyed by their '.' separated words.
+ * <p>
+ * The {@link WildcardAddressManager} keeps one trie for the addresses and one for the wildcard
+ * addresses, so linking an address to the wildcard addresses matching it (or the other way around)
+ * walks the words of the address instead of comparing it with every other address.
+ * <p>
+ * A '*' word matches exactly one word and a '#' word matches zero or more words. Any other word,
+ * including one such as 'a#' that merely contains a wildcard character, must be equal.
+ * <p>
+ * Updates must be done by one thread at a time, lookups need no lock.
+ */
+final class AddressTrie
+{
+   private final Node root = new Node();
+
+   void put(final Address address)
+   {
+      Node node = root;
+
+      for (SimpleString word : address.getAddressParts())
+      {
+         Node child = node.children.get(word);
+
+         if (child == null)
+         {
+            child = new Node();
+
+            node.children.put(word, child);
+         }
+
+         node = child;
+      }
+
+      node.address = address;
+   }
+
+   void remove(final Address address)
+   {
+      remove(root, address.getAddressParts(), 0);
+   }
+
+   private static void remove(final Node node, final SimpleString[] words, final int index)
+   {
+      if (index == words.length)
+      {
+         node.address = null;
+
+         return;
+      }
+
+      Node child = node.children.get(words[index]);
+
+      if (child != null)
+      {
+         remove(child, words, index + 1);
+
+         if (child.address == null && child.children.isEmpty())
+         {
+            node.children.remove(words[index]);
+         }
+      }
+   }
+
+   void clear()
+   {
+      root.children.clear();
+      root.address = null;
+   }
+
+   /**
+    * Adds the addresses of this trie which are matched by the wildcard address.
+    */
+   @SuppressWarnings("unchecked")
+   void addMatchedBy(final Address wildcardAddress, final Set<Address> matched)
+   {
+      SimpleString[] words = wildcardAddress.getAddressParts();
+
+      addMatchedBy(root, words, 0, matched, new Set[words.length]);
+   }
+
+   private static void addMatchedBy(final Node node,
+                                    final SimpleString[] words,
+                                    final int index,
+                                    final Set<Address> matched,
+                                    final Set<Node>[] visited)
+   {
+      if (index == words.length)
+      {
+         Address address = node.address;
+
+         if (address != null)
+         {
+            matched.add(address);
+         }
+
+         return;
+      }
+
+      SimpleString word = words[index];
+
+      if (word.equals(WildcardAddressManager.ANY_WORDS_SIMPLESTRING))
+      {
+         // a node is reached once per '#' word, no matter how many words were skipped to get there
+         if (visited[index] == null)
+         {
+            visited[index] = new HashSet<Node>();
+         }
+
+         if (!visited[index].add(node))
+         {
+            return;
+         }
+
+         addMatchedBy(node, words, index + 1, matched, visited);
+
+         for (Node child : node.children.values())
+         {
+            addMatchedBy(child, words, index, matched, visited);
+         }
+      }
+      else if (word.equals(WildcardAddressManager.SINGLE_WORD_SIMPLESTRING))
+      {
+         for (Node child : node.children.values())
+         {
+            addMatchedBy(child, words, index + 1, matched, visited);
+         }
+      }
+      else
+      {
+         Node child = node.children.get(word);
+
+         if (child != null)
+         {
+            addMatchedBy(child, words, index + 1, matched, visited);
+         }
+      }
+   }
+
+   /**
+    * Adds the wildcard addresses of this trie which match the address.
+    */
+   void addMatching(final Address address, final Set<Address> matching)
+   {
+      addMatching(root, address.getAddressParts(), 0, matching);
+   }
+
+   private static void addMatching(final Node node,
+                                   final SimpleString[] words,
+                                   final int index,
+                                   final Set<Address> matching)
+   {
+      Node anyWords = node.children.get(WildcardAddressManager.ANY_WORDS_SIMPLESTRING);
+
+      if (anyWords != null)
+      {
+         for (int next = index; next <= words.length; next++)
+         {
+            addMatching(anyWords, words, next, matching);
+         }
+      }
+
+      if (index == words.length)
+      {
+         Address address = node.address;
+
+         if (address != null)
+         {
+            matching.add(address);
+         }
+
+         return;
+      }
+
+      Node singleWord = node.children.get(WildcardAddressManager.SINGLE_WORD_SIMPLESTRING);
+
+      if (singleWord != null)
+      {
+         addMatching(singleWord, words, index + 1, matching);
+      }
+
+      Node child = node.children.get(words[index]);
+
+      if (child != null)
+      {
+         addMatching(child, words, index + 1, matching);
+      }
+   }
+
+   private static final class Node
+   {
+      private final ConcurrentMap<SimpleString, Node> children = new ConcurrentHashMap<SimpleString, Node>();
+
+      private volatile Address address;
+   }
+}
@@ -30,10 +30,13 @@ import org.hornetq.core.message.impl.MessageImpl;
 import org.hornetq.core.paging.PagingStore;
 import org.hornetq.core.postoffice.Binding;
 import org.hornetq.core.postoffice.Bindings;
+import org.hornetq.core.postoffice.impl.RoutingPlan.RoutingName;
+import org.hornetq.core.postoffice.impl.RoutingPlan.RoutingPosition;
 import org.hornetq.core.server.HornetQServerLogger;
 import org.hornetq.core.server.Queue;
 import org.hornetq.core.server.RoutingContext;
 import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.SharedMessageLog;
 import org.hornetq.core.server.cluster.RemoteQueueBinding;
 import org.hornetq.core.server.group.GroupingHandler;
 import org.hornetq.core.server.group.impl.Proposal;
@@ -55,12 +58,16 @@ public final class BindingsImpl implements Bindings
 
    private final ConcurrentMap<SimpleString, List<Binding>> routingNameBindingMap = new ConcurrentHashMap<SimpleString, List<Binding>>();
 
-   private final Map<SimpleString, Integer> routingNamePositions = new ConcurrentHashMap<SimpleString, Integer>();
+   private final ConcurrentMap<SimpleString, RoutingPosition> routingNamePositions = new ConcurrentHashMap<SimpleString, RoutingPosition>();
 
    private final Map<Long, Binding> bindingsMap = new ConcurrentHashMap<Long, Binding>();
 
    private final List<Binding> exclusiveBindings = new CopyOnWriteArrayList<Binding>();
 
+   private volatile FilterRoutingIndex routingIndex = FilterRoutingIndex.EMPTY;
+
+   private volatile RoutingPlan plan = RoutingPlan.EMPTY;
+
    private volatile boolean routeWhenNoConsumers;
 
    private final GroupingHandler groupingHandler;
@@ -123,10 +130,14 @@ public final class BindingsImpl implements Bindings
          }
 
          bindings.add(binding);
+
+         routingIndex = routingIndex.update(routingName, bindings);
       }
 
       bindingsMap.put(binding.getID(), binding);
 
+      updatePlan();
+
       if (isTrace)
       {
          HornetQServerLogger.LOGGER.trace("Adding binding " + binding + " into " + this + " bindingTable: " + debugBindings());
@@ -153,18 +164,39 @@ public final class BindingsImpl implements Bindings
             if (bindings.isEmpty())
             {
                routingNameBindingMap.remove(routingName);
+
+               routingNamePositions.remove(routingName);
             }
          }
+
+         routingIndex = routingIndex.update(routingName, routingNameBindingMap.get(routingName));
       }
 
       bindingsMap.remove(binding.getID());
 
+      updatePlan();
+
       if (isTrace)
       {
          HornetQServerLogger.LOGGER.trace("Removing binding " + binding + " into " + this + " bindingTable: " + debugBindings());
       }
    }
 
+   /**
+    * Builds the plan again from the bindings and the index as they are now. The last thread to
+    * update the bindings builds the plan last, so the plan doesn't go back to a previous state of
+    * the bindings. Routing only reads the plan, the index it holds included, so a message never
+    * sees the index of a binding change the plan doesn't have yet.
+    */
+   private synchronized void updatePlan()
+   {
+      plan = new RoutingPlan(exclusiveBindings,
+                             bindingsMap.values(),
+                             routingNameBindingMap,
+                             routingIndex,
+                             routingNamePositions);
+   }
+
    public boolean redistribute(final ServerMessage message, final Queue originatingQueue, final RoutingContext context) throws Exception
    {
       if (routeWhenNoConsumers)
@@ -177,22 +209,25 @@ public final class BindingsImpl implements Bindings
          HornetQServerLogger.LOGGER.trace("Redistributing message " + message);
       }
 
-      SimpleString routingName = originatingQueue.getName();
+      RoutingName routingName = plan.getRoutingName(originatingQueue.getName());
 
-      List<Binding> bindings = routingNameBindingMap.get(routingName);
-
-      if (bindings == null)
+      if (routingName == null)
       {
-         // The value can become null if it's concurrently removed while we're iterating - this is expected
-         // ConcurrentHashMap behaviour!
+         // The routing name can be concurrently removed - this is expected
          return false;
       }
 
-      Integer ipos = routingNamePositions.get(routingName);
+      Binding[] bindings = routingName.bindings;
 
-      int pos = ipos != null ? ipos.intValue() : 0;
+      int length = bindings.length;
 
-      int length = bindings.size();
+      int pos = routingName.position.get();
+
+      if (pos >= length)
+      {
+         // the position of a routing name which had more bindings
+         pos = 0;
+      }
 
       int startPos = pos;
 
@@ -201,27 +236,7 @@ public final class BindingsImpl implements Bindings
       // TODO - combine this with similar logic in route()
       while (true)
       {
-         Binding binding;
-         try
-         {
-            binding = bindings.get(pos);
-         }
-         catch (IndexOutOfBoundsException e)
-         {
-            // This can occur if binding is removed while in route
-            if (!bindings.isEmpty())
-            {
-               pos = 0;
-               startPos = 0;
-               length = bindings.size();
-
-               continue;
-            }
-            else
-            {
-               break;
-            }
-         }
+         Binding binding = bindings[pos];
 
          pos = incrementPos(pos, length);
 
@@ -242,7 +257,7 @@ public final class BindingsImpl implements Bindings
          }
       }
 
-      routingNamePositions.put(routingName, pos);
+      routingName.position.set(pos);
 
       if (theBinding != null)
       {
@@ -263,6 +278,8 @@ public final class BindingsImpl implements Bindings
 
    private void route(final ServerMessage message, final RoutingContext context, final boolean groupRouting) throws Exception
    {
+      RoutingPlan plan = this.plan;
+
       /* This is a special treatment for scaled-down messages involving SnF queues.
        * See org.hornetq.core.server.impl.ScaleDownHandler.scaleDownMessages() for the logic that sends messages with this property
        */
@@ -276,15 +293,11 @@ public final class BindingsImpl implements Bindings
             while (buffer.hasRemaining())
             {
                long id = buffer.getLong();
-               for (Map.Entry<Long, Binding> entry : bindingsMap.entrySet())
+               for (RemoteQueueBinding remoteQueueBinding : plan.remoteBindings)
                {
-                  if (entry.getValue() instanceof RemoteQueueBinding)
+                  if (remoteQueueBinding.getRemoteQueueID() == id)
                   {
-                     RemoteQueueBinding remoteQueueBinding = (RemoteQueueBinding) entry.getValue();
-                     if (remoteQueueBinding.getRemoteQueueID() == id)
-                     {
-                        message.putBytesProperty(MessageImpl.HDR_ROUTE_TO_IDS, ByteBuffer.allocate(8).putLong(remoteQueueBinding.getID()).array());
-                     }
+                     message.putBytesProperty(MessageImpl.HDR_ROUTE_TO_IDS, ByteBuffer.allocate(8).putLong(remoteQueueBinding.getID()).array());
                   }
                }
             }
@@ -293,32 +306,30 @@ public final class BindingsImpl implements Bindings
 
       boolean routed = false;
 
-      if (!exclusiveBindings.isEmpty())
+      for (Binding binding : plan.exclusiveBindings)
       {
-         for (Binding binding : exclusiveBindings)
+         if (binding.getFilter() == null || binding.getFilter().match(message))
          {
-            if (binding.getFilter() == null || binding.getFilter().match(message))
-            {
-               binding.getBindable().route(message, context);
+            binding.getBindable().route(message, context);
 
-               routed = true;
-            }
+            routed = true;
          }
       }
 
       if (!routed)
       {
-         // Remove the ids now, in order to avoid double check
-         byte[] ids = (byte[]) message.removeProperty(MessageImpl.HDR_ROUTE_TO_IDS);
+         // Remove the ids now, in order to avoid double check. Removing a property invalidates the
+         // encoded message so it's only done when the message has them
+         byte[] ids = message.containsProperty(MessageImpl.HDR_ROUTE_TO_IDS) ? (byte[]) message.removeProperty(MessageImpl.HDR_ROUTE_TO_IDS) : null;
 
          // Fetch the groupId now, in order to avoid double checking
-         SimpleString groupId = message.getSimpleStringProperty(Message.HDR_GROUP_ID);
+         SimpleString groupId = groupingHandler != null && groupRouting ? message.getSimpleStringProperty(Message.HDR_GROUP_ID) : null;
 
          if (ids != null)
          {
             routeFromCluster(message, context, ids);
          }
-         else if (groupingHandler != null && groupRouting && groupId != null)
+         else if (groupId != null)
          {
             routeUsingStrictOrdering(message, context, groupingHandler, groupId, 0);
          }
@@ -328,30 +339,89 @@ public final class BindingsImpl implements Bindings
             {
                HornetQServerLogger.LOGGER.trace("Routing message " + message + " on binding=" + this);
             }
-            for (Map.Entry<SimpleString, List<Binding>> entry : routingNameBindingMap.entrySet())
+
+            for (Binding binding : plan.unfilteredBindings)
+            {
+               binding.route(message, context);
+            }
+
+            if (plan.sharedLogRoutes.length > 0)
             {
-               SimpleString routingName = entry.getKey();
+               boolean shared = canShareLog(message, context);
 
-               List<Binding> bindings = entry.getValue();
+               for (SharedMessageLog.Route logRoute : plan.sharedLogRoutes)
+               {
+                  if (shared)
+                  {
+                     context.addSharedLogRoute(logRoute);
+                  }
+                  else
+                  {
+                     for (Queue queue : logRoute.getQueues())
+                     {
+                        queue.route(message, context);
+                     }
+                  }
+               }
+            }
 
-               if (bindings == null)
+            for (Binding binding : plan.filteredBindings)
+            {
+               if (binding.getFilter().match(message))
                {
-                  // The value can become null if it's concurrently removed while we're iterating - this is expected
-                  // ConcurrentHashMap behaviour!
-                  continue;
+                  binding.route(message, context);
                }
+            }
 
-               Binding theBinding = getNextBinding(message, routingName, bindings);
+            for (RoutingName routingName : plan.loadBalancedRoutingNames)
+            {
+               route(message, context, routingName);
+            }
 
-               if (theBinding != null)
+            if (plan.hasIndexedRoutingNames())
+            {
+               List<SimpleString> candidates = new ArrayList<SimpleString>();
+
+               plan.index.addCandidates(message, candidates);
+
+               for (SimpleString name : candidates)
                {
-                  theBinding.route(message, context);
+                  RoutingName routingName = plan.getIndexedRoutingName(name);
+
+                  if (routingName != null)
+                  {
+                     route(message, context, routingName);
+                  }
                }
             }
          }
       }
    }
 
+   /**
+    * A message goes through the shared logs only if the queues don't need a reference of their own
+    * for it: a durable message is stored with a journal reference per queue, which is what the
+    * queues are rebuilt from on restart and what their acknowledgements delete, a transacted message
+    * is added to the queues on commit and a scheduled message waits on each queue.
+    */
+   private static boolean canShareLog(final ServerMessage message, final RoutingContext context)
+   {
+      return context.getTransaction() == null &&
+         !message.isDurable() &&
+         !message.isLargeMessage() &&
+         !message.containsProperty(Message.HDR_SCHEDULED_DELIVERY_TIME);
+   }
+
+   private void route(final ServerMessage message, final RoutingContext context, final RoutingName routingName) throws Exception
+   {
+      Binding theBinding = getNextBinding(message, routingName);
+
+      if (theBinding != null)
+      {
+         theBinding.route(message, context);
+      }
+   }
+
    @Override
    public String toString()
    {
@@ -366,15 +436,19 @@ public final class BindingsImpl implements Bindings
     * these two servers. This will eventually send more messages to one server than the other
     * (depending if you are using multi-thread), and not lose messages.
     */
-   private Binding getNextBinding(final ServerMessage message,
-                                  final SimpleString routingName,
-                                  final List<Binding> bindings)
+   private Binding getNextBinding(final ServerMessage message, final RoutingName routingName)
    {
-      Integer ipos = routingNamePositions.get(routingName);
+      Binding[] bindings = routingName.bindings;
 
-      int pos = ipos != null ? ipos : 0;
+      int length = bindings.length;
 
-      int length = bindings.size();
+      int pos = routingName.position.get();
+
+      if (pos >= length)
+      {
+         // the position of a routing name which had more bindings
+         pos = 0;
+      }
 
       int startPos = pos;
 
@@ -384,27 +458,7 @@ public final class BindingsImpl implements Bindings
 
       while (true)
       {
-         Binding binding;
-         try
-         {
-            binding = bindings.get(pos);
-         }
-         catch (IndexOutOfBoundsException e)
-         {
-            // This can occur if binding is removed while in route
-            if (!bindings.isEmpty())
-            {
-               pos = 0;
-               startPos = 0;
-               length = bindings.size();
-
-               continue;
-            }
-            else
-            {
-               break;
-            }
-         }
+         Binding binding = bindings[pos];
 
          Filter filter = binding.getFilter();
 
@@ -439,26 +493,7 @@ public final class BindingsImpl implements Bindings
             // if no bindings were found, we will apply a secondary level on the routing logic
             if (lastLowPriorityBinding != -1)
             {
-               try
-               {
-                  theBinding = bindings.get(lastLowPriorityBinding);
-               }
-               catch (IndexOutOfBoundsException e)
-               {
-                  // This can occur if binding is removed while in route
-                  if (!bindings.isEmpty())
-                  {
-                     pos = 0;
-
-                     lastLowPriorityBinding = -1;
-
-                     continue;
-                  }
-                  else
-                  {
-                     break;
-                  }
-               }
+               theBinding = bindings[lastLowPriorityBinding];
 
                pos = incrementPos(lastLowPriorityBinding, length);
             }
@@ -467,7 +502,7 @@ public final class BindingsImpl implements Bindings
       }
       if (pos != startPos)
       {
-         routingNamePositions.put(routingName, pos);
+         routingName.position.set(pos);
       }
       return theBinding;
    }
@@ -478,23 +513,12 @@ public final class BindingsImpl implements Bindings
                                          final SimpleString groupId,
                                          final int tries) throws Exception
    {
-      for (Map.Entry<SimpleString, List<Binding>> entry : routingNameBindingMap.entrySet())
+      for (RoutingName routingName : plan.routingNames)
       {
-         SimpleString routingName = entry.getKey();
-
-         List<Binding> bindings = entry.getValue();
-
-         if (bindings == null)
-         {
-            // The value can become null if it's concurrently removed while we're iterating - this is expected
-            // ConcurrentHashMap behaviour!
-            continue;
-         }
-
          // concat a full group id, this is for when a binding has multiple bindings
          // NOTE: In case a dev ever change this rule, QueueImpl::unproposed is using this rule to determine if
          //       the binding belongs to its Queue before removing it
-         SimpleString fullID = groupId.concat(".").concat(routingName);
+         SimpleString fullID = groupId.concat(".").concat(routingName.name);
 
          // see if there is already a response
          Response resp = groupingGroupingHandler.getProposal(fullID, true);
@@ -502,7 +526,7 @@ public final class BindingsImpl implements Bindings
          if (resp == null)
          {
             // ok let's find the next binding to propose
-            Binding theBinding = getNextBinding(message, routingName, bindings);
+            Binding theBinding = getNextBinding(message, routingName);
             if (theBinding == null)
             {
                continue;
@@ -522,7 +546,7 @@ public final class BindingsImpl implements Bindings
             // if our proposal was declined find the correct binding to use
             if (resp != null && resp.getAlternativeClusterName() != null)
             {
-               theBinding = locateBinding(resp.getAlternativeClusterName(), bindings);
+               theBinding = routingName.locateBinding(resp.getAlternativeClusterName());
             }
 
             routeAndCheckNull(message, context, resp, theBinding, groupId, tries);
@@ -530,26 +554,13 @@ public final class BindingsImpl implements Bindings
          else
          {
             // ok, we need to find the binding and route it
-            Binding chosen = locateBinding(resp.getChosenClusterName(), bindings);
+            Binding chosen = routingName.locateBinding(resp.getChosenClusterName());
 
             routeAndCheckNull(message, context, resp, chosen, groupId, tries);
          }
       }
    }
 
-   private Binding locateBinding(SimpleString clusterName, List<Binding> bindings)
-   {
-      for (Binding binding : bindings)
-      {
-         if (binding.getClusterName().equals(clusterName))
-         {
-            return binding;
-         }
-      }
-
-      return null;
-   }
-
    private void routeAndCheckNull(ServerMessage message, RoutingContext context, Response resp, Binding theBinding, SimpleString groupId, int tries) throws Exception
    {
       // and let's route it
@@ -609,7 +620,7 @@ public final class BindingsImpl implements Bindings
       {
          out.println("EMPTY!");
       }
-      for (Map.Entry<SimpleString, Integer> entry : routingNamePositions.entrySet())
+      for (Map.Entry<SimpleString, RoutingPosition> entry : routingNamePositions.entrySet())
       {
          out.println("key=" + entry.getKey() + ", value=" + entry.getValue());
       }
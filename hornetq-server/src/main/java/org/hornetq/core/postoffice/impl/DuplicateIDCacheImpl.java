@@ -13,8 +13,11 @@
 package org.hornetq.core.postoffice.impl;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.hornetq.api.core.Pair;
@@ -30,6 +33,13 @@ import org.hornetq.core.transaction.TransactionOperationAbstract;
  * A DuplicateIDCacheImpl
  *
  * A fixed size rotating cache of last X duplicate ids.
+ * <p>
+ * The ids added outside of a transaction are persisted in batches: the ids of a batch are written
+ * as updates of a single journal record, which is deleted once all of its ids were evicted. So an
+ * evicted id doesn't need a delete record of its own, and the journal keeps at most the size of a
+ * batch more ids than the cache. Until the entry of an id deleted through
+ * {@link #deleteFromCache(byte[])} is reused, a reload may bring back one of the ids evicted
+ * before it.
  *
  * @author <a href="mailto:tim.fox@jboss.com">Tim Fox</a>
  *
@@ -37,6 +47,8 @@ import org.hornetq.core.transaction.TransactionOperationAbstract;
  */
 public class DuplicateIDCacheImpl implements DuplicateIDCache
 {
+   private static final int MAX_BATCH_SIZE = 1000;
+
    // ByteHolder, position
    private final Map<ByteArrayHolder, Integer> cache = new ConcurrentHashMap<ByteArrayHolder, Integer>();
 
@@ -54,6 +66,16 @@ public class DuplicateIDCacheImpl implements DuplicateIDCache
 
    private final boolean persist;
 
+   // recordID, number of ids of the cache held by the record
+   private final Map<Long, Integer> recordReferences = new HashMap<Long, Integer>();
+
+   private final int batchSize;
+
+   // the batch record the next ids are added to, -1 if there is none
+   private long batchRecordID = -1;
+
+   private int batchCount;
+
    public DuplicateIDCacheImpl(final SimpleString address,
                                final int size,
                                final StorageManager storageManager,
@@ -68,6 +90,8 @@ public class DuplicateIDCacheImpl implements DuplicateIDCache
       this.storageManager = storageManager;
 
       this.persist = persist;
+
+      batchSize = Math.max(1, Math.min(MAX_BATCH_SIZE, size / 10));
    }
 
    public void load(final List<Pair<byte[], Long>> theIds) throws Exception
@@ -76,6 +100,8 @@ public class DuplicateIDCacheImpl implements DuplicateIDCache
 
       long txID = -1;
 
+      Set<Long> extraRecords = new HashSet<Long>();
+
       for (Pair<byte[], Long> id : theIds)
       {
          if (count < cacheSize)
@@ -87,19 +113,30 @@ public class DuplicateIDCacheImpl implements DuplicateIDCache
             cache.put(bah, ids.size());
 
             ids.add(pair);
+
+            addRecordReference(id.getB());
          }
          else
          {
-            // cache size has been reduced in config - delete the extra records
+            extraRecords.add(id.getB());
+         }
+
+         count++;
+      }
+
+      for (Long recordID : extraRecords)
+      {
+         // cache size has been reduced in config - delete the extra records, unless a batch record
+         // still holds ids of the cache
+         if (!recordReferences.containsKey(recordID))
+         {
             if (txID == -1)
             {
                txID = storageManager.generateID();
             }
 
-            storageManager.deleteDuplicateIDTransactional(txID, id.getB());
+            storageManager.deleteDuplicateIDTransactional(txID, recordID);
          }
-
-         count++;
       }
 
       if (txID != -1)
@@ -134,7 +171,13 @@ public class DuplicateIDCacheImpl implements DuplicateIDCache
             if (id.getA().equals(bah))
             {
                id.setA(null);
-               storageManager.deleteDuplicateID(id.getB());
+
+               if (id.getB() != null && !releaseRecord(id.getB()))
+               {
+                  // the batch record holds other ids, so the id is deleted from it
+                  storageManager.deleteDuplicateIDFromBatch(address, duplicateID, storageManager.generateID(), id.getB());
+               }
+
                id.setB(null);
             }
          }
@@ -156,8 +199,7 @@ public class DuplicateIDCacheImpl implements DuplicateIDCache
       {
          if (persist)
          {
-            recordID = storageManager.generateID();
-            storageManager.storeDuplicateID(address, duplID, recordID);
+            recordID = storeInBatch(duplID);
          }
 
          addToCacheInMemory(duplID, recordID);
@@ -183,6 +225,75 @@ public class DuplicateIDCacheImpl implements DuplicateIDCache
       tx.addOperation(new AddDuplicateIDOperation(duplID, tx.getID()));
    }
 
+   /**
+    * @return the ID of the batch record the duplicate ID was added to
+    */
+   private long storeInBatch(final byte[] duplID) throws Exception
+   {
+      long sequence = storageManager.generateID();
+
+      if (batchRecordID == -1 || batchCount == batchSize)
+      {
+         long previousBatchRecordID = batchRecordID;
+
+         batchRecordID = storageManager.generateID();
+
+         batchCount = 0;
+
+         // the previous batch record may hold no id of the cache already
+         if (previousBatchRecordID != -1 && !recordReferences.containsKey(previousBatchRecordID))
+         {
+            storageManager.deleteDuplicateID(previousBatchRecordID);
+         }
+
+         storageManager.storeDuplicateIDBatch(address, duplID, sequence, cacheSize, batchRecordID);
+      }
+      else
+      {
+         storageManager.updateDuplicateIDBatch(address, duplID, sequence, cacheSize, batchRecordID);
+      }
+
+      batchCount++;
+
+      return batchRecordID;
+   }
+
+   private void addRecordReference(final long recordID)
+   {
+      Integer references = recordReferences.get(recordID);
+
+      recordReferences.put(recordID, references == null ? 1 : references + 1);
+   }
+
+   /**
+    * Releases the reference of an id of the cache to its record, the record is deleted if it holds
+    * no other id of the cache and no id is going to be added to it.
+    *
+    * @return true if the record was deleted
+    */
+   private boolean releaseRecord(final long recordID) throws Exception
+   {
+      Integer references = recordReferences.get(recordID);
+
+      if (references != null && references > 1)
+      {
+         recordReferences.put(recordID, references - 1);
+
+         return false;
+      }
+
+      recordReferences.remove(recordID);
+
+      if (recordID == batchRecordID)
+      {
+         return false;
+      }
+
+      storageManager.deleteDuplicateID(recordID);
+
+      return true;
+   }
+
    private synchronized void addToCacheInMemory(final byte[] duplID, final long recordID)
    {
       ByteArrayHolder holder = new ByteArrayHolder(duplID);
@@ -201,7 +312,8 @@ public class DuplicateIDCacheImpl implements DuplicateIDCache
          {
             cache.remove(id.getA());
 
-            // Record already exists - we delete the old one and add the new one
+            // Record already exists - we delete the old one unless it's a batch record holding
+            // other ids of the cache
             // Note we can't use update since journal update doesn't let older records get
             // reclaimed
 
@@ -209,7 +321,7 @@ public class DuplicateIDCacheImpl implements DuplicateIDCache
             {
                try
                {
-                  storageManager.deleteDuplicateID(id.getB());
+                  releaseRecord(id.getB());
                }
                catch (Exception e)
                {
@@ -235,6 +347,11 @@ public class DuplicateIDCacheImpl implements DuplicateIDCache
          holder.pos = pos;
       }
 
+      if (recordID >= 0)
+      {
+         addRecordReference(recordID);
+      }
+
       if (pos++ == cacheSize - 1)
       {
          pos = 0;
@@ -245,18 +362,27 @@ public class DuplicateIDCacheImpl implements DuplicateIDCache
    {
       synchronized (this)
       {
-         if (ids.size() > 0)
+         Set<Long> records = new HashSet<Long>(recordReferences.keySet());
+
+         if (batchRecordID != -1)
+         {
+            records.add(batchRecordID);
+         }
+
+         if (records.size() > 0)
          {
             long tx = storageManager.generateID();
-            for (Pair<ByteArrayHolder, Long> id : ids)
+            for (Long recordID : records)
             {
-               storageManager.deleteDuplicateIDTransactional(tx, id.getB());
+               storageManager.deleteDuplicateIDTransactional(tx, recordID);
             }
             storageManager.commit(tx);
          }
 
          ids.clear();
          cache.clear();
+         recordReferences.clear();
+         batchRecordID = -1;
          pos = 0;
       }
    }
@@ -267,7 +393,11 @@ public class DuplicateIDCacheImpl implements DuplicateIDCache
       List<Pair<byte[], Long>> list = new ArrayList<>();
       for (Pair<ByteArrayHolder, Long> id : ids)
       {
-         list.add(new Pair<>(id.getA().bytes, id.getB()));
+         // the id is null if it was explicitly deleted
+         if (id.getA() != null)
+         {
+            list.add(new Pair<>(id.getA().bytes, id.getB()));
+         }
       }
       return list;
    }
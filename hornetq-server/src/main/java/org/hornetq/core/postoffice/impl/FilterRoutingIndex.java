@@ -0,0 +1,221 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.core.postoffice.impl;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hornetq.api.core.Pair;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.filter.Filter;
+import org.hornetq.core.filter.impl.FilterImpl;
+import org.hornetq.core.postoffice.Binding;
+import org.hornetq.core.server.ServerMessage;
+
+/**
+ * Index of the routing names of an address by the property values their filter requires.
+ * <p>
+ * A routing name with a single binding whose filter requires a property to be equal to one of a
+ * few strings (e.g. {@code region = 'X' AND type = 'Y'} or {@code region IN ('X', 'Y')}) is put on
+ * the buckets of those values. Routing a message only looks at the buckets of the values the
+ * message has, so a topic with thousands of subscriptions filtering on the same properties
+ * evaluates the filters of the subscriptions that may match instead of all of them. Any other
+ * routing name is unindexed and always looked at.
+ * <p>
+ * The {@link RoutingPlan} holds the index it was built with, so routing a message asks the same
+ * snapshot whether a routing name is indexed and which indexed routing names may match.
+ * <p>
+ * The index is immutable: an update returns a new index sharing the buckets it didn't change, so a
+ * routing thread always sees a routing name either where it was before the update or where it is
+ * after it, never in neither. Updates are done by one thread at a time (bindings are added and
+ * removed under the post office lock) while any number of threads route.
+ */
+final class FilterRoutingIndex
+{
+   static final FilterRoutingIndex EMPTY =
+      new FilterRoutingIndex(Collections.<SimpleString, Map<SimpleString, SimpleString[]>>emptyMap(),
+                             Collections.<SimpleString, Pair<SimpleString, Set<SimpleString>>>emptyMap());
+
+   private static final SimpleString[] NO_ROUTING_NAMES = new SimpleString[0];
+
+   private final Map<SimpleString, Map<SimpleString, SimpleString[]>> buckets;
+
+   private final Map<SimpleString, Pair<SimpleString, Set<SimpleString>>> indexedRoutingNames;
+
+   private FilterRoutingIndex(final Map<SimpleString, Map<SimpleString, SimpleString[]>> buckets,
+                              final Map<SimpleString, Pair<SimpleString, Set<SimpleString>>> indexedRoutingNames)
+   {
+      this.buckets = buckets;
+      this.indexedRoutingNames = indexedRoutingNames;
+   }
+
+   /**
+    * Indexes the routing name again after its bindings changed.
+    *
+    * @param bindings the current bindings of the routing name, null if it has none
+    * @return the index with the routing name where its bindings put it now, this index is unchanged
+    */
+   FilterRoutingIndex update(final SimpleString routingName, final List<Binding> bindings)
+   {
+      Pair<SimpleString, Set<SimpleString>> requiredValues = null;
+
+      if (bindings != null && bindings.size() == 1)
+      {
+         Filter filter = bindings.get(0).getFilter();
+
+         if (filter instanceof FilterImpl)
+         {
+            requiredValues = ((FilterImpl) filter).getRequiredValues();
+         }
+      }
+
+      Pair<SimpleString, Set<SimpleString>> oldRequiredValues = indexedRoutingNames.get(routingName);
+
+      Map<SimpleString, Map<SimpleString, SimpleString[]>> newBuckets = buckets;
+
+      Map<SimpleString, Pair<SimpleString, Set<SimpleString>>> newIndexed = indexedRoutingNames;
+
+      if (oldRequiredValues != null || requiredValues != null)
+      {
+         newBuckets = new HashMap<SimpleString, Map<SimpleString, SimpleString[]>>(buckets);
+
+         newIndexed = new HashMap<SimpleString, Pair<SimpleString, Set<SimpleString>>>(indexedRoutingNames);
+
+         if (oldRequiredValues != null)
+         {
+            removeFromBuckets(newBuckets, routingName, oldRequiredValues);
+
+            newIndexed.remove(routingName);
+         }
+
+         if (requiredValues != null)
+         {
+            addToBuckets(newBuckets, routingName, requiredValues);
+
+            newIndexed.put(routingName, requiredValues);
+         }
+      }
+
+      return new FilterRoutingIndex(newBuckets, newIndexed);
+   }
+
+   /**
+    * Replaces the changed values of the property with copies, the buckets of the other properties
+    * are still shared with the previous index.
+    */
+   private static void addToBuckets(final Map<SimpleString, Map<SimpleString, SimpleString[]>> buckets,
+                                    final SimpleString routingName,
+                                    final Pair<SimpleString, Set<SimpleString>> requiredValues)
+   {
+      Map<SimpleString, SimpleString[]> values = buckets.get(requiredValues.getA());
+
+      values = values == null ? new HashMap<SimpleString, SimpleString[]>() : new HashMap<SimpleString, SimpleString[]>(values);
+
+      for (SimpleString value : requiredValues.getB())
+      {
+         SimpleString[] routingNames = values.get(value);
+
+         if (routingNames == null)
+         {
+            routingNames = NO_ROUTING_NAMES;
+         }
+
+         SimpleString[] newRoutingNames = new SimpleString[routingNames.length + 1];
+
+         System.arraycopy(routingNames, 0, newRoutingNames, 0, routingNames.length);
+
+         newRoutingNames[routingNames.length] = routingName;
+
+         values.put(value, newRoutingNames);
+      }
+
+      buckets.put(requiredValues.getA(), values);
+   }
+
+   private static void removeFromBuckets(final Map<SimpleString, Map<SimpleString, SimpleString[]>> buckets,
+                                         final SimpleString routingName,
+                                         final Pair<SimpleString, Set<SimpleString>> requiredValues)
+   {
+      Map<SimpleString, SimpleString[]> values = new HashMap<SimpleString, SimpleString[]>(buckets.get(requiredValues.getA()));
+
+      for (SimpleString value : requiredValues.getB())
+      {
+         SimpleString[] routingNames = values.get(value);
+
+         if (routingNames.length == 1)
+         {
+            values.remove(value);
+
+            continue;
+         }
+
+         SimpleString[] newRoutingNames = new SimpleString[routingNames.length - 1];
+
+         int pos = 0;
+
+         for (SimpleString name : routingNames)
+         {
+            if (!name.equals(routingName))
+            {
+               newRoutingNames[pos++] = name;
+            }
+         }
+
+         values.put(value, newRoutingNames);
+      }
+
+      if (values.isEmpty())
+      {
+         buckets.remove(requiredValues.getA());
+      }
+      else
+      {
+         buckets.put(requiredValues.getA(), values);
+      }
+   }
+
+   /**
+    * @return true if the routing name is only looked at for the messages having one of the values
+    * its filter requires
+    */
+   boolean isIndexed(final SimpleString routingName)
+   {
+      return indexedRoutingNames.containsKey(routingName);
+   }
+
+   /**
+    * Adds the indexed routing names whose filter may match the message. Each routing name is added
+    * once at most as it's only indexed on one property.
+    */
+   void addCandidates(final ServerMessage message, final List<SimpleString> candidates)
+   {
+      for (Map.Entry<SimpleString, Map<SimpleString, SimpleString[]>> entry : buckets.entrySet())
+      {
+         Object value = message.getObjectProperty(entry.getKey());
+
+         // the filters only match a string property
+         if (value instanceof SimpleString)
+         {
+            SimpleString[] routingNames = entry.getValue().get(value);
+
+            if (routingNames != null)
+            {
+               Collections.addAll(candidates, routingNames);
+            }
+         }
+      }
+   }
+}
@@ -0,0 +1,852 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.core.postoffice.impl;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.hornetq.api.core.Pair;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.persistence.StorageManager;
+import org.hornetq.core.postoffice.DuplicateIDCache;
+import org.hornetq.core.server.HornetQServerLogger;
+import org.hornetq.core.server.MessageReference;
+import org.hornetq.core.transaction.Transaction;
+import org.hornetq.core.transaction.TransactionOperationAbstract;
+
+/**
+ * A fixed size rotating cache of the last X duplicate ids, like {@link DuplicateIDCacheImpl}, which
+ * keeps the ids out of the heap and takes no lock.
+ * <p>
+ * Each id added takes the next entry of a ring of X entries, evicting the id added X ids before.
+ * The bytes of the ids are kept on direct buffers allocated as the ring fills up, only ids longer
+ * than {@link #KEY_SIZE} bytes are kept on the heap. The entries are found through an open
+ * addressing table of ring positions, and two Bloom filters (one per lap of the ring) let most ids
+ * which were never added skip the table. At most X ids are live on a table of at least 2X cells, so
+ * an id always finds an empty cell or the cell of an evicted id, and a live id is never overwritten.
+ * <p>
+ * Ids are persisted the same way as on {@link DuplicateIDCacheImpl}, but outside of any lock so the
+ * producers of an address don't wait on each other.
+ */
+public final class OffHeapDuplicateIDCache implements DuplicateIDCache
+{
+   /**
+    * Ids up to this size are kept on the direct buffers. A String duplicate id holding a UUID takes
+    * 72 bytes.
+    */
+   static final int KEY_SIZE = 96;
+
+   private static final int KEYS_PER_BUFFER = 1024;
+
+   private static final int BLOOM_BITS_PER_ID = 10;
+
+   private static final int BLOOM_HASHES = 4;
+
+   // an entry state is (sequence << 2 | phase), or EMPTY if the entry was never used
+
+   private static final long EMPTY = -1;
+
+   private static final int LIVE = 0;
+
+   private static final int WRITING = 1;
+
+   private static final int DELETED = 2;
+
+   // a thread waiting on another one spins this many times before it parks
+   private static final int MAX_SPINS = 64;
+
+   private static final long MAX_PARK_NANOS = 1000000;
+
+   // Unsafe.loadFence when the JVM has it (Java 8 and later), null otherwise
+   private static final MethodHandle LOAD_FENCE = findLoadFence();
+
+   // written as a fence by the readers when there is no loadFence
+   private static volatile int fence;
+
+   private final SimpleString address;
+
+   private final int cacheSize;
+
+   private final StorageManager storageManager;
+
+   private final boolean persist;
+
+   private final AtomicLong sequence = new AtomicLong();
+
+   private final AtomicLongArray states;
+
+   private final long[] recordIDs;
+
+   private final int[] hashes;
+
+   private final int[] lengths;
+
+   private final byte[][] longKeys;
+
+   private final AtomicReferenceArray<ByteBuffer> keyBuffers;
+
+   // ring sequence + 1 of the entries, 0 if the cell was never used
+   private final AtomicLongArray table;
+
+   private final int tableMask;
+
+   // the farthest from its first cell an id was put on the table, find doesn't look any farther
+   private final AtomicInteger maxProbes = new AtomicInteger(1);
+
+   private final AtomicLongArray[] blooms = new AtomicLongArray[2];
+
+   // the ring lap each Bloom filter was cleared for
+   private final AtomicLongArray bloomLaps = new AtomicLongArray(2);
+
+   private final int bloomMask;
+
+   public OffHeapDuplicateIDCache(final SimpleString address,
+                                  final int size,
+                                  final StorageManager storageManager,
+                                  final boolean persist)
+   {
+      this.address = address;
+
+      cacheSize = size;
+
+      this.storageManager = storageManager;
+
+      this.persist = persist;
+
+      states = new AtomicLongArray(size);
+
+      for (int i = 0; i < size; i++)
+      {
+         states.set(i, EMPTY);
+      }
+
+      recordIDs = new long[size];
+
+      hashes = new int[size];
+
+      lengths = new int[size];
+
+      longKeys = new byte[size][];
+
+      keyBuffers = new AtomicReferenceArray<ByteBuffer>((size + KEYS_PER_BUFFER - 1) / KEYS_PER_BUFFER);
+
+      table = new AtomicLongArray(powerOfTwo((long) size * 2));
+
+      tableMask = table.length() - 1;
+
+      int bloomWords = powerOfTwo(((long) size * BLOOM_BITS_PER_ID + 63) / 64);
+
+      blooms[0] = new AtomicLongArray(bloomWords);
+
+      blooms[1] = new AtomicLongArray(bloomWords);
+
+      bloomMask = bloomWords * 64 - 1;
+
+      bloomLaps.set(1, 1);
+   }
+
+   public void load(final List<Pair<byte[], Long>> theIds) throws Exception
+   {
+      long txID = -1;
+
+      List<Pair<byte[], Long>> cachedIds = theIds.subList(0, Math.min(cacheSize, theIds.size()));
+
+      Map<Long, Integer> recordReferences = new HashMap<Long, Integer>();
+
+      for (Pair<byte[], Long> id : cachedIds)
+      {
+         Integer references = recordReferences.get(id.getB());
+
+         recordReferences.put(id.getB(), references == null ? 1 : references + 1);
+      }
+
+      Set<Long> deletedRecords = new HashSet<Long>();
+
+      for (Pair<byte[], Long> id : theIds.subList(cachedIds.size(), theIds.size()))
+      {
+         // cache size has been reduced in config - delete the extra records
+         if (!recordReferences.containsKey(id.getB()) && deletedRecords.add(id.getB()))
+         {
+            if (txID == -1)
+            {
+               txID = storageManager.generateID();
+            }
+
+            storageManager.deleteDuplicateIDTransactional(txID, id.getB());
+         }
+      }
+
+      for (Pair<byte[], Long> id : cachedIds)
+      {
+         long recordID = id.getB() != null ? id.getB() : -1;
+
+         if (recordID >= 0 && recordReferences.get(recordID) > 1)
+         {
+            // a batch record of DuplicateIDCacheImpl, each id gets a record of its own as they
+            // are deleted one by one
+            if (txID == -1)
+            {
+               txID = storageManager.generateID();
+            }
+
+            if (deletedRecords.add(recordID))
+            {
+               storageManager.deleteDuplicateIDTransactional(txID, recordID);
+            }
+
+            recordID = storageManager.generateID();
+
+            storageManager.storeDuplicateIDTransactional(txID, address, id.getA(), recordID);
+         }
+
+         addToCacheInMemory(id.getA(), recordID);
+      }
+
+      if (txID != -1)
+      {
+         storageManager.commit(txID);
+      }
+   }
+
+   public void deleteFromCache(final byte[] duplicateID) throws Exception
+   {
+      int hash = hash(duplicateID);
+
+      long seq;
+
+      // the same id may have been added more than once
+      while ((seq = find(duplicateID, hash)) != -1)
+      {
+         int entry = entry(seq);
+
+         long recordID = recordIDs[entry];
+
+         if (states.compareAndSet(entry, state(seq, LIVE), state(seq, DELETED)) && recordID >= 0)
+         {
+            storageManager.deleteDuplicateID(recordID);
+         }
+      }
+   }
+
+   public boolean contains(final byte[] duplID)
+   {
+      int hash = hash(duplID);
+
+      return mightContain(hash) && find(duplID, hash) != -1;
+   }
+
+   public void addToCache(final byte[] duplID, final Transaction tx) throws Exception
+   {
+      long recordID = -1;
+
+      if (tx == null)
+      {
+         if (persist)
+         {
+            recordID = storageManager.generateID();
+            storageManager.storeDuplicateID(address, duplID, recordID);
+         }
+
+         addToCacheInMemory(duplID, recordID);
+      }
+      else
+      {
+         if (persist)
+         {
+            recordID = storageManager.generateID();
+            storageManager.storeDuplicateIDTransactional(tx.getID(), address, duplID, recordID);
+
+            tx.setContainsPersistent();
+         }
+
+         // For a tx, it's important that the entry is not added to the cache until commit
+         // since if the client fails then resends them tx we don't want it to get rejected
+         tx.addOperation(new AddDuplicateIDOperation(duplID, recordID));
+      }
+   }
+
+   public void load(final Transaction tx, final byte[] duplID)
+   {
+      tx.addOperation(new AddDuplicateIDOperation(duplID, tx.getID()));
+   }
+
+   private void addToCacheInMemory(final byte[] duplID, final long recordID)
+   {
+      long seq = sequence.getAndIncrement();
+
+      int hash = hash(duplID);
+
+      // the bits are set before the entry is visible, so a contains never misses the entry
+      addToBloom(seq, hash);
+
+      int entry = entry(seq);
+
+      long evictedRecordID = -1;
+
+      for (int attempt = 0; ; attempt++)
+      {
+         long current = states.get(entry);
+
+         if (current != EMPTY && sequence(current) > seq)
+         {
+            // the ring went all the way round since this id got its entry, so it's already evicted
+            if (recordID >= 0)
+            {
+               deleteDuplicateID(recordID);
+            }
+
+            return;
+         }
+
+         if (current != EMPTY && phase(current) == WRITING)
+         {
+            // the previous id of the entry is still being written
+            backoff(attempt);
+
+            continue;
+         }
+
+         if (states.compareAndSet(entry, current, state(seq, WRITING)))
+         {
+            if (current != EMPTY && phase(current) == LIVE)
+            {
+               evictedRecordID = recordIDs[entry];
+            }
+
+            break;
+         }
+      }
+
+      // The recordID could be negative if the duplicateCache is configured to not persist
+      recordIDs[entry] = recordID;
+
+      hashes[entry] = hash;
+
+      lengths[entry] = duplID.length;
+
+      if (duplID.length > KEY_SIZE)
+      {
+         longKeys[entry] = duplID;
+      }
+      else
+      {
+         longKeys[entry] = null;
+
+         ByteBuffer buffer = getKeyBuffer(entry);
+
+         int offset = (entry % KEYS_PER_BUFFER) * KEY_SIZE;
+
+         for (int i = 0; i < duplID.length; i++)
+         {
+            buffer.put(offset + i, duplID[i]);
+         }
+      }
+
+      states.set(entry, state(seq, LIVE));
+
+      addToTable(seq, hash);
+
+      // Record already exists - we delete the old one and add the new one
+      // Note we can't use update since journal update doesn't let older records get
+      // reclaimed
+      if (evictedRecordID >= 0)
+      {
+         deleteDuplicateID(evictedRecordID);
+      }
+   }
+
+   private void deleteDuplicateID(final long recordID)
+   {
+      try
+      {
+         storageManager.deleteDuplicateID(recordID);
+      }
+      catch (Exception e)
+      {
+         HornetQServerLogger.LOGGER.errorDeletingDuplicateCache(e);
+      }
+   }
+
+   private void addToTable(final long seq, final int hash)
+   {
+      int cell = hash & tableMask;
+
+      int probe = 0;
+
+      while (true)
+      {
+         long value = table.get(cell);
+
+         if (value == 0 || !isLive(value - 1))
+         {
+            // raised before the cell is taken, so a find done once the id is visible looks that far
+            raiseMaxProbes(probe + 1);
+
+            if (table.compareAndSet(cell, value, seq + 1))
+            {
+               return;
+            }
+
+            // another id got the cell first, it's looked at again
+            continue;
+         }
+
+         cell = (cell + 1) & tableMask;
+
+         probe++;
+      }
+   }
+
+   private void raiseMaxProbes(final int probes)
+   {
+      int current;
+
+      while ((current = maxProbes.get()) < probes && !maxProbes.compareAndSet(current, probes))
+      {
+         // another id raised it meanwhile
+      }
+   }
+
+   /**
+    * @return the ring sequence of the live entry holding the id, -1 if there is none
+    */
+   private long find(final byte[] duplID, final int hash)
+   {
+      int cell = hash & tableMask;
+
+      int probes = maxProbes.get();
+
+      for (int probe = 0; probe < probes; probe++)
+      {
+         long value = table.get(cell);
+
+         if (value == 0)
+         {
+            // cells are never emptied, so the id would have been put on this cell or an earlier one
+            return -1;
+         }
+
+         long seq = value - 1;
+
+         int entry = entry(seq);
+
+         long state = state(seq, LIVE);
+
+         if (states.get(entry) == state && hashes[entry] == hash && keyEquals(entry, duplID))
+         {
+            // the entry is only read as it was if it wasn't rewritten meanwhile, which is checked after
+            // the reads of its fields are done, as the validate of a StampedLock
+            loadFence();
+
+            if (states.get(entry) == state)
+            {
+               return seq;
+            }
+         }
+
+         cell = (cell + 1) & tableMask;
+      }
+
+      return -1;
+   }
+
+   private boolean isLive(final long seq)
+   {
+      return states.get(entry(seq)) == state(seq, LIVE);
+   }
+
+   private boolean keyEquals(final int entry, final byte[] duplID)
+   {
+      if (lengths[entry] != duplID.length)
+      {
+         return false;
+      }
+
+      if (duplID.length > KEY_SIZE)
+      {
+         byte[] key = longKeys[entry];
+
+         if (key == null)
+         {
+            return false;
+         }
+
+         for (int i = 0; i < duplID.length; i++)
+         {
+            if (key[i] != duplID[i])
+            {
+               return false;
+            }
+         }
+
+         return true;
+      }
+
+      ByteBuffer buffer = keyBuffers.get(entry / KEYS_PER_BUFFER);
+
+      if (buffer == null)
+      {
+         // the entry is being written
+         return false;
+      }
+
+      int offset = (entry % KEYS_PER_BUFFER) * KEY_SIZE;
+
+      for (int i = 0; i < duplID.length; i++)
+      {
+         if (buffer.get(offset + i) != duplID[i])
+         {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   /**
+    * @return the id of the entry, null if the entry is being written
+    */
+   private byte[] getKey(final int entry)
+   {
+      byte[] key = longKeys[entry];
+
+      if (key != null)
+      {
+         return key;
+      }
+
+      ByteBuffer buffer = keyBuffers.get(entry / KEYS_PER_BUFFER);
+
+      if (buffer == null)
+      {
+         return null;
+      }
+
+      key = new byte[Math.min(lengths[entry], KEY_SIZE)];
+
+      int offset = (entry % KEYS_PER_BUFFER) * KEY_SIZE;
+
+      for (int i = 0; i < key.length; i++)
+      {
+         key[i] = buffer.get(offset + i);
+      }
+
+      return key;
+   }
+
+   private ByteBuffer getKeyBuffer(final int entry)
+   {
+      int index = entry / KEYS_PER_BUFFER;
+
+      ByteBuffer buffer = keyBuffers.get(index);
+
+      if (buffer == null)
+      {
+         int keys = Math.min(KEYS_PER_BUFFER, cacheSize - index * KEYS_PER_BUFFER);
+
+         keyBuffers.compareAndSet(index, null, ByteBuffer.allocateDirect(keys * KEY_SIZE));
+
+         buffer = keyBuffers.get(index);
+      }
+
+      return buffer;
+   }
+
+   private void addToBloom(final long seq, final int hash)
+   {
+      long lap = seq / cacheSize;
+
+      int index = (int) (lap & 1);
+
+      AtomicLongArray bloom = blooms[index];
+
+      if (lap > 1 && seq % cacheSize == 0)
+      {
+         // the first id of a lap clears the filter of two laps ago, whose ids are all being replaced
+         // by the ids of the previous lap
+         for (int attempt = 0; bloomLaps.get(index) < lap - 2; attempt++)
+         {
+            backoff(attempt);
+         }
+
+         for (int i = 0; i < bloom.length(); i++)
+         {
+            bloom.set(i, 0);
+         }
+
+         bloomLaps.set(index, lap);
+      }
+      else
+      {
+         // the first id of the lap is clearing the filter
+         for (int attempt = 0; bloomLaps.get(index) < lap; attempt++)
+         {
+            backoff(attempt);
+         }
+      }
+
+      int h2 = Integer.rotateLeft(hash, 16) * 0x85ebca6b | 1;
+
+      for (int i = 0; i < BLOOM_HASHES; i++)
+      {
+         int bit = (hash + i * h2) & bloomMask;
+
+         int word = bit >>> 6;
+
+         long mask = 1L << bit;
+
+         long value = bloom.get(word);
+
+         while ((value & mask) == 0 && !bloom.compareAndSet(word, value, value | mask))
+         {
+            value = bloom.get(word);
+         }
+      }
+   }
+
+   private boolean mightContain(final int hash)
+   {
+      return mightContain(blooms[0], hash) || mightContain(blooms[1], hash);
+   }
+
+   private boolean mightContain(final AtomicLongArray bloom, final int hash)
+   {
+      int h2 = Integer.rotateLeft(hash, 16) * 0x85ebca6b | 1;
+
+      for (int i = 0; i < BLOOM_HASHES; i++)
+      {
+         int bit = (hash + i * h2) & bloomMask;
+
+         if ((bloom.get(bit >>> 6) & 1L << bit) == 0)
+         {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   public void clear() throws Exception
+   {
+      List<Long> deleted = new ArrayList<Long>();
+
+      for (int entry = 0; entry < cacheSize; entry++)
+      {
+         long state = states.get(entry);
+
+         long recordID = recordIDs[entry];
+
+         if (state != EMPTY &&
+            phase(state) == LIVE &&
+            states.compareAndSet(entry, state, state(sequence(state), DELETED)) &&
+            recordID >= 0)
+         {
+            deleted.add(recordID);
+         }
+      }
+
+      if (!deleted.isEmpty())
+      {
+         long tx = storageManager.generateID();
+         for (Long recordID : deleted)
+         {
+            storageManager.deleteDuplicateIDTransactional(tx, recordID);
+         }
+         storageManager.commit(tx);
+      }
+   }
+
+   @Override
+   public List<Pair<byte[], Long>> getMap()
+   {
+      List<Pair<byte[], Long>> list = new ArrayList<>();
+
+      for (int entry = 0; entry < cacheSize; entry++)
+      {
+         long state = states.get(entry);
+
+         if (state != EMPTY && phase(state) == LIVE)
+         {
+            long recordID = recordIDs[entry];
+
+            byte[] key = getKey(entry);
+
+            loadFence();
+
+            if (key != null && states.get(entry) == state)
+            {
+               list.add(new Pair<>(key, recordID >= 0 ? recordID : null));
+            }
+         }
+      }
+
+      return list;
+   }
+
+   /**
+    * Waits for another thread to be done with an entry or a filter. It only writes a few fields, so
+    * this spins first, then parks a little longer each time in case the thread was descheduled.
+    */
+   private static void backoff(final int attempt)
+   {
+      if (attempt >= MAX_SPINS)
+      {
+         LockSupport.parkNanos(Math.min(1L << Math.min(attempt - MAX_SPINS, 20), MAX_PARK_NANOS));
+      }
+   }
+
+   /**
+    * Keeps the reads before the fence from being done after the reads which follow it.
+    */
+   private static void loadFence()
+   {
+      if (LOAD_FENCE == null)
+      {
+         // a volatile write is followed by a full fence on the JVMs without loadFence
+         fence = 0;
+
+         return;
+      }
+
+      try
+      {
+         LOAD_FENCE.invokeExact();
+      }
+      catch (Throwable e)
+      {
+         throw new IllegalStateException(e);
+      }
+   }
+
+   private static MethodHandle findLoadFence()
+   {
+      try
+      {
+         Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+
+         Field field = unsafeClass.getDeclaredField("theUnsafe");
+
+         field.setAccessible(true);
+
+         return MethodHandles.lookup()
+            .findVirtual(unsafeClass, "loadFence", MethodType.methodType(void.class))
+            .bindTo(field.get(null));
+      }
+      catch (Throwable e)
+      {
+         return null;
+      }
+   }
+
+   private int entry(final long seq)
+   {
+      return (int) (seq % cacheSize);
+   }
+
+   private static long state(final long seq, final int phase)
+   {
+      return seq << 2 | phase;
+   }
+
+   private static long sequence(final long state)
+   {
+      return state >> 2;
+   }
+
+   private static int phase(final long state)
+   {
+      return (int) (state & 3);
+   }
+
+   private static int hash(final byte[] bytes)
+   {
+      // FNV-1a, then a final mix so the low bits used by the table and the filters are well spread
+      int hash = 0x811c9dc5;
+
+      for (byte b : bytes)
+      {
+         hash = (hash ^ (b & 0xff)) * 0x01000193;
+      }
+
+      hash ^= hash >>> 16;
+      hash *= 0x85ebca6b;
+      hash ^= hash >>> 13;
+      hash *= 0xc2b2ae35;
+      hash ^= hash >>> 16;
+
+      return hash;
+   }
+
+   private static int powerOfTwo(final long value)
+   {
+      int result = 1;
+
+      while (result < value)
+      {
+         result <<= 1;
+      }
+
+      return result;
+   }
+
+   private final class AddDuplicateIDOperation extends TransactionOperationAbstract
+   {
+      final byte[] duplID;
+
+      final long recordID;
+
+      volatile boolean done;
+
+      AddDuplicateIDOperation(final byte[] duplID, final long recordID)
+      {
+         this.duplID = duplID;
+         this.recordID = recordID;
+      }
+
+      private void process()
+      {
+         if (!done)
+         {
+            addToCacheInMemory(duplID, recordID);
+
+            done = true;
+         }
+      }
+
+      @Override
+      public void afterCommit(final Transaction tx)
+      {
+         process();
+      }
+
+      @Override
+      public List<MessageReference> getRelatedMessageReferences()
+      {
+         return null;
+      }
+   }
+}
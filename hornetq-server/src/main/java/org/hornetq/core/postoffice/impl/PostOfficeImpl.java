@@ -61,9 +61,11 @@ import org.hornetq.core.server.QueueFactory;
 import org.hornetq.core.server.RouteContextList;
 import org.hornetq.core.server.RoutingContext;
 import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.SharedMessageLog;
 import org.hornetq.core.server.group.GroupingHandler;
 import org.hornetq.core.server.impl.RoutingContextImpl;
 import org.hornetq.core.server.impl.ServerMessageImpl;
+import org.hornetq.core.server.impl.SharedMessageLogImpl;
 import org.hornetq.core.server.management.ManagementService;
 import org.hornetq.core.server.management.Notification;
 import org.hornetq.core.server.management.NotificationListener;
@@ -116,10 +118,14 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
 
    private final ConcurrentMap<SimpleString, DuplicateIDCache> duplicateIDCaches = new ConcurrentHashMap<SimpleString, DuplicateIDCache>();
 
+   private final ConcurrentMap<SimpleString, SharedMessageLog> sharedLogs = new ConcurrentHashMap<SimpleString, SharedMessageLog>();
+
    private final int idCacheSize;
 
    private final boolean persistIDCache;
 
+   private final boolean idCacheOffHeap;
+
    private final Map<SimpleString, QueueInfo> queueInfos = new HashMap<SimpleString, QueueInfo>();
 
    private final Object notificationLock = new Object();
@@ -138,6 +144,7 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
                          final boolean enableWildCardRouting,
                          final int idCacheSize,
                          final boolean persistIDCache,
+                         final boolean idCacheOffHeap,
                          final HierarchicalRepository<AddressSettings> addressSettingsRepository)
 
    {
@@ -166,6 +173,8 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
 
       this.persistIDCache = persistIDCache;
 
+      this.idCacheOffHeap = idCacheOffHeap;
+
       this.addressSettingsRepository = addressSettingsRepository;
 
       this.server = server;
@@ -456,7 +465,26 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
    // even though failover is complete
    public synchronized void addBinding(final Binding binding) throws Exception
    {
-      addressManager.addBinding(binding);
+      // opened before the binding is added, so the routing plan built for it routes the queue through
+      // the shared log
+      if (binding.getType() == BindingType.LOCAL_QUEUE && binding.getFilter() == null)
+      {
+         openSharedLogCursor(((LocalQueueBinding) binding).getQueue());
+      }
+
+      try
+      {
+         addressManager.addBinding(binding);
+      }
+      catch (Exception e)
+      {
+         if (binding.getType() == BindingType.LOCAL_QUEUE)
+         {
+            closeSharedLogCursor(((LocalQueueBinding) binding).getQueue());
+         }
+
+         throw e;
+      }
 
       TypedProperties props = new TypedProperties();
 
@@ -494,6 +522,15 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
 
       addressSettingsRepository.clearCache();
 
+      Binding existing = addressManager.getBinding(uniqueName);
+
+      // closed before the binding is removed, so the routing plan built without the binding finds the
+      // remaining readers of the shared log
+      if (existing != null && existing.getType() == BindingType.LOCAL_QUEUE)
+      {
+         closeSharedLogCursor(((LocalQueueBinding) existing).getQueue());
+      }
+
       Binding binding = addressManager.removeBinding(uniqueName, tx);
 
       if (binding == null)
@@ -550,6 +587,51 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
       return binding;
    }
 
+   private void openSharedLogCursor(final Queue queue)
+   {
+      AddressSettings addressSettings = addressSettingsRepository.getMatch(queue.getAddress().toString());
+
+      if (!addressSettings.isSharedFanOutLog() || addressSettings.isLastValueQueue())
+      {
+         return;
+      }
+
+      SharedMessageLog log = sharedLogs.get(queue.getAddress());
+
+      if (log == null)
+      {
+         log = new SharedMessageLogImpl(queue.getAddress());
+
+         SharedMessageLog existing = sharedLogs.putIfAbsent(queue.getAddress(), log);
+
+         if (existing != null)
+         {
+            log = existing;
+         }
+      }
+
+      queue.setSharedLogCursor(log.createCursor(queue));
+   }
+
+   private void closeSharedLogCursor(final Queue queue) throws Exception
+   {
+      SharedMessageLog.Cursor cursor = queue.getSharedLogCursor();
+
+      if (cursor == null)
+      {
+         return;
+      }
+
+      queue.setSharedLogCursor(null);
+
+      cursor.close();
+
+      if (cursor.getLog().getCursorCount() == 0)
+      {
+         sharedLogs.remove(cursor.getLog().getAddress(), cursor.getLog());
+      }
+   }
+
    private void deleteDuplicateCache(SimpleString address) throws Exception
    {
       DuplicateIDCache cache = duplicateIDCaches.remove(address);
@@ -834,7 +916,14 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
 
       if (cache == null)
       {
-         cache = new DuplicateIDCacheImpl(address, idCacheSize, storageManager, persistIDCache);
+         if (idCacheOffHeap)
+         {
+            cache = new OffHeapDuplicateIDCache(address, idCacheSize, storageManager, persistIDCache);
+         }
+         else
+         {
+            cache = new DuplicateIDCacheImpl(address, idCacheSize, storageManager, persistIDCache);
+         }
 
          DuplicateIDCache oldCache = duplicateIDCaches.putIfAbsent(address, cache);
 
@@ -1042,8 +1131,34 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
    {
       final List<MessageReference> refs = new ArrayList<MessageReference>();
 
+      List<SharedMessageLog.Route> logRoutes = null;
+
       Transaction tx = context.getTransaction();
 
+      for (SharedMessageLog.Route logRoute : context.getSharedLogRoutes())
+      {
+         if (pagingManager.getPageStore(logRoute.getLog().getAddress()).isPaging())
+         {
+            // a paged message is read by each queue through its own page subscription
+            for (Queue queue : logRoute.getQueues())
+            {
+               context.addQueue(queue.getAddress(), queue);
+            }
+
+            continue;
+         }
+
+         if (logRoutes == null)
+         {
+            logRoutes = new ArrayList<SharedMessageLog.Route>(1);
+         }
+
+         logRoutes.add(logRoute);
+
+         // held until the message is appended to the log
+         message.incrementRefCount();
+      }
+
       for (Map.Entry<SimpleString, RouteContextList> entry : context.getContexListing().entrySet())
       {
          PagingStore store = pagingManager.getPageStore(entry.getKey());
@@ -1156,6 +1271,9 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
       }
       else
       {
+         // only a message without transaction is routed through the shared logs
+         final List<SharedMessageLog.Route> logsToAppend = logRoutes;
+
          // This will use the same thread if there are no pending operations
          // avoiding a context switch on this case
          storageManager.afterCompleteOperations(new IOAsyncTask()
@@ -1168,11 +1286,58 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
             public void done()
             {
                addReferences(refs, direct);
+
+               if (logsToAppend != null)
+               {
+                  appendToSharedLogs(message, logsToAppend, direct);
+               }
             }
          });
       }
    }
 
+   private void appendToSharedLogs(final ServerMessage message,
+                                   final List<SharedMessageLog.Route> logRoutes,
+                                   final boolean direct)
+   {
+      for (SharedMessageLog.Route logRoute : logRoutes)
+      {
+         boolean appended = false;
+
+         try
+         {
+            appended = logRoute.append(message);
+         }
+         catch (Exception e)
+         {
+            HornetQServerLogger.LOGGER.errorAppendingToSharedLog(logRoute.getLog().getAddress(), e);
+         }
+
+         try
+         {
+            if (!appended)
+            {
+               // a queue was bound to or unbound from the address after the message was routed, only
+               // the queues routed to get the message
+               for (Queue queue : logRoute.getQueues())
+               {
+                  MessageReference reference = message.createReference(queue);
+
+                  message.incrementRefCount();
+
+                  queue.addTail(reference, direct);
+               }
+            }
+
+            message.decrementRefCount();
+         }
+         catch (Exception e)
+         {
+            HornetQServerLogger.LOGGER.errorAppendingToSharedLog(logRoute.getLog().getAddress(), e);
+         }
+      }
+   }
+
    /**
     * @param tx
     * @param message
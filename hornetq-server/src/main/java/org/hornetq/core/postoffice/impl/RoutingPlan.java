@@ -0,0 +1,382 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.core.postoffice.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.postoffice.Binding;
+import org.hornetq.core.server.Queue;
+import org.hornetq.core.server.SharedMessageLog;
+import org.hornetq.core.server.cluster.RemoteQueueBinding;
+
+/**
+ * An immutable view of the bindings of an address, split the way {@link BindingsImpl} routes
+ * them.
+ * <p>
+ * The plan is rebuilt when a binding is added or removed, so routing a message walks arrays instead
+ * of the maps of the bindings. A routing name with a single binding (the usual local queue) is routed
+ * to without looking for the next binding, a routing name with several bindings (the same queue on
+ * several cluster nodes) is load balanced through a position shared by the plans.
+ * <p>
+ * The plan also holds the {@link FilterRoutingIndex} it was built with. A routing name is routed to
+ * through the index only if the plan found it indexed with a single binding, and through the arrays
+ * otherwise, so a message is routed once to every routing name whatever bindings change meanwhile.
+ * <p>
+ * The local queues without filter reading a shared log are routed to through a single
+ * {@link SharedMessageLog.Route} per log, if they are all the readers of the log.
+ */
+final class RoutingPlan
+{
+   static final RoutingPlan EMPTY = new RoutingPlan();
+
+   private static final Binding[] NO_BINDINGS = new Binding[0];
+
+   private static final RoutingName[] NO_ROUTING_NAMES = new RoutingName[0];
+
+   private static final SharedMessageLog.Route[] NO_SHARED_LOG_ROUTES = new SharedMessageLog.Route[0];
+
+   /**
+    * The bindings routed to before anything else, routing stops there if one of them matches
+    */
+   final Binding[] exclusiveBindings;
+
+   /**
+    * The remote bindings, only looked at for scaled down messages
+    */
+   final RemoteQueueBinding[] remoteBindings;
+
+   /**
+    * The single bindings of the unindexed routing names which have no filter
+    */
+   final Binding[] unfilteredBindings;
+
+   /**
+    * The routes to the shared logs read by the single bindings of the unindexed routing names which
+    * have no filter, those bindings aren't on {@link #unfilteredBindings}
+    */
+   final SharedMessageLog.Route[] sharedLogRoutes;
+
+   /**
+    * The single bindings of the unindexed routing names which have a filter
+    */
+   final Binding[] filteredBindings;
+
+   /**
+    * The unindexed routing names with several bindings
+    */
+   final RoutingName[] loadBalancedRoutingNames;
+
+   /**
+    * All the routing names, indexed or not
+    */
+   final RoutingName[] routingNames;
+
+   /**
+    * The index of the routing names routed to only for the messages having a value their filter
+    * requires
+    */
+   final FilterRoutingIndex index;
+
+   private final Map<SimpleString, RoutingName> routingNamesByName;
+
+   private final Map<SimpleString, RoutingName> indexedRoutingNames;
+
+   private RoutingPlan()
+   {
+      exclusiveBindings = NO_BINDINGS;
+      remoteBindings = new RemoteQueueBinding[0];
+      unfilteredBindings = NO_BINDINGS;
+      sharedLogRoutes = NO_SHARED_LOG_ROUTES;
+      filteredBindings = NO_BINDINGS;
+      loadBalancedRoutingNames = NO_ROUTING_NAMES;
+      routingNames = NO_ROUTING_NAMES;
+      index = FilterRoutingIndex.EMPTY;
+      routingNamesByName = new HashMap<SimpleString, RoutingName>();
+      indexedRoutingNames = new HashMap<SimpleString, RoutingName>();
+   }
+
+   /**
+    * @param positions the round robin positions of the routing names, a new routing name gets its
+    *                  position added
+    */
+   RoutingPlan(final Collection<Binding> exclusiveBindings,
+               final Collection<Binding> allBindings,
+               final Map<SimpleString, List<Binding>> routingNameBindingMap,
+               final FilterRoutingIndex index,
+               final ConcurrentMap<SimpleString, RoutingPosition> positions)
+   {
+      this.exclusiveBindings = exclusiveBindings.toArray(new Binding[exclusiveBindings.size()]);
+
+      this.index = index;
+
+      List<RemoteQueueBinding> remotes = new ArrayList<RemoteQueueBinding>();
+
+      for (Binding binding : allBindings)
+      {
+         if (binding instanceof RemoteQueueBinding)
+         {
+            remotes.add((RemoteQueueBinding) binding);
+         }
+      }
+
+      remoteBindings = remotes.toArray(new RemoteQueueBinding[remotes.size()]);
+
+      List<RoutingName> all = new ArrayList<RoutingName>();
+
+      routingNamesByName = new HashMap<SimpleString, RoutingName>();
+
+      for (Map.Entry<SimpleString, List<Binding>> entry : routingNameBindingMap.entrySet())
+      {
+         Binding[] bindings = entry.getValue().toArray(NO_BINDINGS);
+
+         if (bindings.length == 0)
+         {
+            continue;
+         }
+
+         RoutingPosition position = positions.get(entry.getKey());
+
+         if (position == null)
+         {
+            position = new RoutingPosition();
+
+            RoutingPosition oldPosition = positions.putIfAbsent(entry.getKey(), position);
+
+            if (oldPosition != null)
+            {
+               position = oldPosition;
+            }
+         }
+
+         RoutingName routingName = new RoutingName(entry.getKey(), bindings, position);
+
+         all.add(routingName);
+
+         routingNamesByName.put(entry.getKey(), routingName);
+      }
+
+      routingNames = all.toArray(new RoutingName[all.size()]);
+
+      List<Binding> unfiltered = new ArrayList<Binding>();
+
+      List<Binding> filtered = new ArrayList<Binding>();
+
+      List<RoutingName> loadBalanced = new ArrayList<RoutingName>();
+
+      indexedRoutingNames = new HashMap<SimpleString, RoutingName>();
+
+      for (RoutingName routingName : routingNames)
+      {
+         if (routingName.bindings.length == 1 && index.isIndexed(routingName.name))
+         {
+            indexedRoutingNames.put(routingName.name, routingName);
+         }
+         else if (routingName.bindings.length > 1)
+         {
+            loadBalanced.add(routingName);
+         }
+         else if (routingName.bindings[0].getFilter() == null)
+         {
+            unfiltered.add(routingName.bindings[0]);
+         }
+         else
+         {
+            filtered.add(routingName.bindings[0]);
+         }
+      }
+
+      List<SharedMessageLog.Route> logRoutes = new ArrayList<SharedMessageLog.Route>();
+
+      unfiltered = routeSharedLogs(unfiltered, logRoutes);
+
+      unfilteredBindings = unfiltered.toArray(new Binding[unfiltered.size()]);
+      sharedLogRoutes = logRoutes.toArray(new SharedMessageLog.Route[logRoutes.size()]);
+      filteredBindings = filtered.toArray(new Binding[filtered.size()]);
+      loadBalancedRoutingNames = loadBalanced.toArray(new RoutingName[loadBalanced.size()]);
+   }
+
+   /**
+    * Puts the bindings reading the same shared log together on one route. The bindings of a log are
+    * only routed to through the log if they are all its readers, e.g. a queue load balanced with a
+    * remote binding reads the log but isn't routed to on every message, so the bindings of that log
+    * are routed to one by one and nothing is appended to it.
+    *
+    * @return the bindings which are not routed to through a shared log
+    */
+   private static List<Binding> routeSharedLogs(final List<Binding> unfiltered, final List<SharedMessageLog.Route> logRoutes)
+   {
+      Map<SharedMessageLog, List<Binding>> logBindings = null;
+
+      List<Binding> others = new ArrayList<Binding>(unfiltered.size());
+
+      for (Binding binding : unfiltered)
+      {
+         SharedMessageLog.Cursor cursor = binding instanceof LocalQueueBinding ?
+            ((LocalQueueBinding) binding).getQueue().getSharedLogCursor() : null;
+
+         if (cursor == null)
+         {
+            others.add(binding);
+
+            continue;
+         }
+
+         if (logBindings == null)
+         {
+            logBindings = new HashMap<SharedMessageLog, List<Binding>>();
+         }
+
+         List<Binding> bindings = logBindings.get(cursor.getLog());
+
+         if (bindings == null)
+         {
+            bindings = new ArrayList<Binding>();
+
+            logBindings.put(cursor.getLog(), bindings);
+         }
+
+         bindings.add(binding);
+      }
+
+      if (logBindings == null)
+      {
+         return unfiltered;
+      }
+
+      for (Map.Entry<SharedMessageLog, List<Binding>> entry : logBindings.entrySet())
+      {
+         SharedMessageLog.Cursor[] readers = entry.getKey().getCursors();
+
+         List<Binding> bindings = entry.getValue();
+
+         Set<Queue> queues = new HashSet<Queue>();
+
+         for (Binding binding : bindings)
+         {
+            queues.add(((LocalQueueBinding) binding).getQueue());
+         }
+
+         boolean complete = readers.length == queues.size();
+
+         for (int i = 0; complete && i < readers.length; i++)
+         {
+            complete = queues.contains(readers[i].getQueue());
+         }
+
+         if (complete)
+         {
+            logRoutes.add(new SharedMessageLog.Route(entry.getKey(), readers, queues.toArray(new Queue[queues.size()])));
+         }
+         else
+         {
+            others.addAll(bindings);
+         }
+      }
+
+      return others;
+   }
+
+   RoutingName getRoutingName(final SimpleString name)
+   {
+      return routingNamesByName.get(name);
+   }
+
+   boolean hasIndexedRoutingNames()
+   {
+      return !indexedRoutingNames.isEmpty();
+   }
+
+   /**
+    * @return the routing name if the plan routes to it through the index, null otherwise
+    */
+   RoutingName getIndexedRoutingName(final SimpleString name)
+   {
+      return indexedRoutingNames.get(name);
+   }
+
+   /**
+    * The bindings of a routing name as they were when the plan was built.
+    */
+   static final class RoutingName
+   {
+      final SimpleString name;
+
+      final Binding[] bindings;
+
+      final RoutingPosition position;
+
+      RoutingName(final SimpleString name, final Binding[] bindings, final RoutingPosition position)
+      {
+         this.name = name;
+         this.bindings = bindings;
+         this.position = position;
+      }
+
+      Binding locateBinding(final SimpleString clusterName)
+      {
+         for (Binding binding : bindings)
+         {
+            if (binding.getClusterName().equals(clusterName))
+            {
+               return binding;
+            }
+         }
+
+         return null;
+      }
+   }
+
+   // the padding keeps the positions written by the routing threads on cache lines of their own
+
+   abstract static class RoutingPositionPadding
+   {
+      long p1, p2, p3, p4, p5, p6, p7;
+   }
+
+   abstract static class RoutingPositionValue extends RoutingPositionPadding
+   {
+      volatile int position;
+   }
+
+   /**
+    * The position of the next binding of a routing name to route to.
+    */
+   static final class RoutingPosition extends RoutingPositionValue
+   {
+      long p9, p10, p11, p12, p13, p14, p15;
+
+      int get()
+      {
+         return position;
+      }
+
+      void set(final int position)
+      {
+         this.position = position;
+      }
+
+      @Override
+      public String toString()
+      {
+         return String.valueOf(position);
+      }
+   }
+}
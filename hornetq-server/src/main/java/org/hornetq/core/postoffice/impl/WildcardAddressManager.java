@@ -13,8 +13,10 @@
 package org.hornetq.core.postoffice.impl;
 
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.hornetq.api.core.SimpleString;
@@ -49,6 +51,14 @@ public class WildcardAddressManager extends SimpleAddressManager
 
    private final Map<SimpleString, Address> wildCardAddresses = new ConcurrentHashMap<SimpleString, Address>();
 
+   /**
+    * The same addresses by their words, so the addresses an address is linked to are found without
+    * comparing it with every address of the other kind
+    */
+   private final AddressTrie addressTrie = new AddressTrie();
+
+   private final AddressTrie wildCardAddressTrie = new AddressTrie();
+
    public WildcardAddressManager(final BindingsFactory bindingsFactory)
    {
       super(bindingsFactory);
@@ -151,6 +161,8 @@ public class WildcardAddressManager extends SimpleAddressManager
       super.clear();
       addresses.clear();
       wildCardAddresses.clear();
+      addressTrie.clear();
+      wildCardAddressTrie.clear();
    }
 
    private Address getAddress(final SimpleString address)
@@ -185,28 +197,19 @@ public class WildcardAddressManager extends SimpleAddressManager
          actualAddress = add;
          addAddress(address, actualAddress);
       }
+      Set<Address> linkedAddresses = new HashSet<Address>();
       if (actualAddress.containsWildCard())
       {
-         for (Address destAdd : addresses.values())
-         {
-            if (destAdd.matches(actualAddress))
-            {
-               destAdd.addLinkedAddress(actualAddress);
-               actualAddress.addLinkedAddress(destAdd);
-            }
-         }
+         addressTrie.addMatchedBy(actualAddress, linkedAddresses);
       }
       else
       {
-         for (Address destAdd : wildCardAddresses.values())
-         {
-            if (actualAddress.matches(destAdd))
-            {
-               destAdd.addLinkedAddress(actualAddress);
-               actualAddress.addLinkedAddress(destAdd);
-
-            }
-         }
+         wildCardAddressTrie.addMatching(actualAddress, linkedAddresses);
+      }
+      for (Address destAdd : linkedAddresses)
+      {
+         destAdd.addLinkedAddress(actualAddress);
+         actualAddress.addLinkedAddress(destAdd);
       }
       return actualAddress;
    }
@@ -216,10 +219,12 @@ public class WildcardAddressManager extends SimpleAddressManager
       if (actualAddress.containsWildCard())
       {
          wildCardAddresses.put(address, actualAddress);
+         wildCardAddressTrie.put(actualAddress);
       }
       else
       {
          addresses.put(address, actualAddress);
+         addressTrie.put(actualAddress);
       }
    }
 
@@ -247,11 +252,17 @@ public class WildcardAddressManager extends SimpleAddressManager
    {
       if (add.containsWildCard())
       {
-         wildCardAddresses.remove(add.getAddress());
+         if (wildCardAddresses.remove(add.getAddress()) != null)
+         {
+            wildCardAddressTrie.remove(add);
+         }
       }
       else
       {
-         addresses.remove(add.getAddress());
+         if (addresses.remove(add.getAddress()) != null)
+         {
+            addressTrie.remove(add);
+         }
       }
    }
 }
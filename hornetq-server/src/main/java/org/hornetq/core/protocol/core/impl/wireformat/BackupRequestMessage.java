@@ -13,6 +13,9 @@
 
 package org.hornetq.core.protocol.core.impl.wireformat;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.hornetq.api.core.HornetQBuffer;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.protocol.core.impl.PacketImpl;
@@ -25,6 +28,8 @@ public class BackupRequestMessage extends PacketImpl
    private String bindingsDirectory;
    private String largeMessagesDirectory;
    private String pagingDirectory;
+   private List<String> pagingStripeDirectories = new ArrayList<String>();
+   private List<String> largeMessagesStripeDirectories = new ArrayList<String>();
 
 
    public BackupRequestMessage()
@@ -42,6 +47,19 @@ public class BackupRequestMessage extends PacketImpl
       this.pagingDirectory = pagingDirectory;
    }
 
+   public BackupRequestMessage(int backupSize,
+                               String journalDirectory,
+                               String bindingsDirectory,
+                               String largeMessagesDirectory,
+                               String pagingDirectory,
+                               List<String> largeMessagesStripeDirectories,
+                               List<String> pagingStripeDirectories)
+   {
+      this(backupSize, journalDirectory, bindingsDirectory, largeMessagesDirectory, pagingDirectory);
+      this.largeMessagesStripeDirectories = largeMessagesStripeDirectories;
+      this.pagingStripeDirectories = pagingStripeDirectories;
+   }
+
    public BackupRequestMessage(int backupSize, SimpleString nodeID)
    {
       super(BACKUP_REQUEST);
@@ -59,6 +77,28 @@ public class BackupRequestMessage extends PacketImpl
       buffer.writeNullableString(largeMessagesDirectory);
       buffer.writeNullableString(pagingDirectory);
       buffer.writeNullableSimpleString(nodeID);
+      encodeDirectories(buffer, largeMessagesStripeDirectories);
+      encodeDirectories(buffer, pagingStripeDirectories);
+   }
+
+   private static void encodeDirectories(HornetQBuffer buffer, List<String> directories)
+   {
+      buffer.writeInt(directories.size());
+      for (String directory : directories)
+      {
+         buffer.writeString(directory);
+      }
+   }
+
+   private static List<String> decodeDirectories(HornetQBuffer buffer)
+   {
+      int size = buffer.readInt();
+      List<String> directories = new ArrayList<String>(size);
+      for (int i = 0; i < size; i++)
+      {
+         directories.add(buffer.readString());
+      }
+      return directories;
    }
 
    @Override
@@ -71,6 +111,12 @@ public class BackupRequestMessage extends PacketImpl
       largeMessagesDirectory = buffer.readNullableString();
       pagingDirectory = buffer.readNullableString();
       nodeID = buffer.readNullableSimpleString();
+      // not sent by the servers without stripe directories
+      if (buffer.readableBytes() > 0)
+      {
+         largeMessagesStripeDirectories = decodeDirectories(buffer);
+         pagingStripeDirectories = decodeDirectories(buffer);
+      }
    }
 
    public int getBackupSize()
@@ -102,4 +148,14 @@ public class BackupRequestMessage extends PacketImpl
    {
       return pagingDirectory;
    }
+
+   public List<String> getLargeMessagesStripeDirectories()
+   {
+      return largeMessagesStripeDirectories;
+   }
+
+   public List<String> getPagingStripeDirectories()
+   {
+      return pagingStripeDirectories;
+   }
 }
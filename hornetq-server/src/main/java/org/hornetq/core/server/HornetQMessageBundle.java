@@ -368,4 +368,7 @@ public interface HornetQMessageBundle
 
    @Message(id = 119109, value = "unsupported HA Policy Configuration {0}", format = Message.Format.MESSAGE_FORMAT)
    HornetQIllegalStateException unsupportedHAPolicyConfiguration(Object o);
+
+   @Message(id = 119110, value = "Invalid paging placement policy type {0}", format = Message.Format.MESSAGE_FORMAT)
+   IllegalArgumentException invalidPagingPlacementPolicyType(String val);
 }
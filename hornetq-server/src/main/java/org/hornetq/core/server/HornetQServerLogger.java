@@ -292,6 +292,15 @@ public interface HornetQServerLogger extends BasicLogger
    @Message(id = 221050, value = "Activating Shared Store Slave", format = Message.Format.MESSAGE_FORMAT)
    void activatingSharedStoreSlave();
 
+   @LogMessage(level = Logger.Level.INFO)
+   @Message(id = 221051, value = "Global size is back under global-max-size; size is currently: {0} bytes; global-max-size: {1}", format = Message.Format.MESSAGE_FORMAT)
+   void underGlobalMaxSize(long globalSize, long globalMaxSize);
+
+   @LogMessage(level = Logger.Level.INFO)
+   @Message(id = 221052, value = "Can not find queue {0} while reloading PAGE_CURSOR_PAGE_COUNT, deleting record now",
+            format = Message.Format.MESSAGE_FORMAT)
+   void journalCannotFindQueueReloadingPageCount(Long queueID);
+
    @LogMessage(level = Logger.Level.WARN)
    @Message(id = 222000, value = "HornetQServer is being finalized and has not been stopped. Please remember to stop the server before letting it go out of scope",
             format = Message.Format.MESSAGE_FORMAT)
@@ -1112,6 +1121,51 @@ public interface HornetQServerLogger extends BasicLogger
          format = Message.Format.MESSAGE_FORMAT)
    void disallowedProtocol(String protocol);
 
+   @LogMessage(level = Logger.Level.WARN)
+   @Message(id = 222191, value = "Failed to move scheduled messages on queue {0} to disk, keeping them in memory",
+            format = Message.Format.MESSAGE_FORMAT)
+   void failedToSpillScheduledMessages(SimpleString queue, @Cause Exception e);
+
+   @LogMessage(level = Logger.Level.WARN)
+   @Message(id = 222192, value = "Global size is over global-max-size, address ''{0}'' is considered full; address size is currently: {1} bytes; global size is currently: {2} bytes; global-max-size: {3}",
+            format = Message.Format.MESSAGE_FORMAT)
+   void overGlobalMaxSize(SimpleString address, long addressSize, long globalSize, long globalMaxSize);
+
+   @LogMessage(level = Logger.Level.WARN)
+   @Message(id = 222193, value = "Unable to increment reference counting on queue",
+            format = Message.Format.MESSAGE_FORMAT)
+   void errorIncrementingRefCount(@Cause Throwable e);
+
+   @LogMessage(level = Logger.Level.WARN)
+   @Message(id = 222194, value = "Failed to write the messages paged on address {0} to the page file",
+            format = Message.Format.MESSAGE_FORMAT)
+   void pageFlushError(SimpleString address, @Cause Throwable e);
+
+   @LogMessage(level = Logger.Level.WARN)
+   @Message(id = 222195, value = "Failed to route a message through the shared log of address {0}",
+            format = Message.Format.MESSAGE_FORMAT)
+   void errorAppendingToSharedLog(SimpleString address, @Cause Throwable e);
+
+   @LogMessage(level = Logger.Level.WARN)
+   @Message(id = 222196, value = "Failed to read the shared log of address {0} for queue {1}",
+            format = Message.Format.MESSAGE_FORMAT)
+   void errorReadingSharedLog(SimpleString address, SimpleString queue, @Cause Throwable e);
+
+   @LogMessage(level = Logger.Level.WARN)
+   @Message(id = 222197, value = "Message groups of queue {0} are now assigned {1}, the groups already assigned to its {2} consumers may move to another consumer",
+            format = Message.Format.MESSAGE_FORMAT)
+   void messageGroupsModeChanged(SimpleString queue, String mode, int consumers);
+
+   @LogMessage(level = Logger.Level.WARN)
+   @Message(id = 222198, value = "Failed to store the acks of page subscription {0}, its messages will be delivered again after a restart",
+            format = Message.Format.MESSAGE_FORMAT)
+   void errorStoringPageAcks(PageSubscription subscription, @Cause Throwable e);
+
+   @LogMessage(level = Logger.Level.WARN)
+   @Message(id = 222199, value = "Failed to store the count of page {1} on page subscription {0}, the page will be read again after a restart",
+            format = Message.Format.MESSAGE_FORMAT)
+   void errorStoringPageCount(PageSubscription subscription, Long pageID, @Cause Throwable e);
+
    @LogMessage(level = Logger.Level.ERROR)
    @Message(id = 224000, value = "Failure in initialisation", format = Message.Format.MESSAGE_FORMAT)
    void initializationError(@Cause Throwable e);
@@ -1363,4 +1417,9 @@ public interface HornetQServerLogger extends BasicLogger
    @Message(id = 224064, value = "Setting <{0}> is invalid with this HA Policy Configuration. Please use <ha-policy> exclusively or remove. Ignoring <{0}> value.", format = Message.Format.MESSAGE_FORMAT)
    void incompatibleWithHAPolicyChosen(String parameter);
 
+   @LogMessage(level = Logger.Level.ERROR)
+   @Message(id = 224065, value = "Failed to reload scheduled messages for queue {0} from {1}, they will only be available again after a restart",
+            format = Message.Format.MESSAGE_FORMAT)
+   void failedToReloadScheduledMessages(SimpleString queue, String fileName, @Cause Exception e);
+
 }
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.core.server;
+
+import java.util.List;
+
+import org.hornetq.api.core.SimpleString;
+
+/**
+ * Assigns message groups to the consumers of a queue.
+ * <p>
+ * Implementations are not thread safe, they are always used while holding the queue lock.
+ */
+public interface MessageGroups
+{
+   /**
+    * @return the consumer the group is assigned to, or {@code null} if the group is not assigned yet
+    */
+   Consumer get(SimpleString groupID);
+
+   /**
+    * Assigns the group to the consumer that handled its first message.
+    */
+   void put(SimpleString groupID, Consumer consumer);
+
+   Consumer remove(SimpleString groupID);
+
+   void addConsumer(Consumer consumer);
+
+   /**
+    * Releases every group assigned to the consumer.
+    */
+   void removeConsumer(Consumer consumer);
+
+   /**
+    * @return the number of groups currently assigned, or -1 if the groups are not recorded
+    */
+   int size();
+
+   /**
+    * @return the number of groups released because they were idle or over the limit of groups, or
+    * -1 if the groups are not recorded
+    */
+   long getEvictedCount();
+
+   /**
+    * @throws UnsupportedOperationException if the groups are not recorded
+    */
+   List<SimpleString> getGroupIDs();
+}
@@ -63,9 +63,20 @@ public interface MessageReference
 
    void acknowledge() throws Exception;
 
-   void setConsumerId(Long consumerID);
+   void setConsumerId(long consumerID);
 
-   Long getConsumerId();
+   /**
+    * @return true if the reference is being delivered to the consumer returned by {@link #getConsumerId()}
+    */
+   boolean hasConsumerId();
+
+   /**
+    * @return the ID of the consumer the reference is being delivered to, only set when
+    * {@link #hasConsumerId()}
+    */
+   long getConsumerId();
+
+   void emptyConsumerID();
 
    void handled();
 
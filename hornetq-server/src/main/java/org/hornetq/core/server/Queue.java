@@ -41,6 +41,14 @@ public interface Queue extends Bindable
 
    PageSubscription getPageSubscription();
 
+   /**
+    * Sets the cursor this queue reads non-filtered fan-out messages from, or {@code null} to stop
+    * reading them through a {@link SharedMessageLog}.
+    */
+   void setSharedLogCursor(SharedMessageLog.Cursor cursor);
+
+   SharedMessageLog.Cursor getSharedLogCursor();
+
    boolean isDurable();
 
    boolean isTemporary();
@@ -86,6 +94,15 @@ public interface Queue extends Bindable
 
    void deliverAsync();
 
+   /**
+    * Notifies the queue that a consumer that was busy (e.g. out of credits or not writable) may
+    * accept messages again, and schedules a delivery.
+    * <p>
+    * Consumers implementing {@link ServerConsumer} are skipped by delivery after they returned
+    * {@link HandleStatus#BUSY}, until this method is called for them.
+    */
+   void consumerReady(Consumer consumer);
+
    void unproposed(SimpleString groupID);
 
    /**
@@ -121,6 +138,21 @@ public interface Queue extends Bindable
 
    long getMessagesAcknowledged();
 
+   /**
+    * @return the number of message groups currently assigned to a consumer
+    */
+   int getGroupCount();
+
+   /**
+    * @return the number of message groups released because they were idle or over the max-groups limit
+    */
+   long getGroupsEvicted();
+
+   /**
+    * @return the number of messages depaged per second on the last measure
+    */
+   float getDepageRate();
+
    MessageReference removeReferenceWithID(long id) throws Exception;
 
    MessageReference getReference(long id);
@@ -48,5 +48,16 @@ public interface RoutingContext
 
    void addQueueWithAck(SimpleString address, Queue queue);
 
+   /**
+    * Routes the message to all the queues of the route at once, through their shared log. The
+    * queues are counted by {@link #getQueueCount()}.
+    */
+   void addSharedLogRoute(SharedMessageLog.Route route);
+
+   /**
+    * @return the shared log routes added, an empty list if there is none
+    */
+   List<SharedMessageLog.Route> getSharedLogRoutes();
+
    boolean isAlreadyAcked(SimpleString address, Queue queue);
 }
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.core.server;
+
+import org.hornetq.api.core.SimpleString;
+
+/**
+ * An append only log of messages shared by the queues bound to an address.
+ * <p>
+ * A message appended to the log is kept only once, no matter how many queues read it. Each queue
+ * reads the log through its own {@link Cursor}, and a message is released once every cursor that
+ * existed when it was appended has moved past it.
+ * <p>
+ * The routing of an address routes a message to all the queues reading a log through one
+ * {@link Route}, without looking at the queues one by one.
+ */
+public interface SharedMessageLog
+{
+   SimpleString getAddress();
+
+   /**
+    * Appends the message for every cursor currently open on this log, and wakes up the queues of
+    * the cursors that had already read everything.
+    */
+   void append(ServerMessage message) throws Exception;
+
+   /**
+    * Appends the message only if the cursors open on this log are still the given ones, which is
+    * what the message was routed to.
+    *
+    * @return {@code false} if the message was not appended as a cursor was opened or closed since
+    * the readers were taken
+    */
+   boolean append(ServerMessage message, Cursor[] readers) throws Exception;
+
+   /**
+    * Opens a cursor for the queue, positioned at the end of the log.
+    */
+   Cursor createCursor(Queue queue);
+
+   int getCursorCount();
+
+   /**
+    * @return the cursors open on this log. The array is never modified, a new one replaces it when
+    * a cursor is opened or closed
+    */
+   Cursor[] getCursors();
+
+   /**
+    * @return the number of messages still held by the log
+    */
+   int size();
+
+   /**
+    * The queues reading a log, as the routing of an address found them when its bindings last
+    * changed.
+    */
+   final class Route
+   {
+      private final SharedMessageLog log;
+
+      private final Cursor[] readers;
+
+      private final Queue[] queues;
+
+      /**
+       * @param readers the cursors of the log, as returned by {@link SharedMessageLog#getCursors()},
+       *                one for each of the queues
+       */
+      public Route(final SharedMessageLog log, final Cursor[] readers, final Queue[] queues)
+      {
+         this.log = log;
+         this.readers = readers;
+         this.queues = queues;
+      }
+
+      public SharedMessageLog getLog()
+      {
+         return log;
+      }
+
+      public Queue[] getQueues()
+      {
+         return queues;
+      }
+
+      /**
+       * @return {@code false} if the message was not appended as the cursors of the log changed
+       * since the route was built, the caller is expected to give each queue a reference of its own
+       */
+      public boolean append(final ServerMessage message) throws Exception
+      {
+         return log.append(message, readers);
+      }
+
+      @Override
+      public String toString()
+      {
+         return "SharedMessageLog.Route [address=" + log.getAddress() + ", queues=" + queues.length + "]";
+      }
+   }
+
+   interface Cursor
+   {
+      SharedMessageLog getLog();
+
+      Queue getQueue();
+
+      /**
+       * The returned message already has a reference counted for the queue of this cursor, the
+       * caller is expected to create its {@link MessageReference}.
+       *
+       * @return the next message on the log, or {@code null} if the cursor is at the end of the log
+       */
+      ServerMessage next() throws Exception;
+
+      boolean hasNext();
+
+      long getPendingCount();
+
+      /**
+       * Releases every message this cursor still had to read.
+       */
+      void close() throws Exception;
+   }
+}
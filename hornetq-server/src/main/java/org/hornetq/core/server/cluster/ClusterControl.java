@@ -14,6 +14,8 @@
 package org.hornetq.core.server.cluster;
 
 
+import java.util.List;
+
 import org.hornetq.api.core.HornetQException;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.api.core.TransportConfiguration;
@@ -200,9 +202,21 @@ public class ClusterControl implements AutoCloseable
       return packet.isBackupStarted();
    }
 
-   public boolean requestSharedStoreBackup(int backupSize, String journalDirectory, String bindingsDirectory, String largeMessagesDirectory, String pagingDirectory)
+   public boolean requestSharedStoreBackup(int backupSize,
+                                           String journalDirectory,
+                                           String bindingsDirectory,
+                                           String largeMessagesDirectory,
+                                           String pagingDirectory,
+                                           List<String> largeMessagesStripeDirectories,
+                                           List<String> pagingStripeDirectories)
    {
-      BackupRequestMessage backupRequestMessage = new BackupRequestMessage(backupSize, journalDirectory, bindingsDirectory, largeMessagesDirectory, pagingDirectory);
+      BackupRequestMessage backupRequestMessage = new BackupRequestMessage(backupSize,
+                                                                           journalDirectory,
+                                                                           bindingsDirectory,
+                                                                           largeMessagesDirectory,
+                                                                           pagingDirectory,
+                                                                           largeMessagesStripeDirectories,
+                                                                           pagingStripeDirectories);
       return requestBackup(backupRequestMessage);
    }
 
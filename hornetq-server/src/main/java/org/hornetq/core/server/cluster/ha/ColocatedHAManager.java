@@ -23,6 +23,7 @@ import org.hornetq.core.server.HornetQServerLogger;
 import org.hornetq.core.server.cluster.ClusterControl;
 import org.hornetq.core.server.cluster.ClusterController;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -85,7 +86,14 @@ public class ColocatedHAManager implements HAManager
       return started;
    }
 
-   public synchronized boolean activateBackup(int backupSize, String journalDirectory, String bindingsDirectory, String largeMessagesDirectory, String pagingDirectory, SimpleString nodeID) throws Exception
+   public synchronized boolean activateBackup(int backupSize,
+                                              String journalDirectory,
+                                              String bindingsDirectory,
+                                              String largeMessagesDirectory,
+                                              String pagingDirectory,
+                                              List<String> largeMessagesStripeDirectories,
+                                              List<String> pagingStripeDirectories,
+                                              SimpleString nodeID) throws Exception
    {
       if (backupServers.size() >= haPolicy.getMaxBackups() || backupSize != backupServers.size())
       {
@@ -93,7 +101,12 @@ public class ColocatedHAManager implements HAManager
       }
       if (haPolicy.getBackupPolicy().isSharedStore())
       {
-         return activateSharedStoreBackup(journalDirectory, bindingsDirectory, largeMessagesDirectory, pagingDirectory);
+         return activateSharedStoreBackup(journalDirectory,
+                                          bindingsDirectory,
+                                          largeMessagesDirectory,
+                                          pagingDirectory,
+                                          largeMessagesStripeDirectories,
+                                          pagingStripeDirectories);
       }
       else
       {
@@ -140,13 +153,20 @@ public class ColocatedHAManager implements HAManager
                   server.getConfiguration().getJournalDirectory(),
                   server.getConfiguration().getBindingsDirectory(),
                   server.getConfiguration().getLargeMessagesDirectory(),
-                  server.getConfiguration().getPagingDirectory());
+                  server.getConfiguration().getPagingDirectory(),
+                  server.getConfiguration().getLargeMessagesStripeDirectories(),
+                  server.getConfiguration().getPagingStripeDirectories());
 
          }
       }
    }
 
-   private synchronized boolean activateSharedStoreBackup(String journalDirectory, String bindingsDirectory, String largeMessagesDirectory, String pagingDirectory) throws Exception
+   private synchronized boolean activateSharedStoreBackup(String journalDirectory,
+                                                          String bindingsDirectory,
+                                                          String largeMessagesDirectory,
+                                                          String pagingDirectory,
+                                                          List<String> largeMessagesStripeDirectories,
+                                                          List<String> pagingStripeDirectories) throws Exception
    {
       Configuration configuration = server.getConfiguration().copy();
       HornetQServer backup = server.createBackupServer(configuration);
@@ -158,7 +178,7 @@ public class ColocatedHAManager implements HAManager
          haPolicy.getBackupPolicy().setRestartBackup(false);
          //set the backup policy
          backup.setHAPolicy(haPolicy.getBackupPolicy());
-         updateSharedStoreConfiguration(configuration, name, portOffset, haPolicy.getExcludedConnectors(), journalDirectory, bindingsDirectory, largeMessagesDirectory, pagingDirectory, haPolicy.getBackupPolicy().getScaleDownPolicy() == null);
+         updateSharedStoreConfiguration(configuration, name, portOffset, haPolicy.getExcludedConnectors(), journalDirectory, bindingsDirectory, largeMessagesDirectory, pagingDirectory, largeMessagesStripeDirectories, pagingStripeDirectories, haPolicy.getBackupPolicy().getScaleDownPolicy() == null);
 
          backupServers.put(configuration.getName(), backup);
          backup.start();
@@ -219,6 +239,8 @@ public class ColocatedHAManager implements HAManager
     * @param bindingsDirectory
     * @param largeMessagesDirectory
     * @param pagingDirectory
+    * @param largeMessagesStripeDirectories
+    * @param pagingStripeDirectories
     * @param fullServer
     */
    private static void updateSharedStoreConfiguration(Configuration backupConfiguration,
@@ -229,6 +251,8 @@ public class ColocatedHAManager implements HAManager
                                                       String bindingsDirectory,
                                                       String largeMessagesDirectory,
                                                       String pagingDirectory,
+                                                      List<String> largeMessagesStripeDirectories,
+                                                      List<String> pagingStripeDirectories,
                                                       boolean fullServer)
    {
       backupConfiguration.setName(name);
@@ -236,6 +260,8 @@ public class ColocatedHAManager implements HAManager
       backupConfiguration.setBindingsDirectory(bindingsDirectory);
       backupConfiguration.setLargeMessagesDirectory(largeMessagesDirectory);
       backupConfiguration.setPagingDirectory(pagingDirectory);
+      backupConfiguration.setPagingStripeDirectories(pagingStripeDirectories);
+      backupConfiguration.setLargeMessagesStripeDirectories(largeMessagesStripeDirectories);
       updateAcceptorsAndConnectors(backupConfiguration, portOffset, remoteConnectors, fullServer);
    }
 
@@ -258,9 +284,23 @@ public class ColocatedHAManager implements HAManager
       backupConfiguration.setPagingDirectory(backupConfiguration.getPagingDirectory() + name);
       backupConfiguration.setLargeMessagesDirectory(backupConfiguration.getLargeMessagesDirectory() + name);
       backupConfiguration.setBindingsDirectory(backupConfiguration.getBindingsDirectory() + name);
+      backupConfiguration.setPagingStripeDirectories(appendToAll(backupConfiguration.getPagingStripeDirectories(), name));
+      backupConfiguration.setLargeMessagesStripeDirectories(appendToAll(backupConfiguration.getLargeMessagesStripeDirectories(), name));
       updateAcceptorsAndConnectors(backupConfiguration, portOffset, remoteConnectors, fullServer);
    }
 
+   private static List<String> appendToAll(final List<String> directories, final String name)
+   {
+      List<String> result = new ArrayList<String>(directories.size());
+
+      for (String directory : directories)
+      {
+         result.add(directory + name);
+      }
+
+      return result;
+   }
+
    private static void updateAcceptorsAndConnectors(Configuration backupConfiguration,
                                                     int portOffset,
                                                     List<String> remoteConnectors,
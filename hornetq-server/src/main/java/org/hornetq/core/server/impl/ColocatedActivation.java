@@ -139,6 +139,8 @@ public class ColocatedActivation extends LiveActivation
                         backupRequestMessage.getBindingsDirectory(),
                         backupRequestMessage.getLargeMessagesDirectory(),
                         backupRequestMessage.getPagingDirectory(),
+                        backupRequestMessage.getLargeMessagesStripeDirectories(),
+                        backupRequestMessage.getPagingStripeDirectories(),
                         backupRequestMessage.getNodeID());
                }
                catch (Exception e)
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.core.server.impl;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.server.Consumer;
+import org.hornetq.core.server.MessageGroups;
+
+/**
+ * Assigns groups to consumers by consistent hashing, without keeping any state per group.
+ * <p>
+ * Every consumer is placed at {@link #VIRTUAL_NODES} points of a hash ring, and a group belongs to
+ * the consumer at the first point following the hash of its ID. When a consumer is added or
+ * removed only the groups on its arcs of the ring move to another consumer.
+ */
+public class HashedMessageGroups implements MessageGroups
+{
+   static final int VIRTUAL_NODES = 100;
+
+   private final TreeMap<Integer, Consumer> ring = new TreeMap<Integer, Consumer>();
+
+   public HashedMessageGroups()
+   {
+   }
+
+   public HashedMessageGroups(final Iterable<? extends Consumer> consumers)
+   {
+      for (Consumer consumer : consumers)
+      {
+         addConsumer(consumer);
+      }
+   }
+
+   public Consumer get(final SimpleString groupID)
+   {
+      if (ring.isEmpty())
+      {
+         return null;
+      }
+
+      Map.Entry<Integer, Consumer> entry = ring.ceilingEntry(mix(groupID.hashCode()));
+
+      if (entry == null)
+      {
+         entry = ring.firstEntry();
+      }
+
+      return entry.getValue();
+   }
+
+   public void put(final SimpleString groupID, final Consumer consumer)
+   {
+      // the ring already decided the consumer
+   }
+
+   public Consumer remove(final SimpleString groupID)
+   {
+      return null;
+   }
+
+   public void addConsumer(final Consumer consumer)
+   {
+      int seed = System.identityHashCode(consumer);
+
+      for (int i = 0; i < VIRTUAL_NODES; i++)
+      {
+         Integer point = mix(seed + i * 0x9E3779B9);
+
+         // on a collision the first consumer keeps the point
+         if (!ring.containsKey(point))
+         {
+            ring.put(point, consumer);
+         }
+      }
+   }
+
+   public void removeConsumer(final Consumer consumer)
+   {
+      Iterator<Consumer> iter = ring.values().iterator();
+
+      while (iter.hasNext())
+      {
+         if (iter.next() == consumer)
+         {
+            iter.remove();
+         }
+      }
+   }
+
+   /**
+    * @return -1, the groups are not recorded
+    */
+   public int size()
+   {
+      return -1;
+   }
+
+   /**
+    * @return -1, groups are never released
+    */
+   public long getEvictedCount()
+   {
+      return -1;
+   }
+
+   public List<SimpleString> getGroupIDs()
+   {
+      throw new UnsupportedOperationException("Message groups assigned by hashing are not recorded");
+   }
+
+   /**
+    * Murmur3 finalizer, so close hash codes end up far apart on the ring.
+    */
+   private static int mix(int h)
+   {
+      h ^= h >>> 16;
+      h *= 0x85ebca6b;
+      h ^= h >>> 13;
+      h *= 0xc2b2ae35;
+      h ^= h >>> 16;
+      return h;
+   }
+}
@@ -1476,14 +1476,24 @@ public class HornetQServerImpl implements HornetQServer
 
    private PagingManager createPagingManager()
    {
+      long pageCacheMaxSize = configuration.getGlobalPageCacheMaxSize();
+
+      if (pageCacheMaxSize < 0)
+      {
+         pageCacheMaxSize = Runtime.getRuntime().maxMemory() / 10;
+      }
 
       return new PagingManagerImpl(new PagingStoreFactoryNIO(storageManager, configuration.getPagingDirectory(),
                                                              configuration.getJournalBufferTimeout_NIO(),
                                                              scheduledPool,
                                                              executorFactory,
                                                              configuration.isJournalSyncNonTransactional(),
-                                                             shutdownOnCriticalIO),
-                                   addressSettingsRepository);
+                                                             shutdownOnCriticalIO,
+                                                             pageCacheMaxSize,
+                                                             configuration.getPagingStripeDirectories(),
+                                                             configuration.getPagingPlacementPolicy()),
+                                   addressSettingsRepository,
+                                   configuration.getGlobalMaxSize());
    }
 
    /**
@@ -1643,7 +1653,11 @@ public class HornetQServerImpl implements HornetQServer
                                             configuration.getClusterPassword(),
                                             managementService);
 
-      queueFactory = new QueueFactoryImpl(executorFactory, scheduledPool, addressSettingsRepository, storageManager);
+      queueFactory = new QueueFactoryImpl(executorFactory,
+                                          scheduledPool,
+                                          addressSettingsRepository,
+                                          storageManager,
+                                          configuration);
 
       pagingManager = createPagingManager();
 
@@ -1660,6 +1674,7 @@ public class HornetQServerImpl implements HornetQServer
                                       configuration.isWildcardRoutingEnabled(),
                                       configuration.getIDCacheSize(),
                                       configuration.isPersistIDCache(),
+                                      configuration.isIDCacheOffHeap(),
                                       addressSettingsRepository);
 
       // This can't be created until node id is set
@@ -1926,16 +1941,14 @@ public class HornetQServerImpl implements HornetQServer
          msg.deleteFile();
       }
 
-      if (pendingNonTXPageCounter.size() != 0)
+      // the page counters are only kept in memory, they're always recovered from the pages
+      try
       {
-         try
-         {
-            journalLoader.recoverPendingPageCounters(pendingNonTXPageCounter);
-         }
-         catch (Throwable e)
-         {
-            HornetQServerLogger.LOGGER.errorRecoveringPageCounter(e);
-         }
+         journalLoader.recoverPendingPageCounters(pendingNonTXPageCounter);
+      }
+      catch (Throwable e)
+      {
+         HornetQServerLogger.LOGGER.errorRecoveringPageCounter(e);
       }
 
       journalLoader.cleanUp();
@@ -2268,11 +2281,13 @@ public class HornetQServerImpl implements HornetQServer
     */
    void moveServerData()
    {
-      String[] dataDirs =
-         new String[]{configuration.getBindingsDirectory(),
-            configuration.getJournalDirectory(),
-            configuration.getPagingDirectory(),
-            configuration.getLargeMessagesDirectory()};
+      List<String> dataDirs = new ArrayList<String>();
+      dataDirs.add(configuration.getBindingsDirectory());
+      dataDirs.add(configuration.getJournalDirectory());
+      dataDirs.add(configuration.getPagingDirectory());
+      dataDirs.addAll(configuration.getPagingStripeDirectories());
+      dataDirs.add(configuration.getLargeMessagesDirectory());
+      dataDirs.addAll(configuration.getLargeMessagesStripeDirectories());
       boolean allEmpty = true;
       int lowestSuffixForMovedData = 1;
       boolean redo = true;
@@ -26,6 +26,7 @@ import org.hornetq.core.postoffice.PostOffice;
 import org.hornetq.core.server.HornetQServerLogger;
 import org.hornetq.core.server.MessageReference;
 import org.hornetq.core.server.Queue;
+import org.hornetq.core.server.ScheduledDeliveryHandler;
 import org.hornetq.core.server.ServerMessage;
 import org.hornetq.core.settings.HierarchicalRepository;
 import org.hornetq.core.settings.impl.AddressSettings;
@@ -56,6 +57,35 @@ public class LastValueQueue extends QueueImpl
                          final StorageManager storageManager,
                          final HierarchicalRepository<AddressSettings> addressSettingsRepository,
                          final Executor executor)
+   {
+      this(persistenceID,
+           address,
+           name,
+           filter,
+           pageSubscription,
+           durable,
+           temporary,
+           scheduledExecutor,
+           postOffice,
+           storageManager,
+           addressSettingsRepository,
+           executor,
+           new ScheduledDeliveryHandlerImpl(scheduledExecutor));
+   }
+
+   public LastValueQueue(final long persistenceID,
+                         final SimpleString address,
+                         final SimpleString name,
+                         final Filter filter,
+                         final PageSubscription pageSubscription,
+                         final boolean durable,
+                         final boolean temporary,
+                         final ScheduledExecutorService scheduledExecutor,
+                         final PostOffice postOffice,
+                         final StorageManager storageManager,
+                         final HierarchicalRepository<AddressSettings> addressSettingsRepository,
+                         final Executor executor,
+                         final ScheduledDeliveryHandler scheduledDeliveryHandler)
    {
       super(persistenceID,
             address,
@@ -68,7 +98,8 @@ public class LastValueQueue extends QueueImpl
             postOffice,
             storageManager,
             addressSettingsRepository,
-            executor);
+            executor,
+            scheduledDeliveryHandler);
       new Exception("LastValueQeue " + this ).toString();
    }
 
@@ -100,6 +131,8 @@ public class LastValueQueue extends QueueImpl
 
             hr.setReference(ref);
 
+            messageReplaced(hr, oldRef.getMessage());
+
          }
          else
          {
@@ -176,7 +209,9 @@ public class LastValueQueue extends QueueImpl
 
       private volatile MessageReference ref;
 
-      private Long consumerId;
+      private long consumerId;
+
+      private boolean hasConsumerId;
 
       HolderReference(final SimpleString prop, final MessageReference ref)
       {
@@ -292,22 +327,42 @@ public class LastValueQueue extends QueueImpl
       }
 
       /* (non-Javadoc)
-       * @see org.hornetq.core.server.MessageReference#setConsumerId(java.lang.Long)
+       * @see org.hornetq.core.server.MessageReference#setConsumerId(long)
        */
       @Override
-      public void setConsumerId(Long consumerID)
+      public void setConsumerId(long consumerID)
       {
+         this.hasConsumerId = true;
          this.consumerId = consumerID;
       }
 
+      /* (non-Javadoc)
+       * @see org.hornetq.core.server.MessageReference#hasConsumerId()
+       */
+      @Override
+      public boolean hasConsumerId()
+      {
+         return this.hasConsumerId;
+      }
+
       /* (non-Javadoc)
        * @see org.hornetq.core.server.MessageReference#getConsumerId()
        */
       @Override
-      public Long getConsumerId()
+      public long getConsumerId()
       {
          return this.consumerId;
       }
+
+      /* (non-Javadoc)
+       * @see org.hornetq.core.server.MessageReference#emptyConsumerID()
+       */
+      @Override
+      public void emptyConsumerID()
+      {
+         this.hasConsumerId = false;
+         this.consumerId = 0;
+      }
    }
 
    @Override
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.core.server.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.server.Consumer;
+import org.hornetq.core.server.MessageGroups;
+
+/**
+ * Keeps the group assignments on a map in least recently used order, so groups can be released
+ * when they are idle for longer than the idle timeout or when there are more than the maximum
+ * number of groups.
+ * <p>
+ * Once a group is released its next message is assigned to a consumer again, as if it was the
+ * first message on the group.
+ */
+public class MessageGroupsImpl implements MessageGroups
+{
+   private final GroupMap groups = new GroupMap();
+
+   private long idleTimeout;
+
+   private int maxGroups;
+
+   private long nextIdleCheck;
+
+   private long evicted;
+
+   public MessageGroupsImpl()
+   {
+      this(-1, -1);
+   }
+
+   /**
+    * @param idleTimeout milliseconds a group can be unused before it is released, -1 to never release idle groups
+    * @param maxGroups   maximum number of groups assigned at once, -1 for no limit
+    */
+   public MessageGroupsImpl(final long idleTimeout, final int maxGroups)
+   {
+      setIdleTimeout(idleTimeout);
+      setMaxGroups(maxGroups);
+   }
+
+   public void setIdleTimeout(final long idleTimeout)
+   {
+      if (idleTimeout > 0 && this.idleTimeout <= 0)
+      {
+         // the groups were not tracking their last use, so they start being idle now
+         long now = System.currentTimeMillis();
+         for (Group group : groups.values())
+         {
+            group.lastUsed = now;
+         }
+      }
+
+      this.idleTimeout = idleTimeout;
+      nextIdleCheck = 0;
+   }
+
+   public long getIdleTimeout()
+   {
+      return idleTimeout;
+   }
+
+   public void setMaxGroups(final int maxGroups)
+   {
+      this.maxGroups = maxGroups;
+
+      if (maxGroups > 0)
+      {
+         Iterator<Group> iter = groups.values().iterator();
+         while (groups.size() > maxGroups && iter.hasNext())
+         {
+            iter.next();
+            iter.remove();
+            evicted++;
+         }
+      }
+   }
+
+   public int getMaxGroups()
+   {
+      return maxGroups;
+   }
+
+   public Consumer get(final SimpleString groupID)
+   {
+      if (idleTimeout > 0)
+      {
+         long now = System.currentTimeMillis();
+
+         evictIdle(now);
+
+         Group group = groups.get(groupID);
+
+         if (group == null)
+         {
+            return null;
+         }
+
+         group.lastUsed = now;
+
+         return group.consumer;
+      }
+      else
+      {
+         Group group = groups.get(groupID);
+
+         return group == null ? null : group.consumer;
+      }
+   }
+
+   public void put(final SimpleString groupID, final Consumer consumer)
+   {
+      long now = 0;
+
+      if (idleTimeout > 0)
+      {
+         now = System.currentTimeMillis();
+
+         evictIdle(now);
+      }
+
+      groups.put(groupID, new Group(consumer, now));
+   }
+
+   public Consumer remove(final SimpleString groupID)
+   {
+      Group group = groups.remove(groupID);
+
+      return group == null ? null : group.consumer;
+   }
+
+   public void addConsumer(final Consumer consumer)
+   {
+      // groups are only assigned when their first message is handled
+   }
+
+   public void removeConsumer(final Consumer consumer)
+   {
+      Iterator<Group> iter = groups.values().iterator();
+
+      while (iter.hasNext())
+      {
+         if (iter.next().consumer == consumer)
+         {
+            iter.remove();
+         }
+      }
+   }
+
+   public int size()
+   {
+      return groups.size();
+   }
+
+   public long getEvictedCount()
+   {
+      return evicted;
+   }
+
+   public List<SimpleString> getGroupIDs()
+   {
+      return new ArrayList<SimpleString>(groups.keySet());
+   }
+
+   /**
+    * The map is in access order, so the idle groups are always at its head and the scan stops at
+    * the first group still in use.
+    */
+   private void evictIdle(final long now)
+   {
+      if (now < nextIdleCheck)
+      {
+         return;
+      }
+
+      Iterator<Group> iter = groups.values().iterator();
+
+      while (iter.hasNext())
+      {
+         Group group = iter.next();
+
+         if (now - group.lastUsed < idleTimeout)
+         {
+            nextIdleCheck = group.lastUsed + idleTimeout;
+            return;
+         }
+
+         iter.remove();
+
+         evicted++;
+      }
+
+      nextIdleCheck = now + idleTimeout;
+   }
+
+   private static final class Group
+   {
+      final Consumer consumer;
+
+      long lastUsed;
+
+      Group(final Consumer consumer, final long lastUsed)
+      {
+         this.consumer = consumer;
+         this.lastUsed = lastUsed;
+      }
+   }
+
+   private final class GroupMap extends LinkedHashMap<SimpleString, Group>
+   {
+      private static final long serialVersionUID = -2637826447436264413L;
+
+      GroupMap()
+      {
+         super(16, 0.75f, true);
+      }
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<SimpleString, Group> eldest)
+      {
+         if (maxGroups > 0 && size() > maxGroups)
+         {
+            evicted++;
+            return true;
+         }
+         return false;
+      }
+   }
+}
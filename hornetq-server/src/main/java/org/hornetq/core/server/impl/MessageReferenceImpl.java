@@ -12,12 +12,11 @@
  */
 package org.hornetq.core.server.impl;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import org.hornetq.core.server.MessageReference;
 import org.hornetq.core.server.Queue;
 import org.hornetq.core.server.ServerMessage;
-import org.hornetq.utils.MemorySize;
 
 /**
  * Implementation of a MessageReference
@@ -26,7 +25,12 @@ import org.hornetq.utils.MemorySize;
  */
 public class MessageReferenceImpl implements MessageReference
 {
-   private final AtomicInteger deliveryCount = new AtomicInteger();
+   // There is one reference per message and queue, so the fields are kept primitive: an updater
+   // instead of an AtomicInteger and no boxed consumer ID
+   private static final AtomicIntegerFieldUpdater<MessageReferenceImpl> DELIVERY_COUNT_UPDATER =
+      AtomicIntegerFieldUpdater.newUpdater(MessageReferenceImpl.class, "deliveryCount");
+
+   private volatile int deliveryCount;
 
    private volatile int persistedCount;
 
@@ -36,31 +40,21 @@ public class MessageReferenceImpl implements MessageReference
 
    private final Queue queue;
 
-   private Long consumerID;
+   private long consumerID;
+
+   private boolean hasConsumerID;
 
    private boolean alreadyAcked;
 
 
    // Static --------------------------------------------------------
 
-   private static final int memoryOffset;
-
-   static
-   {
-      // This is an estimate of how much memory a ServerMessageImpl takes up, exclusing body and properties
-      // Note, it is only an estimate, it's not possible to be entirely sure with Java
-      // This figure is calculated using the test utilities in org.hornetq.tests.unit.util.sizeof
-      // The value is somewhat higher on 64 bit architectures, probably due to different alignment
-
-      if (MemorySize.is64bitArch())
-      {
-         memoryOffset = 48;
-      }
-      else
-      {
-         memoryOffset = 32;
-      }
-   }
+   // This is an estimate of how much memory a MessageReferenceImpl takes up: the object header, two
+   // object pointers, two longs, two ints and two booleans, 48 bytes once aligned on 32 bit and on 64
+   // bit with compressed pointers. As the delivery count and the consumer ID are kept primitive, no
+   // other object is held per reference.
+   // Note, it is only an estimate, it's not possible to be entirely sure with Java
+   private static final int memoryOffset = 48;
 
    // Constructors --------------------------------------------------
 
@@ -73,7 +67,7 @@ public class MessageReferenceImpl implements MessageReference
 
    public MessageReferenceImpl(final MessageReferenceImpl other, final Queue queue)
    {
-      deliveryCount.set(other.deliveryCount.get());
+      deliveryCount = other.deliveryCount;
 
       scheduledDeliveryTime = other.scheduledDeliveryTime;
 
@@ -119,23 +113,23 @@ public class MessageReferenceImpl implements MessageReference
 
    public int getDeliveryCount()
    {
-      return deliveryCount.get();
+      return deliveryCount;
    }
 
    public void setDeliveryCount(final int deliveryCount)
    {
-      this.deliveryCount.set(deliveryCount);
-      this.persistedCount = this.deliveryCount.get();
+      this.deliveryCount = deliveryCount;
+      this.persistedCount = deliveryCount;
    }
 
    public void incrementDeliveryCount()
    {
-      deliveryCount.incrementAndGet();
+      DELIVERY_COUNT_UPDATER.incrementAndGet(this);
    }
 
    public void decrementDeliveryCount()
    {
-      deliveryCount.decrementAndGet();
+      DELIVERY_COUNT_UPDATER.decrementAndGet(this);
    }
 
    public long getScheduledDeliveryTime()
@@ -186,15 +180,29 @@ public class MessageReferenceImpl implements MessageReference
    }
 
    @Override
-   public void setConsumerId(Long consumerID)
+   public void setConsumerId(long consumerID)
    {
+      this.hasConsumerID = true;
       this.consumerID = consumerID;
    }
 
    @Override
-   public Long getConsumerId()
+   public boolean hasConsumerId()
+   {
+      return hasConsumerID;
+   }
+
+   @Override
+   public long getConsumerId()
+   {
+      return consumerID;
+   }
+
+   @Override
+   public void emptyConsumerID()
    {
-      return this.consumerID;
+      this.hasConsumerID = false;
+      this.consumerID = 0;
    }
 
    public int getMessageMemoryEstimate()
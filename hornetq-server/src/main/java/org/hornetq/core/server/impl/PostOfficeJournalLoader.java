@@ -13,12 +13,11 @@
 package org.hornetq.core.server.impl;
 
 import javax.transaction.xa.Xid;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import org.hornetq.api.core.Message;
 import org.hornetq.api.core.Pair;
@@ -27,12 +26,14 @@ import org.hornetq.core.config.Configuration;
 import org.hornetq.core.filter.Filter;
 import org.hornetq.core.filter.impl.FilterImpl;
 import org.hornetq.core.journal.Journal;
+import org.hornetq.core.paging.PageTransactionInfo;
 import org.hornetq.core.paging.PagedMessage;
 import org.hornetq.core.paging.PagingManager;
 import org.hornetq.core.paging.PagingStore;
+import org.hornetq.core.paging.cursor.PageCache;
 import org.hornetq.core.paging.cursor.PageSubscription;
 import org.hornetq.core.paging.cursor.PageSubscriptionCounter;
-import org.hornetq.core.paging.impl.Page;
+import org.hornetq.core.paging.cursor.impl.PagePositionImpl;
 import org.hornetq.core.persistence.GroupingInfo;
 import org.hornetq.core.persistence.QueueBindingInfo;
 import org.hornetq.core.persistence.StorageManager;
@@ -66,6 +67,8 @@ public class PostOfficeJournalLoader implements JournalLoader
    private final GroupingHandler groupingHandler;
    private Configuration configuration;
    private Map<Long, Queue> queues;
+   // the prepared transactions by ID, so the messages they paged are counted once they're committed
+   private final Map<Long, Transaction> preparedTransactions = new HashMap<>();
 
    public PostOfficeJournalLoader(PostOffice postOffice,
                                   PagingManager pagingManager,
@@ -330,177 +333,212 @@ public class PostOfficeJournalLoader implements JournalLoader
       tx.setState(Transaction.State.PREPARED);
 
       resourceManager.putTransaction(xid, tx);
+
+      preparedTransactions.put(tx.getID(), tx);
    }
 
    /**
-    * This method will recover the counters after failures making sure the page counter doesn't get out of sync
+    * This method will recover the page counters, from the counts stored for the closed pages and by
+    * reading the pages that have no count stored.
     *
-    * @param pendingNonTXPageCounter
+    * @param pendingNonTXPageCounter the pending counters stored by previous versions, deleted here
     * @throws Exception
     */
    public void recoverPendingPageCounters(List<PageCountPending> pendingNonTXPageCounter) throws Exception
    {
-      // We need a structure of the following
-      // Address -> PageID -> QueueID -> List<PageCountPending>
-      // The following loop will sort the records according to the hierarchy we need
-
       Transaction txRecoverCounter = new TransactionImpl(storageManager);
 
-      Map<SimpleString, Map<Long, Map<Long, List<PageCountPending>>>> perAddressMap = generateMapsOnPendingCount(queues, pendingNonTXPageCounter, txRecoverCounter);
+      // the pages these records were kept for are read like any other page without a count
+      for (PageCountPending pgCount : pendingNonTXPageCounter)
+      {
+         HornetQServerLogger.LOGGER.debug("Removing pending page counter " + pgCount.getID());
+         storageManager.deletePendingPageCounter(txRecoverCounter.getID(), pgCount.getID());
+         txRecoverCounter.setContainsPersistent();
+      }
+
+      Map<PagingStore, List<PageSubscription>> perStoreMap = new HashMap<>();
+
+      for (Queue queue : queues.values())
+      {
+         PageSubscription subscription = queue.getPageSubscription();
+
+         if (subscription == null || !subscription.isPersistent())
+         {
+            continue;
+         }
+
+         List<PageSubscription> subscriptions = perStoreMap.get(subscription.getPagingStore());
+
+         if (subscriptions == null)
+         {
+            subscriptions = new ArrayList<PageSubscription>();
+            perStoreMap.put(subscription.getPagingStore(), subscriptions);
+         }
+
+         subscriptions.add(subscription);
+      }
+
+      for (Map.Entry<PagingStore, List<PageSubscription>> entry : perStoreMap.entrySet())
+      {
+         recoverPageCounters(entry.getKey(), entry.getValue(), txRecoverCounter);
+      }
+
+      txRecoverCounter.commit();
+   }
+
+   @Override
+   public void cleanUp()
+   {
+      queues.clear();
+      preparedTransactions.clear();
+   }
+
+   /**
+    * Recovers the counters of the subscriptions of a store, reading each page at most once for all
+    * of them.
+    */
+   private void recoverPageCounters(PagingStore store,
+                                    List<PageSubscription> subscriptions,
+                                    Transaction txRecoverCounter) throws Exception
+   {
+      long[] values = new long[subscriptions.size()];
 
-      for (SimpleString address : perAddressMap.keySet())
+      if (store.isPaging())
       {
-         PagingStore store = pagingManager.getPageStore(address);
-         Map<Long, Map<Long, List<PageCountPending>>> perPageMap = perAddressMap.get(address);
+         long currentPage = store.getCurrentWritingPage();
 
-         // We have already generated this before, so it can't be null
-         assert (perPageMap != null);
+         List<PageSubscription> toRead = new ArrayList<PageSubscription>();
 
-         for (Long pageId : perPageMap.keySet())
+         for (long pageId = store.getFirstPage(); pageId <= currentPage; pageId++)
          {
-            Map<Long, List<PageCountPending>> perQueue = perPageMap.get(pageId);
+            // the current page is written to again, so it's always read
+            boolean closed = pageId != currentPage;
 
-            // This can't be true!
-            assert (perQueue != null);
+            toRead.clear();
 
-            if (store.checkPageFileExists(pageId.intValue()))
+            for (int i = 0; i < subscriptions.size(); i++)
             {
-               // on this case we need to recalculate the records
-               Page pg = store.createPage(pageId.intValue());
-               pg.open();
+               PageSubscription subscription = subscriptions.get(i);
+               PageSubscriptionCounter counter = subscription.getCounter();
 
-               List<PagedMessage> pgMessages = pg.read(storageManager);
-               Map<Long, AtomicInteger> countsPerQueueOnPage = new HashMap<Long, AtomicInteger>();
+               int count = counter.getPageCount(pageId);
 
-               for (PagedMessage pgd : pgMessages)
+               if (closed && subscription.isComplete(pageId))
                {
-                  if (pgd.getTransactionID() <= 0)
+                  if (count >= 0)
                   {
-                     for (long q : pgd.getQueueIDs())
-                     {
-                        AtomicInteger countQ = countsPerQueueOnPage.get(q);
-                        if (countQ == null)
-                        {
-                           countQ = new AtomicInteger(0);
-                           countsPerQueueOnPage.put(q, countQ);
-                        }
-                        countQ.incrementAndGet();
-                     }
+                     // kept until the page is deleted
+                     counter.recoverPage(txRecoverCounter, pageId, count, true);
                   }
                }
-
-               for (Map.Entry<Long, List<PageCountPending>> entry : perQueue.entrySet())
+               else if (closed && count >= 0)
                {
-                  for (PageCountPending record : entry.getValue())
-                  {
-                     HornetQServerLogger.LOGGER.debug("Deleting pg tempCount " + record.getID());
-                     storageManager.deletePendingPageCounter(txRecoverCounter.getID(), record.getID());
-                  }
+                  values[i] += count - subscription.getNumberOfAcks(pageId);
+                  counter.recoverPage(txRecoverCounter, pageId, count, true);
+               }
+               else
+               {
+                  toRead.add(subscription);
+               }
+            }
 
-                  PageSubscriptionCounter counter = store.getCursorProvider().getSubscription(entry.getKey()).getCounter();
+            if (toRead.isEmpty())
+            {
+               continue;
+            }
 
-                  AtomicInteger value = countsPerQueueOnPage.get(entry.getKey());
+            PageCache cache = store.getCursorProvider().getPageCache(pageId);
 
-                  if (value == null)
-                  {
-                     HornetQServerLogger.LOGGER.debug("Page " + entry.getKey() + " wasn't open, so we will just ignore");
-                  }
-                  else
-                  {
-                     HornetQServerLogger.LOGGER.debug("Replacing counter " + value.get());
-                     counter.increment(txRecoverCounter, value.get());
-                  }
-               }
+            if (cache == null)
+            {
+               HornetQServerLogger.LOGGER.debug("Page " + pageId + " didn't exist on address " + store.getAddress() + ", so it's not counted");
+               continue;
             }
-            else
+
+            PagedMessage[] pgMessages = cache.getMessages();
+
+            for (PageSubscription subscription : toRead)
             {
-               // on this case the page file didn't exist, we just remove all the records since the page is already gone
-               HornetQServerLogger.LOGGER.debug("Page " + pageId + " didn't exist on address " + address + ", so we are just removing records");
-               for (List<PageCountPending> records : perQueue.values())
+               int unacked = countMessages(subscription, pageId, pgMessages);
+
+               values[subscriptions.indexOf(subscription)] += unacked;
+
+               subscription.getCounter().recoverPage(txRecoverCounter,
+                                                     pageId,
+                                                     unacked + subscription.getNumberOfAcks(pageId),
+                                                     closed);
+
+               if (!closed)
                {
-                  for (PageCountPending record : records)
-                  {
-                     HornetQServerLogger.LOGGER.debug("Removing pending page counter " + record.getID());
-                     storageManager.deletePendingPageCounter(txRecoverCounter.getID(), record.getID());
-                     txRecoverCounter.setContainsPersistent();
-                  }
+                  store.getCurrentPage().addPendingCounter(subscription.getCounter());
                }
             }
          }
       }
 
-      txRecoverCounter.commit();
-   }
-
-   @Override
-   public void cleanUp()
-   {
-      queues.clear();
+      for (int i = 0; i < subscriptions.size(); i++)
+      {
+         HornetQServerLogger.LOGGER.debug("Recovered counter " + values[i] + " on " + subscriptions.get(i));
+         subscriptions.get(i).getCounter().recoverValue(txRecoverCounter, values[i]);
+      }
    }
 
    /**
-    * This generates a map for use on the recalculation and recovery of pending maps after reloading it
-    *
-    * @param queues
-    * @param pendingNonTXPageCounter
-    * @param txRecoverCounter
-    * @return
-    * @throws Exception
+    * @return the messages of the page routed to the subscription that weren't acked yet, the
+    * messages of prepared transactions are counted once the transactions are committed
     */
-   private Map<SimpleString, Map<Long, Map<Long, List<PageCountPending>>>>
-   generateMapsOnPendingCount(Map<Long, Queue> queues, List<PageCountPending>
-      pendingNonTXPageCounter, Transaction txRecoverCounter) throws Exception
+   private int countMessages(PageSubscription subscription, long pageId, PagedMessage[] pgMessages) throws Exception
    {
-      Map<SimpleString, Map<Long, Map<Long, List<PageCountPending>>>> perAddressMap = new HashMap<SimpleString, Map<Long, Map<Long, List<PageCountPending>>>>();
-      for (PageCountPending pgCount : pendingNonTXPageCounter)
-      {
-         long queueID = pgCount.getQueueID();
-         long pageID = pgCount.getPageID();
+      int unacked = 0;
 
-         // We first figure what Queue is based on the queue id
-         Queue queue = queues.get(queueID);
+      for (int messageNr = 0; messageNr < pgMessages.length; messageNr++)
+      {
+         PagedMessage pgd = pgMessages[messageNr];
 
-         if (queue == null)
+         if (!isRouted(pgd, subscription.getId()) ||
+            subscription.isAcked(new PagePositionImpl(pageId, messageNr)))
          {
-            HornetQServerLogger.LOGGER.debug("removing pending page counter id = " + pgCount.getID() + " as queueID=" + pgCount.getID() + " no longer exists");
-            // this means the queue doesn't exist any longer, we will remove it from the storage
-            storageManager.deletePendingPageCounter(txRecoverCounter.getID(), pgCount.getID());
-            txRecoverCounter.setContainsPersistent();
             continue;
          }
 
-         // Level 1 on the structure, per address
-         SimpleString address = queue.getAddress();
-
-         Map<Long, Map<Long, List<PageCountPending>>> perPageMap = perAddressMap.get(address);
-
-         if (perPageMap == null)
+         if (pgd.getTransactionID() > 0)
          {
-            perPageMap = new HashMap();
-            perAddressMap.put(address, perPageMap);
-         }
+            PageTransactionInfo pageTransaction = pagingManager.getTransaction(pgd.getTransactionID());
 
+            if (pageTransaction == null)
+            {
+               // the transaction was rolled back
+               continue;
+            }
 
-         Map<Long, List<PageCountPending>> perQueueMap = perPageMap.get(pageID);
+            if (!pageTransaction.isCommit())
+            {
+               Transaction preparedTX = preparedTransactions.get(pgd.getTransactionID());
 
-         if (perQueueMap == null)
-         {
-            perQueueMap = new HashMap();
-            perPageMap.put(pageID, perQueueMap);
+               if (preparedTX != null)
+               {
+                  subscription.getCounter().pageIncrement(preparedTX, pageId, 1);
+               }
+
+               continue;
+            }
          }
 
-         List<PageCountPending> pendingCounters = perQueueMap.get(queueID);
+         unacked++;
+      }
 
-         if (pendingCounters == null)
+      return unacked;
+   }
+
+   private static boolean isRouted(PagedMessage pgd, long queueID)
+   {
+      for (long q : pgd.getQueueIDs())
+      {
+         if (q == queueID)
          {
-            pendingCounters = new LinkedList<PageCountPending>();
-            perQueueMap.put(queueID, pendingCounters);
+            return true;
          }
-
-         pendingCounters.add(pgCount);
-
-         perQueueMap.put(queueID, pendingCounters);
       }
-      return perAddressMap;
+      return false;
    }
 }
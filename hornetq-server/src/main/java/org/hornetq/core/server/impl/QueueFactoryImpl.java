@@ -12,15 +12,21 @@
  */
 package org.hornetq.core.server.impl;
 
+import java.io.File;
 import java.util.concurrent.ScheduledExecutorService;
 
 import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.config.Configuration;
 import org.hornetq.core.filter.Filter;
+import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
 import org.hornetq.core.paging.cursor.PageSubscription;
 import org.hornetq.core.persistence.StorageManager;
 import org.hornetq.core.postoffice.PostOffice;
+import org.hornetq.core.server.HornetQServerLogger;
 import org.hornetq.core.server.Queue;
 import org.hornetq.core.server.QueueFactory;
+import org.hornetq.core.server.ScheduledDeliveryHandler;
 import org.hornetq.core.settings.HierarchicalRepository;
 import org.hornetq.core.settings.impl.AddressSettings;
 import org.hornetq.utils.ExecutorFactory;
@@ -46,11 +52,25 @@ public class QueueFactoryImpl implements QueueFactory
 
    protected final ExecutorFactory executorFactory;
 
+   /** Used to choose how scheduled deliveries are handled, the legacy handler is used if null */
+   protected final Configuration configuration;
+
    public QueueFactoryImpl(final ExecutorFactory executorFactory,
                            final ScheduledExecutorService scheduledExecutor,
                            final HierarchicalRepository<AddressSettings> addressSettingsRepository,
                            final StorageManager storageManager)
    {
+      this(executorFactory, scheduledExecutor, addressSettingsRepository, storageManager, null);
+   }
+
+   public QueueFactoryImpl(final ExecutorFactory executorFactory,
+                           final ScheduledExecutorService scheduledExecutor,
+                           final HierarchicalRepository<AddressSettings> addressSettingsRepository,
+                           final StorageManager storageManager,
+                           final Configuration configuration)
+   {
+      this.configuration = configuration;
+
       this.addressSettingsRepository = addressSettingsRepository;
 
       this.scheduledExecutor = scheduledExecutor;
@@ -89,7 +109,8 @@ public class QueueFactoryImpl implements QueueFactory
                                     postOffice,
                                     storageManager,
                                     addressSettingsRepository,
-                                    executorFactory.getExecutor());
+                                    executorFactory.getExecutor(),
+                                    createScheduledDeliveryHandler(persistenceID, name));
       }
       else
       {
@@ -104,9 +125,47 @@ public class QueueFactoryImpl implements QueueFactory
                                postOffice,
                                storageManager,
                                addressSettingsRepository,
-                               executorFactory.getExecutor());
+                               executorFactory.getExecutor(),
+                               createScheduledDeliveryHandler(persistenceID, name));
       }
 
       return queue;
    }
+
+   protected ScheduledDeliveryHandler createScheduledDeliveryHandler(final long persistenceID, final SimpleString name)
+   {
+      if (configuration == null || !configuration.isScheduledDeliveryWheelEnabled())
+      {
+         return new ScheduledDeliveryHandlerImpl(scheduledExecutor);
+      }
+
+      SequentialFileFactory spillFactory = null;
+
+      if (configuration.isPersistenceEnabled() && configuration.getScheduledDeliverySpillThreshold() > 0)
+      {
+         spillFactory = new NIOSequentialFileFactory(configuration.getScheduledDeliveryDirectory() + File.separator +
+                                                        persistenceID, false);
+         try
+         {
+            spillFactory.createDirs();
+
+            // spilled files are just a cache of what's on the journal, anything left from a previous run is stale
+            for (String fileName : spillFactory.listFiles(TimingWheelScheduledDeliveryHandler.SPILL_EXTENSION))
+            {
+               spillFactory.createSequentialFile(fileName, 1).delete();
+            }
+         }
+         catch (Exception e)
+         {
+            HornetQServerLogger.LOGGER.failedToSpillScheduledMessages(name, e);
+            spillFactory = null;
+         }
+      }
+
+      return new TimingWheelScheduledDeliveryHandler(scheduledExecutor,
+                                                     configuration.getScheduledDeliveryWheelTick(),
+                                                     spillFactory,
+                                                     executorFactory.getExecutor(),
+                                                     configuration.getScheduledDeliverySpillThreshold());
+   }
 }
@@ -19,12 +19,14 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
@@ -33,6 +35,7 @@ import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -44,6 +47,8 @@ import org.hornetq.api.core.management.ManagementHelper;
 import org.hornetq.core.filter.Filter;
 import org.hornetq.core.journal.IOAsyncTask;
 import org.hornetq.core.message.impl.MessageImpl;
+import org.hornetq.core.paging.PagingManager;
+import org.hornetq.core.paging.PagingStore;
 import org.hornetq.core.paging.cursor.PageSubscription;
 import org.hornetq.core.paging.cursor.PagedReference;
 import org.hornetq.core.persistence.StorageManager;
@@ -58,11 +63,14 @@ import org.hornetq.core.server.HandleStatus;
 import org.hornetq.core.server.HornetQMessageBundle;
 import org.hornetq.core.server.HornetQServer;
 import org.hornetq.core.server.HornetQServerLogger;
+import org.hornetq.core.server.MessageGroups;
 import org.hornetq.core.server.MessageReference;
 import org.hornetq.core.server.Queue;
 import org.hornetq.core.server.RoutingContext;
 import org.hornetq.core.server.ScheduledDeliveryHandler;
+import org.hornetq.core.server.ServerConsumer;
 import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.SharedMessageLog;
 import org.hornetq.core.server.cluster.RemoteQueueBinding;
 import org.hornetq.core.server.cluster.impl.Redistributor;
 import org.hornetq.core.server.management.ManagementService;
@@ -107,6 +115,11 @@ public class QueueImpl implements Queue
 
    public static final int CHECK_QUEUE_SIZE_PERIOD = 100;
 
+   /**
+    * How many references browsing copies each time it takes the queue lock
+    */
+   public static final int BROWSE_SEGMENT_SIZE = 100;
+
    /**
     * If The system gets slow for any reason, this is the maximum time an Delivery or
     * or depage executor should be hanging on
@@ -117,6 +130,17 @@ public class QueueImpl implements Queue
 
    public static final int DEFAULT_FLUSH_LIMIT = 500;
 
+   /**
+    * The fewest depaged messages a queue with a depage-buffer-time keeps waiting for delivery,
+    * so consumers get messages before any rate was measured
+    */
+   public static final int MIN_DEPAGE_BUFFER = 100;
+
+   /**
+    * How often (in ms) the acknowledge and depage rates are measured
+    */
+   private static final long DEPAGE_RATE_PERIOD = 1000;
+
    private final long id;
 
    private final SimpleString name;
@@ -142,12 +166,28 @@ public class QueueImpl implements Queue
    // This is to avoid locking the queue on the producer
    private final ConcurrentLinkedQueue<MessageReference> intermediateMessageReferences = new ConcurrentLinkedQueue<MessageReference>();
 
+   // Fan-out messages wait on the shared log of the address until they are delivered
+   private volatile SharedMessageLog.Cursor sharedLogCursor;
+
+   // The reference of the next message of the shared log, created once a consumer is offered the message.
+   // It's not on messageReferences, which only gets the messages of the log no consumer could take
+   private volatile MessageReference sharedLogHead;
+
    // This is where messages are stored
    private final PriorityLinkedList<MessageReference> messageReferences = new PriorityLinkedListImpl<MessageReference>(QueueImpl.NUM_PRIORITIES);
 
    // The quantity of pagedReferences on messageReferences priority list
    private final AtomicInteger pagedReferences = new AtomicInteger(0);
 
+   // The references matching each distinct consumer filter, only accessed with the queue lock held
+   private final Map<SimpleString, FilterIndex> filterIndexes = new HashMap<SimpleString, FilterIndex>();
+
+   // References held by messageReferences and by at least one filter index
+   private final Map<MessageReference, IndexedReference> indexedReferences = new IdentityHashMap<MessageReference, IndexedReference>();
+
+   // References removed through a filter index that messageReferences still holds
+   private int detachedReferences;
+
    // The estimate of memory being consumed by this queue. Used to calculate instances of messages to depage
    private final AtomicInteger queueMemorySize = new AtomicInteger(0);
 
@@ -177,6 +217,25 @@ public class QueueImpl implements Queue
 
    private volatile boolean depagePending = false;
 
+   // How long of consumption is kept depaged (depage-buffer-time), -1 when only the max size bounds depaging
+   private volatile long depageBufferTime = AddressSettings.DEFAULT_DEPAGE_BUFFER_TIME;
+
+   private final Object depageRateGuard = new Object();
+
+   private volatile long depageRateCheckTime = System.currentTimeMillis();
+
+   private long messagesAcknowledgedSnapshot;
+
+   private final AtomicLong messagesDepaged = new AtomicLong(0);
+
+   private long messagesDepagedSnapshot;
+
+   // messages acknowledged per second, averaged over the last measures
+   private volatile float acknowledgeRate;
+
+   // messages depaged per second on the last measure
+   private volatile float depageRate;
+
    private final StorageManager storageManager;
 
    private final HierarchicalRepository<AddressSettings> addressSettingsRepository;
@@ -197,7 +256,17 @@ public class QueueImpl implements Queue
 
    private final Set<Consumer> consumerSet = new HashSet<Consumer>();
 
-   private final Map<SimpleString, Consumer> groups = new HashMap<SimpleString, Consumer>();
+   // used to find the holder when a consumer notifies it's ready again, without holding the queue lock
+   private final Map<Consumer, ConsumerHolder> consumerHolders = new ConcurrentHashMap<Consumer, ConsumerHolder>();
+
+   // the consumers delivery goes round robin on, a consumer that returned busy is taken off until it notifies
+   // it's ready again. Only accessed with the queue lock held
+   private final List<ConsumerHolder> readyConsumers = new ArrayList<ConsumerHolder>();
+
+   // consumers that notified they're ready, added back to readyConsumers by the next delivery
+   private final ConcurrentLinkedQueue<ConsumerHolder> readyNotifications = new ConcurrentLinkedQueue<ConsumerHolder>();
+
+   private MessageGroups groups = new MessageGroupsImpl();
 
    private volatile SimpleString expiryAddress;
 
@@ -254,9 +323,7 @@ public class QueueImpl implements Queue
 
       synchronized (this)
       {
-         ArrayList<SimpleString> groupsUsed = new ArrayList<SimpleString>();
-         groupsUsed.addAll(groups.keySet());
-         return groupsUsed;
+         return groups.getGroupIDs();
       }
    }
 
@@ -343,6 +410,35 @@ public class QueueImpl implements Queue
                     final StorageManager storageManager,
                     final HierarchicalRepository<AddressSettings> addressSettingsRepository,
                     final Executor executor)
+   {
+      this(id,
+           address,
+           name,
+           filter,
+           pageSubscription,
+           durable,
+           temporary,
+           scheduledExecutor,
+           postOffice,
+           storageManager,
+           addressSettingsRepository,
+           executor,
+           new ScheduledDeliveryHandlerImpl(scheduledExecutor));
+   }
+
+   public QueueImpl(final long id,
+                    final SimpleString address,
+                    final SimpleString name,
+                    final Filter filter,
+                    final PageSubscription pageSubscription,
+                    final boolean durable,
+                    final boolean temporary,
+                    final ScheduledExecutorService scheduledExecutor,
+                    final PostOffice postOffice,
+                    final StorageManager storageManager,
+                    final HierarchicalRepository<AddressSettings> addressSettingsRepository,
+                    final Executor executor,
+                    final ScheduledDeliveryHandler scheduledDeliveryHandler)
    {
       this.id = id;
 
@@ -366,7 +462,7 @@ public class QueueImpl implements Queue
 
       this.scheduledExecutor = scheduledExecutor;
 
-      scheduledDeliveryHandler = new ScheduledDeliveryHandlerImpl(scheduledExecutor);
+      this.scheduledDeliveryHandler = scheduledDeliveryHandler;
 
       if (addressSettingsRepository != null)
       {
@@ -465,6 +561,16 @@ public class QueueImpl implements Queue
       return pageSubscription;
    }
 
+   public void setSharedLogCursor(final SharedMessageLog.Cursor cursor)
+   {
+      this.sharedLogCursor = cursor;
+   }
+
+   public SharedMessageLog.Cursor getSharedLogCursor()
+   {
+      return sharedLogCursor;
+   }
+
    public Filter getFilter()
    {
       return filter;
@@ -559,6 +665,14 @@ public class QueueImpl implements Queue
          return;
       }
 
+      SharedMessageLog.Cursor cursor = sharedLogCursor;
+
+      if (sharedLogHead != null || cursor != null && cursor.hasNext())
+      {
+         // whatever is on the shared log was sent before this reference
+         flushSharedLog();
+      }
+
       synchronized (directDeliveryGuard)
       {
          // The checkDirect flag is periodically set to true, if the delivery is specified as direct then this causes the
@@ -571,7 +685,7 @@ public class QueueImpl implements Queue
             lastDirectDeliveryCheck = System.currentTimeMillis();
 
             if (intermediateMessageReferences.isEmpty() &&
-               messageReferences.isEmpty() &&
+               getReferenceCount() == 0 &&
                !pageIterator.hasNext() &&
                !pageSubscription.isPaging())
             {
@@ -666,6 +780,23 @@ public class QueueImpl implements Queue
 
    }
 
+   public void consumerReady(final Consumer consumer)
+   {
+      ConsumerHolder holder = consumerHolders.get(consumer);
+
+      if (holder != null)
+      {
+         holder.ready();
+
+         if (holder.notified.compareAndSet(false, true))
+         {
+            readyNotifications.add(holder);
+         }
+      }
+
+      deliverAsync();
+   }
+
    public void close() throws Exception
    {
       if (checkQueueSizeFuture != null)
@@ -758,10 +889,23 @@ public class QueueImpl implements Queue
 
          cancelRedistributor();
 
-         consumerList.add(new ConsumerHolder(consumer));
+         ConsumerHolder holder = new ConsumerHolder(consumer);
+
+         if (consumer.getFilter() != null)
+         {
+            holder.index = acquireFilterIndex(consumer.getFilter());
+         }
+
+         consumerList.add(holder);
+
+         addReady(holder);
+
+         consumerHolders.put(consumer, holder);
 
          consumerSet.add(consumer);
 
+         groups.addConsumer(consumer);
+
          if (refCountForConsumers != null)
          {
             refCountForConsumers.increment();
@@ -784,42 +928,22 @@ public class QueueImpl implements Queue
                {
                   holder.iter.close();
                }
+               if (holder.index != null)
+               {
+                  releaseFilterIndex(holder.index);
+               }
+               holder.removed = true;
                consumerList.remove(holder);
+               removeReady(holder);
                break;
             }
          }
 
-         if (pos > 0 && pos >= consumerList.size())
-         {
-            pos = consumerList.size() - 1;
-         }
-
          consumerSet.remove(consumer);
 
-         LinkedList<SimpleString> groupsToRemove = null;
-
-         for (SimpleString groupID : groups.keySet())
-         {
-            if (consumer == groups.get(groupID))
-            {
-               if (groupsToRemove == null)
-               {
-                  groupsToRemove = new LinkedList<SimpleString>();
-               }
-               groupsToRemove.add(groupID);
-            }
-         }
+         consumerHolders.remove(consumer);
 
-         // We use an auxiliary List here to avoid concurrent modification exceptions on the keySet
-         // while the iteration is being done.
-         // Since that's a simple HashMap there's no Iterator's support with a remove operation
-         if (groupsToRemove != null)
-         {
-            for (SimpleString groupID : groupsToRemove)
-            {
-               groups.remove(groupID);
-            }
-         }
+         groups.removeConsumer(consumer);
 
          if (refCountForConsumers != null)
          {
@@ -897,6 +1021,23 @@ public class QueueImpl implements Queue
       return consumerSet.size();
    }
 
+   public synchronized int getGroupCount()
+   {
+      return groups.size();
+   }
+
+   public synchronized long getGroupsEvicted()
+   {
+      return groups.getEvictedCount();
+   }
+
+   public float getDepageRate()
+   {
+      updateDepageRates();
+
+      return depageRate;
+   }
+
    public synchronized Set<Consumer> getConsumers()
    {
       return consumerSet;
@@ -932,11 +1073,15 @@ public class QueueImpl implements Queue
 
    public LinkedListIterator<MessageReference> iterator()
    {
+      flushSharedLog();
+
       return new SynchronizedIterator(messageReferences.iterator());
    }
 
    public TotalQueueIterator totalIterator()
    {
+      flushSharedLog();
+
       return new TotalQueueIterator();
    }
 
@@ -1011,13 +1156,14 @@ public class QueueImpl implements Queue
          {
             // messageReferences will have depaged messages which we need to discount from the counter as they are
             // counted on the pageSubscription as well
-            return messageReferences.size() + getScheduledCount() +
+            return getReferenceCount() + getScheduledCount() +
                deliveringCount.get() +
-               pageSubscription.getMessageCount();
+               pageSubscription.getMessageCount() +
+               getSharedLogPendingCount();
          }
          else
          {
-            return messageReferences.size() + getScheduledCount() + deliveringCount.get();
+            return getReferenceCount() + getScheduledCount() + deliveringCount.get() + getSharedLogPendingCount();
          }
       }
    }
@@ -1931,8 +2077,13 @@ public class QueueImpl implements Queue
 
    private synchronized void internalAddTail(final MessageReference ref)
    {
+      checkReadded(ref);
       refAdded(ref);
       messageReferences.addTail(ref, ref.getMessage().getPriority());
+      if (!filterIndexes.isEmpty())
+      {
+         indexReference(ref, true);
+      }
    }
 
    /**
@@ -1945,143 +2096,545 @@ public class QueueImpl implements Queue
    private void internalAddHead(final MessageReference ref)
    {
       queueMemorySize.addAndGet(ref.getMessageMemoryEstimate());
+      checkReadded(ref);
       refAdded(ref);
       messageReferences.addHead(ref, ref.getMessage().getPriority());
+      if (!filterIndexes.isEmpty())
+      {
+         indexReference(ref, false);
+      }
    }
 
-   private synchronized void doInternalPoll()
+   /**
+    * The caller of this method requires synchronized on the queue.
+    */
+   private int getReferenceCount()
    {
+      return messageReferences.size() - detachedReferences;
+   }
 
-      int added = 0;
-      MessageReference ref;
+   private FilterIndex acquireFilterIndex(final Filter filter)
+   {
+      FilterIndex index = filterIndexes.get(filter.getFilterString());
 
-      while ((ref = intermediateMessageReferences.poll()) != null)
+      if (index == null)
       {
-         internalAddTail(ref);
+         index = new FilterIndex(filter);
 
-         messagesAdded++;
-         if (added++ > MAX_DELIVERIES_IN_LOOP)
-         {
-            // if we just keep polling from the intermediate we could starve in case there's a sustained load
-            deliverAsync();
-            return;
-         }
+         filterIndexes.put(filter.getFilterString(), index);
       }
+
+      index.consumers++;
+
+      return index;
    }
 
-   /**
-    * This method will deliver as many messages as possible until all consumers are busy or there
-    * are no more matching or available messages.
-    */
-   private void deliver()
+   private void releaseFilterIndex(final FilterIndex index)
    {
-      if (HornetQServerLogger.LOGGER.isDebugEnabled())
+      if (--index.consumers > 0)
       {
-         HornetQServerLogger.LOGGER.debug(this + " doing deliver. messageReferences=" + messageReferences.size());
+         return;
       }
 
-      doInternalPoll();
-
-      // Either the iterator is empty or the consumer is busy
-      int noDelivery = 0;
+      filterIndexes.remove(index.filter.getFilterString());
 
-      int size = 0;
+      LinkedListIterator<MessageReference> iter = index.references.iterator();
 
-      int endPos = -1;
+      try
+      {
+         while (iter.hasNext())
+         {
+            MessageReference ref = iter.next();
 
-      int handled = 0;
+            iter.remove();
 
-      long timeout = System.currentTimeMillis() + DELIVERY_TIMEOUT;
+            releaseCopy(ref, indexedReferences.get(ref));
+         }
+      }
+      finally
+      {
+         iter.close();
+      }
 
-      while (true)
+      if (filterIndexes.isEmpty() && detachedReferences > 0)
       {
-         if (handled == MAX_DELIVERIES_IN_LOOP)
-         {
-            // Schedule another one - we do this to prevent a single thread getting caught up in this loop for too
-            // long
+         purgeRemovedReferences();
+      }
+   }
 
-            deliverAsync();
+   /**
+    * The index is only built the first time one of its consumers is delivered to.
+    */
+   private void buildFilterIndex(final FilterIndex index)
+   {
+      index.built = true;
 
-            return;
-         }
+      LinkedListIterator<MessageReference> iter = messageReferences.iterator();
 
-         if (System.currentTimeMillis() > timeout)
+      try
+      {
+         while (iter.hasNext())
          {
-            if (isTrace)
-            {
-               HornetQServerLogger.LOGGER.trace("delivery has been running for too long. Scheduling another delivery task now");
-            }
+            MessageReference ref = iter.next();
 
-            deliverAsync();
+            if (!purgeRemoved(iter, ref, true) && index.filter.match(ref.getMessage()))
+            {
+               index.references.addTail(ref, ref.getMessage().getPriority());
 
-            return;
+               addCopy(ref);
+            }
          }
+      }
+      finally
+      {
+         iter.close();
+      }
+   }
 
+   /**
+    * Called when the message held by a queued reference is replaced, as a last value queue does. The
+    * filter indexes not matching the previous message may match the new one. Those still holding
+    * the reference for the previous message leave it to the filter of their consumers.
+    * <p>
+    * The caller of this method requires synchronized on the queue.
+    */
+   protected void messageReplaced(final MessageReference ref, final ServerMessage previous)
+   {
+      for (FilterIndex index : filterIndexes.values())
+      {
+         if (index.built && !index.filter.match(previous) && index.filter.match(ref.getMessage()))
+         {
+            index.references.addTail(ref, ref.getMessage().getPriority());
 
-         MessageReference ref;
+            addCopy(ref);
+         }
+      }
+   }
 
-         Consumer handledconsumer = null;
+   /**
+    * A cancelled reference may come back while a copy from before it was removed is still on some
+    * list, those copies have to go first or the reference would be delivered twice.
+    */
+   private void checkReadded(final MessageReference ref)
+   {
+      if (!indexedReferences.isEmpty() && indexedReferences.containsKey(ref))
+      {
+         purgeRemovedReferences();
+      }
+   }
 
-         synchronized (this)
+   private void indexReference(final MessageReference ref, final boolean tail)
+   {
+      for (FilterIndex index : filterIndexes.values())
+      {
+         if (index.built && index.filter.match(ref.getMessage()))
          {
-
-            // Need to do these checks inside the synchronized
-            if (paused || consumerList.isEmpty())
+            if (tail)
             {
-               return;
+               index.references.addTail(ref, ref.getMessage().getPriority());
             }
-
-            if (messageReferences.size() == 0)
+            else
             {
-               break;
+               index.references.addHead(ref, ref.getMessage().getPriority());
             }
 
-            if (endPos < 0 || consumersChanged)
-            {
-               consumersChanged = false;
+            addCopy(ref);
+         }
+      }
+   }
 
-               size = consumerList.size();
+   private void addCopy(final MessageReference ref)
+   {
+      IndexedReference indexed = indexedReferences.get(ref);
 
-               endPos = pos - 1;
+      if (indexed == null)
+      {
+         indexed = new IndexedReference();
 
-               if (endPos < 0)
-               {
-                  endPos = size - 1;
-                  noDelivery = 0;
-               }
-            }
+         // the copy on messageReferences
+         indexed.copies = 1;
 
-            ConsumerHolder holder = consumerList.get(pos);
+         indexedReferences.put(ref, indexed);
+      }
 
-            Consumer consumer = holder.consumer;
-            Consumer groupConsumer = null;
+      indexed.copies++;
+   }
 
-            if (holder.iter == null)
-            {
-               holder.iter = messageReferences.iterator();
-            }
+   private void releaseCopy(final MessageReference ref, final IndexedReference indexed)
+   {
+      if (indexed == null)
+      {
+         return;
+      }
 
-            if (holder.iter.hasNext())
-            {
-               ref = holder.iter.next();
-            }
-            else
-            {
-               ref = null;
-            }
-            if (ref == null)
-            {
-               noDelivery++;
-            }
-            else
-            {
-               if (checkExpired(ref))
-               {
-                  if (isTrace)
+      indexed.copies--;
+
+      // once only messageReferences holds it there's nothing left to track
+      if (indexed.copies == 0 || !indexed.removed && indexed.copies == 1)
+      {
+         indexedReferences.remove(ref);
+      }
+   }
+
+   /**
+    * Drops the reference from the list being iterated if it was already removed from the queue
+    * through another list.
+    *
+    * @return true if the reference was dropped
+    */
+   private boolean purgeRemoved(final LinkedListIterator<MessageReference> iter,
+                                final MessageReference ref,
+                                final boolean onMessageReferences)
+   {
+      if (indexedReferences.isEmpty())
+      {
+         return false;
+      }
+
+      IndexedReference indexed = indexedReferences.get(ref);
+
+      if (indexed == null || !indexed.removed)
+      {
+         return false;
+      }
+
+      iter.remove();
+
+      if (onMessageReferences)
+      {
+         detachedReferences--;
+      }
+
+      releaseCopy(ref, indexed);
+
+      return true;
+   }
+
+   /**
+    * Walks messageReferences and every filter index, dropping references already removed from the queue.
+    */
+   private void purgeRemovedReferences()
+   {
+      purgeRemoved(messageReferences, true);
+
+      for (FilterIndex index : filterIndexes.values())
+      {
+         purgeRemoved(index.references, false);
+      }
+   }
+
+   private void purgeRemoved(final PriorityLinkedList<MessageReference> list, final boolean onMessageReferences)
+   {
+      LinkedListIterator<MessageReference> iter = list.iterator();
+
+      try
+      {
+         while (iter.hasNext())
+         {
+            purgeRemoved(iter, iter.next(), onMessageReferences);
+         }
+      }
+      finally
+      {
+         iter.close();
+      }
+   }
+
+   private synchronized void doInternalPoll()
+   {
+
+      int added = 0;
+      MessageReference ref;
+
+      while ((ref = intermediateMessageReferences.poll()) != null)
+      {
+         internalAddTail(ref);
+
+         messagesAdded++;
+         if (added++ > MAX_DELIVERIES_IN_LOOP)
+         {
+            // if we just keep polling from the intermediate we could starve in case there's a sustained load
+            deliverAsync();
+            return;
+         }
+      }
+   }
+
+   /**
+    * Moves everything waiting on the intermediate references and on the shared log into
+    * messageReferences, keeping the order they were sent in.
+    */
+   private synchronized void flushSharedLog()
+   {
+      if (sharedLogCursor == null && sharedLogHead == null)
+      {
+         return;
+      }
+
+      MessageReference ref;
+
+      while ((ref = intermediateMessageReferences.poll()) != null)
+      {
+         internalAddTail(ref);
+
+         messagesAdded++;
+      }
+
+      detachSharedLogHead();
+
+      while ((ref = nextFromSharedLog()) != null)
+      {
+         internalAddTail(ref);
+      }
+
+      directDeliver = false;
+   }
+
+   /**
+    * Creates the reference of the next message on the shared log, the message stays on the log until
+    * then. The caller of this method requires synchronized on the queue.
+    *
+    * @return the reference, or {@code null} if the log has no message for this queue
+    */
+   private MessageReference nextFromSharedLog()
+   {
+      SharedMessageLog.Cursor cursor = sharedLogCursor;
+
+      if (cursor == null)
+      {
+         return null;
+      }
+
+      try
+      {
+         ServerMessage message = cursor.next();
+
+         if (message == null)
+         {
+            return null;
+         }
+
+         MessageReference ref = message.createReference(this);
+
+         queueMemorySize.addAndGet(ref.getMessageMemoryEstimate());
+
+         messagesAdded++;
+
+         return ref;
+      }
+      catch (Exception e)
+      {
+         HornetQServerLogger.LOGGER.errorReadingSharedLog(address, name, e);
+
+         return null;
+      }
+   }
+
+   /**
+    * @return the reference of the next message on the shared log, created if it wasn't yet
+    */
+   private MessageReference getSharedLogHead()
+   {
+      if (sharedLogHead == null)
+      {
+         sharedLogHead = nextFromSharedLog();
+      }
+
+      return sharedLogHead;
+   }
+
+   /**
+    * Moves the reference of the shared log a consumer was offered to messageReferences, where the
+    * consumers which didn't take it can skip it. The caller of this method requires synchronized on
+    * the queue.
+    */
+   private void detachSharedLogHead()
+   {
+      MessageReference ref = sharedLogHead;
+
+      if (ref != null)
+      {
+         sharedLogHead = null;
+
+         internalAddTail(ref);
+      }
+   }
+
+   private long getSharedLogPendingCount()
+   {
+      SharedMessageLog.Cursor cursor = sharedLogCursor;
+
+      return (cursor == null ? 0 : cursor.getPendingCount()) + (sharedLogHead == null ? 0 : 1);
+   }
+
+   /**
+    * This method will deliver as many messages as possible until all consumers are busy or there
+    * are no more matching or available messages.
+    */
+   private void deliver()
+   {
+      if (HornetQServerLogger.LOGGER.isDebugEnabled())
+      {
+         HornetQServerLogger.LOGGER.debug(this + " doing deliver. messageReferences=" + messageReferences.size());
+      }
+
+      doInternalPoll();
+
+      // Either the iterator is empty or the consumer is busy
+      int noDelivery = 0;
+
+      int size = 0;
+
+      int endPos = -1;
+
+      int handled = 0;
+
+      long timeout = System.currentTimeMillis() + DELIVERY_TIMEOUT;
+
+      while (true)
+      {
+         if (handled == MAX_DELIVERIES_IN_LOOP)
+         {
+            // Schedule another one - we do this to prevent a single thread getting caught up in this loop for too
+            // long
+
+            deliverAsync();
+
+            return;
+         }
+
+         if (System.currentTimeMillis() > timeout)
+         {
+            if (isTrace)
+            {
+               HornetQServerLogger.LOGGER.trace("delivery has been running for too long. Scheduling another delivery task now");
+            }
+
+            deliverAsync();
+
+            return;
+         }
+
+
+         MessageReference ref;
+
+         Consumer handledconsumer = null;
+
+         synchronized (this)
+         {
+
+            // Need to do these checks inside the synchronized
+            if (paused || consumerList.isEmpty())
+            {
+               return;
+            }
+
+            // references delivered through a filter index are only dropped from messageReferences lazily
+            if (detachedReferences > Math.max(MAX_DELIVERIES_IN_LOOP, messageReferences.size() / 2))
+            {
+               purgeRemovedReferences();
+            }
+
+            if (getReferenceCount() == 0 && getSharedLogHead() == null)
+            {
+               break;
+            }
+
+            drainReadyNotifications();
+
+            if (readyConsumers.isEmpty())
+            {
+               if (HornetQServerLogger.LOGGER.isDebugEnabled())
+               {
+                  HornetQServerLogger.LOGGER.debug(this + "::All the consumers are busy, giving up now");
+               }
+               // the first consumer notifying it's ready schedules another delivery
+               break;
+            }
+
+            if (endPos < 0 || consumersChanged)
+            {
+               consumersChanged = false;
+
+               size = readyConsumers.size();
+
+               endPos = pos - 1;
+
+               if (endPos < 0)
+               {
+                  endPos = size - 1;
+               }
+
+               noDelivery = 0;
+            }
+
+            ConsumerHolder holder = readyConsumers.get(pos);
+
+            Consumer consumer = holder.consumer;
+            Consumer groupConsumer = null;
+
+            if (holder.iter == null)
+            {
+               if (holder.index == null)
+               {
+                  holder.iter = messageReferences.iterator();
+               }
+               else
+               {
+                  if (!holder.index.built)
+                  {
+                     buildFilterIndex(holder.index);
+                  }
+
+                  holder.iter = holder.index.references.iterator();
+               }
+            }
+
+            if (holder.isBusy())
+            {
+               // it returned busy to a direct delivery and didn't notify it's ready since
+               removeReady(holder);
+
+               continue;
+            }
+
+            ref = null;
+
+            while (holder.iter.hasNext())
+            {
+               ref = holder.iter.next();
+
+               if (!purgeRemoved(holder.iter, ref, holder.index == null))
+               {
+                  break;
+               }
+
+               ref = null;
+            }
+
+            boolean fromSharedLog = false;
+
+            if (ref == null)
+            {
+               // the consumer went through messageReferences, the messages on the shared log come after them
+               ref = getSharedLogHead();
+
+               fromSharedLog = ref != null;
+            }
+
+            if (ref == null)
+            {
+               noDelivery++;
+            }
+            else
+            {
+               if (checkExpired(ref))
+               {
+                  if (isTrace)
                   {
                      HornetQServerLogger.LOGGER.trace("Reference " + ref + " being expired");
                   }
-                  holder.iter.remove();
+                  removeDelivered(holder, fromSharedLog);
 
                   refRemoved(ref);
 
@@ -2110,7 +2663,7 @@ public class QueueImpl implements Queue
                   }
                }
 
-               HandleStatus status = handle(ref, consumer);
+               HandleStatus status = handle(holder, ref, consumer);
 
                if (status == HandleStatus.HANDLED)
                {
@@ -2119,7 +2672,7 @@ public class QueueImpl implements Queue
 
                   handledconsumer = consumer;
 
-                  holder.iter.remove();
+                  removeDelivered(holder, fromSharedLog);
 
                   refRemoved(ref);
 
@@ -2132,13 +2685,30 @@ public class QueueImpl implements Queue
                }
                else if (status == HandleStatus.BUSY)
                {
-                  holder.iter.repeat();
+                  if (!fromSharedLog)
+                  {
+                     holder.iter.repeat();
+                  }
+
+                  if (holder.isBusy())
+                  {
+                     // no need to call handle on it again until it notifies it's ready
+                     removeReady(holder);
+
+                     continue;
+                  }
 
                   noDelivery++;
                }
                else if (status == HandleStatus.NO_MATCH)
                {
                   // nothing to be done on this case, the iterators will just jump next
+                  if (fromSharedLog)
+                  {
+                     // the other consumers find it on messageReferences, so the next messages of the log
+                     // aren't held behind it
+                     detachSharedLogHead();
+                  }
                }
             }
 
@@ -2186,14 +2756,92 @@ public class QueueImpl implements Queue
          }
       }
 
-      checkDepage();
+      checkDepage();
+   }
+
+   /**
+    * Removes the reference just delivered or expired from where the consumer of the holder found it.
+    * The caller of this method requires synchronized on the queue.
+    */
+   private void removeDelivered(final ConsumerHolder holder, final boolean fromSharedLog)
+   {
+      if (fromSharedLog)
+      {
+         sharedLogHead = null;
+      }
+      else
+      {
+         holder.iter.remove();
+
+         if (holder.index != null)
+         {
+            detachedReferences++;
+         }
+      }
+   }
+
+   private void checkDepage()
+   {
+      if (pageIterator != null && pageSubscription.isPaging() && !depagePending && needsDepage() &&
+         getDepageBudget() > 0 && pageIterator.hasNext())
+      {
+         scheduleDepage(false);
+      }
+   }
+
+   /**
+    * With a depage-buffer-time, the depaged messages waiting for delivery should cover that long of
+    * consumption, measured on the acknowledge rate.
+    * @return how many messages can be depaged before that's the case
+    */
+   private int getDepageBudget()
+   {
+      long bufferTime = depageBufferTime;
+
+      if (bufferTime < 0)
+      {
+         return Integer.MAX_VALUE;
+      }
+
+      updateDepageRates();
+
+      long target = Math.max(QueueImpl.MIN_DEPAGE_BUFFER, (long) (acknowledgeRate * bufferTime / 1000));
+
+      return (int) Math.min(Integer.MAX_VALUE, target - pagedReferences.get());
    }
 
-   private void checkDepage()
+   private void updateDepageRates()
    {
-      if (pageIterator != null && pageSubscription.isPaging() && !depagePending && needsDepage() && pageIterator.hasNext())
+      long now = System.currentTimeMillis();
+
+      if (now - depageRateCheckTime < DEPAGE_RATE_PERIOD)
       {
-         scheduleDepage(false);
+         return;
+      }
+
+      synchronized (depageRateGuard)
+      {
+         long lastCheck = depageRateCheckTime;
+
+         if (now - lastCheck < DEPAGE_RATE_PERIOD)
+         {
+            return;
+         }
+
+         float timeSlice = (now - lastCheck) / 1000.0f;
+
+         long acknowledged = messagesAcknowledged;
+         long depaged = messagesDepaged.get();
+
+         // messagesAcknowledged goes back to 0 when it's reset through management
+         float measuredRate = Math.max(0, acknowledged - messagesAcknowledgedSnapshot) / timeSlice;
+
+         acknowledgeRate = acknowledgeRate == 0 ? measuredRate : (acknowledgeRate + measuredRate) / 2;
+         depageRate = (depaged - messagesDepagedSnapshot) / timeSlice;
+
+         messagesAcknowledgedSnapshot = acknowledged;
+         messagesDepagedSnapshot = depaged;
+         depageRateCheckTime = now;
       }
    }
 
@@ -2202,11 +2850,41 @@ public class QueueImpl implements Queue
     * Before scheduling a depage runnable we verify if it fits / needs depaging.
     * We also check for while needsDepage While depaging.
     * This is just to avoid a copy & paste dependency
+    * A store without max size only pages while the global size is over the global max size,
+    * so it depages its share of the global max size while no store is considered full.
+    * While the store pages because of the global max size it still depages half of that share, so
+    * its consumers aren't starved until the global size falls back under the max. The halves of all
+    * the stores together stay under the size at which the stores picked are released.
     * @return
     */
    private boolean needsDepage()
    {
-      return queueMemorySize.get() < pageSubscription.getPagingStore().getMaxSize();
+      PagingStore store = pageSubscription.getPagingStore();
+
+      long maxSize = store.getMaxSize();
+
+      if (store.isOverGlobalMaxSize())
+      {
+         long depageSize = store.getPagingManager().getGlobalDepageSize() / 2;
+
+         return queueMemorySize.get() < (maxSize < 0 ? depageSize : Math.min(maxSize, depageSize));
+      }
+
+      if (maxSize < 0)
+      {
+         PagingManager pagingManager = store.getPagingManager();
+
+         long depageSize = pagingManager.getGlobalDepageSize();
+
+         if (pagingManager.isGlobalFull())
+         {
+            depageSize /= 2;
+         }
+
+         return queueMemorySize.get() < depageSize;
+      }
+
+      return queueMemorySize.get() < maxSize;
    }
 
    private SimpleString extractGroupID(MessageReference ref)
@@ -2227,6 +2905,18 @@ public class QueueImpl implements Queue
     */
    protected void refRemoved(MessageReference ref)
    {
+      if (!indexedReferences.isEmpty())
+      {
+         IndexedReference indexed = indexedReferences.get(ref);
+
+         if (indexed != null)
+         {
+            indexed.removed = true;
+
+            releaseCopy(ref, indexed);
+         }
+      }
+
       queueMemorySize.addAndGet(-ref.getMessageMemoryEstimate());
       if (ref.isPaged())
       {
@@ -2283,7 +2973,8 @@ public class QueueImpl implements Queue
       this.directDeliver = false;
 
       int depaged = 0;
-      while (timeout > System.currentTimeMillis() && needsDepage() && pageIterator.hasNext())
+      int budget = getDepageBudget();
+      while (depaged < budget && timeout > System.currentTimeMillis() && needsDepage() && pageIterator.hasNext())
       {
          depaged++;
          PagedReference reference = pageIterator.next();
@@ -2295,6 +2986,8 @@ public class QueueImpl implements Queue
          pageIterator.remove();
       }
 
+      messagesDepaged.addAndGet(depaged);
+
       if (HornetQServerLogger.LOGGER.isDebugEnabled())
       {
          if (depaged == 0 && queueMemorySize.get() >= maxSize)
@@ -2337,7 +3030,11 @@ public class QueueImpl implements Queue
                                            executor,
                                            QueueImpl.REDISTRIBUTOR_BATCH_SIZE);
 
-         consumerList.add(new ConsumerHolder(redistributor));
+         ConsumerHolder holder = new ConsumerHolder(redistributor);
+
+         consumerList.add(holder);
+
+         addReady(holder);
 
          consumersChanged = true;
 
@@ -2414,7 +3111,7 @@ public class QueueImpl implements Queue
     */
    public int getNumberOfReferences()
    {
-      return messageReferences.size();
+      return getReferenceCount();
    }
 
    private void move(final SimpleString toAddress,
@@ -2670,6 +3367,13 @@ public class QueueImpl implements Queue
             return false;
          }
 
+         drainReadyNotifications();
+
+         if (readyConsumers.isEmpty())
+         {
+            return false;
+         }
+
          if (checkExpired(ref))
          {
             return true;
@@ -2677,11 +3381,11 @@ public class QueueImpl implements Queue
 
          int startPos = pos;
 
-         int size = consumerList.size();
+         int size = readyConsumers.size();
 
          while (true)
          {
-            ConsumerHolder holder = consumerList.get(pos);
+            ConsumerHolder holder = readyConsumers.get(pos);
 
             Consumer consumer = holder.consumer;
 
@@ -2712,7 +3416,8 @@ public class QueueImpl implements Queue
                pos = 0;
             }
 
-            HandleStatus status = handle(ref, consumer);
+            HandleStatus status = groupConsumer == null && holder.isBusy() ? HandleStatus.BUSY
+               : handle(holder, ref, consumer);
 
             if (status == HandleStatus.HANDLED)
             {
@@ -2797,6 +3502,25 @@ public class QueueImpl implements Queue
       }
    }
 
+   /**
+    * Same as {@link #handle(MessageReference, Consumer)}, but remembers the holder's consumer as busy
+    * if it refused the reference, so it's skipped until it notifies it's ready again.
+    */
+   private HandleStatus handle(final ConsumerHolder holder, final MessageReference reference, final Consumer consumer)
+   {
+      // read before calling handle, so a notification racing with handle won't be lost
+      final long readySequence = holder.readySequence.get();
+
+      HandleStatus status = handle(reference, consumer);
+
+      if (status == HandleStatus.BUSY && consumer == holder.consumer && holder.tracksReadiness)
+      {
+         holder.busySequence = readySequence;
+      }
+
+      return status;
+   }
+
    private synchronized HandleStatus handle(final MessageReference reference, final Consumer consumer)
    {
       HandleStatus status;
@@ -2828,6 +3552,66 @@ public class QueueImpl implements Queue
       return status;
    }
 
+   /**
+    * The caller of this method requires synchronized on the queue.
+    */
+   private void addReady(final ConsumerHolder holder)
+   {
+      holder.inReadyConsumers = true;
+
+      readyConsumers.add(holder);
+
+      consumersChanged = true;
+   }
+
+   /**
+    * Takes a consumer off the round robin, the consumer after it takes its position.
+    * The caller of this method requires synchronized on the queue.
+    */
+   private void removeReady(final ConsumerHolder holder)
+   {
+      if (!holder.inReadyConsumers)
+      {
+         return;
+      }
+
+      holder.inReadyConsumers = false;
+
+      int index = readyConsumers.indexOf(holder);
+
+      readyConsumers.remove(index);
+
+      if (index < pos)
+      {
+         pos--;
+      }
+
+      if (pos >= readyConsumers.size())
+      {
+         pos = 0;
+      }
+
+      consumersChanged = true;
+   }
+
+   /**
+    * The caller of this method requires synchronized on the queue.
+    */
+   private void drainReadyNotifications()
+   {
+      ConsumerHolder holder;
+      while ((holder = readyNotifications.poll()) != null)
+      {
+         // cleared before checking, a notification from now on is queued again
+         holder.notified.set(false);
+
+         if (!holder.removed && !holder.inReadyConsumers && !holder.isBusy())
+         {
+            addReady(holder);
+         }
+      }
+   }
+
    private List<ConsumerHolder> cloneConsumersList()
    {
       List<ConsumerHolder> consumerListClone;
@@ -2947,12 +3731,79 @@ public class QueueImpl implements Queue
       ConsumerHolder(final Consumer consumer)
       {
          this.consumer = consumer;
+         // only server consumers notify the queue when they are ready again
+         this.tracksReadiness = consumer instanceof ServerConsumer;
       }
 
       final Consumer consumer;
 
+      final boolean tracksReadiness;
+
+      // incremented every time the consumer notifies it's ready
+      final AtomicLong readySequence = new AtomicLong();
+
+      // the readySequence at the time the consumer returned busy, only accessed with the queue lock held
+      long busySequence = -1;
+
+      // set while the holder is waiting on readyNotifications
+      final AtomicBoolean notified = new AtomicBoolean();
+
+      // whether the holder is on readyConsumers, only accessed with the queue lock held
+      boolean inReadyConsumers;
+
+      // set once the consumer was removed from the queue, only accessed with the queue lock held
+      boolean removed;
+
       LinkedListIterator<MessageReference> iter;
 
+      // the references matching the consumer's filter, null if the consumer has no filter
+      FilterIndex index;
+
+      boolean isBusy()
+      {
+         return busySequence == readySequence.get();
+      }
+
+      void ready()
+      {
+         readySequence.incrementAndGet();
+      }
+   }
+
+   /**
+    * The references matching a consumer filter, shared by every consumer using the same filter
+    * string. A selective consumer on a deep queue walks only the references it can take instead of
+    * scanning past all the ones it doesn't match on every delivery.
+    * <p>
+    * A reference removed through one list stays on the others until an iterator runs into it, see
+    * {@link IndexedReference}.
+    */
+   private static class FilterIndex
+   {
+      final Filter filter;
+
+      final PriorityLinkedList<MessageReference> references = new PriorityLinkedListImpl<MessageReference>(NUM_PRIORITIES);
+
+      int consumers;
+
+      boolean built;
+
+      FilterIndex(final Filter filter)
+      {
+         this.filter = filter;
+      }
+   }
+
+   /**
+    * Tracks a reference held by messageReferences and at least one filter index.
+    */
+   private static class IndexedReference
+   {
+      // number of lists holding the reference, messageReferences included
+      int copies;
+
+      // the reference was removed from the queue, remaining copies are stale
+      boolean removed;
    }
 
    private class DelayedAddRedistributor implements Runnable
@@ -3069,7 +3920,19 @@ public class QueueImpl implements Queue
       {
          synchronized (QueueImpl.this)
          {
-            return iter.hasNext();
+            while (iter.hasNext())
+            {
+               MessageReference ref = iter.next();
+
+               if (!purgeRemoved(iter, ref, true))
+               {
+                  iter.repeat();
+
+                  return true;
+               }
+            }
+
+            return false;
          }
       }
 
@@ -3077,6 +3940,11 @@ public class QueueImpl implements Queue
       {
          synchronized (QueueImpl.this)
          {
+            if (!hasNext())
+            {
+               throw new NoSuchElementException();
+            }
+
             return iter.next();
          }
       }
@@ -3090,6 +3958,149 @@ public class QueueImpl implements Queue
       }
    }
 
+   /**
+    * Read only iterator over messageReferences that copies the references in segments, taking the
+    * queue lock once per segment instead of on every step. Browsing a large queue doesn't contend
+    * with delivery on every message, and delivery runs between segments.
+    * <p>
+    * A segment is a consistent view of the queue when it was copied, so a reference removed after
+    * its segment was copied is still returned. Its message could be acknowledged meanwhile, so the
+    * iterator holds a count on the message of every reference it copied until the caller moves to
+    * the next one or closes the iterator, otherwise the message buffer could be released while it's
+    * still being read.
+    */
+   private class SegmentIterator implements LinkedListIterator<MessageReference>
+   {
+      private final LinkedListIterator<MessageReference> iter;
+
+      private final MessageReference[] segment = new MessageReference[BROWSE_SEGMENT_SIZE];
+
+      private int position;
+
+      private int limit;
+
+      // the reference returned last, still used by the caller
+      private MessageReference lastReturned;
+
+      SegmentIterator()
+      {
+         synchronized (QueueImpl.this)
+         {
+            iter = messageReferences.iterator();
+         }
+      }
+
+      public boolean hasNext()
+      {
+         if (position < limit)
+         {
+            return true;
+         }
+
+         position = 0;
+         limit = 0;
+
+         synchronized (QueueImpl.this)
+         {
+            while (limit < segment.length && iter.hasNext())
+            {
+               MessageReference ref = iter.next();
+
+               // the reference is still on the queue here, so its message wasn't released yet
+               if (!purgeRemoved(iter, ref, true) && hold(ref))
+               {
+                  segment[limit++] = ref;
+               }
+            }
+         }
+
+         return limit > 0;
+      }
+
+      private boolean hold(final MessageReference ref)
+      {
+         if (ref.isPaged())
+         {
+            // paged messages belong to the page cache, acknowledging them doesn't release them
+            return true;
+         }
+
+         try
+         {
+            ref.getMessage().incrementRefCount();
+            return true;
+         }
+         catch (Exception e)
+         {
+            HornetQServerLogger.LOGGER.errorIncrementingRefCount(e);
+            return false;
+         }
+      }
+
+      private void release(final MessageReference ref)
+      {
+         if (ref == null || ref.isPaged())
+         {
+            return;
+         }
+
+         try
+         {
+            ref.getMessage().decrementRefCount();
+         }
+         catch (Exception e)
+         {
+            HornetQServerLogger.LOGGER.errorDecrementingRefCount(e);
+         }
+      }
+
+      public MessageReference next()
+      {
+         if (!hasNext())
+         {
+            throw new NoSuchElementException();
+         }
+
+         MessageReference ref = segment[position];
+
+         // don't keep the reference around once it was returned
+         segment[position++] = null;
+
+         release(lastReturned);
+
+         lastReturned = ref;
+
+         return ref;
+      }
+
+      public void remove()
+      {
+         throw new UnsupportedOperationException();
+      }
+
+      public void repeat()
+      {
+         throw new UnsupportedOperationException();
+      }
+
+      public void close()
+      {
+         synchronized (QueueImpl.this)
+         {
+            iter.close();
+         }
+
+         release(lastReturned);
+         lastReturned = null;
+
+         while (position < limit)
+         {
+            release(segment[position]);
+            segment[position++] = null;
+         }
+      }
+   }
+
    //Readonly (no remove) iterator over the messages in the queue, in order of
    //paging store, intermediateMessageReferences and MessageReferences
    private class TotalQueueIterator implements LinkedListIterator<MessageReference>
@@ -3103,7 +4114,7 @@ public class QueueImpl implements Queue
          {
             pageIter = pageSubscription.iterator();
          }
-         messagesIterator = new SynchronizedIterator(messageReferences.iterator());
+         messagesIterator = new SegmentIterator();
       }
 
       @Override
@@ -3175,6 +4186,57 @@ public class QueueImpl implements Queue
       this.expiryAddress = settings == null ? null : settings.getExpiryAddress();
    }
 
+   private void configureDepaging(final AddressSettings settings)
+   {
+      this.depageBufferTime = settings == null ? AddressSettings.DEFAULT_DEPAGE_BUFFER_TIME : settings.getDepageBufferTime();
+   }
+
+   private void configureGroups(final AddressSettings settings)
+   {
+      final boolean hashing = settings != null && settings.isGroupHashing();
+      final long idleTimeout = settings == null ? AddressSettings.DEFAULT_GROUP_IDLE_TIMEOUT : settings.getGroupIdleTimeout();
+      final int maxGroups = settings == null ? AddressSettings.DEFAULT_MAX_GROUPS : settings.getMaxGroups();
+
+      Runnable configure = new Runnable()
+      {
+         public void run()
+         {
+            synchronized (QueueImpl.this)
+            {
+               if (hashing != groups instanceof HashedMessageGroups)
+               {
+                  // the groups assigned so far are lost when switching modes
+                  if (!consumerSet.isEmpty())
+                  {
+                     HornetQServerLogger.LOGGER.messageGroupsModeChanged(name,
+                                                                        hashing ? "by hashing" : "to the first consumer of each group",
+                                                                        consumerSet.size());
+                  }
+                  groups = hashing ? new HashedMessageGroups(consumerSet) : new MessageGroupsImpl();
+               }
+
+               if (groups instanceof MessageGroupsImpl)
+               {
+                  MessageGroupsImpl groupsImpl = (MessageGroupsImpl) groups;
+                  groupsImpl.setIdleTimeout(idleTimeout);
+                  groupsImpl.setMaxGroups(maxGroups);
+               }
+            }
+         }
+      };
+
+      if (executor == null)
+      {
+         // still on the constructor
+         configure.run();
+      }
+      else
+      {
+         // the settings repository lock is held while listeners are called, so we don't wait on the queue lock here
+         executor.execute(configure);
+      }
+   }
+
    private void configureSlowConsumerReaper(final AddressSettings settings)
    {
       if (settings == null || settings.getSlowConsumerThreshold() == AddressSettings.DEFAULT_SLOW_CONSUMER_THRESHOLD)
@@ -3233,7 +4295,9 @@ public class QueueImpl implements Queue
       {
          AddressSettings settings = addressSettingsRepository.getMatch(address.toString());
          configureExpiry(settings);
+         configureDepaging(settings);
          configureSlowConsumerReaper(settings);
+         configureGroups(settings);
       }
    }
 
@@ -79,7 +79,7 @@ public class RefsOperation extends TransactionOperationAbstract
 
       for (MessageReference ref : refsToAck)
       {
-         ref.setConsumerId(null);
+         ref.emptyConsumerID();
 
          if (HornetQServerLogger.LOGGER.isTraceEnabled())
          {
@@ -201,7 +201,7 @@ public class RefsOperation extends TransactionOperationAbstract
       List<MessageReference> list = new LinkedList<MessageReference>();
       for (MessageReference ref : refsToAck)
       {
-         if (ref.getConsumerId() != null && ref.getConsumerId().equals(consumerID))
+         if (ref.hasConsumerId() && ref.getConsumerId() == consumerID)
          {
             list.add(ref);
          }
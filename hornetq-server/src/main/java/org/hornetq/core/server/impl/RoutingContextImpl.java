@@ -13,6 +13,7 @@
 package org.hornetq.core.server.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -21,6 +22,7 @@ import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.server.Queue;
 import org.hornetq.core.server.RouteContextList;
 import org.hornetq.core.server.RoutingContext;
+import org.hornetq.core.server.SharedMessageLog;
 import org.hornetq.core.transaction.Transaction;
 
 /**
@@ -37,6 +39,8 @@ public final class RoutingContextImpl implements RoutingContext
 
    private int queueCount;
 
+   private List<SharedMessageLog.Route> sharedLogRoutes;
+
    public RoutingContextImpl(final Transaction transaction)
    {
       this.transaction = transaction;
@@ -49,6 +53,8 @@ public final class RoutingContextImpl implements RoutingContext
       map.clear();
 
       queueCount = 0;
+
+      sharedLogRoutes = null;
    }
 
    public void addQueue(final SimpleString address, final Queue queue)
@@ -83,6 +89,23 @@ public final class RoutingContextImpl implements RoutingContext
       return listing == null ? false : listing.isAlreadyAcked(queue);
    }
 
+   public void addSharedLogRoute(final SharedMessageLog.Route route)
+   {
+      if (sharedLogRoutes == null)
+      {
+         sharedLogRoutes = new ArrayList<SharedMessageLog.Route>(1);
+      }
+
+      sharedLogRoutes.add(route);
+
+      queueCount += route.getQueues().length;
+   }
+
+   public List<SharedMessageLog.Route> getSharedLogRoutes()
+   {
+      return sharedLogRoutes == null ? Collections.<SharedMessageLog.Route>emptyList() : sharedLogRoutes;
+   }
+
    public RouteContextList getContextListing(SimpleString address)
    {
       RouteContextList listing = map.get(address);
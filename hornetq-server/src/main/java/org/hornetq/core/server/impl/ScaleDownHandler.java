@@ -483,6 +483,7 @@ public class ScaleDownHandler
                 */
                if (!queueIterator.hasNext())
                {
+                  queueIterator.close();
                   queueIterator = queue.totalIterator();
                   queueIterators.put(queue.getName(), queueIterator);
                   while (queueIterator.hasNext())
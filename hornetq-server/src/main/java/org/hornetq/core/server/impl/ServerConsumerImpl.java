@@ -963,7 +963,9 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
       }
       else
       {
-         messageQueue.deliverAsync();
+         // every transition that could have made us busy (credits, writability, start, transfer, large messages)
+         // comes through here, so the queue can stop skipping this consumer
+         messageQueue.consumerReady(this);
       }
    }
 
@@ -1258,17 +1260,16 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
             try
             {
                ref = null;
-               synchronized (messageQueue)
+
+               // the queue iterator only takes the queue lock when it copies its next segment
+               if (!iterator.hasNext())
                {
-                  if (!iterator.hasNext())
-                  {
-                     break;
-                  }
+                  break;
+               }
 
-                  ref = iterator.next();
+               ref = iterator.next();
 
-                  status = handle(ref);
-               }
+               status = handle(ref);
 
                if (status == HandleStatus.HANDLED)
                {
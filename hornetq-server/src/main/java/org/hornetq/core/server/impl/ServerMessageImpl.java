@@ -82,19 +82,19 @@ public class ServerMessageImpl extends MessageImpl implements ServerMessage
    }
 
    /*
-    * Copy constructor
+    * Copy constructor, the copy shares the body of the other message until either of them changes it
     */
    protected ServerMessageImpl(final ServerMessageImpl other)
    {
-      super(other);
+      super(other, other.getProperties(), true);
    }
 
    /*
-    * Copy constructor
+    * Copy constructor, the copy shares the body of the other message until either of them changes it
     */
    protected ServerMessageImpl(final ServerMessageImpl other, TypedProperties properties)
    {
-      super(other, properties);
+      super(other, properties, true);
    }
 
    public boolean isServerMessage()
@@ -0,0 +1,330 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.core.server.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.server.Queue;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.SharedMessageLog;
+
+/**
+ * The messages are kept on a circular array together with the number of cursors that still have to
+ * read each one of them, so moving a cursor forward and releasing the oldest messages doesn't depend
+ * on the number of cursors. An append only wakes up the queues of the cursors which found the end of
+ * the log since the previous append, so it doesn't depend on the number of cursors either.
+ */
+public class SharedMessageLogImpl implements SharedMessageLog
+{
+   private static final int INITIAL_CAPACITY = 1024;
+
+   private static final CursorImpl[] NO_CURSORS = new CursorImpl[0];
+
+   private final SimpleString address;
+
+   private ServerMessage[] messages = new ServerMessage[INITIAL_CAPACITY];
+
+   // how many cursors still have to read the message at the same position on messages
+   private int[] pending = new int[INITIAL_CAPACITY];
+
+   // position of the oldest message on the arrays
+   private int head;
+
+   // sequence of the oldest message held
+   private long headSequence;
+
+   // sequence the next appended message will get
+   private long tailSequence;
+
+   // copy on write, so the routing can take the cursors without holding the lock
+   private volatile CursorImpl[] cursors = NO_CURSORS;
+
+   // the cursors which found the end of the log, woken up by the next append
+   private List<CursorImpl> waiting = new ArrayList<CursorImpl>();
+
+   public SharedMessageLogImpl(final SimpleString address)
+   {
+      this.address = address;
+   }
+
+   public SimpleString getAddress()
+   {
+      return address;
+   }
+
+   public void append(final ServerMessage message) throws Exception
+   {
+      append(message, null);
+   }
+
+   public boolean append(final ServerMessage message, final Cursor[] readers) throws Exception
+   {
+      List<CursorImpl> waiters;
+
+      // the log keeps one reference to the message until every cursor has read it
+      message.incrementRefCount();
+
+      synchronized (this)
+      {
+         CursorImpl[] current = cursors;
+
+         if (readers != null && readers != current)
+         {
+            message.decrementRefCount();
+            return false;
+         }
+
+         if (current.length == 0)
+         {
+            message.decrementRefCount();
+            return true;
+         }
+
+         if (tailSequence - headSequence == messages.length)
+         {
+            grow();
+         }
+
+         int index = index(tailSequence);
+
+         messages[index] = message;
+         pending[index] = current.length;
+
+         tailSequence++;
+
+         waiters = waiting;
+
+         if (!waiters.isEmpty())
+         {
+            waiting = new ArrayList<CursorImpl>();
+
+            for (CursorImpl cursor : waiters)
+            {
+               cursor.waiting = false;
+            }
+         }
+      }
+
+      for (CursorImpl cursor : waiters)
+      {
+         cursor.getQueue().deliverAsync();
+      }
+
+      return true;
+   }
+
+   public synchronized Cursor createCursor(final Queue queue)
+   {
+      CursorImpl cursor = new CursorImpl(queue, tailSequence);
+
+      CursorImpl[] newCursors = Arrays.copyOf(cursors, cursors.length + 1);
+
+      newCursors[cursors.length] = cursor;
+
+      cursors = newCursors;
+
+      // it starts at the end of the log
+      cursor.waiting = true;
+
+      waiting.add(cursor);
+
+      return cursor;
+   }
+
+   public int getCursorCount()
+   {
+      return cursors.length;
+   }
+
+   public Cursor[] getCursors()
+   {
+      return cursors;
+   }
+
+   public synchronized int size()
+   {
+      return (int) (tailSequence - headSequence);
+   }
+
+   @Override
+   public String toString()
+   {
+      return "SharedMessageLogImpl [address=" + address + "]";
+   }
+
+   private int index(final long sequence)
+   {
+      return (int) ((head + (sequence - headSequence)) & (messages.length - 1));
+   }
+
+   private void grow()
+   {
+      int size = messages.length;
+
+      ServerMessage[] newMessages = new ServerMessage[size << 1];
+      int[] newPending = new int[size << 1];
+
+      System.arraycopy(messages, head, newMessages, 0, size - head);
+      System.arraycopy(messages, 0, newMessages, size - head, head);
+      System.arraycopy(pending, head, newPending, 0, size - head);
+      System.arraycopy(pending, 0, newPending, size - head, head);
+
+      messages = newMessages;
+      pending = newPending;
+      head = 0;
+   }
+
+   /**
+    * Has to be called while holding the lock.
+    */
+   private void read(final long sequence) throws Exception
+   {
+      pending[index(sequence)]--;
+
+      while (headSequence < tailSequence && pending[head] == 0)
+      {
+         ServerMessage message = messages[head];
+
+         messages[head] = null;
+
+         head = (head + 1) & (messages.length - 1);
+
+         headSequence++;
+
+         message.decrementRefCount();
+      }
+   }
+
+   private synchronized void removeCursor(final CursorImpl cursor) throws Exception
+   {
+      CursorImpl[] current = cursors;
+
+      for (int i = 0; i < current.length; i++)
+      {
+         if (current[i] == cursor)
+         {
+            CursorImpl[] newCursors = new CursorImpl[current.length - 1];
+            System.arraycopy(current, 0, newCursors, 0, i);
+            System.arraycopy(current, i + 1, newCursors, i, current.length - i - 1);
+            cursors = newCursors;
+            break;
+         }
+      }
+
+      if (cursor.waiting)
+      {
+         waiting.remove(cursor);
+      }
+
+      while (cursor.position < tailSequence)
+      {
+         read(cursor.position++);
+      }
+   }
+
+   private final class CursorImpl implements Cursor
+   {
+      private final Queue queue;
+
+      // guarded by the log
+      private long position;
+
+      private boolean closed;
+
+      // guarded by the log, set while the cursor is on the waiting list
+      private boolean waiting;
+
+      CursorImpl(final Queue queue, final long position)
+      {
+         this.queue = queue;
+         this.position = position;
+      }
+
+      public SharedMessageLog getLog()
+      {
+         return SharedMessageLogImpl.this;
+      }
+
+      public Queue getQueue()
+      {
+         return queue;
+      }
+
+      public ServerMessage next() throws Exception
+      {
+         synchronized (SharedMessageLogImpl.this)
+         {
+            if (closed || position == tailSequence)
+            {
+               if (!closed && !waiting)
+               {
+                  waiting = true;
+
+                  SharedMessageLogImpl.this.waiting.add(this);
+               }
+
+               return null;
+            }
+
+            ServerMessage message = messages[index(position)];
+
+            // counted before the log may release its own reference
+            message.incrementRefCount();
+
+            read(position++);
+
+            return message;
+         }
+      }
+
+      public boolean hasNext()
+      {
+         synchronized (SharedMessageLogImpl.this)
+         {
+            return !closed && position < tailSequence;
+         }
+      }
+
+      public long getPendingCount()
+      {
+         synchronized (SharedMessageLogImpl.this)
+         {
+            return closed ? 0 : tailSequence - position;
+         }
+      }
+
+      public void close() throws Exception
+      {
+         synchronized (SharedMessageLogImpl.this)
+         {
+            if (closed)
+            {
+               return;
+            }
+
+            closed = true;
+
+            removeCursor(this);
+         }
+      }
+
+      @Override
+      public String toString()
+      {
+         return "SharedMessageLogImpl.Cursor [queue=" + queue.getName() + ", address=" + address + "]";
+      }
+   }
+}
@@ -0,0 +1,1024 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.core.server.impl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.HornetQBuffers;
+import org.hornetq.core.filter.Filter;
+import org.hornetq.core.journal.SequentialFile;
+import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.paging.PagingStore;
+import org.hornetq.core.server.HornetQServerLogger;
+import org.hornetq.core.server.MessageReference;
+import org.hornetq.core.server.Queue;
+import org.hornetq.core.server.ScheduledDeliveryHandler;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.utils.DataConstants;
+
+/**
+ * A {@link ScheduledDeliveryHandler} keeping the scheduled references on a hierarchical timing wheel.
+ * <p>
+ * Scheduling a reference only drops it into the slot covering its delivery time, and a single timer
+ * is armed for the earliest slot instead of one runnable per distinct delivery time. Slots on the
+ * overflow wheels are cascaded into the finer wheels as time advances, and a slot of the finest wheel
+ * is only processed once its whole tick has elapsed so nothing is ever delivered early.
+ * <p>
+ * When a spill factory is given, durable references scheduled further than the spill threshold in the
+ * future are written to disk and released from memory until shortly before they are due. Those files are
+ * only a cache: the journal still holds the messages, so the files are discarded on restart.
+ */
+public class TimingWheelScheduledDeliveryHandler implements ScheduledDeliveryHandler
+{
+   private static final boolean trace = HornetQServerLogger.LOGGER.isTraceEnabled();
+
+   public static final int WHEEL_SIZE = 512;
+
+   public static final String SPILL_EXTENSION = "sdl";
+
+   /** we only spill once this many far references were scheduled, so we don't create one file per message */
+   private static final int SPILL_BATCH_SIZE = 1000;
+
+   // time, tail, sequence, delivery count, persisted count, encode size
+   private static final int SPILL_RECORD_HEADER = DataConstants.SIZE_LONG + DataConstants.SIZE_BOOLEAN +
+      DataConstants.SIZE_LONG + DataConstants.SIZE_INT * 3;
+
+   private final ScheduledExecutorService scheduledExecutor;
+
+   private final SequentialFileFactory spillFactory;
+
+   private final Executor spillExecutor;
+
+   private final long spillThreshold;
+
+   // every slot holding references, ordered by the time it has to be processed.
+   // A slot's expiration is never changed while it is on this queue
+   private final PriorityQueue<Slot> slots = new PriorityQueue<>();
+
+   private final PriorityQueue<SpilledSegment> spilledSegments = new PriorityQueue<>();
+
+   private final Wheel wheel;
+
+   // references that were already due when they were placed
+   private List<RefScheduled> dueReferences = new ArrayList<>();
+
+   // references held in memory
+   private int size;
+
+   private int spilledCount;
+
+   private int farCount;
+
+   private long sequence;
+
+   private long segmentSequence;
+
+   private long nextRun = Long.MAX_VALUE;
+
+   private boolean spillScheduled;
+
+   private boolean reloadScheduled;
+
+   private final Runnable deliveryRunner = new Runnable()
+   {
+      public void run()
+      {
+         deliverDue();
+      }
+   };
+
+   private final Runnable spillRunner = new Runnable()
+   {
+      public void run()
+      {
+         spill();
+      }
+   };
+
+   private final Runnable reloadRunner = new Runnable()
+   {
+      public void run()
+      {
+         reloadDue();
+      }
+   };
+
+   public TimingWheelScheduledDeliveryHandler(final ScheduledExecutorService scheduledExecutor, final long tick)
+   {
+      this(scheduledExecutor, tick, null, null, -1);
+   }
+
+   /**
+    * @param spillFactory   where far scheduled references are written to, or {@code null} to keep them in memory
+    * @param spillExecutor  the executor spilling runs on, it should be ordered and not block delivery
+    * @param spillThreshold how far in the future (in ms) a reference must be scheduled to be spilled
+    */
+   public TimingWheelScheduledDeliveryHandler(final ScheduledExecutorService scheduledExecutor,
+                                              final long tick,
+                                              final SequentialFileFactory spillFactory,
+                                              final Executor spillExecutor,
+                                              final long spillThreshold)
+   {
+      this.scheduledExecutor = scheduledExecutor;
+      this.spillFactory = spillThreshold > 0 ? spillFactory : null;
+      this.spillExecutor = spillExecutor;
+      this.spillThreshold = spillThreshold;
+      this.wheel = new Wheel(tick, System.currentTimeMillis(), true);
+   }
+
+   public boolean checkAndSchedule(final MessageReference ref, final boolean tail)
+   {
+      long deliveryTime = ref.getScheduledDeliveryTime();
+
+      if (deliveryTime > 0 && scheduledExecutor != null)
+      {
+         if (TimingWheelScheduledDeliveryHandler.trace)
+         {
+            HornetQServerLogger.LOGGER.trace("Scheduling delivery for " + ref + " to occur at " + deliveryTime);
+         }
+
+         addInPlace(deliveryTime, ref, tail);
+
+         return true;
+      }
+      return false;
+   }
+
+   public synchronized void addInPlace(final long deliveryTime, final MessageReference ref, final boolean tail)
+   {
+      final long now = System.currentTimeMillis();
+
+      advanceIfIdle(now);
+
+      size++;
+      place(new RefScheduled(ref, tail, deliveryTime, sequence++), now);
+
+      if (spillFactory != null && deliveryTime - now > spillThreshold && ++farCount >= SPILL_BATCH_SIZE &&
+         !spillScheduled)
+      {
+         spillScheduled = true;
+         spillExecutor.execute(spillRunner);
+      }
+
+      armTimer(now);
+   }
+
+   public synchronized int getScheduledCount()
+   {
+      return size + spilledCount;
+   }
+
+   public List<MessageReference> getScheduledReferences()
+   {
+      List<RefScheduled> scheduled = new ArrayList<>();
+
+      synchronized (this)
+      {
+         for (Slot slot : slots)
+         {
+            scheduled.addAll(slot.refs);
+         }
+         scheduled.addAll(dueReferences);
+
+         // spilled references are only decoded for browsing, they stay on disk
+         for (SpilledSegment segment : spilledSegments)
+         {
+            try
+            {
+               scheduled.addAll(readSegment(segment));
+            }
+            catch (Exception e)
+            {
+               HornetQServerLogger.LOGGER.failedToReloadScheduledMessages(segment.queue.getName(), segment.fileName, e);
+            }
+         }
+      }
+
+      Collections.sort(scheduled, RefScheduledComparator.INSTANCE);
+
+      List<MessageReference> refs = new LinkedList<MessageReference>();
+      for (RefScheduled ref : scheduled)
+      {
+         refs.add(ref.getRef());
+      }
+      return refs;
+   }
+
+   public synchronized List<MessageReference> cancel(final Filter filter)
+   {
+      final long now = System.currentTimeMillis();
+
+      reload(now, true);
+
+      List<RefScheduled> cancelled = new ArrayList<>();
+
+      for (Slot slot : slots)
+      {
+         slot.refs = removeMatching(slot.refs, filter, cancelled);
+      }
+      dueReferences = removeMatching(dueReferences, filter, cancelled);
+
+      size -= cancelled.size();
+
+      armTimer(now);
+
+      Collections.sort(cancelled, RefScheduledComparator.INSTANCE);
+
+      List<MessageReference> refs = new ArrayList<MessageReference>(cancelled.size());
+      for (RefScheduled ref : cancelled)
+      {
+         refs.add(ref.getRef());
+      }
+      return refs;
+   }
+
+   public synchronized MessageReference removeReferenceWithID(final long id)
+   {
+      final long now = System.currentTimeMillis();
+
+      reload(now, true);
+
+      armTimer(now);
+
+      for (Slot slot : slots)
+      {
+         MessageReference ref = removeWithID(slot.refs, id);
+         if (ref != null)
+         {
+            return ref;
+         }
+      }
+
+      return removeWithID(dueReferences, id);
+   }
+
+   private MessageReference removeWithID(final List<RefScheduled> list, final long id)
+   {
+      for (int i = 0; i < list.size(); i++)
+      {
+         MessageReference ref = list.get(i).getRef();
+         if (ref.getMessage().getMessageID() == id)
+         {
+            list.remove(i);
+            size--;
+            return ref;
+         }
+      }
+      return null;
+   }
+
+   private static List<RefScheduled> removeMatching(final List<RefScheduled> list,
+                                                    final Filter filter,
+                                                    final List<RefScheduled> removed)
+   {
+      List<RefScheduled> kept = new ArrayList<>(list.size());
+      for (RefScheduled ref : list)
+      {
+         if (filter == null || filter.match(ref.getRef().getMessage()))
+         {
+            removed.add(ref);
+         }
+         else
+         {
+            kept.add(ref);
+         }
+      }
+      return kept;
+   }
+
+   // Wheel operations, all called while holding the lock ---------------------------------------
+
+   private void place(final RefScheduled ref, final long now)
+   {
+      if (ref.time <= now)
+      {
+         dueReferences.add(ref);
+      }
+      else
+      {
+         wheel.add(ref);
+      }
+   }
+
+   /**
+    * The wheel's clock can only be moved forward once every slot expiring until then was processed,
+    * otherwise a slot still queued could be reused for a different time.
+    */
+   private void advanceIfIdle(final long now)
+   {
+      Slot slot = slots.peek();
+      if (slot == null || slot.expiration > now)
+      {
+         wheel.advanceClock(now);
+      }
+   }
+
+   private void advance(final long now)
+   {
+      Slot slot;
+      while ((slot = slots.peek()) != null && slot.expiration <= now)
+      {
+         slots.poll();
+         slot.queued = false;
+
+         wheel.advanceClock(slot.expiration);
+
+         List<RefScheduled> refs = slot.refs;
+         slot.refs = new ArrayList<>();
+
+         for (RefScheduled ref : refs)
+         {
+            place(ref, now);
+         }
+      }
+      wheel.advanceClock(now);
+   }
+
+   private void armTimer(final long now)
+   {
+      if (scheduledExecutor == null)
+      {
+         return;
+      }
+
+      long next = Long.MAX_VALUE;
+
+      if (!dueReferences.isEmpty())
+      {
+         next = now;
+      }
+      else
+      {
+         Slot slot = slots.peek();
+         if (slot != null)
+         {
+            next = slot.expiration;
+         }
+         SpilledSegment segment = spilledSegments.peek();
+         if (segment != null && !reloadScheduled)
+         {
+            next = Math.min(next, segment.reloadAt);
+         }
+      }
+
+      if (next < nextRun)
+      {
+         nextRun = next;
+         scheduledExecutor.schedule(deliveryRunner, Math.max(0, next - now), TimeUnit.MILLISECONDS);
+      }
+   }
+
+   private void deliverDue()
+   {
+      List<RefScheduled> due;
+
+      synchronized (this)
+      {
+         nextRun = Long.MAX_VALUE;
+
+         final long now = System.currentTimeMillis();
+
+         scheduleReload(now);
+
+         advance(now);
+
+         due = dueReferences;
+         dueReferences = new ArrayList<>();
+         size -= due.size();
+
+         armTimer(now);
+      }
+
+      if (due.isEmpty())
+      {
+         return;
+      }
+
+      Collections.sort(due, RefScheduledComparator.INSTANCE);
+
+      Map<Queue, LinkedList<MessageReference>> refs = new HashMap<Queue, LinkedList<MessageReference>>();
+
+      for (RefScheduled scheduled : due)
+      {
+         MessageReference reference = scheduled.getRef();
+
+         reference.setScheduledDeliveryTime(0);
+
+         LinkedList<MessageReference> references = refs.get(reference.getQueue());
+
+         if (references == null)
+         {
+            references = new LinkedList<MessageReference>();
+            refs.put(reference.getQueue(), references);
+         }
+
+         references.addFirst(reference);
+      }
+
+      for (Map.Entry<Queue, LinkedList<MessageReference>> entry : refs.entrySet())
+      {
+         if (trace)
+         {
+            HornetQServerLogger.LOGGER.trace("Delivering " + entry.getValue().size() + " elements on list to queue " + entry.getKey());
+         }
+         entry.getKey().addHead(entry.getValue());
+      }
+   }
+
+   // Spilling ----------------------------------------------------------------------------------
+
+   /**
+    * The references are selected and encoded while holding the lock, but they stay on their slots
+    * until their file was written so they can still be cancelled or removed meanwhile.
+    * The file is written without holding the lock.
+    */
+   private void spill()
+   {
+      List<PendingSpill> pending = new ArrayList<>();
+
+      synchronized (this)
+      {
+         spillScheduled = false;
+         farCount = 0;
+
+         final long now = System.currentTimeMillis();
+
+         for (Slot slot : slots)
+         {
+            PendingSpill spill = encode(slot, now);
+            if (spill != null)
+            {
+               pending.add(spill);
+            }
+         }
+      }
+
+      if (pending.isEmpty())
+      {
+         return;
+      }
+
+      List<PendingSpill> written = new ArrayList<>(pending.size());
+
+      for (PendingSpill spill : pending)
+      {
+         try
+         {
+            SequentialFile file = spillFactory.createSequentialFile(spill.segment.fileName, 1);
+            file.open();
+            try
+            {
+               file.writeDirect(spill.buffer, false);
+            }
+            finally
+            {
+               file.close();
+            }
+            written.add(spill);
+         }
+         catch (Exception e)
+         {
+            HornetQServerLogger.LOGGER.failedToSpillScheduledMessages(spill.segment.queue.getName(), e);
+         }
+      }
+
+      List<SpilledSegment> discarded = new ArrayList<>();
+
+      synchronized (this)
+      {
+         for (PendingSpill spill : pending)
+         {
+            if (!written.contains(spill) || !release(spill))
+            {
+               for (RefScheduled ref : spill.refs)
+               {
+                  ref.spilling = null;
+               }
+               discarded.add(spill.segment);
+            }
+         }
+
+         armTimer(System.currentTimeMillis());
+      }
+
+      for (SpilledSegment segment : discarded)
+      {
+         deleteSegment(segment);
+      }
+   }
+
+   private PendingSpill encode(final Slot slot, final long now)
+   {
+      List<RefScheduled> spilled = new ArrayList<>();
+      Queue queue = null;
+      PagingStore store = null;
+      long firstTime = Long.MAX_VALUE;
+      int encodeSize = 0;
+
+      for (RefScheduled ref : slot.refs)
+      {
+         MessageReference reference = ref.getRef();
+         ServerMessage message = reference.getMessage();
+
+         if (ref.spilling == null && ref.time - now > spillThreshold && isSpillable(reference) &&
+            (queue == null || queue == reference.getQueue() && store == message.getPagingStore()))
+         {
+            queue = reference.getQueue();
+            store = message.getPagingStore();
+            firstTime = Math.min(firstTime, ref.time);
+            encodeSize += SPILL_RECORD_HEADER + message.getEncodeSize();
+            spilled.add(ref);
+         }
+      }
+
+      if (spilled.isEmpty())
+      {
+         return null;
+      }
+
+      SpilledSegment segment = new SpilledSegment(segmentSequence++ + "." + SPILL_EXTENSION,
+                                                   firstTime - spillThreshold / 2,
+                                                   spilled.size(),
+                                                   queue,
+                                                   store);
+
+      ByteBuffer buffer = spillFactory.newBuffer(encodeSize);
+      HornetQBuffer wrap = HornetQBuffers.wrappedBuffer(buffer);
+      wrap.clear();
+
+      for (RefScheduled ref : spilled)
+      {
+         MessageReference reference = ref.getRef();
+         ServerMessage message = reference.getMessage();
+         wrap.writeLong(ref.time);
+         wrap.writeBoolean(ref.tail);
+         wrap.writeLong(ref.sequence);
+         wrap.writeInt(reference.getDeliveryCount());
+         wrap.writeInt(reference.getPersistedCount());
+         wrap.writeInt(message.getEncodeSize());
+         message.encode(wrap);
+         ref.spilling = segment;
+      }
+
+      buffer.rewind();
+
+      return new PendingSpill(slot, segment, spilled, buffer);
+   }
+
+   /**
+    * Takes the references of a written file off their slot.
+    *
+    * @return {@code false} if any of them was cancelled, removed or moved while the file was written,
+    * in which case the file is discarded and every reference is kept in memory
+    */
+   private boolean release(final PendingSpill spill)
+   {
+      List<RefScheduled> kept = new ArrayList<>(spill.slot.refs.size());
+      int found = 0;
+
+      for (RefScheduled ref : spill.slot.refs)
+      {
+         if (ref.spilling == spill.segment)
+         {
+            found++;
+         }
+         else
+         {
+            kept.add(ref);
+         }
+      }
+
+      if (found != spill.refs.size())
+      {
+         return false;
+      }
+
+      for (RefScheduled ref : spill.refs)
+      {
+         ref.getRef().getMessage().decrementRefCount();
+      }
+
+      if (trace)
+      {
+         HornetQServerLogger.LOGGER.trace("Spilled " + found + " scheduled references from " + spill.segment.queue + " into " + spill.segment.fileName);
+      }
+
+      spill.slot.refs = kept;
+      size -= found;
+      spilledCount += found;
+      spilledSegments.add(spill.segment);
+
+      return true;
+   }
+
+   private boolean isSpillable(final MessageReference reference)
+   {
+      ServerMessage message = reference.getMessage();
+
+      // we only release messages that can't be referenced elsewhere and are safe on the journal
+      return !reference.isPaged() && message instanceof ServerMessageImpl &&
+         !message.isLargeMessage() &&
+         message.isDurable() &&
+         reference.getQueue() != null &&
+         reference.getQueue().isDurable() &&
+         message.getRefCount() == 1;
+   }
+
+   /**
+    * Segments are reloaded on the spill executor ahead of the time their first reference is due,
+    * the files are read without holding the lock.
+    */
+   private void reloadDue()
+   {
+      List<SpilledSegment> due = new ArrayList<>();
+
+      synchronized (this)
+      {
+         final long now = System.currentTimeMillis();
+
+         for (SpilledSegment segment : spilledSegments)
+         {
+            if (segment.reloadAt <= now)
+            {
+               due.add(segment);
+            }
+         }
+      }
+
+      Map<SpilledSegment, List<RefScheduled>> reloaded = new HashMap<SpilledSegment, List<RefScheduled>>();
+      Map<SpilledSegment, Exception> failed = new HashMap<SpilledSegment, Exception>();
+
+      for (SpilledSegment segment : due)
+      {
+         try
+         {
+            reloaded.put(segment, readSegment(segment));
+         }
+         catch (Exception e)
+         {
+            failed.put(segment, e);
+         }
+      }
+
+      List<SpilledSegment> done = new ArrayList<>(due.size());
+
+      synchronized (this)
+      {
+         final long now = System.currentTimeMillis();
+
+         for (SpilledSegment segment : due)
+         {
+            // a segment could have been reloaded meanwhile by a cancel or a removal
+            if (!spilledSegments.remove(segment))
+            {
+               continue;
+            }
+
+            spilledCount -= segment.count;
+
+            Exception e = failed.get(segment);
+            if (e == null)
+            {
+               place(segment, reloaded.get(segment), now);
+            }
+            else
+            {
+               HornetQServerLogger.LOGGER.failedToReloadScheduledMessages(segment.queue.getName(), segment.fileName, e);
+            }
+
+            done.add(segment);
+         }
+
+         reloadScheduled = false;
+
+         armTimer(now);
+      }
+
+      for (SpilledSegment segment : done)
+      {
+         deleteSegment(segment);
+      }
+   }
+
+   private void scheduleReload(final long now)
+   {
+      SpilledSegment segment = spilledSegments.peek();
+      if (segment != null && segment.reloadAt <= now && !reloadScheduled)
+      {
+         reloadScheduled = true;
+         spillExecutor.execute(reloadRunner);
+      }
+   }
+
+   /**
+    * Reloads while holding the lock, only used when every reference has to be in memory right away.
+    */
+   private void reload(final long now, final boolean all)
+   {
+      SpilledSegment segment;
+      while ((segment = spilledSegments.peek()) != null && (all || segment.reloadAt <= now))
+      {
+         spilledSegments.poll();
+         spilledCount -= segment.count;
+
+         try
+         {
+            place(segment, readSegment(segment), now);
+         }
+         catch (Exception e)
+         {
+            HornetQServerLogger.LOGGER.failedToReloadScheduledMessages(segment.queue.getName(), segment.fileName, e);
+         }
+
+         deleteSegment(segment);
+      }
+   }
+
+   private void place(final SpilledSegment segment, final List<RefScheduled> refs, final long now)
+   {
+      advanceIfIdle(now);
+
+      for (RefScheduled ref : refs)
+      {
+         ServerMessage message = ref.getRef().getMessage();
+         if (segment.store != null)
+         {
+            message.setPagingStore(segment.store);
+         }
+         message.incrementDurableRefCount();
+         message.incrementRefCount();
+         size++;
+         place(ref, now);
+      }
+   }
+
+   private List<RefScheduled> readSegment(final SpilledSegment segment) throws Exception
+   {
+      List<RefScheduled> refs = new ArrayList<>(segment.count);
+
+      SequentialFile file = spillFactory.createSequentialFile(segment.fileName, 1);
+      file.open();
+      try
+      {
+         ByteBuffer buffer = spillFactory.newBuffer((int) file.size());
+         file.position(0);
+         file.read(buffer);
+         buffer.rewind();
+
+         HornetQBuffer wrap = HornetQBuffers.wrappedBuffer(buffer);
+         wrap.writerIndex(wrap.capacity());
+
+         while (wrap.readable())
+         {
+            long time = wrap.readLong();
+            boolean tail = wrap.readBoolean();
+            long refSequence = wrap.readLong();
+            int deliveryCount = wrap.readInt();
+            int persistedCount = wrap.readInt();
+            wrap.readInt(); // encode size
+
+            ServerMessage message = new ServerMessageImpl(-1, 50);
+            message.decode(wrap);
+
+            MessageReference reference = message.createReference(segment.queue);
+            reference.setDeliveryCount(deliveryCount);
+            reference.setPersistedCount(persistedCount);
+            reference.setScheduledDeliveryTime(time);
+
+            refs.add(new RefScheduled(reference, tail, time, refSequence));
+         }
+      }
+      finally
+      {
+         file.close();
+      }
+
+      return refs;
+   }
+
+   private void deleteSegment(final SpilledSegment segment)
+   {
+      try
+      {
+         SequentialFile file = spillFactory.createSequentialFile(segment.fileName, 1);
+         if (file.exists())
+         {
+            file.delete();
+         }
+      }
+      catch (Exception e)
+      {
+         HornetQServerLogger.LOGGER.debug("Couldn't delete spilled scheduled file " + segment.fileName, e);
+      }
+   }
+
+   // Inner classes -----------------------------------------------------------------------------
+
+   /**
+    * One level of the wheel. Each slot covers {@code tickMs} and the whole level covers
+    * {@code WHEEL_SIZE} slots, anything further away goes to the next (coarser) level.
+    */
+   private final class Wheel
+   {
+      private final long tickMs;
+
+      private final long interval;
+
+      private final boolean lowest;
+
+      private final Slot[] buckets = new Slot[WHEEL_SIZE];
+
+      private long currentTime;
+
+      private Wheel overflow;
+
+      Wheel(final long tickMs, final long startTime, final boolean lowest)
+      {
+         this.tickMs = tickMs;
+         this.interval = tickMs > Long.MAX_VALUE / WHEEL_SIZE ? Long.MAX_VALUE : tickMs * WHEEL_SIZE;
+         this.lowest = lowest;
+         this.currentTime = startTime - startTime % tickMs;
+      }
+
+      void add(final RefScheduled ref)
+      {
+         if (ref.time - currentTime < interval)
+         {
+            long virtualId = ref.time / tickMs;
+            int index = (int) (virtualId % WHEEL_SIZE);
+
+            Slot slot = buckets[index];
+            if (slot == null)
+            {
+               slot = new Slot();
+               buckets[index] = slot;
+            }
+
+            if (!slot.queued)
+            {
+               // on the lowest level we wait for the end of the tick, upper levels cascade down at its beginning
+               slot.expiration = lowest ? (virtualId + 1) * tickMs : virtualId * tickMs;
+               slot.queued = true;
+               slots.add(slot);
+            }
+
+            slot.refs.add(ref);
+         }
+         else
+         {
+            if (overflow == null)
+            {
+               overflow = new Wheel(interval, currentTime, false);
+            }
+            overflow.add(ref);
+         }
+      }
+
+      void advanceClock(final long time)
+      {
+         if (time - currentTime >= tickMs)
+         {
+            currentTime = time - time % tickMs;
+
+            if (overflow != null)
+            {
+               overflow.advanceClock(currentTime);
+            }
+         }
+      }
+   }
+
+   private static final class Slot implements Comparable<Slot>
+   {
+      List<RefScheduled> refs = new ArrayList<>();
+
+      long expiration;
+
+      boolean queued;
+
+      public int compareTo(final Slot other)
+      {
+         return Long.compare(expiration, other.expiration);
+      }
+   }
+
+   private static final class SpilledSegment implements Comparable<SpilledSegment>
+   {
+      final String fileName;
+
+      final long reloadAt;
+
+      final int count;
+
+      final Queue queue;
+
+      final PagingStore store;
+
+      SpilledSegment(final String fileName, final long reloadAt, final int count, final Queue queue, final PagingStore store)
+      {
+         this.fileName = fileName;
+         this.reloadAt = reloadAt;
+         this.count = count;
+         this.queue = queue;
+         this.store = store;
+      }
+
+      public int compareTo(final SpilledSegment other)
+      {
+         return Long.compare(reloadAt, other.reloadAt);
+      }
+   }
+
+   private static final class PendingSpill
+   {
+      final Slot slot;
+
+      final SpilledSegment segment;
+
+      final List<RefScheduled> refs;
+
+      final ByteBuffer buffer;
+
+      PendingSpill(final Slot slot, final SpilledSegment segment, final List<RefScheduled> refs, final ByteBuffer buffer)
+      {
+         this.slot = slot;
+         this.segment = segment;
+         this.refs = refs;
+         this.buffer = buffer;
+      }
+   }
+
+   static final class RefScheduled
+   {
+      private final MessageReference ref;
+
+      private final boolean tail;
+
+      private final long time;
+
+      private final long sequence;
+
+      // the segment this reference is being written to, it stays on its slot until the file is written
+      private SpilledSegment spilling;
+
+      RefScheduled(final MessageReference ref, final boolean tail, final long time, final long sequence)
+      {
+         this.ref = ref;
+         this.tail = tail;
+         this.time = time;
+         this.sequence = sequence;
+      }
+
+      public MessageReference getRef()
+      {
+         return ref;
+      }
+   }
+
+   /**
+    * Same order as {@link ScheduledDeliveryHandlerImpl}: by time, heads before tails,
+    * the last head added first and tails in the order they were added.
+    */
+   static final class RefScheduledComparator implements Comparator<RefScheduled>
+   {
+      static final RefScheduledComparator INSTANCE = new RefScheduledComparator();
+
+      public int compare(final RefScheduled ref1, final RefScheduled ref2)
+      {
+         int result = Long.compare(ref1.time, ref2.time);
+         if (result != 0)
+         {
+            return result;
+         }
+
+         if (ref1.tail != ref2.tail)
+         {
+            return ref1.tail ? 1 : -1;
+         }
+
+         return ref1.tail ? Long.compare(ref1.sequence, ref2.sequence) : Long.compare(ref2.sequence, ref1.sequence);
+      }
+   }
+}
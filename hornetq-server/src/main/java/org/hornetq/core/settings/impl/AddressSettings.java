@@ -64,6 +64,20 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
 
    public static final SlowConsumerPolicy DEFAULT_SLOW_CONSUMER_POLICY = SlowConsumerPolicy.NOTIFY;
 
+   public static final long DEFAULT_GROUP_IDLE_TIMEOUT = -1;
+
+   public static final int DEFAULT_MAX_GROUPS = -1;
+
+   public static final boolean DEFAULT_GROUP_HASHING = false;
+
+   public static final boolean DEFAULT_SHARED_FAN_OUT_LOG = false;
+
+   public static final boolean DEFAULT_PAGE_COMPRESSION = false;
+
+   public static final boolean DEFAULT_PRIORITY_DEPAGING = false;
+
+   public static final long DEFAULT_DEPAGE_BUFFER_TIME = -1;
+
    private AddressFullMessagePolicy addressFullMessagePolicy = null;
 
    private Long maxSizeBytes = null;
@@ -102,6 +116,20 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
 
    private SlowConsumerPolicy slowConsumerPolicy = null;
 
+   private Long groupIdleTimeout = null;
+
+   private Integer maxGroups = null;
+
+   private Boolean groupHashing = null;
+
+   private Boolean sharedFanOutLog = null;
+
+   private Boolean pageCompression = null;
+
+   private Boolean priorityDepaging = null;
+
+   private Long depageBufferTime = null;
+
    public AddressSettings(AddressSettings other)
    {
       this.addressFullMessagePolicy = other.addressFullMessagePolicy;
@@ -123,6 +151,13 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       this.slowConsumerThreshold = other.slowConsumerThreshold;
       this.slowConsumerCheckPeriod = other.slowConsumerCheckPeriod;
       this.slowConsumerPolicy = other.slowConsumerPolicy;
+      this.groupIdleTimeout = other.groupIdleTimeout;
+      this.maxGroups = other.maxGroups;
+      this.groupHashing = other.groupHashing;
+      this.sharedFanOutLog = other.sharedFanOutLog;
+      this.pageCompression = other.pageCompression;
+      this.priorityDepaging = other.priorityDepaging;
+      this.depageBufferTime = other.depageBufferTime;
    }
 
    public AddressSettings()
@@ -315,6 +350,76 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       this.slowConsumerPolicy = slowConsumerPolicy;
    }
 
+   public long getGroupIdleTimeout()
+   {
+      return groupIdleTimeout != null ? groupIdleTimeout : AddressSettings.DEFAULT_GROUP_IDLE_TIMEOUT;
+   }
+
+   public void setGroupIdleTimeout(final long groupIdleTimeout)
+   {
+      this.groupIdleTimeout = groupIdleTimeout;
+   }
+
+   public int getMaxGroups()
+   {
+      return maxGroups != null ? maxGroups : AddressSettings.DEFAULT_MAX_GROUPS;
+   }
+
+   public void setMaxGroups(final int maxGroups)
+   {
+      this.maxGroups = maxGroups;
+   }
+
+   public boolean isGroupHashing()
+   {
+      return groupHashing != null ? groupHashing : AddressSettings.DEFAULT_GROUP_HASHING;
+   }
+
+   public void setGroupHashing(final boolean groupHashing)
+   {
+      this.groupHashing = groupHashing;
+   }
+
+   public boolean isSharedFanOutLog()
+   {
+      return sharedFanOutLog != null ? sharedFanOutLog : AddressSettings.DEFAULT_SHARED_FAN_OUT_LOG;
+   }
+
+   public void setSharedFanOutLog(final boolean sharedFanOutLog)
+   {
+      this.sharedFanOutLog = sharedFanOutLog;
+   }
+
+   public boolean isPageCompression()
+   {
+      return pageCompression != null ? pageCompression : AddressSettings.DEFAULT_PAGE_COMPRESSION;
+   }
+
+   public void setPageCompression(final boolean pageCompression)
+   {
+      this.pageCompression = pageCompression;
+   }
+
+   public boolean isPriorityDepaging()
+   {
+      return priorityDepaging != null ? priorityDepaging : AddressSettings.DEFAULT_PRIORITY_DEPAGING;
+   }
+
+   public void setPriorityDepaging(final boolean priorityDepaging)
+   {
+      this.priorityDepaging = priorityDepaging;
+   }
+
+   public long getDepageBufferTime()
+   {
+      return depageBufferTime != null ? depageBufferTime : AddressSettings.DEFAULT_DEPAGE_BUFFER_TIME;
+   }
+
+   public void setDepageBufferTime(final long depageBufferTime)
+   {
+      this.depageBufferTime = depageBufferTime;
+   }
+
    /**
     * merge 2 objects in to 1
     *
@@ -394,6 +499,34 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       {
          slowConsumerPolicy = merged.slowConsumerPolicy;
       }
+      if (groupIdleTimeout == null)
+      {
+         groupIdleTimeout = merged.groupIdleTimeout;
+      }
+      if (maxGroups == null)
+      {
+         maxGroups = merged.maxGroups;
+      }
+      if (groupHashing == null)
+      {
+         groupHashing = merged.groupHashing;
+      }
+      if (sharedFanOutLog == null)
+      {
+         sharedFanOutLog = merged.sharedFanOutLog;
+      }
+      if (pageCompression == null)
+      {
+         pageCompression = merged.pageCompression;
+      }
+      if (priorityDepaging == null)
+      {
+         priorityDepaging = merged.priorityDepaging;
+      }
+      if (depageBufferTime == null)
+      {
+         depageBufferTime = merged.depageBufferTime;
+      }
    }
 
    @Override
@@ -454,6 +587,36 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       {
          slowConsumerPolicy = null;
       }
+
+      // settings persisted by older versions end here
+      if (buffer.readable())
+      {
+         groupIdleTimeout = BufferHelper.readNullableLong(buffer);
+
+         maxGroups = BufferHelper.readNullableInteger(buffer);
+
+         groupHashing = BufferHelper.readNullableBoolean(buffer);
+      }
+
+      if (buffer.readable())
+      {
+         sharedFanOutLog = BufferHelper.readNullableBoolean(buffer);
+      }
+
+      if (buffer.readable())
+      {
+         pageCompression = BufferHelper.readNullableBoolean(buffer);
+      }
+
+      if (buffer.readable())
+      {
+         priorityDepaging = BufferHelper.readNullableBoolean(buffer);
+      }
+
+      if (buffer.readable())
+      {
+         depageBufferTime = BufferHelper.readNullableLong(buffer);
+      }
    }
 
    @Override
@@ -478,7 +641,14 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
          BufferHelper.sizeOfNullableBoolean(sendToDLAOnNoRoute) +
          BufferHelper.sizeOfNullableLong(slowConsumerCheckPeriod) +
          BufferHelper.sizeOfNullableLong(slowConsumerThreshold) +
-         BufferHelper.sizeOfNullableSimpleString(slowConsumerPolicy != null ? slowConsumerPolicy.toString() : null);
+         BufferHelper.sizeOfNullableSimpleString(slowConsumerPolicy != null ? slowConsumerPolicy.toString() : null) +
+         BufferHelper.sizeOfNullableLong(groupIdleTimeout) +
+         BufferHelper.sizeOfNullableInteger(maxGroups) +
+         BufferHelper.sizeOfNullableBoolean(groupHashing) +
+         BufferHelper.sizeOfNullableBoolean(sharedFanOutLog) +
+         BufferHelper.sizeOfNullableBoolean(pageCompression) +
+         BufferHelper.sizeOfNullableBoolean(priorityDepaging) +
+         BufferHelper.sizeOfNullableLong(depageBufferTime);
    }
 
    @Override
@@ -522,6 +692,20 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       BufferHelper.writeNullableLong(buffer, slowConsumerCheckPeriod);
 
       buffer.writeNullableSimpleString(slowConsumerPolicy != null ? new SimpleString(slowConsumerPolicy.toString()) : null);
+
+      BufferHelper.writeNullableLong(buffer, groupIdleTimeout);
+
+      BufferHelper.writeNullableInteger(buffer, maxGroups);
+
+      BufferHelper.writeNullableBoolean(buffer, groupHashing);
+
+      BufferHelper.writeNullableBoolean(buffer, sharedFanOutLog);
+
+      BufferHelper.writeNullableBoolean(buffer, pageCompression);
+
+      BufferHelper.writeNullableBoolean(buffer, priorityDepaging);
+
+      BufferHelper.writeNullableLong(buffer, depageBufferTime);
    }
 
    /* (non-Javadoc)
@@ -552,6 +736,13 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       result = prime * result + ((slowConsumerThreshold == null) ? 0 : slowConsumerThreshold.hashCode());
       result = prime * result + ((slowConsumerCheckPeriod == null) ? 0 : slowConsumerCheckPeriod.hashCode());
       result = prime * result + ((slowConsumerPolicy == null) ? 0 : slowConsumerPolicy.hashCode());
+      result = prime * result + ((groupIdleTimeout == null) ? 0 : groupIdleTimeout.hashCode());
+      result = prime * result + ((maxGroups == null) ? 0 : maxGroups.hashCode());
+      result = prime * result + ((groupHashing == null) ? 0 : groupHashing.hashCode());
+      result = prime * result + ((sharedFanOutLog == null) ? 0 : sharedFanOutLog.hashCode());
+      result = prime * result + ((pageCompression == null) ? 0 : pageCompression.hashCode());
+      result = prime * result + ((priorityDepaging == null) ? 0 : priorityDepaging.hashCode());
+      result = prime * result + ((depageBufferTime == null) ? 0 : depageBufferTime.hashCode());
       return result;
    }
 
@@ -701,6 +892,55 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       }
       else if (!slowConsumerPolicy.equals(other.slowConsumerPolicy))
          return false;
+      if (groupIdleTimeout == null)
+      {
+         if (other.groupIdleTimeout != null)
+            return false;
+      }
+      else if (!groupIdleTimeout.equals(other.groupIdleTimeout))
+         return false;
+      if (maxGroups == null)
+      {
+         if (other.maxGroups != null)
+            return false;
+      }
+      else if (!maxGroups.equals(other.maxGroups))
+         return false;
+      if (groupHashing == null)
+      {
+         if (other.groupHashing != null)
+            return false;
+      }
+      else if (!groupHashing.equals(other.groupHashing))
+         return false;
+      if (sharedFanOutLog == null)
+      {
+         if (other.sharedFanOutLog != null)
+            return false;
+      }
+      else if (!sharedFanOutLog.equals(other.sharedFanOutLog))
+         return false;
+      if (pageCompression == null)
+      {
+         if (other.pageCompression != null)
+            return false;
+      }
+      else if (!pageCompression.equals(other.pageCompression))
+         return false;
+      if (priorityDepaging == null)
+      {
+         if (other.priorityDepaging != null)
+            return false;
+      }
+      else if (!priorityDepaging.equals(other.priorityDepaging))
+         return false;
+      if (depageBufferTime == null)
+      {
+         if (other.depageBufferTime != null)
+            return false;
+      }
+      else if (!depageBufferTime.equals(other.depageBufferTime))
+         return false;
       return true;
    }
 
@@ -747,6 +987,20 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
          slowConsumerCheckPeriod +
          ", slowConsumerPolicy=" +
          slowConsumerPolicy +
+         ", groupIdleTimeout=" +
+         groupIdleTimeout +
+         ", maxGroups=" +
+         maxGroups +
+         ", groupHashing=" +
+         groupHashing +
+         ", sharedFanOutLog=" +
+         sharedFanOutLog +
+         ", pageCompression=" +
+         pageCompression +
+         ", priorityDepaging=" +
+         priorityDepaging +
+         ", depageBufferTime=" +
+         depageBufferTime +
          "]";
    }
 }
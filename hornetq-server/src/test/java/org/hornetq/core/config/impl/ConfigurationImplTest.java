@@ -20,6 +20,8 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.List;
 
 import org.junit.Assert;
 
@@ -27,6 +29,7 @@ import org.hornetq.api.config.HornetQDefaultConfiguration;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.config.Configuration;
 import org.hornetq.core.journal.impl.JournalConstants;
+import org.hornetq.core.paging.PagingPlacementPolicy;
 import org.hornetq.core.server.JournalType;
 import org.hornetq.tests.util.RandomUtil;
 import org.hornetq.tests.util.UnitTestCase;
@@ -85,7 +88,12 @@ public class ConfigurationImplTest extends UnitTestCase
       Assert.assertEquals(HornetQDefaultConfiguration.isDefaultAsyncConnectionExecutionEnabled(),
                           conf.isAsyncConnectionExecutionEnabled());
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultPagingDir(), conf.getPagingDirectory());
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultGlobalMaxSize(), conf.getGlobalMaxSize());
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultGlobalPageCacheMaxSize(), conf.getGlobalPageCacheMaxSize());
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultLargeMessagesDir(), conf.getLargeMessagesDirectory());
+      Assert.assertTrue(conf.getLargeMessagesStripeDirectories().isEmpty());
+      Assert.assertTrue(conf.getPagingStripeDirectories().isEmpty());
+      Assert.assertEquals(ConfigurationImpl.DEFAULT_PAGING_PLACEMENT_POLICY, conf.getPagingPlacementPolicy());
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalCompactPercentage(), conf.getJournalCompactPercentage());
       Assert.assertEquals(JournalConstants.DEFAULT_JOURNAL_BUFFER_TIMEOUT_AIO, conf.getJournalBufferTimeout_AIO());
       Assert.assertEquals(JournalConstants.DEFAULT_JOURNAL_BUFFER_TIMEOUT_NIO, conf.getJournalBufferTimeout_NIO());
@@ -99,8 +107,13 @@ public class ConfigurationImplTest extends UnitTestCase
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultMessageCounterSamplePeriod(), conf.getMessageCounterSamplePeriod());
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultIdCacheSize(), conf.getIDCacheSize());
       Assert.assertEquals(HornetQDefaultConfiguration.isDefaultPersistIdCache(), conf.isPersistIDCache());
+      Assert.assertEquals(HornetQDefaultConfiguration.isDefaultIdCacheOffHeap(), conf.isIDCacheOffHeap());
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultServerDumpInterval(), conf.getServerDumpInterval());
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultMemoryWarningThreshold(), conf.getMemoryWarningThreshold());
+      Assert.assertEquals(HornetQDefaultConfiguration.isDefaultScheduledDeliveryWheelEnabled(), conf.isScheduledDeliveryWheelEnabled());
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultScheduledDeliveryWheelTick(), conf.getScheduledDeliveryWheelTick());
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultScheduledDeliverySpillThreshold(), conf.getScheduledDeliverySpillThreshold());
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultScheduledDeliveryDir(), conf.getScheduledDeliveryDirectory());
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultMemoryMeasureInterval(), conf.getMemoryMeasureInterval());
    }
 
@@ -226,6 +239,10 @@ public class ConfigurationImplTest extends UnitTestCase
          conf.setPersistIDCache(b);
          Assert.assertEquals(b, conf.isPersistIDCache());
 
+         b = RandomUtil.randomBoolean();
+         conf.setIDCacheOffHeap(b);
+         Assert.assertEquals(b, conf.isIDCacheOffHeap());
+
          i = RandomUtil.randomInt();
          conf.setJournalCompactMinFiles(i);
          Assert.assertEquals(i, conf.getJournalCompactMinFiles());
@@ -266,10 +283,29 @@ public class ConfigurationImplTest extends UnitTestCase
          conf.setPagingDirectory(s);
          Assert.assertEquals(s, conf.getPagingDirectory());
 
+         l = RandomUtil.randomLong();
+         conf.setGlobalMaxSize(l);
+         Assert.assertEquals(l, conf.getGlobalMaxSize());
+
+         l = RandomUtil.randomLong();
+         conf.setGlobalPageCacheMaxSize(l);
+         Assert.assertEquals(l, conf.getGlobalPageCacheMaxSize());
+
+         List<String> directories = Arrays.asList(RandomUtil.randomString(), RandomUtil.randomString());
+         conf.setPagingStripeDirectories(directories);
+         Assert.assertEquals(directories, conf.getPagingStripeDirectories());
+
+         conf.setPagingPlacementPolicy(PagingPlacementPolicy.LEAST_USED);
+         Assert.assertEquals(PagingPlacementPolicy.LEAST_USED, conf.getPagingPlacementPolicy());
+
          s = RandomUtil.randomString();
          conf.setLargeMessagesDirectory(s);
          Assert.assertEquals(s, conf.getLargeMessagesDirectory());
 
+         directories = Arrays.asList(RandomUtil.randomString());
+         conf.setLargeMessagesStripeDirectories(directories);
+         Assert.assertEquals(directories, conf.getLargeMessagesStripeDirectories());
+
          b = RandomUtil.randomBoolean();
          conf.setWildcardRoutingEnabled(b);
          Assert.assertEquals(b, conf.isWildcardRoutingEnabled());
@@ -122,8 +122,14 @@ public class DefaultsFileConfigurationTest extends ConfigurationImplTest
 
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultPagingDir(), conf.getPagingDirectory());
 
+      Assert.assertEquals(0, conf.getPagingStripeDirectories().size());
+
+      Assert.assertEquals(ConfigurationImpl.DEFAULT_PAGING_PLACEMENT_POLICY, conf.getPagingPlacementPolicy());
+
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultLargeMessagesDir(), conf.getLargeMessagesDirectory());
 
+      Assert.assertEquals(0, conf.getLargeMessagesStripeDirectories().size());
+
       Assert.assertEquals(HornetQDefaultConfiguration.isDefaultWildcardRoutingEnabled(), conf.isWildcardRoutingEnabled());
 
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultTransactionTimeout(), conf.getTransactionTimeout());
@@ -12,6 +12,7 @@
  */
 package org.hornetq.core.config.impl;
 
+import java.util.Arrays;
 import java.util.Collections;
 
 import org.hornetq.api.core.BroadcastGroupConfiguration;
@@ -25,6 +26,7 @@ import org.hornetq.core.config.Configuration;
 import org.hornetq.core.config.DivertConfiguration;
 import org.hornetq.core.config.HAPolicyConfiguration;
 import org.hornetq.core.config.ha.LiveOnlyPolicyConfiguration;
+import org.hornetq.core.paging.PagingPlacementPolicy;
 import org.hornetq.core.security.Role;
 import org.hornetq.core.server.JournalType;
 import org.hornetq.core.settings.impl.SlowConsumerPolicy;
@@ -68,8 +70,13 @@ public class FileConfigurationTest extends ConfigurationImplTest
       Assert.assertEquals(8, conf.getMessageExpiryThreadPriority());
       Assert.assertEquals(127, conf.getIDCacheSize());
       Assert.assertEquals(true, conf.isPersistIDCache());
+      Assert.assertEquals(true, conf.isIDCacheOffHeap());
       Assert.assertEquals(true, conf.isPersistDeliveryCountBeforeDelivery());
       Assert.assertEquals("pagingdir", conf.getPagingDirectory());
+      Assert.assertEquals(Arrays.asList("pagingdir2", "pagingdir3"), conf.getPagingStripeDirectories());
+      Assert.assertEquals(PagingPlacementPolicy.LEAST_USED, conf.getPagingPlacementPolicy());
+      Assert.assertEquals(100 * 1024 * 1024, conf.getGlobalMaxSize());
+      Assert.assertEquals(50 * 1024 * 1024, conf.getGlobalPageCacheMaxSize());
       Assert.assertEquals("somedir", conf.getBindingsDirectory());
       Assert.assertEquals(false, conf.isCreateBindingsDir());
 
@@ -89,7 +96,12 @@ public class FileConfigurationTest extends ConfigurationImplTest
       Assert.assertEquals(33, conf.getJournalCompactPercentage());
 
       Assert.assertEquals("largemessagesdir", conf.getLargeMessagesDirectory());
+      Assert.assertEquals(Arrays.asList("largemessagesdir2"), conf.getLargeMessagesStripeDirectories());
       Assert.assertEquals(95, conf.getMemoryWarningThreshold());
+      Assert.assertEquals(true, conf.isScheduledDeliveryWheelEnabled());
+      Assert.assertEquals(25, conf.getScheduledDeliveryWheelTick());
+      Assert.assertEquals(600000, conf.getScheduledDeliverySpillThreshold());
+      Assert.assertEquals("scheduleddir", conf.getScheduledDeliveryDirectory());
 
       Assert.assertEquals(2, conf.getIncomingInterceptorClassNames().size());
       Assert.assertTrue(conf.getIncomingInterceptorClassNames()
@@ -293,6 +305,13 @@ public class FileConfigurationTest extends ConfigurationImplTest
       assertEquals(10, conf.getAddressesSettings().get("a1").getSlowConsumerThreshold());
       assertEquals(5, conf.getAddressesSettings().get("a1").getSlowConsumerCheckPeriod());
       assertEquals(SlowConsumerPolicy.NOTIFY, conf.getAddressesSettings().get("a1").getSlowConsumerPolicy());
+      assertEquals(60000, conf.getAddressesSettings().get("a1").getGroupIdleTimeout());
+      assertEquals(1000, conf.getAddressesSettings().get("a1").getMaxGroups());
+      assertFalse(conf.getAddressesSettings().get("a1").isGroupHashing());
+      assertFalse(conf.getAddressesSettings().get("a1").isSharedFanOutLog());
+      assertFalse(conf.getAddressesSettings().get("a1").isPageCompression());
+      assertFalse(conf.getAddressesSettings().get("a1").isPriorityDepaging());
+      assertEquals(-1, conf.getAddressesSettings().get("a1").getDepageBufferTime());
 
       assertEquals("a2.1", conf.getAddressesSettings().get("a2").getDeadLetterAddress().toString());
       assertEquals("a2.2", conf.getAddressesSettings().get("a2").getExpiryAddress().toString());
@@ -304,6 +323,13 @@ public class FileConfigurationTest extends ConfigurationImplTest
       assertEquals(20, conf.getAddressesSettings().get("a2").getSlowConsumerThreshold());
       assertEquals(15, conf.getAddressesSettings().get("a2").getSlowConsumerCheckPeriod());
       assertEquals(SlowConsumerPolicy.KILL, conf.getAddressesSettings().get("a2").getSlowConsumerPolicy());
+      assertEquals(-1, conf.getAddressesSettings().get("a2").getGroupIdleTimeout());
+      assertEquals(-1, conf.getAddressesSettings().get("a2").getMaxGroups());
+      assertTrue(conf.getAddressesSettings().get("a2").isGroupHashing());
+      assertTrue(conf.getAddressesSettings().get("a2").isSharedFanOutLog());
+      assertTrue(conf.getAddressesSettings().get("a2").isPageCompression());
+      assertTrue(conf.getAddressesSettings().get("a2").isPriorityDepaging());
+      assertEquals(2000, conf.getAddressesSettings().get("a2").getDepageBufferTime());
 
 
       assertEquals(2, conf.getQueueConfigurations().size());
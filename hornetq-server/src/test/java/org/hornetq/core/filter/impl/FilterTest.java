@@ -18,6 +18,8 @@ import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.filter.Filter;
 import org.hornetq.core.server.ServerMessage;
 import org.hornetq.core.server.impl.ServerMessageImpl;
+import org.hornetq.selector.SelectorParser;
+import org.hornetq.selector.filter.BooleanExpression;
 import org.hornetq.tests.util.RandomUtil;
 import org.hornetq.tests.util.SilentTestCase;
 import org.junit.Assert;
@@ -694,6 +696,86 @@ public class FilterTest extends SilentTestCase
       Assert.assertTrue(filter.match(message));
    }
 
+   @Test
+   public void testCompiledFilterMatchesExpression() throws Exception
+   {
+      String[] selectors = {"color = 'red'",
+                            "'red' = color",
+                            "color <> 'red'",
+                            "color IN ('red', 'green', 'blue', 'white', 'black')",
+                            "color NOT IN ('red')",
+                            "color LIKE 'r%'",
+                            "color NOT LIKE '_ed'",
+                            "color IS NULL",
+                            "color IS NOT NULL",
+                            "weight > 10",
+                            "weight >= 10.5",
+                            "10 < weight",
+                            "weight BETWEEN -5 AND 20",
+                            "weight NOT BETWEEN 0 AND 2 + 3",
+                            "weight * 2 = 20",
+                            "weight = count",
+                            "count < 1000000000000",
+                            "flag",
+                            "NOT flag",
+                            "flag = TRUE",
+                            "HQPriority > 4",
+                            "HQPriority = 9.0",
+                            "HQTimestamp > 1000",
+                            "HQExpiration = 0",
+                            "HQDurable = 'DURABLE'",
+                            "HQSize > 1",
+                            "HQUnknown = 'x'",
+                            "color = 'red' AND weight > 10",
+                            "color = 'red' OR weight > 10",
+                            "(color = 'red' OR missing > 1) AND NOT (weight < 5)",
+                            "missing > 1 OR color = 'red'",
+                            "missing > 1 AND color = 'red'",
+                            "NOT (missing > 1)",
+                            "color = 'red' AND (weight = 10 OR flag)"};
+
+      ServerMessage[] messages = new ServerMessage[6];
+
+      for (int i = 0; i < messages.length; i++)
+      {
+         messages[i] = new ServerMessageImpl(i, 1000);
+         messages[i].setPriority((byte) i);
+         messages[i].setTimestamp(i * 1000);
+         messages[i].setDurable(i % 2 == 0);
+      }
+
+      messages[0].putStringProperty(new SimpleString("color"), new SimpleString("red"));
+      messages[0].putIntProperty(new SimpleString("weight"), 10);
+      messages[0].putBooleanProperty(new SimpleString("flag"), true);
+      messages[1].putStringProperty(new SimpleString("color"), new SimpleString("green"));
+      messages[1].putDoubleProperty(new SimpleString("weight"), 10.5);
+      messages[1].putBooleanProperty(new SimpleString("flag"), false);
+      messages[2].putIntProperty(new SimpleString("color"), 3);
+      messages[2].putLongProperty(new SimpleString("weight"), 11);
+      messages[2].putLongProperty(new SimpleString("count"), 11);
+      messages[3].putShortProperty(new SimpleString("weight"), (short) 3);
+      messages[3].putStringProperty(new SimpleString("flag"), new SimpleString("true"));
+      messages[4].putFloatProperty(new SimpleString("weight"), 15.5f);
+      messages[4].putIntProperty(new SimpleString("count"), 15);
+      messages[4].putStringProperty(new SimpleString("HQUnknown"), new SimpleString("x"));
+      messages[5].putByteProperty(new SimpleString("weight"), (byte) 10);
+      messages[5].putStringProperty(new SimpleString("color"), new SimpleString("red"));
+
+      for (String selector : selectors)
+      {
+         BooleanExpression expression = SelectorParser.parse(selector);
+
+         Filter compiled = FilterImpl.createFilter(selector);
+
+         for (ServerMessage msg : messages)
+         {
+            boolean expected = expression.matches(new FilterImpl.FilterableServerMessage(msg));
+
+            Assert.assertEquals(selector + " on message " + msg.getMessageID(), expected, compiled.match(msg));
+         }
+      }
+   }
+
 // TODO: re-implement this.
 //
 //   @Test
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.core.server.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.filter.Filter;
+import org.hornetq.core.server.Consumer;
+import org.hornetq.core.server.HandleStatus;
+import org.hornetq.core.server.MessageReference;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MessageGroupsTest extends Assert
+{
+   @Test
+   public void testMaxGroupsReleasesLeastRecentlyUsed()
+   {
+      MessageGroupsImpl groups = new MessageGroupsImpl(-1, 3);
+      Consumer consumer = new GroupConsumer();
+
+      groups.put(new SimpleString("g1"), consumer);
+      groups.put(new SimpleString("g2"), consumer);
+      groups.put(new SimpleString("g3"), consumer);
+
+      // g1 is used again, so g2 is the least recently used
+      assertSame(consumer, groups.get(new SimpleString("g1")));
+
+      groups.put(new SimpleString("g4"), consumer);
+
+      assertEquals(3, groups.size());
+      assertEquals(1, groups.getEvictedCount());
+      assertNull(groups.get(new SimpleString("g2")));
+      assertSame(consumer, groups.get(new SimpleString("g1")));
+
+      groups.setMaxGroups(1);
+
+      assertEquals(1, groups.size());
+      assertEquals(3, groups.getEvictedCount());
+      assertSame(consumer, groups.get(new SimpleString("g1")));
+   }
+
+   @Test
+   public void testIdleGroupsReleased() throws Exception
+   {
+      MessageGroupsImpl groups = new MessageGroupsImpl(100, -1);
+      Consumer consumer = new GroupConsumer();
+
+      groups.put(new SimpleString("idle"), consumer);
+      groups.put(new SimpleString("busy"), consumer);
+
+      for (int i = 0; i < 4; i++)
+      {
+         Thread.sleep(40);
+         assertSame(consumer, groups.get(new SimpleString("busy")));
+      }
+
+      assertNull(groups.get(new SimpleString("idle")));
+      assertEquals(1, groups.size());
+      assertEquals(1, groups.getEvictedCount());
+      assertEquals(Arrays.asList(new SimpleString("busy")), groups.getGroupIDs());
+   }
+
+   @Test
+   public void testRemoveConsumerReleasesItsGroups()
+   {
+      MessageGroupsImpl groups = new MessageGroupsImpl();
+      Consumer consumer1 = new GroupConsumer();
+      Consumer consumer2 = new GroupConsumer();
+
+      for (int i = 0; i < 10; i++)
+      {
+         groups.put(new SimpleString("g" + i), i % 2 == 0 ? consumer1 : consumer2);
+      }
+
+      groups.removeConsumer(consumer1);
+
+      assertEquals(5, groups.size());
+      assertEquals(0, groups.getEvictedCount());
+      for (SimpleString groupID : groups.getGroupIDs())
+      {
+         assertSame(consumer2, groups.get(groupID));
+      }
+   }
+
+   @Test
+   public void testHashingMovesOnlyGroupsOfChangedConsumer()
+   {
+      final int numberOfGroups = 1000;
+
+      List<Consumer> consumers = new ArrayList<Consumer>();
+      for (int i = 0; i < 3; i++)
+      {
+         consumers.add(new GroupConsumer());
+      }
+
+      HashedMessageGroups groups = new HashedMessageGroups(consumers);
+
+      Map<SimpleString, Consumer> assigned = new HashMap<SimpleString, Consumer>();
+      Map<Consumer, Integer> perConsumer = new HashMap<Consumer, Integer>();
+      for (int i = 0; i < numberOfGroups; i++)
+      {
+         SimpleString groupID = new SimpleString("group" + i);
+         Consumer consumer = groups.get(groupID);
+         assertSame(consumer, groups.get(groupID));
+         assigned.put(groupID, consumer);
+         Integer count = perConsumer.get(consumer);
+         perConsumer.put(consumer, count == null ? 1 : count + 1);
+      }
+
+      assertEquals(3, perConsumer.size());
+
+      // nothing is recorded per group
+      assertEquals(-1, groups.size());
+      assertEquals(-1, groups.getEvictedCount());
+      try
+      {
+         groups.getGroupIDs();
+         fail("the group IDs are not recorded");
+      }
+      catch (UnsupportedOperationException expected)
+      {
+      }
+
+      Consumer newConsumer = new GroupConsumer();
+      groups.addConsumer(newConsumer);
+
+      int moved = 0;
+      for (Map.Entry<SimpleString, Consumer> entry : assigned.entrySet())
+      {
+         Consumer consumer = groups.get(entry.getKey());
+         if (consumer != entry.getValue())
+         {
+            assertSame(newConsumer, consumer);
+            moved++;
+         }
+      }
+
+      assertTrue("moved " + moved, moved > 0 && moved < numberOfGroups / 2);
+
+      groups.removeConsumer(newConsumer);
+
+      for (Map.Entry<SimpleString, Consumer> entry : assigned.entrySet())
+      {
+         assertSame(entry.getValue(), groups.get(entry.getKey()));
+      }
+
+      for (Consumer consumer : consumers)
+      {
+         groups.removeConsumer(consumer);
+      }
+
+      assertNull(groups.get(new SimpleString("group0")));
+   }
+
+   private static final class GroupConsumer implements Consumer
+   {
+      public HandleStatus handle(MessageReference reference)
+      {
+         return HandleStatus.HANDLED;
+      }
+
+      public void proceedDeliver(MessageReference reference)
+      {
+      }
+
+      public Filter getFilter()
+      {
+         return null;
+      }
+
+      public List<MessageReference> getDeliveringMessages()
+      {
+         return new ArrayList<MessageReference>();
+      }
+
+      public String debug()
+      {
+         return toString();
+      }
+
+      public String toManagementString()
+      {
+         return toString();
+      }
+
+      public void disconnect()
+      {
+      }
+   }
+}
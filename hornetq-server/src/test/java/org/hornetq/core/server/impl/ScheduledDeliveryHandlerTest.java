@@ -24,6 +24,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -42,7 +43,9 @@ import org.hornetq.core.server.HornetQServer;
 import org.hornetq.core.server.MessageReference;
 import org.hornetq.core.server.Queue;
 import org.hornetq.core.server.RoutingContext;
+import org.hornetq.core.server.ScheduledDeliveryHandler;
 import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.SharedMessageLog;
 import org.hornetq.core.transaction.Transaction;
 import org.hornetq.tests.util.RandomUtil;
 import org.hornetq.utils.LinkedListIterator;
@@ -59,10 +62,20 @@ import org.junit.Test;
 public class ScheduledDeliveryHandlerTest extends Assert
 {
 
+   protected ScheduledDeliveryHandler createHandler(ScheduledExecutorService scheduler)
+   {
+      return new ScheduledDeliveryHandlerImpl(scheduler);
+   }
+
+   protected void addInPlace(ScheduledDeliveryHandler handler, long deliveryTime, MessageReference ref, boolean tail)
+   {
+      ((ScheduledDeliveryHandlerImpl) handler).addInPlace(deliveryTime, ref, tail);
+   }
+
    @Test
    public void testScheduleRandom() throws Exception
    {
-      ScheduledDeliveryHandlerImpl handler = new ScheduledDeliveryHandlerImpl(null);
+      ScheduledDeliveryHandler handler = createHandler(null);
 
 
       long nextMessage = 0;
@@ -90,7 +103,7 @@ public class ScheduledDeliveryHandlerTest extends Assert
    @Test
    public void testScheduleSameTimeHeadAndTail() throws Exception
    {
-      ScheduledDeliveryHandlerImpl handler = new ScheduledDeliveryHandlerImpl(null);
+      ScheduledDeliveryHandler handler = createHandler(null);
 
       long time = System.currentTimeMillis() + 10000;
       for (int i = 10001; i < 20000; i++)
@@ -116,7 +129,7 @@ public class ScheduledDeliveryHandlerTest extends Assert
    @Test
    public void testScheduleFixedSample() throws Exception
    {
-      ScheduledDeliveryHandlerImpl handler = new ScheduledDeliveryHandlerImpl(null);
+      ScheduledDeliveryHandler handler = createHandler(null);
 
 
       addMessage(handler, 0, 48L, true);
@@ -132,7 +145,7 @@ public class ScheduledDeliveryHandlerTest extends Assert
    @Test
    public void testScheduleWithAddHeads() throws Exception
    {
-      ScheduledDeliveryHandlerImpl handler = new ScheduledDeliveryHandlerImpl(null);
+      ScheduledDeliveryHandler handler = createHandler(null);
 
 
       addMessage(handler, 0, 1, true);
@@ -157,7 +170,7 @@ public class ScheduledDeliveryHandlerTest extends Assert
    @Test
    public void testScheduleFixedSampleTailAndHead() throws Exception
    {
-      ScheduledDeliveryHandlerImpl handler = new ScheduledDeliveryHandlerImpl(null);
+      ScheduledDeliveryHandler handler = createHandler(null);
 
 
       // mix a sequence of tails / heads, but at the end this was supposed to be all sequential
@@ -212,7 +225,7 @@ public class ScheduledDeliveryHandlerTest extends Assert
    {
       final int NUMBER_OF_MESSAGES = 200;
       int NUMBER_OF_THREADS = 20;
-      final ScheduledDeliveryHandlerImpl handler = new ScheduledDeliveryHandlerImpl(scheduler);
+      final ScheduledDeliveryHandler handler = createHandler(scheduler);
       final FakeQueueForScheduleUnitTest fakeQueue = new FakeQueueForScheduleUnitTest(NUMBER_OF_MESSAGES * NUMBER_OF_THREADS);
 
       final long now = System.currentTimeMillis();
@@ -260,7 +273,7 @@ public class ScheduledDeliveryHandlerTest extends Assert
       }
    }
 
-   private void validateSequence(ScheduledDeliveryHandlerImpl handler)
+   private void validateSequence(ScheduledDeliveryHandler handler)
    {
       long lastSequence = -1;
       for (MessageReference ref : handler.getScheduledReferences())
@@ -270,14 +283,14 @@ public class ScheduledDeliveryHandlerTest extends Assert
       }
    }
 
-   private void addMessage(ScheduledDeliveryHandlerImpl handler, long nextMessageID, long nextScheduledTime, boolean tail)
+   private void addMessage(ScheduledDeliveryHandler handler, long nextMessageID, long nextScheduledTime, boolean tail)
    {
       MessageReferenceImpl refImpl = new MessageReferenceImpl(new FakeMessage(nextMessageID), null);
       refImpl.setScheduledDeliveryTime(nextScheduledTime);
-      handler.addInPlace(nextScheduledTime, refImpl, tail);
+      addInPlace(handler, nextScheduledTime, refImpl, tail);
    }
 
-   private void checkAndSchedule(ScheduledDeliveryHandlerImpl handler, long nextMessageID, long nextScheduledTime, boolean tail, Queue queue)
+   private void checkAndSchedule(ScheduledDeliveryHandler handler, long nextMessageID, long nextScheduledTime, boolean tail, Queue queue)
    {
       MessageReferenceImpl refImpl = new MessageReferenceImpl(new FakeMessage(nextMessageID), queue);
       refImpl.setScheduledDeliveryTime(nextScheduledTime);
@@ -285,7 +298,7 @@ public class ScheduledDeliveryHandlerTest extends Assert
    }
 
 
-   private void debugList(boolean fail, ScheduledDeliveryHandlerImpl handler, long numberOfExpectedMessages)
+   private void debugList(boolean fail, ScheduledDeliveryHandler handler, long numberOfExpectedMessages)
    {
       List<MessageReference> refs = handler.getScheduledReferences();
 
@@ -1037,6 +1050,17 @@ public class ScheduledDeliveryHandlerTest extends Assert
          return null;
       }
 
+      @Override
+      public void setSharedLogCursor(SharedMessageLog.Cursor cursor)
+      {
+      }
+
+      @Override
+      public SharedMessageLog.Cursor getSharedLogCursor()
+      {
+         return null;
+      }
+
       @Override
       public boolean isDurable()
       {
@@ -1160,6 +1184,12 @@ public class ScheduledDeliveryHandlerTest extends Assert
 
       }
 
+      @Override
+      public void consumerReady(Consumer consumer)
+      {
+
+      }
+
       @Override
       public void forceDelivery()
       {
@@ -1232,6 +1262,24 @@ public class ScheduledDeliveryHandlerTest extends Assert
          return 0;
       }
 
+      @Override
+      public int getGroupCount()
+      {
+         return 0;
+      }
+
+      @Override
+      public long getGroupsEvicted()
+      {
+         return 0;
+      }
+
+      @Override
+      public float getDepageRate()
+      {
+         return 0;
+      }
+
       @Override
       public MessageReference removeReferenceWithID(long id) throws Exception
       {
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.core.server.impl;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
+import org.hornetq.core.server.MessageReference;
+import org.hornetq.core.server.ScheduledDeliveryHandler;
+import org.hornetq.core.server.ServerMessage;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Runs the {@link ScheduledDeliveryHandlerTest} scenarios against the timing wheel, plus the
+ * cascading and spilling cases that only exist on the wheel.
+ */
+public class TimingWheelScheduledDeliveryHandlerTest extends ScheduledDeliveryHandlerTest
+{
+   @Rule
+   public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+   @Override
+   protected ScheduledDeliveryHandler createHandler(ScheduledExecutorService scheduler)
+   {
+      return new TimingWheelScheduledDeliveryHandler(scheduler, 10);
+   }
+
+   @Override
+   protected void addInPlace(ScheduledDeliveryHandler handler, long deliveryTime, MessageReference ref, boolean tail)
+   {
+      ((TimingWheelScheduledDeliveryHandler) handler).addInPlace(deliveryTime, ref, tail);
+   }
+
+   @Test
+   public void testCascadeFromOverflowWheels() throws Exception
+   {
+      ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+      try
+      {
+         // with a 1 ms tick the first wheel only covers 512 ms, so these go through the overflow wheel
+         TimingWheelScheduledDeliveryHandler handler = new TimingWheelScheduledDeliveryHandler(scheduler, 1);
+         FakeQueueForScheduleUnitTest queue = new FakeQueueForScheduleUnitTest(30);
+
+         long now = System.currentTimeMillis();
+         for (int i = 0; i < 30; i++)
+         {
+            MessageReferenceImpl ref = new MessageReferenceImpl(new FakeMessage(i), queue);
+            ref.setScheduledDeliveryTime(now + 20 + i * 40);
+            assertTrue(handler.checkAndSchedule(ref, true));
+         }
+
+         assertEquals(30, handler.getScheduledCount());
+
+         assertTrue(queue.waitCompletion(10, TimeUnit.SECONDS));
+         assertTrue(System.currentTimeMillis() >= now + 20 + 29 * 40);
+         assertEquals(0, handler.getScheduledCount());
+
+         // the last one delivered is the first on the queue
+         assertEquals(29, queue.messages.getFirst().getMessage().getMessageID());
+         assertEquals(0, queue.messages.getFirst().getScheduledDeliveryTime());
+      }
+      finally
+      {
+         scheduler.shutdownNow();
+      }
+   }
+
+   @Test
+   public void testCancelAndRemoveFarReferences() throws Exception
+   {
+      TimingWheelScheduledDeliveryHandler handler = new TimingWheelScheduledDeliveryHandler(null, 10);
+
+      long now = System.currentTimeMillis();
+      for (int i = 0; i < 100; i++)
+      {
+         MessageReferenceImpl ref = new MessageReferenceImpl(new FakeMessage(i), null);
+         ref.setScheduledDeliveryTime(now + TimeUnit.DAYS.toMillis(i + 1));
+         handler.addInPlace(ref.getScheduledDeliveryTime(), ref, true);
+      }
+
+      assertEquals(50, handler.removeReferenceWithID(50).getMessage().getMessageID());
+      assertNull(handler.removeReferenceWithID(50));
+      assertEquals(99, handler.getScheduledCount());
+
+      List<MessageReference> cancelled = handler.cancel(null);
+      assertEquals(99, cancelled.size());
+      assertEquals(0, cancelled.get(0).getMessage().getMessageID());
+      assertEquals(99, cancelled.get(98).getMessage().getMessageID());
+      assertEquals(0, handler.getScheduledCount());
+   }
+
+   @Test
+   public void testSpillFarReferences() throws Exception
+   {
+      final int numberOfMessages = 2000;
+
+      SequentialFileFactory factory = new NIOSequentialFileFactory(temporaryFolder.getRoot().getAbsolutePath(), false);
+
+      Executor direct = new Executor()
+      {
+         public void execute(Runnable command)
+         {
+            command.run();
+         }
+      };
+
+      TimingWheelScheduledDeliveryHandler handler =
+         new TimingWheelScheduledDeliveryHandler(null, 10, factory, direct, TimeUnit.HOURS.toMillis(1));
+
+      FakeQueueForScheduleUnitTest queue = new FakeQueueForScheduleUnitTest(0)
+      {
+         @Override
+         public boolean isDurable()
+         {
+            return true;
+         }
+      };
+
+      long now = System.currentTimeMillis();
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         ServerMessage message = new ServerMessageImpl(i, 100);
+         message.setDurable(true);
+         message.getBodyBuffer().writeInt(i);
+         MessageReference ref = message.createReference(queue);
+         message.incrementRefCount();
+         ref.setScheduledDeliveryTime(now + TimeUnit.DAYS.toMillis(1) + i);
+         handler.addInPlace(ref.getScheduledDeliveryTime(), ref, true);
+      }
+
+      assertFalse(factory.listFiles(TimingWheelScheduledDeliveryHandler.SPILL_EXTENSION).isEmpty());
+      assertEquals(numberOfMessages, handler.getScheduledCount());
+
+      Set<Long> ids = new HashSet<Long>();
+      long lastTime = -1;
+      for (MessageReference ref : handler.getScheduledReferences())
+      {
+         assertTrue(ref.getScheduledDeliveryTime() >= lastTime);
+         lastTime = ref.getScheduledDeliveryTime();
+         ids.add(ref.getMessage().getMessageID());
+      }
+      assertEquals(numberOfMessages, ids.size());
+
+      MessageReference removed = handler.removeReferenceWithID(10);
+      assertNotNull(removed);
+      assertEquals(1, removed.getMessage().getRefCount());
+      assertEquals(now + TimeUnit.DAYS.toMillis(1) + 10, removed.getScheduledDeliveryTime());
+
+      // removing reloads everything from disk
+      assertTrue(factory.listFiles(TimingWheelScheduledDeliveryHandler.SPILL_EXTENSION).isEmpty());
+      assertEquals(numberOfMessages - 1, handler.getScheduledCount());
+   }
+}
@@ -12,9 +12,12 @@
  */
 package org.hornetq.core.settings;
 
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.HornetQBuffers;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.settings.impl.AddressFullMessagePolicy;
 import org.hornetq.core.settings.impl.AddressSettings;
+import org.hornetq.core.settings.impl.SlowConsumerPolicy;
 import org.hornetq.tests.util.UnitTestCase;
 import org.junit.Assert;
 import org.junit.Test;
@@ -42,6 +45,13 @@ public class AddressSettingsTest extends UnitTestCase
       Assert.assertEquals(AddressSettings.DEFAULT_SLOW_CONSUMER_THRESHOLD, addressSettings.getSlowConsumerThreshold());
       Assert.assertEquals(AddressSettings.DEFAULT_SLOW_CONSUMER_CHECK_PERIOD, addressSettings.getSlowConsumerCheckPeriod());
       Assert.assertEquals(AddressSettings.DEFAULT_SLOW_CONSUMER_POLICY, addressSettings.getSlowConsumerPolicy());
+      Assert.assertEquals(AddressSettings.DEFAULT_GROUP_IDLE_TIMEOUT, addressSettings.getGroupIdleTimeout());
+      Assert.assertEquals(AddressSettings.DEFAULT_MAX_GROUPS, addressSettings.getMaxGroups());
+      Assert.assertEquals(AddressSettings.DEFAULT_GROUP_HASHING, addressSettings.isGroupHashing());
+      Assert.assertEquals(AddressSettings.DEFAULT_SHARED_FAN_OUT_LOG, addressSettings.isSharedFanOutLog());
+      Assert.assertEquals(AddressSettings.DEFAULT_PAGE_COMPRESSION, addressSettings.isPageCompression());
+      Assert.assertEquals(AddressSettings.DEFAULT_PRIORITY_DEPAGING, addressSettings.isPriorityDepaging());
+      Assert.assertEquals(AddressSettings.DEFAULT_DEPAGE_BUFFER_TIME, addressSettings.getDepageBufferTime());
 
    }
 
@@ -143,4 +153,33 @@ public class AddressSettingsTest extends UnitTestCase
       Assert.assertEquals(addressSettings.getMaxRedeliveryDelay(), 5000);
       Assert.assertEquals(AddressFullMessagePolicy.DROP, addressSettings.getAddressFullMessagePolicy());
    }
+
+   @Test
+   public void testEncodeDecodeGroupSettings()
+   {
+      AddressSettings addressSettings = new AddressSettings();
+      addressSettings.setSlowConsumerPolicy(SlowConsumerPolicy.KILL);
+      addressSettings.setGroupIdleTimeout(30000);
+      addressSettings.setMaxGroups(500);
+      addressSettings.setGroupHashing(true);
+      addressSettings.setSharedFanOutLog(true);
+      addressSettings.setPageCompression(true);
+      addressSettings.setPriorityDepaging(true);
+      addressSettings.setDepageBufferTime(2000);
+
+      HornetQBuffer buffer = HornetQBuffers.fixedBuffer(addressSettings.getEncodeSize());
+      addressSettings.encode(buffer);
+
+      AddressSettings decoded = new AddressSettings();
+      decoded.decode(buffer);
+
+      Assert.assertEquals(addressSettings, decoded);
+      Assert.assertEquals(30000, decoded.getGroupIdleTimeout());
+      Assert.assertEquals(500, decoded.getMaxGroups());
+      Assert.assertTrue(decoded.isGroupHashing());
+      Assert.assertTrue(decoded.isSharedFanOutLog());
+      Assert.assertTrue(decoded.isPageCompression());
+      Assert.assertTrue(decoded.isPriorityDepaging());
+      Assert.assertEquals(2000, decoded.getDepageBufferTime());
+   }
 }
@@ -13,6 +13,9 @@
 
 package org.hornetq.tools;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class Main
 {
    public static final String USAGE = "Use: java -jar " + getJarName();
@@ -45,14 +48,23 @@ public class Main
       }
       else if (EXPORT.equals(arg[0]))
       {
-         if (arg.length != 5)
+         if (arg.length != 5 && arg.length != 7)
          {
-            System.out.println(USAGE + " " + EXPORT + " <bindings-directory> <journal-directory> <paging-directory> <large-messages-directory>");
+            System.out.println(USAGE + " " + EXPORT + " <bindings-directory> <journal-directory> <paging-directory> <large-messages-directory>" +
+                                  " [<paging-stripe-directories> <large-messages-stripe-directories>]");
+            System.out.println("    the stripe directories are separated by commas");
             System.exit(-1);
          }
          else
          {
-            XmlDataExporter xmlDataExporter = new XmlDataExporter(System.out, arg[1], arg[2], arg[3], arg[4]);
+            List<String> pagingStripeDirs = new ArrayList<String>();
+            List<String> largeMessagesStripeDirs = new ArrayList<String>();
+            if (arg.length == 7)
+            {
+               pagingStripeDirs = splitDirectories(arg[5]);
+               largeMessagesStripeDirs = splitDirectories(arg[6]);
+            }
+            XmlDataExporter xmlDataExporter = new XmlDataExporter(System.out, arg[1], arg[2], arg[3], arg[4], pagingStripeDirs, largeMessagesStripeDirs);
             xmlDataExporter.writeXMLData();
          }
       }
@@ -95,6 +107,19 @@ public class Main
       }
    }
 
+   private static List<String> splitDirectories(String directories)
+   {
+      List<String> result = new ArrayList<String>();
+      for (String directory : directories.split(","))
+      {
+         if (!directory.trim().isEmpty())
+         {
+            result.add(directory.trim());
+         }
+      }
+      return result;
+   }
+
    protected static String getJarName()
    {
       try
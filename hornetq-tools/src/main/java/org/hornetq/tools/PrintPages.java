@@ -46,6 +46,7 @@ import org.hornetq.core.paging.impl.PagingStoreFactoryNIO;
 import org.hornetq.core.persistence.StorageManager;
 import org.hornetq.core.persistence.impl.journal.JournalRecordIds;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.CursorAckRecordEncoding;
+import org.hornetq.core.persistence.impl.journal.JournalStorageManager.CursorPageAckRecordEncoding;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.PageUpdateTXEncoding;
 import org.hornetq.core.persistence.impl.nullpm.NullStorageManager;
 import org.hornetq.core.settings.HierarchicalRepository;
@@ -274,6 +275,21 @@ public class PrintPages // NO_UCD (unused code)
 
             set.add(encoding.position);
          }
+         else if (record.userRecordType == JournalRecordIds.ACKNOWLEDGE_CURSOR_PAGE)
+         {
+            CursorPageAckRecordEncoding encoding = new CursorPageAckRecordEncoding();
+            encoding.decode(buff);
+
+            Set<PagePosition> set = cursorInfo.getCursorRecords().get(encoding.queueID);
+
+            if (set == null)
+            {
+               set = new HashSet<PagePosition>();
+               cursorInfo.getCursorRecords().put(encoding.queueID, set);
+            }
+
+            set.addAll(encoding.getPositions(record.id));
+         }
          else if (record.userRecordType == JournalRecordIds.PAGE_CURSOR_COMPLETE)
          {
             CursorAckRecordEncoding encoding = new CursorAckRecordEncoding();
@@ -67,6 +67,7 @@ import org.hornetq.core.persistence.impl.journal.JournalRecordIds;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.AckDescribe;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.CursorAckRecordEncoding;
+import org.hornetq.core.persistence.impl.journal.JournalStorageManager.CursorPageAckRecordEncoding;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.PageUpdateTXEncoding;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.PersistentQueueBindingEncoding;
 import org.hornetq.core.server.HornetQServerLogger;
@@ -134,12 +135,21 @@ public final class XmlDataExporter
 
    public XmlDataExporter(OutputStream out, String bindingsDir, String journalDir, String pagingDir,
                           String largeMessagesDir) throws Exception
+   {
+      this(out, bindingsDir, journalDir, pagingDir, largeMessagesDir, new ArrayList<String>(), new ArrayList<String>());
+   }
+
+   public XmlDataExporter(OutputStream out, String bindingsDir, String journalDir, String pagingDir,
+                          String largeMessagesDir, List<String> pagingStripeDirs,
+                          List<String> largeMessagesStripeDirs) throws Exception
    {
       config = new ConfigurationImpl()
          .setBindingsDirectory(bindingsDir)
          .setJournalDirectory(journalDir)
          .setPagingDirectory(pagingDir)
+         .setPagingStripeDirectories(pagingStripeDirs)
          .setLargeMessagesDirectory(largeMessagesDir)
+         .setLargeMessagesStripeDirectories(largeMessagesStripeDirs)
          .setJournalType(JournalType.NIO);
       final ExecutorService executor = Executors.newFixedThreadPool(1);
       ExecutorFactory executorFactory = new ExecutorFactory()
@@ -296,6 +306,21 @@ public final class XmlDataExporter
 
             set.add(encoding.position);
          }
+         else if (info.userRecordType == JournalRecordIds.ACKNOWLEDGE_CURSOR_PAGE)
+         {
+            CursorPageAckRecordEncoding encoding = new CursorPageAckRecordEncoding();
+            encoding.decode(buff);
+
+            Set<PagePosition> set = cursorRecords.get(encoding.queueID);
+
+            if (set == null)
+            {
+               set = new HashSet<>();
+               cursorRecords.put(encoding.queueID, set);
+            }
+
+            set.addAll(encoding.getPositions(info.id));
+         }
          else if (info.userRecordType == JournalRecordIds.PAGE_TRANSACTION)
          {
             if (info.isUpdate)
@@ -765,7 +790,7 @@ public final class XmlDataExporter
          };
          PagingStoreFactory pageStoreFactory =
             new PagingStoreFactoryNIO(storageManager, config.getPagingDirectory(), 1000L, scheduled, executorFactory, true,
-                                      null);
+                                      null, -1, config.getPagingStripeDirectories(), config.getPagingPlacementPolicy());
          HierarchicalRepository<AddressSettings> addressSettingsRepository = new HierarchicalObjectRepository<>();
          addressSettingsRepository.setDefault(new AddressSettings());
          PagingManager manager = new PagingManagerImpl(pageStoreFactory, addressSettingsRepository);
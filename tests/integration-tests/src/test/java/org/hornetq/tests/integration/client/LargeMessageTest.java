@@ -15,7 +15,9 @@ package org.hornetq.tests.integration.client;
 import javax.transaction.xa.XAResource;
 import javax.transaction.xa.Xid;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
@@ -35,6 +37,7 @@ import org.hornetq.api.core.client.MessageHandler;
 import org.hornetq.api.core.client.ServerLocator;
 import org.hornetq.core.client.impl.ClientConsumerInternal;
 import org.hornetq.core.config.Configuration;
+import org.hornetq.core.config.DivertConfiguration;
 import org.hornetq.core.message.impl.MessageImpl;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager;
 import org.hornetq.core.persistence.impl.journal.LargeServerMessageImpl;
@@ -545,6 +548,73 @@ public class LargeMessageTest extends LargeMessageTestBase
       validateNoFilesOnLargeDir();
    }
 
+   @Test
+   public void testDivertLargeMessageSharesBody() throws Exception
+   {
+      final int messageSize = (int) (3.5 * HornetQClient.DEFAULT_MIN_LARGE_MESSAGE_SIZE);
+
+      HornetQServer server = createServer(true, isNetty());
+
+      server.start();
+
+      SimpleString ADDRESS_DIVERT = ADDRESS.concat("-divert");
+
+      server.deployDivert(new DivertConfiguration()
+                             .setName("tap")
+                             .setRoutingName("tap")
+                             .setAddress(ADDRESS.toString())
+                             .setForwardingAddress(ADDRESS_DIVERT.toString()));
+
+      ClientSessionFactory sf = addSessionFactory(createSessionFactory(locator));
+
+      ClientSession session = addClientSession(sf.createSession(false, false, false));
+
+      session.createQueue(ADDRESS, ADDRESS, true);
+      session.createQueue(ADDRESS_DIVERT, ADDRESS_DIVERT, true);
+
+      ClientProducer producer = session.createProducer(ADDRESS);
+
+      producer.send(createLargeClientMessageStreaming(session, messageSize, true));
+
+      session.commit();
+
+      if (!isCompressedTest)
+      {
+         File[] files = new File(getLargeMessagesDir()).listFiles();
+
+         Assert.assertEquals(2, files.length);
+
+         // the diverted copy is a link to the body of the original message
+         Assert.assertTrue(Files.isSameFile(files[0].toPath(), files[1].toPath()));
+      }
+
+      session.start();
+
+      for (SimpleString queue : new SimpleString[]{ADDRESS_DIVERT, ADDRESS})
+      {
+         ClientConsumer consumer = session.createConsumer(queue);
+
+         ClientMessage msg = consumer.receive(10000);
+
+         Assert.assertNotNull(msg);
+
+         for (int i = 0; i < messageSize; i++)
+         {
+            Assert.assertEquals(UnitTestCase.getSamplebyte(i), msg.getBodyBuffer().readByte());
+         }
+
+         msg.acknowledge();
+
+         session.commit();
+
+         consumer.close();
+      }
+
+      session.close();
+
+      validateNoFilesOnLargeDir();
+   }
+
    @Test
    public void testDeliveryCount() throws Exception
    {
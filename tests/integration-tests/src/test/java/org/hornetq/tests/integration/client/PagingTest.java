@@ -1769,6 +1769,7 @@ public class PagingTest extends ServiceTestBase
       {
          if (!info.isUpdate && info.getUserRecordType() != JournalRecordIds.PAGE_CURSOR_COUNTER_VALUE &&
             info.getUserRecordType() != JournalRecordIds.PAGE_CURSOR_COUNTER_INC &&
+            info.getUserRecordType() != JournalRecordIds.PAGE_CURSOR_PAGE_COUNT &&
             info.getUserRecordType() != JournalRecordIds.PAGE_CURSOR_COMPLETE)
          {
             jrn.appendDeleteRecord(info.id, false);
@@ -4200,6 +4201,152 @@ public class PagingTest extends ServiceTestBase
       session.close();
    }
 
+   @Test
+   public void testPriorityDepaging() throws Exception
+   {
+      Configuration configuration = createDefaultConfig();
+
+      Map<String, AddressSettings> addresses = new HashMap<String, AddressSettings>();
+
+      AddressSettings pagedDestination = new AddressSettings();
+      pagedDestination.setPageSizeBytes(10 * 1024);
+      pagedDestination.setMaxSizeBytes(20 * 1024);
+      pagedDestination.setPriorityDepaging(true);
+
+      addresses.put("#", pagedDestination);
+
+      server = createServer(true, configuration, -1, -1, addresses);
+
+      server.start();
+
+      sf = createSessionFactory(locator);
+
+      ClientSession session = sf.createSession(false, true, true);
+
+      session.createQueue(ADDRESS, ADDRESS, true);
+
+      ClientProducer producer = session.createProducer(ADDRESS);
+
+      final int NUMBER_OF_MESSAGES = 1000;
+
+      for (int i = 0; i < NUMBER_OF_MESSAGES; i++)
+      {
+         ClientMessage msg = session.createMessage(true);
+         msg.getBodyBuffer().writeBytes(new byte[512]);
+         msg.putIntProperty("id", i);
+
+         if (i == NUMBER_OF_MESSAGES - 1)
+         {
+            msg.setPriority((byte) 9);
+         }
+
+         producer.send(msg);
+      }
+
+      Assert.assertTrue(server.getPagingManager().getPageStore(ADDRESS).isPaging());
+
+      session.start();
+
+      ClientConsumer consumer = session.createConsumer(ADDRESS);
+
+      boolean[] received = new boolean[NUMBER_OF_MESSAGES];
+
+      int priorityIndex = -1;
+
+      for (int i = 0; i < NUMBER_OF_MESSAGES; i++)
+      {
+         ClientMessage msg = consumer.receive(5000);
+         Assert.assertNotNull(msg);
+         msg.acknowledge();
+
+         int id = msg.getIntProperty("id");
+         Assert.assertFalse("message " + id + " was received twice", received[id]);
+         received[id] = true;
+
+         if (msg.getPriority() == 9)
+         {
+            priorityIndex = i;
+         }
+      }
+
+      Assert.assertNull(consumer.receiveImmediate());
+
+      // the message of high priority was depaged ahead of the backlog of lower priority
+      Assert.assertTrue("priority message received at " + priorityIndex, priorityIndex >= 0 &&
+         priorityIndex < NUMBER_OF_MESSAGES / 2);
+
+      session.close();
+   }
+
+   @Test
+   public void testDepageBufferTime() throws Exception
+   {
+      Configuration configuration = createDefaultConfig();
+
+      Map<String, AddressSettings> addresses = new HashMap<String, AddressSettings>();
+
+      AddressSettings pagedDestination = new AddressSettings();
+      pagedDestination.setPageSizeBytes(10 * 1024);
+      pagedDestination.setMaxSizeBytes(200 * 1024);
+      pagedDestination.setDepageBufferTime(100);
+
+      addresses.put("#", pagedDestination);
+
+      server = createServer(true, configuration, -1, -1, addresses);
+
+      server.start();
+
+      sf = createSessionFactory(locator);
+
+      ClientSession session = sf.createSession(false, true, true);
+
+      session.createQueue(ADDRESS, ADDRESS, true);
+
+      ClientProducer producer = session.createProducer(ADDRESS);
+
+      final int NUMBER_OF_MESSAGES = 2000;
+
+      for (int i = 0; i < NUMBER_OF_MESSAGES; i++)
+      {
+         ClientMessage msg = session.createMessage(true);
+         msg.getBodyBuffer().writeBytes(new byte[512]);
+         msg.putIntProperty("id", i);
+
+         producer.send(msg);
+      }
+
+      Assert.assertTrue(server.getPagingManager().getPageStore(ADDRESS).isPaging());
+
+      Queue queue = (Queue) server.getPostOffice().getBinding(ADDRESS).getBindable();
+
+      session.start();
+
+      ClientConsumer consumer = session.createConsumer(ADDRESS);
+
+      float maxDepageRate = 0;
+
+      for (int i = 0; i < NUMBER_OF_MESSAGES; i++)
+      {
+         ClientMessage msg = consumer.receive(5000);
+         Assert.assertNotNull(msg);
+         Assert.assertEquals(i, msg.getIntProperty("id").intValue());
+         msg.acknowledge();
+
+         maxDepageRate = Math.max(maxDepageRate, queue.getDepageRate());
+      }
+
+      Assert.assertNull(consumer.receiveImmediate());
+
+      // the rates are measured once a second
+      Thread.sleep(1100);
+
+      maxDepageRate = Math.max(maxDepageRate, queue.getDepageRate());
+
+      Assert.assertTrue(maxDepageRate > 0);
+
+      session.close();
+   }
+
    @Test
    public void testPagingDifferentSizes() throws Exception
    {
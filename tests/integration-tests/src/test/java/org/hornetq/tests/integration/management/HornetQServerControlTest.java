@@ -133,6 +133,7 @@ public class HornetQServerControlTest extends ManagementTestBase
       Assert.assertEquals(conf.isCreateBindingsDir(), serverControl.isCreateBindingsDir());
       Assert.assertEquals(conf.isCreateJournalDir(), serverControl.isCreateJournalDir());
       Assert.assertEquals(conf.getPagingDirectory(), serverControl.getPagingDirectory());
+      Assert.assertEquals(conf.getGlobalMaxSize(), serverControl.getGlobalMaxSize());
       Assert.assertEquals(conf.getLargeMessagesDirectory(), serverControl.getLargeMessagesDirectory());
       Assert.assertEquals(conf.isWildcardRoutingEnabled(), serverControl.isWildcardRoutingEnabled());
       Assert.assertEquals(conf.getTransactionTimeout(), serverControl.getTransactionTimeout());
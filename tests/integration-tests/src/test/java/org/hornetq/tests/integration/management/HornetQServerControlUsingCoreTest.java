@@ -311,6 +311,16 @@ public class HornetQServerControlUsingCoreTest extends HornetQServerControlTest
             return (String) proxy.retrieveAttributeValue("pagingDirectory");
          }
 
+         public long getGlobalMaxSize()
+         {
+            return (Long) proxy.retrieveAttributeValue("globalMaxSize", Long.class);
+         }
+
+         public long getGlobalSize()
+         {
+            return (Long) proxy.retrieveAttributeValue("globalSize", Long.class);
+         }
+
          public int getScheduledThreadPoolMaxSize()
          {
             return (Integer) proxy.retrieveAttributeValue("scheduledThreadPoolMaxSize");
@@ -213,6 +213,61 @@ public class QueueControlTest extends ManagementTestBase
       session.deleteQueue(queue);
    }
 
+   @Test
+   public void testGetGroupCount() throws Exception
+   {
+      SimpleString address = RandomUtil.randomSimpleString();
+      SimpleString queue = RandomUtil.randomSimpleString();
+
+      AddressSettings addressSettings = new AddressSettings();
+      addressSettings.setMaxGroups(2);
+      server.getAddressSettingsRepository().addMatch(address.toString(), addressSettings);
+
+      session.createQueue(address, queue, null, false);
+
+      QueueControl queueControl = createManagementControl(address, queue);
+      Assert.assertEquals(0, queueControl.getGroupCount());
+      Assert.assertEquals(0, queueControl.getGroupsEvicted());
+
+      ClientConsumer consumer = session.createConsumer(queue);
+      ClientProducer producer = session.createProducer(address);
+
+      for (int i = 0; i < 3; i++)
+      {
+         ClientMessage message = session.createMessage(false);
+         message.putStringProperty(Message.HDR_GROUP_ID, new SimpleString("group" + i));
+         producer.send(message);
+
+         message = consumer.receive(500);
+         Assert.assertNotNull(message);
+         message.acknowledge();
+      }
+      session.commit();
+
+      Assert.assertEquals(2, queueControl.getGroupCount());
+      Assert.assertEquals(1, queueControl.getGroupsEvicted());
+
+      consumer.close();
+      Assert.assertEquals(0, queueControl.getGroupCount());
+
+      session.deleteQueue(queue);
+   }
+
+   @Test
+   public void testGetDepageRate() throws Exception
+   {
+      SimpleString address = RandomUtil.randomSimpleString();
+      SimpleString queue = RandomUtil.randomSimpleString();
+
+      session.createQueue(address, queue, null, false);
+
+      QueueControl queueControl = createManagementControl(address, queue);
+      // nothing was paged on the address
+      Assert.assertEquals(0, queueControl.getDepageRate(), 0);
+
+      session.deleteQueue(queue);
+   }
+
    @Test
    public void testGetConsumerJSON() throws Exception
    {
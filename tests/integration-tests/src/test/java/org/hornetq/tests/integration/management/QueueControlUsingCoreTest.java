@@ -124,6 +124,21 @@ public class QueueControlUsingCoreTest extends QueueControlTest
             return (Integer) proxy.retrieveAttributeValue("messagesAcknowledged");
          }
 
+         public int getGroupCount()
+         {
+            return (Integer) proxy.retrieveAttributeValue("groupCount");
+         }
+
+         public long getGroupsEvicted()
+         {
+            return ((Number) proxy.retrieveAttributeValue("groupsEvicted")).longValue();
+         }
+
+         public float getDepageRate()
+         {
+            return ((Number) proxy.retrieveAttributeValue("depageRate")).floatValue();
+         }
+
          public void resetMessagesAdded() throws Exception
          {
             proxy.invokeOperation("resetMessagesAdded");
@@ -12,9 +12,15 @@
  */
 package org.hornetq.tests.integration.paging;
 
+import javax.transaction.xa.XAResource;
 import javax.transaction.xa.Xid;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.client.ClientConsumer;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.api.core.client.ClientProducer;
 import org.hornetq.api.core.client.ClientSession;
 import org.hornetq.api.core.client.ClientSessionFactory;
 import org.hornetq.api.core.client.ServerLocator;
@@ -22,6 +28,7 @@ import org.hornetq.core.paging.cursor.PageSubscription;
 import org.hornetq.core.paging.cursor.PageSubscriptionCounter;
 import org.hornetq.core.paging.cursor.impl.PageSubscriptionCounterImpl;
 import org.hornetq.core.persistence.StorageManager;
+import org.hornetq.core.persistence.impl.journal.JournalRecordIds;
 import org.hornetq.core.persistence.impl.journal.OperationContextImpl;
 import org.hornetq.core.server.HornetQServer;
 import org.hornetq.core.server.Queue;
@@ -88,64 +95,49 @@ public class PagingCounterTest extends ServiceTestBase
    }
 
    @Test
-   public void testCleanupCounter() throws Exception
+   public void testRestartCounterFromPageCounts() throws Exception
    {
       ClientSessionFactory sf = createSessionFactory(sl);
-      ClientSession session = sf.createSession();
-
-      try
-      {
-         Queue queue = server.createQueue(new SimpleString("A1"), new SimpleString("A1"), null, true, false);
-
-         PageSubscriptionCounter counter = locateCounter(queue);
-
-         StorageManager storage = server.getStorageManager();
+      ClientSession session = sf.createSession(false, true, true);
 
-         Transaction tx = new TransactionImpl(server.getStorageManager());
+      Queue queue = server.createQueue(new SimpleString("A1"), new SimpleString("A1"), null, true, false);
 
-         for (int i = 0; i < 2100; i++)
-         {
+      startPaging();
 
-            counter.increment(tx, 1);
-
-            if (i % 200 == 0)
-            {
-               tx.commit();
+      sendMessages(session, 300);
 
-               storage.waitOnOperations();
+      PageSubscriptionCounter counter = locateCounter(queue);
 
-               assertEquals(i + 1, counter.getValue());
+      assertEquals(300, counter.getValue());
 
-               tx = new TransactionImpl(server.getStorageManager());
-            }
-         }
+      consumeMessages(session, 50);
 
-         tx.commit();
+      session.close();
 
-         storage.waitOnOperations();
+      sf.close();
 
-         assertEquals(2100, counter.getValue());
+      sl.close();
 
-         server.stop();
+      server.stop();
 
-         server = newHornetQServer();
+      // only the counts of the closed pages are stored
+      HashMap<Integer, AtomicInteger> counts = countJournalLivingRecords(server.getConfiguration());
+      assertNotNull(counts.get((int)JournalRecordIds.PAGE_CURSOR_PAGE_COUNT));
+      assertNull(counts.get((int)JournalRecordIds.PAGE_CURSOR_COUNTER_INC));
+      assertNull(counts.get((int)JournalRecordIds.PAGE_CURSOR_COUNTER_VALUE));
+      assertNull(counts.get((int)JournalRecordIds.PAGE_CURSOR_PENDING_COUNTER));
 
-         server.start();
+      server = newHornetQServer();
 
-         queue = server.locateQueue(new SimpleString("A1"));
+      server.start();
 
-         assertNotNull(queue);
+      queue = server.locateQueue(new SimpleString("A1"));
 
-         counter = locateCounter(queue);
+      assertNotNull(queue);
 
-         assertEquals(2100, counter.getValue());
+      counter = locateCounter(queue);
 
-      }
-      finally
-      {
-         sf.close();
-         session.close();
-      }
+      assertEquals(250, counter.getValue());
    }
 
 
@@ -215,24 +207,67 @@ public class PagingCounterTest extends ServiceTestBase
    @Test
    public void testRestartCounter() throws Exception
    {
+      ClientSessionFactory sf = createSessionFactory(sl);
+      ClientSession session = sf.createSession(false, true, true);
+
       Queue queue = server.createQueue(new SimpleString("A1"), new SimpleString("A1"), null, true, false);
 
+      startPaging();
+
+      sendMessages(session, 1);
+
       PageSubscriptionCounter counter = locateCounter(queue);
 
-      StorageManager storage = server.getStorageManager();
+      assertEquals(1, counter.getValue());
 
-      Transaction tx = new TransactionImpl(server.getStorageManager());
+      session.close();
 
-      counter.increment(tx, 1);
+      sf.close();
 
-      assertEquals(0, counter.getValue());
+      sl.close();
 
-      tx.commit();
+      server.stop();
 
-      storage.waitOnOperations();
+      server = newHornetQServer();
+
+      server.start();
+
+      queue = server.locateQueue(new SimpleString("A1"));
+
+      assertNotNull(queue);
+
+      counter = locateCounter(queue);
 
       assertEquals(1, counter.getValue());
 
+   }
+
+   @Test
+   public void testRestartCounterIncrementedOnTransaction() throws Exception
+   {
+      ClientSessionFactory sf = createSessionFactory(sl);
+      ClientSession session = sf.createSession(false, false, false);
+
+      Queue queue = server.createQueue(new SimpleString("A1"), new SimpleString("A1"), null, true, false);
+
+      startPaging();
+
+      PageSubscriptionCounter counter = locateCounter(queue);
+
+      sendMessages(session, 100);
+
+      assertEquals(0, counter.getValue());
+
+      session.commit();
+
+      consumeMessages(session, 30);
+
+      session.commit();
+
+      session.close();
+
+      sf.close();
+
       sl.close();
 
       server.stop();
@@ -247,8 +282,47 @@ public class PagingCounterTest extends ServiceTestBase
 
       counter = locateCounter(queue);
 
-      assertEquals(1, counter.getValue());
+      assertEquals(70, counter.getValue());
+   }
+
+   @Test
+   public void testRestartCounterWithRolledBackTransaction() throws Exception
+   {
+      ClientSessionFactory sf = createSessionFactory(sl);
+      ClientSession session = sf.createSession(false, false, false);
+
+      Queue queue = server.createQueue(new SimpleString("A1"), new SimpleString("A1"), null, true, false);
+
+      startPaging();
+
+      PageSubscriptionCounter counter = locateCounter(queue);
+
+      // the messages are written to the pages, and ignored once the transaction is rolled back
+      sendMessages(session, 20);
+
+      session.rollback();
+
+      sendMessages(session, 10);
+
+      session.commit();
+
+      session.close();
+
+      sf.close();
+
+      sl.close();
+
+      server.stop();
+
+      server = newHornetQServer();
 
+      server.start();
+
+      queue = server.locateQueue(new SimpleString("A1"));
+
+      assertNotNull(queue);
+
+      assertEquals(10, locateCounter(queue).getValue());
    }
 
    /**
@@ -272,26 +346,30 @@ public class PagingCounterTest extends ServiceTestBase
    {
       Xid xid = newXID();
 
+      ClientSessionFactory sf = createSessionFactory(sl);
+      ClientSession session = sf.createSession(true, false, false);
+
       Queue queue = server.createQueue(new SimpleString("A1"), new SimpleString("A1"), null, true, false);
 
+      startPaging();
+
       PageSubscriptionCounter counter = locateCounter(queue);
 
-      StorageManager storage = server.getStorageManager();
+      session.start(xid, XAResource.TMNOFLAGS);
 
-      Transaction tx = new TransactionImpl(xid, server.getStorageManager(), 300);
+      sendMessages(session, 200);
 
-      for (int i = 0; i < 2000; i++)
-      {
-         counter.increment(tx, 1);
-      }
+      session.end(xid, XAResource.TMSUCCESS);
+
+      session.prepare(xid);
 
       assertEquals(0, counter.getValue());
 
-      tx.prepare();
+      session.close();
 
-      storage.waitOnOperations();
+      sf.close();
 
-      assertEquals(0, counter.getValue());
+      sl.close();
 
       server.stop();
 
@@ -299,7 +377,7 @@ public class PagingCounterTest extends ServiceTestBase
 
       server.start();
 
-      storage = server.getStorageManager();
+      StorageManager storage = server.getStorageManager();
 
       queue = server.locateQueue(new SimpleString("A1"));
 
@@ -307,7 +385,7 @@ public class PagingCounterTest extends ServiceTestBase
 
       counter = locateCounter(queue);
 
-      tx = server.getResourceManager().removeTransaction(xid);
+      Transaction tx = server.getResourceManager().removeTransaction(xid);
 
       assertNotNull(tx);
 
@@ -317,11 +395,46 @@ public class PagingCounterTest extends ServiceTestBase
 
       storage.waitOnOperations();
 
-      assertEquals(2000, counter.getValue());
+      assertEquals(200, counter.getValue());
 
 
    }
 
+   private void startPaging() throws Exception
+   {
+      server.getPagingManager().getPageStore(new SimpleString("A1")).startPaging();
+   }
+
+   private void sendMessages(ClientSession session, int numberOfMessages) throws Exception
+   {
+      ClientProducer producer = session.createProducer("A1");
+
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         ClientMessage message = session.createMessage(true);
+         message.getBodyBuffer().writeBytes(new byte[1024]);
+         producer.send(message);
+      }
+
+      producer.close();
+   }
+
+   private void consumeMessages(ClientSession session, int numberOfMessages) throws Exception
+   {
+      ClientConsumer consumer = session.createConsumer("A1");
+
+      session.start();
+
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+         assertNotNull(message);
+         message.acknowledge();
+      }
+
+      consumer.close();
+   }
+
 
    @Override
    @Before
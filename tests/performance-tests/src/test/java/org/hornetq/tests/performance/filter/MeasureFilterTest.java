@@ -0,0 +1,144 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.tests.performance.filter;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.filter.Filter;
+import org.hornetq.core.filter.impl.FilterImpl;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.impl.ServerMessageImpl;
+import org.hornetq.tests.util.UnitTestCase;
+import org.junit.Test;
+
+/**
+ * Measures how many messages per second a filter evaluates for the usual selector shapes, from
+ * one thread and from several threads sharing the same filter the way routing and delivery do.
+ */
+public class MeasureFilterTest extends UnitTestCase
+{
+   private static final int NUMBER_OF_MATCHES = Integer.getInteger("HORNETQ_TEST_SAMPLES", 1000000);
+
+   private static final int NUMBER_OF_THREADS = 4;
+
+   private static final String[] SELECTORS = {"color = 'red'",
+                                              "color IN ('red', 'green', 'blue', 'white', 'black')",
+                                              "color LIKE 'r%'",
+                                              "weight > 10 AND weight < 1000",
+                                              "HQPriority > 4",
+                                              "color = 'red' AND (weight BETWEEN 10 AND 20 OR urgent)",
+                                              "missing IS NULL OR color <> 'red'"};
+
+   @Test
+   public void testSelectors() throws Exception
+   {
+      ServerMessage[] messages = createMessages();
+
+      for (String selector : SELECTORS)
+      {
+         Filter filter = FilterImpl.createFilter(selector);
+
+         // warm up
+         match(filter, messages, NUMBER_OF_MATCHES / 10);
+
+         long singleThread = measure(filter, messages, 1);
+
+         long multiThread = measure(filter, messages, NUMBER_OF_THREADS);
+
+         System.out.println(selector + ": " +
+                               singleThread +
+                               " matches/s on 1 thread, " +
+                               multiThread +
+                               " matches/s on " +
+                               NUMBER_OF_THREADS +
+                               " threads");
+      }
+   }
+
+   private long measure(final Filter filter, final ServerMessage[] messages, final int threads) throws Exception
+   {
+      final CountDownLatch start = new CountDownLatch(1);
+      final CountDownLatch done = new CountDownLatch(threads);
+      final AtomicLong matched = new AtomicLong();
+
+      for (int i = 0; i < threads; i++)
+      {
+         Thread thread = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  start.await();
+                  matched.addAndGet(match(filter, messages, NUMBER_OF_MATCHES));
+               }
+               catch (InterruptedException e)
+               {
+                  Thread.currentThread().interrupt();
+               }
+               finally
+               {
+                  done.countDown();
+               }
+            }
+         };
+         thread.start();
+      }
+
+      long begin = System.nanoTime();
+      start.countDown();
+      done.await();
+      long elapsed = System.nanoTime() - begin;
+
+      // so the matches can't be optimized away
+      assertTrue(matched.get() > 0);
+
+      return (long) threads * NUMBER_OF_MATCHES * 1000000000L / elapsed;
+   }
+
+   private static int match(final Filter filter, final ServerMessage[] messages, final int count)
+   {
+      int matched = 0;
+
+      for (int i = 0; i < count; i++)
+      {
+         if (filter.match(messages[i % messages.length]))
+         {
+            matched++;
+         }
+      }
+
+      return matched;
+   }
+
+   private static ServerMessage[] createMessages()
+   {
+      String[] colors = {"red", "green", "blue", "yellow"};
+
+      ServerMessage[] messages = new ServerMessage[16];
+
+      for (int i = 0; i < messages.length; i++)
+      {
+         messages[i] = new ServerMessageImpl(i, 1000);
+         messages[i].setPriority((byte) (i % 10));
+         messages[i].putStringProperty(new SimpleString("color"), new SimpleString(colors[i % colors.length]));
+         messages[i].putIntProperty(new SimpleString("weight"), i * 3);
+         messages[i].putBooleanProperty(new SimpleString("urgent"), i % 2 == 0);
+      }
+
+      return messages;
+   }
+}
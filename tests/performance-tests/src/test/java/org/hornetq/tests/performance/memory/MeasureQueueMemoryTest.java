@@ -0,0 +1,144 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.tests.performance.memory;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.client.ClientProducer;
+import org.hornetq.api.core.client.ClientSession;
+import org.hornetq.api.core.client.ClientSessionFactory;
+import org.hornetq.api.core.client.ServerLocator;
+import org.hornetq.core.server.HornetQServer;
+import org.hornetq.core.server.Queue;
+import org.hornetq.tests.util.ServiceTestBase;
+import org.hornetq.tests.util.UnitTestCase;
+import org.junit.Test;
+
+/**
+ * Measures how much heap the server keeps per queued message.
+ * <p>
+ * Every message is routed to one queue and then to several queues: the difference between both
+ * runs is the cost of each extra {@link org.hornetq.core.server.MessageReference} on a queue,
+ * which doesn't depend on the message size.
+ */
+public class MeasureQueueMemoryTest extends ServiceTestBase
+{
+   private static final int NUMBER_OF_MESSAGES = Integer.getInteger("HORNETQ_TEST_SAMPLES", 100000);
+
+   private static final int NUMBER_OF_QUEUES = 5;
+
+   /**
+    * Reference plus its node on the queue, with compressed oops.
+    */
+   private static final long MAX_BYTES_PER_REFERENCE = 100;
+
+   private static final SimpleString ADDRESS = new SimpleString("MeasureQueueMemory");
+
+   @Test
+   public void testNonDurableMessages() throws Exception
+   {
+      long bytesPerReference = measure(false);
+
+      assertTrue("each reference takes " + bytesPerReference + " bytes", bytesPerReference <= MAX_BYTES_PER_REFERENCE);
+   }
+
+   @Test
+   public void testDurableMessages() throws Exception
+   {
+      // durable references also have their record on the journal, so this is only reported
+      measure(true);
+   }
+
+   private long measure(final boolean durable) throws Exception
+   {
+      long perMessage = bytesPerMessage(durable, 1);
+
+      long perMessageFanOut = bytesPerMessage(durable, NUMBER_OF_QUEUES);
+
+      long perReference = (perMessageFanOut - perMessage) / (NUMBER_OF_QUEUES - 1);
+
+      System.out.println((durable ? "Durable" : "Non durable") + " messages: " +
+                            perMessage +
+                            " bytes per queued message, " +
+                            perReference +
+                            " bytes per extra reference");
+
+      return perReference;
+   }
+
+   private long bytesPerMessage(final boolean durable, final int numberOfQueues) throws Exception
+   {
+      HornetQServer server = createServer(durable);
+      server.start();
+
+      ServerLocator locator = createInVMNonHALocator();
+      locator.setBlockOnDurableSend(false);
+      locator.setBlockOnNonDurableSend(false);
+
+      try
+      {
+         ClientSessionFactory factory = createSessionFactory(locator);
+         ClientSession session = factory.createSession(false, true, true);
+
+         for (int i = 0; i < numberOfQueues; i++)
+         {
+            session.createQueue(ADDRESS, ADDRESS.concat("." + i), durable);
+         }
+
+         ClientProducer producer = session.createProducer(ADDRESS);
+
+         // warm up the code paths and the journal files before measuring
+         producer.send(session.createMessage(durable));
+
+         Queue lastQueue = server.locateQueue(ADDRESS.concat("." + (numberOfQueues - 1)));
+         waitForMessages(lastQueue, 1);
+
+         long usedBefore = usedMemory();
+
+         for (int i = 0; i < NUMBER_OF_MESSAGES; i++)
+         {
+            producer.send(session.createMessage(durable));
+         }
+
+         waitForMessages(lastQueue, NUMBER_OF_MESSAGES + 1);
+
+         long usedAfter = usedMemory();
+
+         session.close();
+
+         return (usedAfter - usedBefore) / NUMBER_OF_MESSAGES;
+      }
+      finally
+      {
+         locator.close();
+         server.stop();
+      }
+   }
+
+   private static void waitForMessages(final Queue queue, final long count) throws InterruptedException
+   {
+      long timeout = System.currentTimeMillis() + 60000;
+      while (queue.getMessageCount() < count && System.currentTimeMillis() < timeout)
+      {
+         Thread.sleep(10);
+      }
+      assertEquals(count, queue.getMessageCount());
+   }
+
+   private static long usedMemory()
+   {
+      Runtime runtime = Runtime.getRuntime();
+      UnitTestCase.forceGC();
+      UnitTestCase.forceGC();
+      return runtime.totalMemory() - runtime.freeMemory();
+   }
+}
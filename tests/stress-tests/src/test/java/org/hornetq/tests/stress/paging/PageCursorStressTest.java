@@ -16,6 +16,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
@@ -29,8 +30,10 @@ import org.hornetq.core.paging.cursor.PageCursorProvider;
 import org.hornetq.core.paging.cursor.PageSubscription;
 import org.hornetq.core.paging.cursor.PagedReference;
 import org.hornetq.core.paging.cursor.impl.PageCursorProviderImpl;
+import org.hornetq.core.paging.cursor.impl.PagePositionImpl;
 import org.hornetq.core.paging.impl.PagingStoreImpl;
 import org.hornetq.core.persistence.StorageManager;
+import org.hornetq.core.persistence.impl.journal.JournalRecordIds;
 import org.hornetq.core.persistence.impl.journal.OperationContextImpl;
 import org.hornetq.core.server.HornetQServer;
 import org.hornetq.core.server.Queue;
@@ -392,6 +395,107 @@ public class PageCursorStressTest extends ServiceTestBase
 
    }
 
+   @Test
+   public void testRepeatedAcksAndBookmarkDeletedOnPageCompletion() throws Exception
+   {
+      final int NUM_MESSAGES = 30;
+
+      int numberOfPages = addMessages(NUM_MESSAGES, 1024 * 1024);
+
+      System.out.println("Number of pages = " + numberOfPages);
+
+      PageSubscription cursor = lookupCursorProvider().getSubscription(queue.getID());
+
+      LinkedListIterator<PagedReference> iterator = cursor.iterator();
+
+      List<PagedReference> firstPageRefs = new ArrayList<PagedReference>();
+      PagedReference msg = iterator.next();
+      long firstPage = msg.getPosition().getPageNr();
+      while (msg.getPosition().getPageNr() == firstPage)
+      {
+         firstPageRefs.add(msg);
+         msg = iterator.next();
+         assertNotNull(msg);
+      }
+      iterator.close();
+
+      assertTrue("expected more than two messages on the page", firstPageRefs.size() > 2);
+
+      // a bookmark is an ack record with a negative message number, it doesn't confirm any message
+      cursor.bookmark(new PagePositionImpl(firstPage, -1));
+
+      // the executor is held so the acks are all stored by the same flush
+      final CountDownLatch holdExecutor = new CountDownLatch(1);
+      cursor.getExecutor().execute(new Runnable()
+      {
+         public void run()
+         {
+            try
+            {
+               holdExecutor.await();
+            }
+            catch (InterruptedException e)
+            {
+               Thread.currentThread().interrupt();
+            }
+         }
+      });
+
+      // every message but the last one of the page is acked twice, through a record of its own and the record
+      // of the page
+      for (PagedReference ref : firstPageRefs.subList(0, firstPageRefs.size() - 1))
+      {
+         cursor.ack(ref);
+         cursor.confirmPosition(new PagePositionImpl(ref.getPosition().getPageNr(), ref.getPosition().getMessageNr()));
+      }
+
+      holdExecutor.countDown();
+
+      cursor.flushExecutors();
+
+      server.getStorageManager().waitOnOperations();
+
+      assertFalse(cursor.isComplete(firstPage));
+
+      server.stop();
+
+      HashMap<Integer, AtomicInteger> counts = countJournalLivingRecords(server.getConfiguration());
+      assertEquals(1 + firstPageRefs.size() - 1, counts.get((int) JournalRecordIds.ACKNOWLEDGE_CURSOR).get());
+      assertEquals(1, counts.get((int) JournalRecordIds.ACKNOWLEDGE_CURSOR_PAGE).get());
+
+      OperationContextImpl.clearContext();
+
+      server.start();
+
+      // the repeated records are reloaded without counting the messages twice
+      cursor = lookupCursorProvider().getSubscription(queue.getID());
+      assertFalse(cursor.isComplete(firstPage));
+
+      iterator = cursor.iterator();
+      msg = iterator.next();
+      PagedReference lastRef = firstPageRefs.get(firstPageRefs.size() - 1);
+      assertEquals(lastRef.getMessage().getIntProperty("key"), msg.getMessage().getIntProperty("key"));
+      cursor.ack(msg);
+      iterator.close();
+
+      cursor.flushExecutors();
+
+      server.getStorageManager().waitOnOperations();
+
+      // completing the page deletes every ack record of the page, the repeated ones and the bookmark too
+      cursor.cleanupEntries(false);
+
+      server.getStorageManager().waitOnOperations();
+
+      server.stop();
+
+      counts = countJournalLivingRecords(server.getConfiguration());
+      AtomicInteger acks = counts.get((int) JournalRecordIds.ACKNOWLEDGE_CURSOR);
+      assertTrue("ack records left: " + acks, acks == null || acks.get() == 0);
+      AtomicInteger pageAcks = counts.get((int) JournalRecordIds.ACKNOWLEDGE_CURSOR_PAGE);
+      assertTrue("page ack records left: " + pageAcks, pageAcks == null || pageAcks.get() == 0);
+   }
+
    @Test
    public void testConsumeLivePage() throws Exception
    {
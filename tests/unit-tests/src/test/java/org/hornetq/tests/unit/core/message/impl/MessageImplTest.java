@@ -16,10 +16,14 @@ import java.util.ArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import io.netty.buffer.CompositeByteBuf;
 import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.HornetQBuffers;
 import org.hornetq.api.core.Message;
 import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.buffers.impl.ChannelBufferWrapper;
 import org.hornetq.core.client.impl.ClientMessageImpl;
+import org.hornetq.core.message.impl.MessageImpl;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionSendMessage;
 import org.hornetq.core.server.impl.ServerMessageImpl;
 import org.hornetq.tests.util.RandomUtil;
@@ -226,6 +230,58 @@ public class MessageImplTest extends UnitTestCase
       }
    }
 
+   @Test
+   public void testCopySharesBodyUntilChanged() throws Exception
+   {
+      final int bodySize = 10 * 1024;
+
+      ServerMessageImpl msg = new ServerMessageImpl(1, 1024);
+      msg.setAddress(new SimpleString("original"));
+      for (int i = 0; i < bodySize; i++)
+      {
+         msg.getBodyBuffer().writeByte(getSamplebyte(i));
+      }
+
+      ServerMessageImpl copy = (ServerMessageImpl) msg.copy(2);
+      copy.setAddress(new SimpleString("copy"));
+      copy.putStringProperty("prop", "value");
+
+      // the copy encodes its own headers without touching the original
+      HornetQBuffer encoded = HornetQBuffers.dynamicBuffer(copy.getEncodeSize());
+      copy.encode(encoded);
+
+      ServerMessageImpl decoded = new ServerMessageImpl(-1, 50);
+      decoded.decode(encoded);
+
+      Assert.assertEquals(2, decoded.getMessageID());
+      Assert.assertEquals(new SimpleString("copy"), decoded.getAddress());
+      Assert.assertEquals("value", decoded.getStringProperty("prop"));
+      Assert.assertEquals(new SimpleString("original"), msg.getAddress());
+      Assert.assertFalse(msg.containsProperty("prop"));
+      assertBody(decoded, bodySize);
+
+      Assert.assertTrue(ChannelBufferWrapper.unwrap(copy.getWholeBuffer().byteBuf()) instanceof CompositeByteBuf);
+
+      // changing the body of either message doesn't change the other
+      copy.getBodyBuffer().setByte(MessageImpl.BODY_OFFSET, (byte) -1);
+      msg.getBodyBuffer().setByte(MessageImpl.BODY_OFFSET + 1, (byte) -2);
+
+      Assert.assertEquals((byte) -1, copy.getBodyBuffer().getByte(MessageImpl.BODY_OFFSET));
+      Assert.assertEquals(getSamplebyte(1), copy.getBodyBuffer().getByte(MessageImpl.BODY_OFFSET + 1));
+      Assert.assertEquals(getSamplebyte(0), msg.getBodyBuffer().getByte(MessageImpl.BODY_OFFSET));
+      Assert.assertEquals((byte) -2, msg.getBodyBuffer().getByte(MessageImpl.BODY_OFFSET + 1));
+   }
+
+   private void assertBody(final ServerMessageImpl message, final int bodySize)
+   {
+      HornetQBuffer body = message.getBodyBufferCopy();
+      Assert.assertEquals(bodySize, body.readableBytes());
+      for (int i = 0; i < bodySize; i++)
+      {
+         Assert.assertEquals(getSamplebyte(i), body.readByte());
+      }
+   }
+
    @Test
    public void testMessageCopyIssue() throws Exception
    {
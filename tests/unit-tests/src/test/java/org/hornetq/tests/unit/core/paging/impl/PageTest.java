@@ -76,6 +76,67 @@ public class PageTest extends UnitTestCase
       testDamagedPage(new FakeSequentialFileFactory(1, false), 100);
    }
 
+   @Test
+   public void testReadMessageWithNIO() throws Exception
+   {
+      recreateDirectory(getTestDir());
+      testReadMessage(new NIOSequentialFileFactory(getTestDir()), 100);
+   }
+
+   @Test
+   public void testReadMessageFake() throws Exception
+   {
+      testReadMessage(new FakeSequentialFileFactory(1, false), 10);
+   }
+
+   @Test
+   public void testCompressedPageWithNIO() throws Exception
+   {
+      recreateDirectory(getTestDir());
+      testCompressedPage(new NIOSequentialFileFactory(getTestDir()), 1000);
+   }
+
+   @Test
+   public void testCompressedPageFake() throws Exception
+   {
+      testCompressedPage(new FakeSequentialFileFactory(1, false), 10);
+   }
+
+   @Test
+   public void testWritesGatheredUntilSync() throws Exception
+   {
+      SequentialFileFactory factory = new FakeSequentialFileFactory(1, false);
+
+      SequentialFile file = factory.createSequentialFile("00010.page", 1);
+
+      Page impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+
+      impl.open();
+
+      addPageElements(new SimpleString("Test"), impl, 10);
+
+      Assert.assertEquals(10, impl.getNumberOfMessages());
+      Assert.assertEquals(0, file.size());
+
+      impl.sync();
+
+      Assert.assertEquals(impl.getSize(), file.size());
+
+      addPageElements(new SimpleString("Test"), impl, 10);
+
+      long size = impl.getSize();
+
+      impl.close();
+
+      file = factory.createSequentialFile("00010.page", 1);
+      file.open();
+      Assert.assertEquals(size, file.size());
+
+      impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+      Assert.assertEquals(20, impl.read(new NullStorageManager()).size());
+      impl.close();
+   }
+
    /**
     * Validate if everything we add is recovered
     */
@@ -150,11 +211,15 @@ public class PageTest extends UnitTestCase
       // Add one record that will be damaged
       addPageElements(simpleDestination, impl, 1);
 
+      impl.sync();
+
       long positionB = file.position();
 
       // Add more 10 as they will need to be ignored
       addPageElements(simpleDestination, impl, 10);
 
+      impl.sync();
+
       // Damage data... position the file on the middle between points A and B
       file.position(positionA + (positionB - positionA) / 2);
 
@@ -200,6 +265,162 @@ public class PageTest extends UnitTestCase
 
    }
 
+   /**
+    * Validate the messages read one by one through the index of the page
+    */
+   protected void testReadMessage(final SequentialFileFactory factory, final int numberOfElements) throws Exception
+   {
+      SequentialFile file = factory.createSequentialFile("00010.page", 1);
+
+      Page impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+
+      impl.open();
+
+      SimpleString simpleDestination = new SimpleString("Test");
+
+      ArrayList<HornetQBuffer> buffers = addPageElements(simpleDestination, impl, numberOfElements);
+
+      impl.close();
+
+      assertReadMessages(factory, simpleDestination, buffers, numberOfElements);
+
+      file = factory.createSequentialFile("00010.page", 1);
+      Page indexReader = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+      indexReader.open();
+      int[] staleIndex = indexReader.readIndex();
+      Assert.assertNotNull(staleIndex);
+      indexReader.closeRead();
+
+      // reopened to be written to again, as the current page is after a restart
+      file = factory.createSequentialFile("00010.page", 1);
+      impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+      impl.open();
+      impl.read(new NullStorageManager());
+
+      buffers.addAll(addPageElements(simpleDestination, impl, numberOfElements));
+
+      impl.sync();
+
+      // the index doesn't match the page until it's closed
+      file = factory.createSequentialFile("00010.page", 1);
+      Page reader = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+      reader.open();
+      Assert.assertNull(reader.readMessage(0, new NullStorageManager()));
+      reader.close();
+
+      impl.close();
+
+      assertReadMessages(factory, simpleDestination, buffers, numberOfElements);
+
+      // an index kept from before the page was written to again doesn't match it anymore
+      file = factory.createSequentialFile("00010.page", 1);
+      indexReader = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+      indexReader.open();
+      Assert.assertNull(indexReader.readMessage(0, staleIndex, new NullStorageManager()));
+      indexReader.closeRead();
+
+      impl.delete(null);
+
+      Assert.assertEquals(0, factory.listFiles("page").size());
+      Assert.assertEquals(0, factory.listFiles("index").size());
+   }
+
+   protected void testCompressedPage(final SequentialFileFactory factory, final int numberOfElements) throws Exception
+   {
+      SequentialFile file = factory.createSequentialFile("00010.page", 1);
+
+      Page impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+      impl.setCompressed(true);
+      impl.open();
+
+      SimpleString simpleDestination = new SimpleString("Test");
+
+      ArrayList<HornetQBuffer> buffers = addPageElements(simpleDestination, impl, numberOfElements);
+
+      int recordsSize = impl.getSize();
+
+      impl.close();
+
+      file = factory.createSequentialFile("00010.page", 1);
+      impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+      impl.open();
+
+      Assert.assertTrue(impl.getSize() < recordsSize);
+
+      assertMessages(simpleDestination, buffers, numberOfElements, impl.read(new NullStorageManager()));
+      Assert.assertEquals(recordsSize, impl.getRecordsSize());
+
+      // a compressed page has no index
+      Assert.assertNull(impl.readMessage(0, new NullStorageManager()));
+
+      // written to again without compression, as the current page after a restart
+      buffers.addAll(addPageElements(simpleDestination, impl, numberOfElements));
+
+      impl.close();
+
+      file = factory.createSequentialFile("00010.page", 1);
+      impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+      impl.open();
+
+      assertMessages(simpleDestination, buffers, numberOfElements, impl.read(new NullStorageManager()));
+
+      impl.close();
+   }
+
+   private void assertMessages(final SimpleString simpleDestination,
+                               final List<HornetQBuffer> buffers,
+                               final int numberOfElements,
+                               final List<PagedMessage> msgs)
+   {
+      Assert.assertEquals(buffers.size(), msgs.size());
+
+      for (int i = 0; i < msgs.size(); i++)
+      {
+         Assert.assertEquals(simpleDestination, msgs.get(i).getMessage().getAddress());
+         Assert.assertEquals(i % numberOfElements, msgs.get(i).getMessage().getMessageID());
+         UnitTestCase.assertEqualsByteArrays(buffers.get(i).toByteBuffer().array(), msgs.get(i)
+            .getMessage()
+            .getBodyBuffer()
+            .toByteBuffer()
+            .array());
+      }
+   }
+
+   private void assertReadMessages(final SequentialFileFactory factory,
+                                   final SimpleString simpleDestination,
+                                   final List<HornetQBuffer> buffers,
+                                   final int numberOfElements) throws Exception
+   {
+      SequentialFile file = factory.createSequentialFile("00010.page", 1);
+      Page impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+      impl.open();
+
+      // the index is parsed once and used for every message
+      int[] index = impl.readIndex();
+      Assert.assertNotNull(index);
+
+      // read backwards so every message is looked up on its own
+      for (int i = buffers.size() - 1; i >= 0; i--)
+      {
+         PagedMessage msg = i % 2 == 0 ? impl.readMessage(i, index, new NullStorageManager())
+            : impl.readMessage(i, new NullStorageManager());
+
+         Assert.assertNotNull(msg);
+         Assert.assertEquals(simpleDestination, msg.getMessage().getAddress());
+         // the ids start again at 0 for every batch of messages added
+         Assert.assertEquals(i % numberOfElements, msg.getMessage().getMessageID());
+         UnitTestCase.assertEqualsByteArrays(buffers.get(i).toByteBuffer().array(), msg.getMessage()
+            .getBodyBuffer()
+            .toByteBuffer()
+            .array());
+      }
+
+      Assert.assertNull(impl.readMessage(buffers.size(), new NullStorageManager()));
+      Assert.assertNull(impl.readMessage(buffers.size(), index, new NullStorageManager()));
+
+      impl.closeRead();
+   }
+
    /**
     * @param simpleDestination
     * @param page
@@ -14,12 +14,16 @@ package org.hornetq.tests.unit.core.paging.impl;
 
 import java.io.File;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 
 import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.journal.SequentialFileFactory;
 import org.hornetq.core.paging.PagedMessage;
+import org.hornetq.core.paging.PagingPlacementPolicy;
 import org.hornetq.core.paging.PagingStore;
 import org.hornetq.core.paging.impl.Page;
 import org.hornetq.core.paging.impl.PagingManagerImpl;
@@ -100,6 +104,168 @@ public class PagingManagerImplTest extends UnitTestCase
 
    }
 
+   @Test
+   public void testStripedPagingDirectories() throws Exception
+   {
+      HierarchicalRepository<AddressSettings> addressSettings = new HierarchicalObjectRepository<AddressSettings>();
+      addressSettings.setDefault(new AddressSettings());
+
+      String stripeDir = getTestDir() + "/page-stripe";
+
+      PagingStoreFactoryNIO storeFactory = new PagingStoreFactoryNIO(new NullStorageManager(),
+                                                                     getPageDir(),
+                                                                     100,
+                                                                     null,
+                                                                     getOrderedExecutor(),
+                                                                     true,
+                                                                     null,
+                                                                     -1,
+                                                                     Arrays.asList(stripeDir),
+                                                                     PagingPlacementPolicy.ROUND_ROBIN);
+
+      // the stores are placed in turn on the paging directories
+      SequentialFileFactory factoryA = storeFactory.newFileFactory(new SimpleString("a"));
+      SequentialFileFactory factoryB = storeFactory.newFileFactory(new SimpleString("b"));
+      SequentialFileFactory factoryC = storeFactory.newFileFactory(new SimpleString("c"));
+
+      Assert.assertEquals(new File(getPageDir()).getAbsoluteFile(), new File(factoryA.getDirectory()).getAbsoluteFile().getParentFile());
+      Assert.assertEquals(new File(stripeDir).getAbsoluteFile(), new File(factoryB.getDirectory()).getAbsoluteFile().getParentFile());
+      Assert.assertEquals(new File(getPageDir()).getAbsoluteFile(), new File(factoryC.getDirectory()).getAbsoluteFile().getParentFile());
+
+      // and found again on all of them on reload
+      PagingManagerImpl managerImpl = new PagingManagerImpl(storeFactory, addressSettings);
+
+      managerImpl.start();
+
+      List<SimpleString> names = Arrays.asList(managerImpl.getStoreNames());
+
+      Assert.assertEquals(3, names.size());
+      Assert.assertTrue(names.contains(new SimpleString("a")));
+      Assert.assertTrue(names.contains(new SimpleString("b")));
+      Assert.assertTrue(names.contains(new SimpleString("c")));
+
+      managerImpl.stop();
+   }
+
+   @Test
+   public void testGlobalMaxSize() throws Exception
+   {
+      HierarchicalRepository<AddressSettings> addressSettings = new HierarchicalObjectRepository<AddressSettings>();
+      AddressSettings settings = new AddressSettings();
+      settings.setAddressFullMessagePolicy(AddressFullMessagePolicy.PAGE);
+      addressSettings.setDefault(settings);
+      AddressSettings blockSettings = new AddressSettings();
+      blockSettings.setAddressFullMessagePolicy(AddressFullMessagePolicy.BLOCK);
+      addressSettings.addMatch("block", blockSettings);
+
+      PagingStoreFactoryNIO storeFactory =
+         new PagingStoreFactoryNIO(new NullStorageManager(), getPageDir(), 100, null, getOrderedExecutor(), true, null);
+
+      PagingManagerImpl managerImpl = new PagingManagerImpl(storeFactory, addressSettings, 1000);
+
+      managerImpl.start();
+
+      PagingStore pageStore = managerImpl.getPageStore(new SimpleString("page"));
+      PagingStore blockStore = managerImpl.getPageStore(new SimpleString("block"));
+
+      pageStore.addSize(600);
+      blockStore.addSize(300);
+
+      Assert.assertEquals(900, managerImpl.getGlobalSize());
+      Assert.assertFalse(managerImpl.isGlobalFull());
+
+      // the largest store is picked first
+      blockStore.addSize(200);
+
+      Assert.assertTrue(managerImpl.isGlobalFull());
+      Assert.assertTrue(pageStore.isOverGlobalMaxSize());
+      Assert.assertFalse(blockStore.isOverGlobalMaxSize());
+
+      pageStore.flushExecutors();
+      Assert.assertTrue(pageStore.isPaging());
+
+      final AtomicInteger ran = new AtomicInteger();
+      Runnable runnable = new Runnable()
+      {
+         public void run()
+         {
+            ran.incrementAndGet();
+         }
+      };
+
+      Assert.assertTrue(blockStore.checkMemory(runnable));
+      Assert.assertEquals(1, ran.get());
+
+      // the next store is picked once the global size keeps growing
+      blockStore.addSize(100);
+
+      Assert.assertTrue(blockStore.isOverGlobalMaxSize());
+      Assert.assertTrue(blockStore.checkMemory(runnable));
+      Assert.assertEquals(1, ran.get());
+
+      // the stores are only released a tenth under the global max size
+      pageStore.addSize(-150);
+
+      Assert.assertEquals(1050, managerImpl.getGlobalSize());
+      Assert.assertTrue(managerImpl.isGlobalFull());
+
+      pageStore.addSize(-100);
+
+      Assert.assertEquals(950, managerImpl.getGlobalSize());
+      Assert.assertTrue(managerImpl.isGlobalFull());
+      Assert.assertTrue(pageStore.isOverGlobalMaxSize());
+      Assert.assertTrue(blockStore.isOverGlobalMaxSize());
+
+      pageStore.addSize(-350);
+
+      Assert.assertEquals(600, managerImpl.getGlobalSize());
+      Assert.assertFalse(managerImpl.isGlobalFull());
+      Assert.assertFalse(pageStore.isOverGlobalMaxSize());
+      Assert.assertFalse(blockStore.isOverGlobalMaxSize());
+
+      blockStore.flushExecutors();
+      Assert.assertEquals(2, ran.get());
+
+      // an even share of the global max size between the two stores
+      Assert.assertEquals(500, managerImpl.getGlobalDepageSize());
+
+      managerImpl.stop();
+   }
+
+   @Test
+   public void testGlobalSizeWithoutGlobalMaxSize() throws Exception
+   {
+      HierarchicalRepository<AddressSettings> addressSettings = new HierarchicalObjectRepository<AddressSettings>();
+      AddressSettings settings = new AddressSettings();
+      settings.setAddressFullMessagePolicy(AddressFullMessagePolicy.PAGE);
+      addressSettings.setDefault(settings);
+
+      PagingStoreFactoryNIO storeFactory =
+         new PagingStoreFactoryNIO(new NullStorageManager(), getPageDir(), 100, null, getOrderedExecutor(), true, null);
+
+      PagingManagerImpl managerImpl = new PagingManagerImpl(storeFactory, addressSettings, -1);
+
+      managerImpl.start();
+
+      PagingStore store1 = managerImpl.getPageStore(new SimpleString("store1"));
+      PagingStore store2 = managerImpl.getPageStore(new SimpleString("store2"));
+
+      store1.addSize(600);
+      store2.addSize(300);
+
+      // added up from the stores as no global size is kept
+      Assert.assertEquals(900, managerImpl.getGlobalSize());
+      Assert.assertFalse(managerImpl.isGlobalFull());
+      Assert.assertFalse(store1.isOverGlobalMaxSize());
+      Assert.assertEquals(-1, managerImpl.getGlobalDepageSize());
+
+      store1.addSize(-600);
+
+      Assert.assertEquals(300, managerImpl.getGlobalSize());
+
+      managerImpl.stop();
+   }
+
    @Override
    @Before
    public void setUp() throws Exception
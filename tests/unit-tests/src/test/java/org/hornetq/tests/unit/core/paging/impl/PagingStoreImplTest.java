@@ -21,6 +21,8 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -37,6 +39,8 @@ import org.hornetq.core.paging.PagedMessage;
 import org.hornetq.core.paging.PagingManager;
 import org.hornetq.core.paging.PagingStore;
 import org.hornetq.core.paging.PagingStoreFactory;
+import org.hornetq.core.paging.cursor.PageCache;
+import org.hornetq.core.paging.cursor.impl.PageCacheBudget;
 import org.hornetq.core.paging.impl.Page;
 import org.hornetq.core.paging.impl.PageTransactionInfoImpl;
 import org.hornetq.core.paging.impl.PagingStoreImpl;
@@ -683,6 +687,85 @@ public class PagingStoreImplTest extends UnitTestCase
       storeImpl.stop();
    }
 
+   @Test
+   public void testNonTransactionalPagedWithoutSyncSurvivesCrash() throws Throwable
+   {
+      ScheduledExecutorService scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+
+      try
+      {
+         testNonTransactionalPagedWithoutSync(scheduledExecutor);
+      }
+      finally
+      {
+         scheduledExecutor.shutdown();
+      }
+   }
+
+   @Test
+   public void testNonTransactionalPagedWithoutSyncTimerSurvivesCrash() throws Throwable
+   {
+      testNonTransactionalPagedWithoutSync(null);
+   }
+
+   private void testNonTransactionalPagedWithoutSync(final ScheduledExecutorService scheduledExecutor) throws Throwable
+   {
+      clearDataRecreateServerDirs();
+      SequentialFileFactory factory = new NIOSequentialFileFactory(getPageDir());
+
+      AddressSettings settings = new AddressSettings();
+      settings.setAddressFullMessagePolicy(AddressFullMessagePolicy.PAGE);
+
+      // journal-sync-non-transactional = false, nothing asks for a sync
+      final PagingStore storeImpl =
+         new PagingStoreImpl(PagingStoreImplTest.destinationTestName, scheduledExecutor,
+                             TimeUnit.MILLISECONDS.toNanos(10), createMockManager(), createStorageManagerMock(),
+                             factory, new FakeStoreFactory(factory), new SimpleString("test"), settings,
+                             getExecutorFactory().getExecutor(), false);
+
+      storeImpl.start();
+
+      storeImpl.startPaging();
+
+      final int numberOfMessages = 10;
+
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         ServerMessage msg = createMessage(i, storeImpl, storeImpl.getAddress(), createRandomBuffer(i, 10));
+         msg.setDurable(true);
+
+         final RoutingContextImpl ctx = new RoutingContextImpl(null);
+         Assert.assertTrue(storeImpl.page(msg, ctx.getTransaction(), ctx.getContextListing(storeImpl.getStoreName()), lock));
+      }
+
+      int pageId = storeImpl.getCurrentWritingPage();
+
+      // read the page file as a restart after a crash would, while the store is still running
+      SequentialFileFactory crashFactory = new NIOSequentialFileFactory(getPageDir());
+
+      int recovered = 0;
+
+      long timeout = System.currentTimeMillis() + 5000;
+
+      while (recovered < numberOfMessages && System.currentTimeMillis() < timeout)
+      {
+         Page page = new Page(storeImpl.getStoreName(), createStorageManagerMock(), crashFactory,
+                              crashFactory.createSequentialFile(String.format("%09d.page", pageId), 1), pageId);
+         page.open();
+         recovered = page.read(createStorageManagerMock()).size();
+         page.close();
+
+         if (recovered < numberOfMessages)
+         {
+            Thread.sleep(10);
+         }
+      }
+
+      Assert.assertEquals(numberOfMessages, recovered);
+
+      storeImpl.stop();
+   }
+
    @Test
    public void testOrderOnPaging() throws Throwable
    {
@@ -829,6 +912,101 @@ public class PagingStoreImplTest extends UnitTestCase
       }
    }
 
+   @Test
+   public void testPageCacheBudget() throws Exception
+   {
+      SequentialFileFactory factory1 = new FakeSequentialFileFactory();
+      SequentialFileFactory factory2 = new FakeSequentialFileFactory();
+
+      PagingStoreImpl store1 = createStore(factory1, new SimpleString("store1"), null);
+      PagingStoreImpl store2 = createStore(factory2, new SimpleString("store2"), null);
+
+      addPages(store1, 3);
+      addPages(store2, 3);
+
+      Page page = store1.createPage(1);
+      page.open();
+      long pageSize = page.getSize();
+      page.close();
+
+      store1.stop();
+      store2.stop();
+
+      // every page has the same size, the budget holds two of them
+      PageCacheBudget budget = new PageCacheBudget(pageSize * 2);
+
+      store1 = createStore(factory1, new SimpleString("store1"), budget);
+      store2 = createStore(factory2, new SimpleString("store2"), budget);
+
+      PageCache store1Page1 = store1.getCursorProvider().getPageCache(1);
+      store1.getCursorProvider().getPageCache(2);
+      Assert.assertEquals(2, budget.getNumberOfPages());
+      Assert.assertEquals(pageSize * 2, budget.getSize());
+
+      Thread.sleep(1);
+
+      // page 1 becomes the most recently used, page 2 is evicted when another address needs the memory
+      Assert.assertSame(store1Page1, store1.getCursorProvider().getPageCache(1));
+
+      Thread.sleep(1);
+
+      PageCache store2Page1 = store2.getCursorProvider().getPageCache(1);
+      Assert.assertEquals(2, budget.getNumberOfPages());
+      Assert.assertEquals(pageSize * 2, budget.getSize());
+      Assert.assertSame(store1Page1, store1.getCursorProvider().getPageCache(1));
+      Assert.assertSame(store2Page1, store2.getCursorProvider().getPageCache(1));
+
+      // the pages being written to are not accounted
+      Assert.assertNotNull(store1.getCursorProvider().getPageCache(3));
+      Assert.assertEquals(2, budget.getNumberOfPages());
+
+      store1.stop();
+      Assert.assertEquals(1, budget.getNumberOfPages());
+      Assert.assertEquals(pageSize, budget.getSize());
+
+      store2.stop();
+      Assert.assertEquals(0, budget.getNumberOfPages());
+      Assert.assertEquals(0, budget.getSize());
+   }
+
+   private PagingStoreImpl createStore(final SequentialFileFactory factory,
+                                       final SimpleString address,
+                                       final PageCacheBudget budget) throws Exception
+   {
+      AddressSettings addressSettings = new AddressSettings();
+      addressSettings.setAddressFullMessagePolicy(AddressFullMessagePolicy.PAGE);
+      PagingStoreImpl store =
+         new PagingStoreImpl(address, null, 100, createMockManager(), createStorageManagerMock(), factory,
+                             new FakeStoreFactory(factory), address, addressSettings,
+                             getExecutorFactory().getExecutor(), true, budget);
+
+      store.start();
+
+      return store;
+   }
+
+   private void addPages(final PagingStoreImpl store, final int numberOfPages) throws Exception
+   {
+      store.startPaging();
+
+      for (int i = 0; i < numberOfPages * 5; i++)
+      {
+         if (i > 0 && i % 5 == 0)
+         {
+            store.forceAnotherPage();
+         }
+
+         ServerMessage msg = createMessage(i, store, store.getAddress(), createRandomBuffer(i, 10));
+
+         final RoutingContextImpl ctx = new RoutingContextImpl(null);
+         Assert.assertTrue(store.page(msg, ctx.getTransaction(), ctx.getContextListing(store.getStoreName()), lock));
+      }
+
+      store.sync();
+
+      Assert.assertEquals(numberOfPages, store.getNumberOfPages());
+   }
+
    /**
     * @return
     */
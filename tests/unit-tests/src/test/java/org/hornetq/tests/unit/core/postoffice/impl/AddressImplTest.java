@@ -298,4 +298,35 @@ public class AddressImplTest extends UnitTestCase
       Assert.assertFalse(a1.matches(w));
    }
 
+   @Test
+   public void testAnyWordsInTheMiddleMatchesZeroWords()
+   {
+      Address w = new AddressImpl(new SimpleString("a.#.b"));
+
+      Assert.assertTrue(new AddressImpl(new SimpleString("a.b")).matches(w));
+      Assert.assertTrue(new AddressImpl(new SimpleString("a.x.b")).matches(w));
+      Assert.assertTrue(new AddressImpl(new SimpleString("a.x.y.b")).matches(w));
+      Assert.assertFalse(new AddressImpl(new SimpleString("a.b.c")).matches(w));
+      Assert.assertFalse(new AddressImpl(new SimpleString("a")).matches(w));
+   }
+
+   @Test
+   public void testAnyWordsFirstMatchesZeroWords()
+   {
+      Address w = new AddressImpl(new SimpleString("#.b"));
+
+      Assert.assertTrue(new AddressImpl(new SimpleString("b")).matches(w));
+      Assert.assertTrue(new AddressImpl(new SimpleString("a.b")).matches(w));
+      Assert.assertFalse(new AddressImpl(new SimpleString("b.a")).matches(w));
+   }
+
+   @Test
+   public void testWildcardMatchesAddress()
+   {
+      Address a1 = new AddressImpl(new SimpleString("a.b.c"));
+      Address w = new AddressImpl(new SimpleString("a.*.#"));
+
+      Assert.assertTrue(w.matches(a1));
+      Assert.assertTrue(a1.matches(w));
+   }
 }
@@ -15,25 +15,31 @@ package org.hornetq.tests.unit.core.postoffice.impl;
 import org.hornetq.core.server.impl.RefsOperation;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.transaction.xa.Xid;
 
 import org.hornetq.api.core.HornetQException;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.filter.Filter;
+import org.hornetq.core.filter.impl.FilterImpl;
 import org.hornetq.core.postoffice.Binding;
 import org.hornetq.core.postoffice.BindingType;
 import org.hornetq.core.postoffice.Bindings;
 import org.hornetq.core.postoffice.impl.BindingsImpl;
+import org.hornetq.core.postoffice.impl.LocalQueueBinding;
 import org.hornetq.core.server.Bindable;
 import org.hornetq.core.server.Queue;
 import org.hornetq.core.server.RoutingContext;
 import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.SharedMessageLog;
 import org.hornetq.core.server.impl.RoutingContextImpl;
 import org.hornetq.core.server.impl.ServerMessageImpl;
+import org.hornetq.core.server.impl.SharedMessageLogImpl;
 import org.hornetq.core.transaction.Transaction;
 import org.hornetq.core.transaction.TransactionOperation;
 import org.hornetq.tests.util.UnitTestCase;
@@ -79,6 +85,249 @@ public class BindingsImplTest extends UnitTestCase
       }
    }
 
+   @Test
+   public void testRouteThroughFilterIndex() throws Exception
+   {
+      final Bindings bind = new BindingsImpl(null, null, null);
+
+      List<FakeBinding> bindings = new ArrayList<FakeBinding>();
+
+      for (int i = 0; i < 100; i++)
+      {
+         bindings.add(new FakeBinding(new SimpleString("sub" + i),
+                                      i,
+                                      FilterImpl.createFilter("region = 'R" + i % 10 + "' AND type = 'T" + i % 3 + "'")));
+      }
+
+      bindings.add(new FakeBinding(new SimpleString("in"), 100, FilterImpl.createFilter("region IN ('R1', 'R2')")));
+      bindings.add(new FakeBinding(new SimpleString("complex"), 101, FilterImpl.createFilter("weight > 5")));
+      bindings.add(new FakeBinding(new SimpleString("or"), 102, FilterImpl.createFilter("region = 'R1' OR type = 'T1'")));
+      bindings.add(new FakeBinding(new SimpleString("all"), 103, null));
+
+      for (FakeBinding binding : bindings)
+      {
+         bind.addBinding(binding);
+      }
+
+      // a second binding with the same routing name, the routing name is load balanced
+      FakeBinding remote = new FakeBinding(new SimpleString("sub0"), 104, FilterImpl.createFilter("region = 'R0'"));
+      bind.addBinding(remote);
+
+      FakeBinding removed = bindings.remove(1);
+      bind.removeBinding(removed);
+
+      bindings.add(remote);
+
+      for (int i = 0; i < 200; i++)
+      {
+         ServerMessage message = new ServerMessageImpl(i, 100);
+         message.putStringProperty(new SimpleString("region"), new SimpleString("R" + i % 11));
+         if (i % 4 != 0)
+         {
+            message.putStringProperty(new SimpleString("type"), new SimpleString("T" + i % 3));
+         }
+         message.putIntProperty(new SimpleString("weight"), i % 10);
+
+         for (FakeBinding binding : bindings)
+         {
+            binding.routed = 0;
+         }
+
+         bind.route(message, new RoutingContextImpl(new FakeTransaction()));
+
+         for (FakeBinding binding : bindings)
+         {
+            if (binding.getRoutingName().toString().equals("sub0"))
+            {
+               continue;
+            }
+
+            boolean matches = binding.getFilter() == null || binding.getFilter().match(message);
+
+            assertEquals(binding.getRoutingName() + " on message " + i, matches ? 1 : 0, binding.routed);
+         }
+
+         assertEquals(0, removed.routed);
+
+         // one of both is routed to
+         boolean sub0Matches = bindings.get(0).getFilter().match(message) || remote.getFilter().match(message);
+
+         assertEquals(sub0Matches ? 1 : 0, bindings.get(0).routed + remote.routed);
+      }
+   }
+
+   @Test
+   public void testRoutingPlanFollowsBindingChanges() throws Exception
+   {
+      final Bindings bind = new BindingsImpl(null, null, null);
+      bind.setRouteWhenNoConsumers(true);
+
+      FakeBinding single = new FakeBinding(new SimpleString("single"), 0, null);
+      FakeBinding filtered = new FakeBinding(new SimpleString("filtered"), 1, new FakeFilter());
+      FakeBinding[] balanced = new FakeBinding[3];
+
+      bind.addBinding(single);
+      bind.addBinding(filtered);
+      for (int i = 0; i < balanced.length; i++)
+      {
+         balanced[i] = new FakeBinding(new SimpleString("balanced"), 2 + i, null);
+         bind.addBinding(balanced[i]);
+      }
+
+      route(bind, 30);
+
+      assertEquals(30, single.routed);
+      assertEquals(0, filtered.routed);
+      for (FakeBinding binding : balanced)
+      {
+         assertEquals(10, binding.routed);
+      }
+
+      bind.removeBinding(balanced[0]);
+      bind.removeBinding(single);
+
+      route(bind, 30);
+
+      assertEquals(30, single.routed);
+      assertEquals(10, balanced[0].routed);
+      assertEquals(25, balanced[1].routed);
+      assertEquals(25, balanced[2].routed);
+   }
+
+   @Test
+   public void testIndexedRoutingNameRoutedOnceWhileBindingsChange() throws Exception
+   {
+      final Bindings bind = new BindingsImpl(null, null, null);
+      bind.setRouteWhenNoConsumers(true);
+
+      FakeBinding local = new FakeBinding(new SimpleString("sub"), 0, FilterImpl.createFilter("region = 'R0'"));
+      final FakeBinding remote = new FakeBinding(new SimpleString("sub"), 1, FilterImpl.createFilter("region = 'R0'"));
+
+      bind.addBinding(local);
+
+      final AtomicBoolean running = new AtomicBoolean(true);
+
+      // the routing name goes from indexed with one binding to load balanced with two and back
+      Thread t = new Thread()
+      {
+         @Override
+         public void run()
+         {
+            while (running.get())
+            {
+               bind.addBinding(remote);
+               bind.removeBinding(remote);
+            }
+         }
+      };
+
+      t.start();
+
+      int messages = 20000;
+
+      try
+      {
+         for (int i = 0; i < messages; i++)
+         {
+            ServerMessage message = new ServerMessageImpl(i, 100);
+            message.putStringProperty(new SimpleString("region"), new SimpleString("R0"));
+
+            bind.route(message, new RoutingContextImpl(new FakeTransaction()));
+         }
+      }
+      finally
+      {
+         running.set(false);
+
+         t.join();
+      }
+
+      assertEquals(messages, local.routed + remote.routed);
+   }
+
+   @Test
+   public void testRouteThroughSharedLog() throws Exception
+   {
+      final SimpleString address = new SimpleString("address");
+
+      final Bindings bind = new BindingsImpl(address, null, null);
+
+      SharedMessageLog log = new SharedMessageLogImpl(address);
+
+      List<LogQueue> queues = new ArrayList<LogQueue>();
+
+      for (int i = 0; i < 100; i++)
+      {
+         LogQueue queue = new LogQueue(new SimpleString("queue" + i), i);
+
+         queue.setSharedLogCursor(log.createCursor(queue));
+
+         bind.addBinding(new LocalQueueBinding(address, queue, new SimpleString("node")));
+
+         queues.add(queue);
+      }
+
+      FakeBinding filtered = new FakeBinding(new SimpleString("filtered"), 100, new FakeFilter());
+
+      bind.addBinding(filtered);
+
+      // the queues of the log are routed to at once, without looking at each of them
+      RoutingContext context = new RoutingContextImpl(null);
+
+      bind.route(new ServerMessageImpl(1, 100), context);
+
+      assertEquals(1, context.getSharedLogRoutes().size());
+      assertSame(log, context.getSharedLogRoutes().get(0).getLog());
+      assertEquals(100, context.getSharedLogRoutes().get(0).getQueues().length);
+      assertEquals(100, context.getQueueCount());
+
+      for (LogQueue queue : queues)
+      {
+         assertEquals(0, queue.routed);
+      }
+
+      // a durable message needs a reference on each queue
+      ServerMessage durable = new ServerMessageImpl(2, 100);
+      durable.setDurable(true);
+
+      context = new RoutingContextImpl(null);
+
+      bind.route(durable, context);
+
+      assertTrue(context.getSharedLogRoutes().isEmpty());
+
+      for (LogQueue queue : queues)
+      {
+         assertEquals(1, queue.routed);
+      }
+
+      // a reader of the log which isn't bound here, the queues can't be routed to through the log
+      LogQueue other = new LogQueue(new SimpleString("other"), 101);
+
+      other.setSharedLogCursor(log.createCursor(other));
+
+      bind.removeBinding(filtered);
+
+      context = new RoutingContextImpl(null);
+
+      bind.route(new ServerMessageImpl(3, 100), context);
+
+      assertTrue(context.getSharedLogRoutes().isEmpty());
+
+      for (LogQueue queue : queues)
+      {
+         assertEquals(2, queue.routed);
+      }
+   }
+
+   private void route(final Bindings bind, final int messages) throws Exception
+   {
+      for (int i = 0; i < messages; i++)
+      {
+         bind.route(new ServerMessageImpl(i, 100), new RoutingContextImpl(new FakeTransaction()));
+      }
+   }
+
    private void internalTest(final boolean route) throws Exception
    {
       final FakeBinding fake = new FakeBinding(new SimpleString("a"));
@@ -284,6 +533,36 @@ public class BindingsImplTest extends UnitTestCase
 
    }
 
+   private static final class LogQueue extends FakeQueue
+   {
+      private volatile SharedMessageLog.Cursor cursor;
+
+      int routed;
+
+      LogQueue(final SimpleString name, final long id)
+      {
+         super(name, id);
+      }
+
+      @Override
+      public void setSharedLogCursor(final SharedMessageLog.Cursor cursor)
+      {
+         this.cursor = cursor;
+      }
+
+      @Override
+      public SharedMessageLog.Cursor getSharedLogCursor()
+      {
+         return cursor;
+      }
+
+      @Override
+      public void route(final ServerMessage message, final RoutingContext context) throws Exception
+      {
+         routed++;
+      }
+   }
+
    private final class FakeBinding implements Binding
    {
 
@@ -301,9 +580,22 @@ public class BindingsImplTest extends UnitTestCase
 
       final SimpleString name;
 
+      final long id;
+
+      final Filter filter;
+
+      int routed;
+
       FakeBinding(final SimpleString name)
+      {
+         this(name, 0, new FakeFilter());
+      }
+
+      FakeBinding(final SimpleString name, final long id, final Filter filter)
       {
          this.name = name;
+         this.id = id;
+         this.filter = filter;
       }
 
       public SimpleString getAddress()
@@ -342,12 +634,12 @@ public class BindingsImplTest extends UnitTestCase
        */
       public Filter getFilter()
       {
-         return new FakeFilter();
+         return filter;
       }
 
       public long getID()
       {
-         return 0;
+         return id;
       }
 
       /* (non-Javadoc)
@@ -387,7 +679,7 @@ public class BindingsImplTest extends UnitTestCase
 
       public void route(final ServerMessage message, final RoutingContext context) throws Exception
       {
-
+         routed++;
       }
 
       /* (non-Javadoc)
@@ -14,10 +14,15 @@ package org.hornetq.tests.unit.core.postoffice.impl;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.hornetq.api.config.HornetQDefaultConfiguration;
 import org.hornetq.api.core.Pair;
@@ -26,8 +31,10 @@ import org.hornetq.core.config.Configuration;
 import org.hornetq.core.persistence.GroupingInfo;
 import org.hornetq.core.persistence.QueueBindingInfo;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager;
+import org.hornetq.core.postoffice.DuplicateIDCache;
 import org.hornetq.core.postoffice.PostOffice;
 import org.hornetq.core.postoffice.impl.DuplicateIDCacheImpl;
+import org.hornetq.core.postoffice.impl.OffHeapDuplicateIDCache;
 import org.hornetq.core.server.impl.PostOfficeJournalLoader;
 import org.hornetq.core.transaction.impl.ResourceManagerImpl;
 import org.hornetq.tests.unit.core.server.impl.fakes.FakePostOffice;
@@ -82,7 +89,274 @@ public class DuplicateDetectionUnitTest extends ServiceTestBase
    @Test
    public void testReloadDuplication() throws Exception
    {
+      internalTestReloadDuplication(false);
+   }
+
+   @Test
+   public void testReloadDuplicationOffHeap() throws Exception
+   {
+      internalTestReloadDuplication(true);
+   }
+
+   @Test
+   public void testReloadBatchedDuplication() throws Exception
+   {
+      JournalStorageManager journal = null;
+
+      try
+      {
+         clearDataRecreateServerDirs();
+
+         SimpleString ADDRESS = new SimpleString("address");
+
+         Configuration configuration = createDefaultConfig();
+
+         PostOffice postOffice = new FakePostOffice();
+
+         ScheduledExecutorService scheduledThreadPool = Executors.newScheduledThreadPool(HornetQDefaultConfiguration.getDefaultScheduledThreadPoolMaxSize());
+
+         HashMap<SimpleString, List<Pair<byte[], Long>>> mapDups = new HashMap<SimpleString, List<Pair<byte[], Long>>>();
+
+         journal = new JournalStorageManager(configuration, factory, null);
+
+         loadJournal(journal, postOffice, scheduledThreadPool, mapDups);
+
+         DuplicateIDCache cacheID = new DuplicateIDCacheImpl(ADDRESS, 20, journal, true);
+
+         for (int i = 0; i < 55; i++)
+         {
+            cacheID.addToCache(RandomUtil.randomBytes(), null);
+         }
+
+         Set<SimpleString> cached = getIDs(cacheID.getMap());
+
+         journal.stop();
+
+         journal = new JournalStorageManager(configuration, factory, null);
+
+         loadJournal(journal, postOffice, scheduledThreadPool, mapDups);
+
+         // the batch records still hold some of the evicted ids, which are not reloaded
+         Assert.assertEquals(cached, getIDs(mapDups.get(ADDRESS)));
+
+         cacheID = new DuplicateIDCacheImpl(ADDRESS, 20, journal, true);
+
+         cacheID.load(mapDups.get(ADDRESS));
+
+         for (int i = 0; i < 5; i++)
+         {
+            cacheID.addToCache(RandomUtil.randomBytes(), null);
+         }
+
+         // the batch record of the id holds other ids of the cache
+         byte[] deleted = cacheID.getMap().get(10).getA();
+
+         cacheID.deleteFromCache(deleted);
+
+         cached = getIDs(cacheID.getMap());
+
+         Assert.assertEquals(19, cached.size());
+
+         journal.stop();
+
+         mapDups.clear();
+
+         journal = new JournalStorageManager(configuration, factory, null);
+
+         loadJournal(journal, postOffice, scheduledThreadPool, mapDups);
+
+         Set<SimpleString> reloaded = getIDs(mapDups.get(ADDRESS));
+
+         Assert.assertTrue(reloaded.containsAll(cached));
+
+         Assert.assertFalse(reloaded.contains(new SimpleString(deleted)));
+      }
+      finally
+      {
+         if (journal != null)
+         {
+            try
+            {
+               journal.stop();
+            }
+            catch (Throwable ignored)
+            {
+            }
+         }
+      }
+   }
+
+   @Test
+   public void testOffHeapCacheConcurrentProducers() throws Exception
+   {
+      final int cacheSize = 1000;
+
+      final DuplicateIDCache cache = new OffHeapDuplicateIDCache(new SimpleString("address"), cacheSize, null, false);
 
+      final byte[][] ids = new byte[20000][];
+
+      for (int i = 0; i < ids.length; i++)
+      {
+         ids[i] = RandomUtil.randomBytes();
+      }
+
+      final AtomicInteger next = new AtomicInteger();
+
+      final CountDownLatch done = new CountDownLatch(4);
+
+      final AtomicInteger errors = new AtomicInteger();
+
+      for (int t = 0; t < 4; t++)
+      {
+         Thread thread = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  int i;
+                  while ((i = next.getAndIncrement()) < ids.length)
+                  {
+                     cache.addToCache(ids[i], null);
+
+                     // it can only be evicted if the whole cache was filled meanwhile
+                     if (!cache.contains(ids[i]) && next.get() - i < cacheSize / 2)
+                     {
+                        errors.incrementAndGet();
+                     }
+                  }
+               }
+               catch (Exception e)
+               {
+                  e.printStackTrace();
+                  errors.incrementAndGet();
+               }
+               finally
+               {
+                  done.countDown();
+               }
+            }
+         };
+         thread.start();
+      }
+
+      Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+      Assert.assertEquals(0, errors.get());
+      Assert.assertEquals(cacheSize, cache.getMap().size());
+
+      for (Pair<byte[], Long> id : cache.getMap())
+      {
+         cache.deleteFromCache(id.getA());
+         Assert.assertFalse(cache.contains(id.getA()));
+      }
+
+      Assert.assertEquals(0, cache.getMap().size());
+   }
+
+   @Test
+   public void testOffHeapCacheWrapsUnderMoreProducersThanEntries() throws Exception
+   {
+      // the ring and the filters go round while ids of the previous laps are still being written
+      final int cacheSize = 16;
+
+      final int producers = 32;
+
+      final DuplicateIDCache cache = new OffHeapDuplicateIDCache(new SimpleString("address"), cacheSize, null, false);
+
+      final byte[][] ids = new byte[50000][];
+
+      for (int i = 0; i < ids.length; i++)
+      {
+         ids[i] = RandomUtil.randomBytes();
+      }
+
+      final AtomicInteger next = new AtomicInteger();
+
+      final CountDownLatch done = new CountDownLatch(producers);
+
+      final AtomicInteger errors = new AtomicInteger();
+
+      for (int t = 0; t < producers; t++)
+      {
+         Thread thread = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  int i;
+                  while ((i = next.getAndIncrement()) < ids.length)
+                  {
+                     cache.addToCache(ids[i], null);
+
+                     // an id which is only added later can never be found
+                     int later = ids.length - 1 - i % 100;
+
+                     if (cache.contains(ids[later]) && next.get() <= later)
+                     {
+                        errors.incrementAndGet();
+                     }
+                  }
+               }
+               catch (Exception e)
+               {
+                  e.printStackTrace();
+                  errors.incrementAndGet();
+               }
+               finally
+               {
+                  done.countDown();
+               }
+            }
+         };
+         thread.start();
+      }
+
+      Assert.assertTrue(done.await(30, TimeUnit.SECONDS));
+      Assert.assertEquals(0, errors.get());
+      Assert.assertEquals(cacheSize, cache.getMap().size());
+
+      for (Pair<byte[], Long> id : cache.getMap())
+      {
+         Assert.assertTrue(cache.contains(id.getA()));
+      }
+   }
+
+   @Test
+   public void testOffHeapCacheFindsEveryLiveIdOnPowerOfTwoSize() throws Exception
+   {
+      // a power of two size gets a table exactly twice as large, half full of live ids once the ring
+      // went round
+      final int cacheSize = 16384;
+
+      DuplicateIDCache cache = new OffHeapDuplicateIDCache(new SimpleString("address"), cacheSize, null, false);
+
+      byte[][] ring = new byte[cacheSize][];
+
+      for (int i = 0; i < cacheSize * 40; i++)
+      {
+         byte[] id = RandomUtil.randomBytes();
+
+         cache.addToCache(id, null);
+
+         ring[i % cacheSize] = id;
+
+         if ((i + 1) % (cacheSize * 4) == 0)
+         {
+            for (byte[] liveID : ring)
+            {
+               Assert.assertTrue(cache.contains(liveID));
+            }
+         }
+      }
+
+      Assert.assertEquals(cacheSize, cache.getMap().size());
+   }
+
+   private void internalTestReloadDuplication(final boolean offHeap) throws Exception
+   {
       JournalStorageManager journal = null;
 
       try
@@ -116,7 +390,7 @@ public class DuplicateDetectionUnitTest extends ServiceTestBase
 
          Assert.assertEquals(0, mapDups.size());
 
-         DuplicateIDCacheImpl cacheID = new DuplicateIDCacheImpl(ADDRESS, 10, journal, true);
+         DuplicateIDCache cacheID = createCache(ADDRESS, 10, journal, offHeap);
 
          for (int i = 0; i < 100; i++)
          {
@@ -144,7 +418,7 @@ public class DuplicateDetectionUnitTest extends ServiceTestBase
 
          Assert.assertEquals(10, values.size());
 
-         cacheID = new DuplicateIDCacheImpl(ADDRESS, 10, journal, true);
+         cacheID = createCache(ADDRESS, 10, journal, offHeap);
          cacheID.load(values);
 
          for (int i = 0; i < 100; i++)
@@ -190,4 +464,50 @@ public class DuplicateDetectionUnitTest extends ServiceTestBase
       }
 
    }
+
+   private void loadJournal(final JournalStorageManager journal,
+                            final PostOffice postOffice,
+                            final ScheduledExecutorService scheduledThreadPool,
+                            final HashMap<SimpleString, List<Pair<byte[], Long>>> mapDups) throws Exception
+   {
+      FakePagingManager pagingManager = new FakePagingManager();
+
+      journal.start();
+      journal.loadBindingJournal(new ArrayList<QueueBindingInfo>(), new ArrayList<GroupingInfo>());
+      journal.loadMessageJournal(postOffice,
+                                 pagingManager,
+                                 new ResourceManagerImpl(0, 0, scheduledThreadPool),
+                                 null,
+                                 mapDups,
+                                 null,
+                                 null,
+                                 new PostOfficeJournalLoader(postOffice, pagingManager, null, null, null, null, null, null));
+   }
+
+   private static Set<SimpleString> getIDs(final List<Pair<byte[], Long>> ids)
+   {
+      Set<SimpleString> set = new HashSet<SimpleString>();
+
+      for (Pair<byte[], Long> id : ids)
+      {
+         set.add(new SimpleString(id.getA()));
+      }
+
+      return set;
+   }
+
+   private static DuplicateIDCache createCache(final SimpleString address,
+                                               final int size,
+                                               final JournalStorageManager journal,
+                                               final boolean offHeap)
+   {
+      if (offHeap)
+      {
+         return new OffHeapDuplicateIDCache(address, size, journal, true);
+      }
+      else
+      {
+         return new DuplicateIDCacheImpl(address, size, journal, true);
+      }
+   }
 }
@@ -26,6 +26,7 @@ import org.hornetq.core.server.MessageReference;
 import org.hornetq.core.server.Queue;
 import org.hornetq.core.server.RoutingContext;
 import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.SharedMessageLog;
 import org.hornetq.core.transaction.Transaction;
 import org.hornetq.utils.LinkedListIterator;
 import org.hornetq.utils.ReferenceCounter;
@@ -250,6 +251,13 @@ public class FakeQueue implements Queue
 
    }
 
+   @Override
+   public void consumerReady(Consumer consumer)
+   {
+      // no-op
+
+   }
+
    @Override
    public void expire(final MessageReference ref) throws Exception
    {
@@ -337,6 +345,27 @@ public class FakeQueue implements Queue
       return 0;
    }
 
+   @Override
+   public int getGroupCount()
+   {
+      // no-op
+      return 0;
+   }
+
+   @Override
+   public long getGroupsEvicted()
+   {
+      // no-op
+      return 0;
+   }
+
+   @Override
+   public float getDepageRate()
+   {
+      // no-op
+      return 0;
+   }
+
    @Override
    public void resetMessagesAdded()
    {
@@ -547,6 +576,18 @@ public class FakeQueue implements Queue
       this.subs = sub;
    }
 
+   @Override
+   public void setSharedLogCursor(SharedMessageLog.Cursor cursor)
+   {
+      // no-op
+   }
+
+   @Override
+   public SharedMessageLog.Cursor getSharedLogCursor()
+   {
+      return null;
+   }
+
    @Override
    public boolean moveReference(long messageID, SimpleString toAddress, boolean rejectDuplicates) throws Exception
    {
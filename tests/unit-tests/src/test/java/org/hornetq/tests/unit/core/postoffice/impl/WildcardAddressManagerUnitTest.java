@@ -13,7 +13,9 @@
 package org.hornetq.tests.unit.core.postoffice.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.filter.Filter;
@@ -74,6 +76,63 @@ public class WildcardAddressManagerUnitTest extends UnitTestCase
       assertEquals("Exception happened during the process", 0, errors);
    }
 
+   @Test
+   public void testWildcardBindingsLinkedToMatchingAddresses() throws Exception
+   {
+      WildcardAddressManager ad = new WildcardAddressManager(new BindingFactoryFake());
+      ad.addBinding(new BindingFake("a.b.c", "abc"));
+      ad.addBinding(new BindingFake("a.b.d", "abd"));
+      ad.addBinding(new BindingFake("a.#", "any"));
+      ad.addBinding(new BindingFake("a.*.c", "star"));
+      ad.addBinding(new BindingFake("#.d", "endsWithD"));
+      ad.addBinding(new BindingFake("a", "a"));
+      ad.addBinding(new BindingFake("x.y.d", "xyd"));
+
+      assertBindings(ad, "a.b.c", "abc", "any", "star");
+      assertBindings(ad, "a.b.d", "abd", "any", "endsWithD");
+      assertBindings(ad, "a", "a", "any");
+      assertBindings(ad, "x.y.d", "xyd", "endsWithD");
+
+      // routing to an address without bindings links it to the wildcard addresses matching it
+      assertBindings(ad, "a.x.c", "any", "star");
+
+      ad.removeBinding(SimpleString.toSimpleString("any"), null);
+      assertBindings(ad, "a.b.c", "abc", "star");
+      assertBindings(ad, "a", "a");
+
+      ad.removeBinding(SimpleString.toSimpleString("star"), null);
+      ad.addBinding(new BindingFake("*.b.*", "middleB"));
+      assertBindings(ad, "a.b.c", "abc", "middleB");
+      assertBindings(ad, "a.b.d", "abd", "endsWithD", "middleB");
+   }
+
+   @Test
+   public void testAnyWordsInTheMiddleMatchesZeroWords() throws Exception
+   {
+      WildcardAddressManager ad = new WildcardAddressManager(new BindingFactoryFake());
+      ad.addBinding(new BindingFake("a.#.b", "anyB"));
+      ad.addBinding(new BindingFake("a.b", "ab"));
+      ad.addBinding(new BindingFake("a.x.y.b", "axyb"));
+
+      assertBindings(ad, "a.b", "ab", "anyB");
+      assertBindings(ad, "a.x.y.b", "axyb", "anyB");
+      assertBindings(ad, "a.x.b", "anyB");
+      assertNull(ad.getBindingsForRoutingAddress(SimpleString.toSimpleString("a.b.c")));
+   }
+
+   private void assertBindings(WildcardAddressManager ad, String address, String... ids) throws Exception
+   {
+      ArrayList<String> found = new ArrayList<String>();
+      for (Binding binding : ad.getBindingsForRoutingAddress(SimpleString.toSimpleString(address)).getBindings())
+      {
+         found.add(binding.getUniqueName().toString());
+      }
+      Collections.sort(found);
+      ArrayList<String> expected = new ArrayList<String>(Arrays.asList(ids));
+      Collections.sort(expected);
+      assertEquals(expected, found);
+   }
+
    class BindingFactoryFake implements BindingsFactory
    {
       public Bindings createBindings(SimpleString address) throws Exception
@@ -16,11 +16,13 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 
+import org.hornetq.api.core.Message;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.api.core.client.ClientMessage;
 import org.hornetq.api.core.client.ClientProducer;
@@ -37,11 +39,16 @@ import org.hornetq.core.server.HornetQServers;
 import org.hornetq.core.server.MessageReference;
 import org.hornetq.core.server.Queue;
 import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.SharedMessageLog;
+import org.hornetq.core.server.impl.LastValueQueue;
 import org.hornetq.core.server.impl.QueueImpl;
+import org.hornetq.core.server.impl.SharedMessageLogImpl;
 import org.hornetq.core.settings.impl.AddressSettings;
+import org.hornetq.tests.unit.core.postoffice.impl.FakeQueue;
 import org.hornetq.tests.unit.core.server.impl.fakes.FakeConsumer;
 import org.hornetq.tests.unit.core.server.impl.fakes.FakeFilter;
 import org.hornetq.tests.unit.core.server.impl.fakes.FakePostOffice;
+import org.hornetq.tests.unit.core.server.impl.fakes.FakeServerConsumer;
 import org.hornetq.tests.util.UnitTestCase;
 import org.hornetq.utils.FutureLatch;
 import org.hornetq.utils.LinkedListIterator;
@@ -406,6 +413,334 @@ public class QueueImplTest extends UnitTestCase
       Assert.assertEquals(10, queue.getDeliveringCount());
    }
 
+   @Test
+   public void testBusyServerConsumerSkippedUntilReady() throws Exception
+   {
+      QueueImpl queue = new QueueImpl(1,
+                                      QueueImplTest.address1,
+                                      QueueImplTest.queue1,
+                                      null,
+                                      false,
+                                      true,
+                                      scheduledExecutor,
+                                      null,
+                                      null,
+                                      null,
+                                      executor);
+
+      FakeServerConsumer consumer = new FakeServerConsumer(queue);
+
+      consumer.setStatusImmediate(HandleStatus.BUSY);
+
+      queue.addConsumer(consumer);
+
+      final int numMessages = 10;
+
+      List<MessageReference> refs = new ArrayList<MessageReference>();
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         MessageReference ref = generateReference(queue, i);
+
+         refs.add(ref);
+
+         queue.addTail(ref);
+      }
+
+      queue.deliverNow();
+
+      int handleCount = consumer.getHandleCount();
+
+      Assert.assertTrue(handleCount > 0);
+
+      consumer.setStatusImmediate(HandleStatus.HANDLED);
+
+      // the consumer didn't report ready, so the queue must not try it again
+      queue.deliverNow();
+
+      Assert.assertEquals(handleCount, consumer.getHandleCount());
+      Assert.assertTrue(consumer.getReferences().isEmpty());
+      Assert.assertEquals(0, queue.getDeliveringCount());
+
+      consumer.promptDelivery();
+
+      queue.deliverNow();
+
+      assertRefListsIdenticalRefs(refs, consumer.getReferences());
+      Assert.assertEquals(10, getMessageCount(queue));
+      Assert.assertEquals(10, queue.getDeliveringCount());
+   }
+
+   @Test
+   public void testBusyServerConsumerTakenOffRoundRobin() throws Exception
+   {
+      QueueImpl queue = new QueueImpl(1,
+                                      QueueImplTest.address1,
+                                      QueueImplTest.queue1,
+                                      null,
+                                      false,
+                                      true,
+                                      scheduledExecutor,
+                                      null,
+                                      null,
+                                      null,
+                                      executor);
+
+      FakeServerConsumer busyConsumer = new FakeServerConsumer(queue);
+
+      busyConsumer.setStatusImmediate(HandleStatus.BUSY);
+
+      FakeServerConsumer consumer = new FakeServerConsumer(queue);
+
+      queue.addConsumer(busyConsumer);
+
+      queue.addConsumer(consumer);
+
+      final int numMessages = 10;
+
+      List<MessageReference> refs = new ArrayList<MessageReference>();
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         MessageReference ref = generateReference(queue, i);
+
+         refs.add(ref);
+
+         queue.addTail(ref);
+      }
+
+      queue.deliverNow();
+
+      // the busy consumer is only tried once, everything else goes to the other consumer
+      Assert.assertEquals(1, busyConsumer.getHandleCount());
+      Assert.assertTrue(busyConsumer.getReferences().isEmpty());
+      assertRefListsIdenticalRefs(refs, consumer.getReferences());
+
+      busyConsumer.setStatusImmediate(HandleStatus.HANDLED);
+
+      busyConsumer.promptDelivery();
+
+      // back on the round robin once it notified it's ready
+      queue.addTail(generateReference(queue, numMessages));
+      queue.addTail(generateReference(queue, numMessages + 1));
+
+      queue.deliverNow();
+
+      Assert.assertEquals(1, busyConsumer.getReferences().size());
+      Assert.assertEquals(numMessages + 1, consumer.getReferences().size());
+      Assert.assertEquals(numMessages + 2, queue.getDeliveringCount());
+   }
+
+   @Test
+   public void testSharedLogFanOut() throws Exception
+   {
+      QueueImpl queue = new QueueImpl(1,
+                                      QueueImplTest.address1,
+                                      QueueImplTest.queue1,
+                                      null,
+                                      false,
+                                      true,
+                                      scheduledExecutor,
+                                      null,
+                                      null,
+                                      null,
+                                      executor);
+
+      QueueImpl otherQueue = new QueueImpl(2,
+                                           QueueImplTest.address1,
+                                           new SimpleString("queue2"),
+                                           null,
+                                           false,
+                                           true,
+                                           scheduledExecutor,
+                                           null,
+                                           null,
+                                           null,
+                                           executor);
+
+      SharedMessageLog log = new SharedMessageLogImpl(QueueImplTest.address1);
+
+      queue.setSharedLogCursor(log.createCursor(queue));
+      otherQueue.setSharedLogCursor(log.createCursor(otherQueue));
+
+      // never reads, so the log keeps every message until it is closed
+      SharedMessageLog.Cursor idleCursor = log.createCursor(new FakeQueue(new SimpleString("idle")));
+
+      final int numMessages = 10;
+
+      List<ServerMessage> messages = new ArrayList<ServerMessage>();
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ServerMessage message = generateMessage(i);
+
+         messages.add(message);
+
+         log.append(message);
+      }
+
+      Assert.assertEquals(numMessages, getMessageCount(queue));
+      Assert.assertEquals(numMessages, getMessageCount(otherQueue));
+
+      // a reference added directly goes after everything already on the log
+      queue.addTail(generateReference(queue, numMessages));
+
+      FakeConsumer consumer = new FakeConsumer();
+
+      queue.addConsumer(consumer);
+
+      queue.deliverNow();
+
+      List<MessageReference> received = consumer.getReferences();
+
+      Assert.assertEquals(numMessages + 1, received.size());
+
+      for (int i = 0; i <= numMessages; i++)
+      {
+         Assert.assertEquals(i, received.get(i).getMessage().getMessageID());
+         Assert.assertSame(queue, received.get(i).getQueue());
+      }
+
+      Assert.assertEquals(numMessages, idleCursor.getPendingCount());
+      Assert.assertEquals(numMessages, log.size());
+
+      // one reference on each queue, plus the one held by the log
+      for (ServerMessage message : messages)
+      {
+         Assert.assertEquals(3, message.getRefCount());
+      }
+
+      idleCursor.close();
+
+      Assert.assertEquals(0, log.size());
+      Assert.assertEquals(2, log.getCursorCount());
+
+      for (ServerMessage message : messages)
+      {
+         Assert.assertEquals(2, message.getRefCount());
+      }
+   }
+
+   @Test
+   public void testSharedLogReferencesCreatedOnDispatch() throws Exception
+   {
+      QueueImpl queue = new QueueImpl(1,
+                                      QueueImplTest.address1,
+                                      QueueImplTest.queue1,
+                                      null,
+                                      false,
+                                      true,
+                                      scheduledExecutor,
+                                      null,
+                                      null,
+                                      null,
+                                      executor);
+
+      SharedMessageLog log = new SharedMessageLogImpl(QueueImplTest.address1);
+
+      queue.setSharedLogCursor(log.createCursor(queue));
+
+      final int numMessages = 10;
+
+      List<ServerMessage> messages = new ArrayList<ServerMessage>();
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ServerMessage message = generateMessage(i);
+
+         message.putStringProperty(new SimpleString("color"), new SimpleString(i % 2 == 0 ? "red" : "blue"));
+
+         messages.add(message);
+
+         log.append(message);
+      }
+
+      queue.deliverNow();
+
+      // no consumer, the messages stay on the log without a reference for the queue
+      Assert.assertEquals(numMessages, getMessageCount(queue));
+      Assert.assertEquals(numMessages, log.size());
+
+      for (ServerMessage message : messages)
+      {
+         Assert.assertEquals(1, message.getRefCount());
+      }
+
+      // the blue messages are refused, they go on the queue so the red ones aren't held behind them
+      FakeConsumer redConsumer = new FakeConsumer(FilterImpl.createFilter("color = 'red'"));
+
+      queue.addConsumer(redConsumer);
+
+      queue.deliverNow();
+
+      Assert.assertEquals(numMessages / 2, redConsumer.getReferences().size());
+
+      for (int i = 0; i < numMessages / 2; i++)
+      {
+         Assert.assertEquals(i * 2, redConsumer.getReferences().get(i).getMessage().getMessageID());
+      }
+
+      Assert.assertEquals(0, log.size());
+      Assert.assertEquals(numMessages, getMessageCount(queue));
+      Assert.assertEquals(numMessages / 2, queue.getDeliveringCount());
+
+      FakeConsumer consumer = new FakeConsumer();
+
+      queue.addConsumer(consumer);
+
+      queue.deliverNow();
+
+      Assert.assertEquals(numMessages / 2, consumer.getReferences().size());
+
+      for (int i = 0; i < numMessages / 2; i++)
+      {
+         Assert.assertEquals(i * 2 + 1, consumer.getReferences().get(i).getMessage().getMessageID());
+      }
+
+      // a single reference per message, for the queue
+      for (ServerMessage message : messages)
+      {
+         Assert.assertEquals(1, message.getRefCount());
+      }
+   }
+
+   @Test
+   public void testSharedLogAppendOnlyToCursorsRoutedTo() throws Exception
+   {
+      SharedMessageLog log = new SharedMessageLogImpl(QueueImplTest.address1);
+
+      SharedMessageLog.Cursor cursor = log.createCursor(new FakeQueue(new SimpleString("routed")));
+
+      SharedMessageLog.Cursor[] readers = log.getCursors();
+
+      ServerMessage message = generateMessage(1);
+
+      Assert.assertTrue(log.append(message, readers));
+      Assert.assertEquals(1, log.size());
+      Assert.assertEquals(1, message.getRefCount());
+
+      // a queue bound after the message was routed must not read it
+      SharedMessageLog.Cursor newCursor = log.createCursor(new FakeQueue(new SimpleString("new")));
+
+      ServerMessage routedBefore = generateMessage(2);
+
+      Assert.assertFalse(log.append(routedBefore, readers));
+      Assert.assertEquals(1, log.size());
+      Assert.assertEquals(0, routedBefore.getRefCount());
+      Assert.assertFalse(newCursor.hasNext());
+
+      // neither must a queue unbound meanwhile
+      readers = log.getCursors();
+
+      newCursor.close();
+
+      Assert.assertFalse(log.append(routedBefore, readers));
+      Assert.assertEquals(0, routedBefore.getRefCount());
+
+      Assert.assertSame(message, cursor.next());
+      Assert.assertNull(cursor.next());
+   }
+
    @Test
    public void testBusyConsumerThenAddMoreMessages() throws Exception
    {
@@ -1212,6 +1547,302 @@ public class QueueImplTest extends UnitTestCase
       Assert.assertEquals(20, queue.getDeliveringCount());
    }
 
+   @Test
+   public void testSelectiveConsumerUsesFilterIndex() throws Exception
+   {
+      QueueImpl queue = new QueueImpl(1,
+                                      QueueImplTest.address1,
+                                      QueueImplTest.queue1,
+                                      null,
+                                      false,
+                                      true,
+                                      scheduledExecutor,
+                                      null,
+                                      null,
+                                      null,
+                                      executor);
+
+      final int numMessages = 10;
+      List<MessageReference> refs = new ArrayList<MessageReference>();
+
+      for (int i = 0; i < numMessages * 2; i++)
+      {
+         MessageReference ref = generateReference(queue, i);
+         ref.getMessage().putStringProperty("color", i < numMessages ? "red" : "green");
+         refs.add(ref);
+
+         queue.addTail(ref);
+      }
+
+      FakeConsumer greenConsumer = new FakeConsumer(FilterImpl.createFilter("color = 'green'"));
+
+      queue.addConsumer(greenConsumer);
+
+      queue.deliverNow();
+
+      Assert.assertEquals(refs.subList(numMessages, numMessages * 2), greenConsumer.getReferences());
+      Assert.assertEquals(numMessages * 2, getMessageCount(queue));
+      Assert.assertEquals(numMessages, queue.getDeliveringCount());
+
+      // the references delivered through the index are not browsed anymore
+      LinkedListIterator<MessageReference> iterator = queue.iterator();
+      for (int i = 0; i < numMessages; i++)
+      {
+         Assert.assertTrue(iterator.hasNext());
+         Assert.assertEquals(refs.get(i), iterator.next());
+      }
+      Assert.assertFalse(iterator.hasNext());
+      iterator.close();
+
+      // a reference coming back is delivered once
+      greenConsumer.clearReferences();
+
+      queue.addHead(refs.get(numMessages));
+
+      queue.deliverNow();
+
+      Assert.assertEquals(1, greenConsumer.getReferences().size());
+      Assert.assertEquals(refs.get(numMessages), greenConsumer.getReferences().get(0));
+
+      queue.removeConsumer(greenConsumer);
+
+      FakeConsumer consumer = new FakeConsumer();
+
+      queue.addConsumer(consumer);
+
+      queue.deliverNow();
+
+      Assert.assertEquals(refs.subList(0, numMessages), consumer.getReferences());
+   }
+
+   @Test
+   public void testFilterIndexKeptAcrossConsumersAddedAndRemoved() throws Exception
+   {
+      QueueImpl queue = new QueueImpl(1,
+                                      QueueImplTest.address1,
+                                      QueueImplTest.queue1,
+                                      null,
+                                      false,
+                                      true,
+                                      scheduledExecutor,
+                                      null,
+                                      null,
+                                      null,
+                                      executor);
+
+      List<MessageReference> reds = new ArrayList<MessageReference>();
+      List<MessageReference> greens = new ArrayList<MessageReference>();
+
+      for (int i = 0; i < 20; i++)
+      {
+         MessageReference ref = generateReference(queue, i);
+         ref.getMessage().putStringProperty("color", i % 2 == 0 ? "red" : "green");
+         (i % 2 == 0 ? reds : greens).add(ref);
+
+         queue.addTail(ref);
+      }
+
+      // a busy consumer gets the index built without taking anything from it
+      FakeConsumer busyConsumer = new FakeConsumer(FilterImpl.createFilter("color = 'green'"));
+      busyConsumer.setStatusImmediate(HandleStatus.BUSY);
+
+      queue.addConsumer(busyConsumer);
+
+      queue.deliverNow();
+
+      // a consumer with the same filter shares the index, which outlives the consumer that built it
+      FakeConsumer greenConsumer = new FakeConsumer(FilterImpl.createFilter("color = 'green'"));
+
+      queue.addConsumer(greenConsumer);
+
+      queue.removeConsumer(busyConsumer);
+
+      queue.deliverNow();
+
+      Assert.assertEquals(greens, greenConsumer.getReferences());
+      Assert.assertEquals(20, getMessageCount(queue));
+
+      // the last consumer of the filter gone, the references it took are not delivered again
+      queue.removeConsumer(greenConsumer);
+
+      FakeConsumer consumer = new FakeConsumer();
+
+      queue.addConsumer(consumer);
+
+      queue.deliverNow();
+
+      Assert.assertEquals(reds, consumer.getReferences());
+      Assert.assertEquals(0, queue.getNumberOfReferences());
+   }
+
+   @Test
+   public void testFilterIndexReferencesRolledBack() throws Exception
+   {
+      QueueImpl queue = new QueueImpl(1,
+                                      QueueImplTest.address1,
+                                      QueueImplTest.queue1,
+                                      null,
+                                      false,
+                                      true,
+                                      scheduledExecutor,
+                                      null,
+                                      null,
+                                      null,
+                                      executor);
+
+      List<MessageReference> reds = new ArrayList<MessageReference>();
+      List<MessageReference> greens = new ArrayList<MessageReference>();
+
+      for (int i = 0; i < 20; i++)
+      {
+         MessageReference ref = generateReference(queue, i);
+         ref.getMessage().putStringProperty("color", i % 2 == 0 ? "red" : "green");
+         (i % 2 == 0 ? reds : greens).add(ref);
+
+         queue.addTail(ref);
+      }
+
+      FakeConsumer greenConsumer = new FakeConsumer(FilterImpl.createFilter("color = 'green'"));
+
+      queue.addConsumer(greenConsumer);
+
+      queue.deliverNow();
+
+      Assert.assertEquals(greens, greenConsumer.getReferences());
+
+      // rolled back, the references come back to the head of the queue
+      greenConsumer.clearReferences();
+
+      queue.addHead(new ArrayList<MessageReference>(greens));
+
+      queue.deliverNow();
+
+      // every reference is delivered once again, and the red ones are still left
+      Assert.assertEquals(greens.size(), greenConsumer.getReferences().size());
+      Assert.assertTrue(greenConsumer.getReferences().containsAll(greens));
+      Assert.assertEquals(reds.size(), queue.getNumberOfReferences());
+
+      queue.removeConsumer(greenConsumer);
+
+      FakeConsumer consumer = new FakeConsumer();
+
+      queue.addConsumer(consumer);
+
+      queue.deliverNow();
+
+      Assert.assertEquals(reds, consumer.getReferences());
+   }
+
+   @Test
+   public void testBrowsingSkipsReferencesDeliveredThroughFilterIndex() throws Exception
+   {
+      QueueImpl queue = new QueueImpl(1,
+                                      QueueImplTest.address1,
+                                      QueueImplTest.queue1,
+                                      null,
+                                      false,
+                                      true,
+                                      scheduledExecutor,
+                                      null,
+                                      null,
+                                      null,
+                                      executor);
+
+      List<MessageReference> reds = new ArrayList<MessageReference>();
+
+      for (int i = 0; i < 20; i++)
+      {
+         MessageReference ref = generateReference(queue, i);
+         ref.getMessage().putStringProperty("color", i % 2 == 0 ? "red" : "green");
+         if (i % 2 == 0)
+         {
+            reds.add(ref);
+         }
+
+         queue.addTail(ref);
+      }
+
+      FakeConsumer greenConsumer = new FakeConsumer(FilterImpl.createFilter("color = 'green'"));
+
+      queue.addConsumer(greenConsumer);
+
+      queue.deliverNow();
+
+      // the green references are still held between the red ones until an iterator drops them
+      LinkedListIterator<MessageReference> iterator = queue.iterator();
+      for (MessageReference red : reds)
+      {
+         Assert.assertTrue(iterator.hasNext());
+         Assert.assertTrue(iterator.hasNext());
+         Assert.assertEquals(red, iterator.next());
+      }
+      Assert.assertFalse(iterator.hasNext());
+      iterator.close();
+
+      // next() skips them as well, without hasNext() being called first
+      iterator = queue.iterator();
+      for (MessageReference red : reds)
+      {
+         Assert.assertEquals(red, iterator.next());
+      }
+      try
+      {
+         iterator.next();
+         Assert.fail("the iteration is over");
+      }
+      catch (NoSuchElementException expected)
+      {
+      }
+      iterator.close();
+
+      Assert.assertEquals(reds.size(), queue.getNumberOfReferences());
+   }
+
+   @Test
+   public void testLastValueReplacementIndexedForFilteredConsumer() throws Exception
+   {
+      LastValueQueue queue = new LastValueQueue(1,
+                                                QueueImplTest.address1,
+                                                QueueImplTest.queue1,
+                                                null,
+                                                null,
+                                                false,
+                                                true,
+                                                scheduledExecutor,
+                                                null,
+                                                null,
+                                                null,
+                                                executor);
+
+      FakeConsumer greenConsumer = new FakeConsumer(FilterImpl.createFilter("color = 'green'"));
+
+      queue.addConsumer(greenConsumer);
+
+      MessageReference red = generateReference(queue, 1);
+      red.getMessage().putStringProperty(Message.HDR_LAST_VALUE_NAME, new SimpleString("last"));
+      red.getMessage().putStringProperty("color", "red");
+
+      queue.addTail(red);
+
+      // builds the index, which doesn't hold the red value
+      queue.deliverNow();
+
+      Assert.assertTrue(greenConsumer.getReferences().isEmpty());
+
+      MessageReference green = generateReference(queue, 2);
+      green.getMessage().putStringProperty(Message.HDR_LAST_VALUE_NAME, new SimpleString("last"));
+      green.getMessage().putStringProperty("color", "green");
+
+      // replaces the red value
+      queue.addTail(green);
+
+      queue.deliverNow();
+
+      Assert.assertEquals(1, greenConsumer.getReferences().size());
+      Assert.assertSame(green.getMessage(), greenConsumer.getReferences().get(0).getMessage());
+      Assert.assertEquals(0, queue.getNumberOfReferences());
+   }
+
    // Private ------------------------------------------------------------------------------
 
    private void testConsumerWithFilters(final boolean direct) throws Exception
@@ -1607,6 +2238,165 @@ public class QueueImplTest extends UnitTestCase
       }
    }
 
+   @Test
+   public void testTotalIteratorSegments() throws Exception
+   {
+      QueueImpl queue = new QueueImpl(1,
+                                      QueueImplTest.address1,
+                                      QueueImplTest.queue1,
+                                      null,
+                                      false,
+                                      true,
+                                      scheduledExecutor,
+                                      null,
+                                      null,
+                                      null,
+                                      executor);
+
+      final int numMessages = QueueImpl.BROWSE_SEGMENT_SIZE * 2 + 50;
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         queue.addTail(generateReference(queue, i));
+      }
+
+      Assert.assertEquals(numMessages, getMessageCount(queue));
+
+      LinkedListIterator<MessageReference> totalIterator = queue.totalIterator();
+
+      try
+      {
+         // stop on the first reference of the second segment
+         for (int i = 0; i <= QueueImpl.BROWSE_SEGMENT_SIZE; i++)
+         {
+            Assert.assertTrue(totalIterator.hasNext());
+            Assert.assertEquals(i, totalIterator.next().getMessage().getMessageID());
+         }
+
+         long copied = QueueImpl.BROWSE_SEGMENT_SIZE + 10;
+         long notCopied = QueueImpl.BROWSE_SEGMENT_SIZE * 2 + 10;
+
+         Assert.assertNotNull(queue.removeReferenceWithID(copied));
+         Assert.assertNotNull(queue.removeReferenceWithID(notCopied));
+
+         // the copied segment still returns what was removed after it was copied
+         for (int i = QueueImpl.BROWSE_SEGMENT_SIZE + 1; i < numMessages; i++)
+         {
+            if (i == notCopied)
+            {
+               continue;
+            }
+
+            Assert.assertTrue(totalIterator.hasNext());
+            Assert.assertEquals(i, totalIterator.next().getMessage().getMessageID());
+         }
+
+         Assert.assertFalse(totalIterator.hasNext());
+
+         queue.addTail(generateReference(queue, numMessages));
+
+         Assert.assertEquals(numMessages - 1, getMessageCount(queue));
+
+         Assert.assertTrue(totalIterator.hasNext());
+         Assert.assertEquals(numMessages, totalIterator.next().getMessage().getMessageID());
+      }
+      finally
+      {
+         totalIterator.close();
+      }
+   }
+
+   @Test
+   public void testTotalIteratorHoldsMessagesAcknowledgedWhileBrowsing() throws Exception
+   {
+      final QueueImpl queue = new QueueImpl(1,
+                                            QueueImplTest.address1,
+                                            QueueImplTest.queue1,
+                                            null,
+                                            false,
+                                            true,
+                                            scheduledExecutor,
+                                            null,
+                                            null,
+                                            null,
+                                            executor);
+
+      final int numMessages = QueueImpl.BROWSE_SEGMENT_SIZE * 5;
+
+      List<ServerMessage> messages = new ArrayList<ServerMessage>();
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         MessageReference ref = generateReference(queue, i);
+         // as the post office does when routing
+         ref.getMessage().incrementRefCount();
+         messages.add(ref.getMessage());
+         queue.addTail(ref);
+      }
+
+      LinkedListIterator<MessageReference> totalIterator = queue.totalIterator();
+
+      final List<Throwable> errors = new ArrayList<Throwable>();
+
+      Thread consumerThread = new Thread()
+      {
+         @Override
+         public void run()
+         {
+            try
+            {
+               FakeConsumer consumer = new FakeConsumer();
+               queue.addConsumer(consumer);
+               queue.deliverNow();
+
+               for (MessageReference ref : consumer.getReferences())
+               {
+                  queue.acknowledge(ref);
+               }
+            }
+            catch (Throwable e)
+            {
+               errors.add(e);
+            }
+         }
+      };
+
+      int browsed = 0;
+
+      try
+      {
+         // the first segment is copied before the consumer takes the messages
+         Assert.assertTrue(totalIterator.hasNext());
+
+         consumerThread.start();
+
+         while (totalIterator.hasNext())
+         {
+            MessageReference ref = totalIterator.next();
+
+            // acknowledged or not, the message can't be released while it's being browsed
+            Assert.assertTrue(ref.getMessage().getRefCount() > 0);
+
+            browsed++;
+         }
+      }
+      finally
+      {
+         consumerThread.join();
+         totalIterator.close();
+      }
+
+      Assert.assertTrue(errors.isEmpty());
+      Assert.assertTrue(browsed >= QueueImpl.BROWSE_SEGMENT_SIZE);
+      Assert.assertEquals(0, getMessageCount(queue));
+
+      // the browser let go of every message once closed
+      for (ServerMessage message : messages)
+      {
+         Assert.assertEquals(0, message.getRefCount());
+      }
+   }
+
    @Test
    public void testTotalIteratorOrder() throws Exception
    {
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2005-2014 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.tests.unit.core.server.impl.fakes;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.hornetq.core.server.HandleStatus;
+import org.hornetq.core.server.MessageReference;
+import org.hornetq.core.server.Queue;
+import org.hornetq.core.server.ServerConsumer;
+import org.hornetq.core.transaction.Transaction;
+
+/**
+ * A {@link FakeConsumer} the queue treats as a server consumer, counting the calls to handle.
+ */
+public class FakeServerConsumer extends FakeConsumer implements ServerConsumer
+{
+   private final Queue queue;
+
+   private int handleCount;
+
+   public FakeServerConsumer(final Queue queue)
+   {
+      this.queue = queue;
+   }
+
+   @Override
+   public synchronized HandleStatus handle(final MessageReference reference)
+   {
+      handleCount++;
+      return super.handle(reference);
+   }
+
+   public synchronized int getHandleCount()
+   {
+      return handleCount;
+   }
+
+   public void setProtocolContext(Object protocolContext)
+   {
+   }
+
+   public Object getProtocolContext()
+   {
+      return null;
+   }
+
+   public long getID()
+   {
+      return 0;
+   }
+
+   public Object getConnectionID()
+   {
+      return null;
+   }
+
+   public void close(boolean failed) throws Exception
+   {
+   }
+
+   public void removeItself() throws Exception
+   {
+   }
+
+   public List<MessageReference> cancelRefs(boolean failed, boolean lastConsumedAsDelivered, Transaction tx) throws Exception
+   {
+      return Collections.emptyList();
+   }
+
+   public void setStarted(boolean started)
+   {
+   }
+
+   public void receiveCredits(int credits)
+   {
+      queue.consumerReady(this);
+   }
+
+   public Queue getQueue()
+   {
+      return queue;
+   }
+
+   public MessageReference removeReferenceByID(long messageID) throws Exception
+   {
+      return null;
+   }
+
+   public void acknowledge(Transaction tx, long messageID) throws Exception
+   {
+   }
+
+   public void individualAcknowledge(Transaction tx, long messageID) throws Exception
+   {
+   }
+
+   public void individualCancel(long messageID, boolean failed) throws Exception
+   {
+   }
+
+   public void forceDelivery(long sequence)
+   {
+   }
+
+   public void setTransferring(boolean transferring)
+   {
+   }
+
+   public boolean isBrowseOnly()
+   {
+      return false;
+   }
+
+   public long getCreationTime()
+   {
+      return 0;
+   }
+
+   public String getSessionID()
+   {
+      return null;
+   }
+
+   public void promptDelivery()
+   {
+      queue.consumerReady(this);
+   }
+}
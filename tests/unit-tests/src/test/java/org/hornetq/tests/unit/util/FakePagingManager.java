@@ -34,6 +34,20 @@ public final class FakePagingManager implements PagingManager
       return 0;
    }
 
+   public void addSize(final PagingStore store, final int size)
+   {
+   }
+
+   public long getGlobalSize()
+   {
+      return 0;
+   }
+
+   public long getGlobalMaxSize()
+   {
+      return -1;
+   }
+
    public void addTransaction(final PageTransactionInfo pageTransaction)
    {
    }
@@ -144,6 +158,11 @@ public final class FakePagingManager implements PagingManager
       return false;
    }
 
+   public long getGlobalDepageSize()
+   {
+      return -1;
+   }
+
    /*
     * (non-Javadoc)
     * @see org.hornetq.core.paging.PagingManager#getTransactions()
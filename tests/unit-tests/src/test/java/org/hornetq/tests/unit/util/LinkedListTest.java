@@ -1302,4 +1302,92 @@ public class LinkedListTest extends UnitTestCase
       assertEquals(0, list.numIters());
 
    }
+
+   @Test
+   public void testRemoveAcrossChunksWithOpenIterators()
+   {
+      final int num = 1000;
+
+      List<Integer> expected = new LinkedList<Integer>();
+
+      for (int i = 0; i < num; i++)
+      {
+         list.addTail(i);
+         list.addHead(-i - 1);
+      }
+
+      for (int i = -num; i < num; i++)
+      {
+         expected.add(i);
+      }
+
+      assertEquals(2 * num, list.size());
+
+      // Leave an iterator in the middle of the list while another one removes around it
+
+      LinkedListIterator<Integer> parked = list.iterator();
+
+      for (int i = -num; i < 0; i++)
+      {
+         assertTrue(parked.hasNext());
+         assertEquals(i, parked.next().intValue());
+      }
+
+      LinkedListIterator<Integer> remover = list.iterator();
+
+      while (remover.hasNext())
+      {
+         if (remover.next() % 3 != 0)
+         {
+            remover.remove();
+         }
+      }
+
+      remover.close();
+
+      java.util.Iterator<Integer> expectedIter = expected.iterator();
+
+      while (expectedIter.hasNext())
+      {
+         if (expectedIter.next() % 3 != 0)
+         {
+            expectedIter.remove();
+         }
+      }
+
+      assertEquals(expected.size(), list.size());
+
+      for (Integer i : expected)
+      {
+         if (i >= 0)
+         {
+            assertTrue(parked.hasNext());
+            assertEquals(i, parked.next());
+         }
+      }
+
+      assertFalse(parked.hasNext());
+
+      parked.close();
+
+      assertEquals(0, list.numIters());
+
+      for (Integer i : expected)
+      {
+         assertEquals(i, list.poll());
+      }
+
+      assertNull(list.poll());
+
+      assertEquals(0, list.size());
+
+      // The list is still usable once it has been emptied
+
+      list.addTail(1);
+      list.addHead(0);
+
+      assertEquals(0, list.poll().intValue());
+      assertEquals(1, list.poll().intValue());
+      assertNull(list.poll());
+   }
 }